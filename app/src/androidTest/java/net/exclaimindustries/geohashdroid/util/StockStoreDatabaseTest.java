@@ -0,0 +1,160 @@
+package net.exclaimindustries.geohashdroid.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import net.exclaimindustries.geohashdroid.core.HashEngine;
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * This stress-tests {@link StockStoreDatabase} with a bunch of threads reading
+ * hashes while another one writes big batches.  The reads should all come
+ * back right, and plenty of them should finish while a batch is still in the
+ * middle of being written, meaning they didn't have to wait for it.
+ */
+public class StockStoreDatabaseTest {
+    private static final int READERS = 4;
+    private static final int SEEDED = 32;
+    private static final int BATCHES = 20;
+    private static final int BATCH_SIZE = 500;
+
+    private Context mContext;
+    private StockStoreDatabase mStore;
+    private String mOldCacheSize;
+    private int mToday;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+
+        // Make sure there's a cache at all.  Everything's dated today or
+        // later, so it's all pinned and nothing gets pruned regardless.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mOldCacheSize = prefs.getString(GHDConstants.PREF_STOCK_CACHE_SIZE, null);
+        prefs.edit().putString(GHDConstants.PREF_STOCK_CACHE_SIZE, "100").commit();
+
+        mStore = new StockStoreDatabase().init(mContext);
+        mStore.deleteCache();
+        mToday = EpochDay.today();
+
+        for(int i = 0; i < SEEDED; i++)
+            mStore.storeInfo(Info.fromHash(mToday + i, null, seedLatitude(i), seedLongitude(i)));
+
+        mStore.flush();
+    }
+
+    @After
+    public void tearDown() {
+        mStore.deleteCache();
+        mStore.finish();
+
+        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        if(mOldCacheSize == null)
+            editor.remove(GHDConstants.PREF_STOCK_CACHE_SIZE);
+        else
+            editor.putString(GHDConstants.PREF_STOCK_CACHE_SIZE, mOldCacheSize);
+        editor.commit();
+    }
+
+    private static double seedLatitude(int i) {
+        return (i + 1) / 64.0;
+    }
+
+    private static double seedLongitude(int i) {
+        return 1.0 - (i + 1) / 64.0;
+    }
+
+    @Test
+    public void readsDontWaitOnWrites() throws Exception {
+        // The writer bumps this right before and right after each flush, so
+        // it's odd while a flush is going.  A read that starts and ends on the
+        // same odd number happened entirely inside one flush.
+        final AtomicLong flushState = new AtomicLong();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger readsDuringFlush = new AtomicInteger();
+        final AtomicInteger wrong = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        try {
+            for(int r = 0; r < READERS; r++) {
+                final int first = r;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        double[] out = new double[2];
+                        int reads = 0;
+
+                        while(!done.get()) {
+                            int which = (first + reads) % SEEDED;
+
+                            long before = flushState.get();
+                            boolean found = mStore.getHash(mToday + which, true, out);
+                            long after = flushState.get();
+
+                            if(!found
+                                    || out[HashEngine.LATITUDE] != seedLatitude(which)
+                                    || out[HashEngine.LONGITUDE] != seedLongitude(which))
+                                wrong.incrementAndGet();
+                            else if(before == after && (before & 1) == 1)
+                                readsDuringFlush.incrementAndGet();
+
+                            reads++;
+                        }
+
+                        return reads;
+                    }
+                }));
+            }
+
+            try {
+                for(int b = 0; b < BATCHES; b++) {
+                    for(int i = 0; i < BATCH_SIZE; i++) {
+                        int day = mToday + SEEDED + b * BATCH_SIZE + i;
+                        mStore.storeInfo(Info.fromHash(day, null, 0.25, 0.75));
+                    }
+
+                    flushState.incrementAndGet();
+                    mStore.flush();
+                    flushState.incrementAndGet();
+                }
+            } finally {
+                done.set(true);
+            }
+
+            int reads = 0;
+            for(Future<Integer> f : futures) reads += f.get();
+
+            assertEquals(0, wrong.get());
+            assertTrue("Only " + reads + " reads happened", reads > 0);
+
+            // If reads had to wait on the writer, the only ones that could
+            // finish "during" a flush are the stragglers that got in right
+            // before it grabbed the lock, a few per flush at most.
+            assertTrue("Only " + readsDuringFlush.get() + " of " + reads
+                            + " reads finished while a write was in flight",
+                    readsDuringFlush.get() > BATCHES * READERS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -17,21 +17,31 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.text.InputType;
+import android.util.Log;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.core.MirrorRegistry;
 import net.exclaimindustries.geohashdroid.services.AlarmWorker;
+import net.exclaimindustries.geohashdroid.services.BackfillWorker;
 import net.exclaimindustries.geohashdroid.services.WikiService;
 import net.exclaimindustries.geohashdroid.util.GHDConstants;
 import net.exclaimindustries.geohashdroid.util.HashBuilder;
+import net.exclaimindustries.tools.EpochDay;
 import net.exclaimindustries.tools.QueueService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Objects;
 
 import androidx.annotation.NonNull;
@@ -475,6 +485,13 @@ public class PreferencesScreen extends AppCompatActivity
     public static class OtherPreferenceFragment extends PreferenceFragmentCompat {
         private static final String WIPE_DIALOG = "wipeDialog";
         private static final String RESET_BUGGING_ME_DIALOG = "resetBuggingMe";
+        private static final String DEBUG_TAG = "OtherPreferences";
+
+        private static final int EXPORT_CACHE = 1;
+        private static final int IMPORT_CACHE = 2;
+
+        // How far back "the past year" goes.
+        private static final int BACKFILL_DAYS = 365;
 
         /**
          * This is the {@link DialogFragment} that shows up when the user wants
@@ -570,6 +587,35 @@ public class PreferencesScreen extends AppCompatActivity
                 });
             }
 
+            // The mirrors are one URL per line, and every line has to be a
+            // usable template.  Blank is fine; that means the usual ones.
+            EditTextPreference mirrorsPref = findPreference(GHDConstants.PREF_STOCK_MIRRORS);
+            if(mirrorsPref != null) {
+                mirrorsPref.setOnBindEditTextListener(editText -> {
+                    editText.setSingleLine(false);
+                    editText.setInputType(InputType.TYPE_CLASS_TEXT
+                            | InputType.TYPE_TEXT_VARIATION_URI
+                            | InputType.TYPE_TEXT_FLAG_MULTI_LINE);
+                });
+
+                mirrorsPref.setOnPreferenceChangeListener((preference, newValue) -> {
+                    String value = newValue.toString().trim();
+                    if(value.isEmpty()) return true;
+
+                    for(String template : value.split("\\s+")) {
+                        if(!MirrorRegistry.isValidTemplate(template)) {
+                            Toast.makeText(
+                                    getActivity(),
+                                    R.string.toast_stockmirrors_invalid,
+                                    Toast.LENGTH_LONG).show();
+                            return false;
+                        }
+                    }
+
+                    return true;
+                });
+            }
+
             // Cache wiping is more a button than a preference, per se.
             pref = findPreference("_stockWipe");
 
@@ -581,6 +627,60 @@ public class PreferencesScreen extends AppCompatActivity
                 });
             }
 
+            // Same with exporting and importing.  Those go through the system's
+            // document picker, so the user can put the snapshot anywhere.
+            pref = findPreference("_cacheExport");
+            if(pref != null) {
+                pref.setOnPreferenceClickListener(preference -> {
+                    Intent i = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                            .addCategory(Intent.CATEGORY_OPENABLE)
+                            .setType("application/octet-stream")
+                            .putExtra(Intent.EXTRA_TITLE, getString(R.string.pref_cacheexport_filename));
+
+                    startActivityForResult(i, EXPORT_CACHE);
+                    return true;
+                });
+            }
+
+            pref = findPreference("_cacheImport");
+            if(pref != null) {
+                pref.setOnPreferenceClickListener(preference -> {
+                    Intent i = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                            .addCategory(Intent.CATEGORY_OPENABLE)
+                            .setType("*/*");
+
+                    startActivityForResult(i, IMPORT_CACHE);
+                    return true;
+                });
+            }
+
+            // Backfilling goes off in the background, so all there is to do
+            // here is start it.  Everything up through yesterday; today's
+            // stock might not even be posted yet.
+            pref = findPreference("_cacheBackfill");
+            if(pref != null) {
+                pref.setOnPreferenceClickListener(preference -> {
+                    // It all goes in the hash atlas, and if the cache is off,
+                    // there isn't one.
+                    if(!HashBuilder.canBackfill(requireContext())) {
+                        Toast.makeText(
+                                getActivity(),
+                                R.string.toast_cachebackfill_cache_off,
+                                Toast.LENGTH_LONG).show();
+                        return true;
+                    }
+
+                    int yesterday = EpochDay.today() - 1;
+                    BackfillWorker.enqueueWork(requireContext(), yesterday - BACKFILL_DAYS + 1, yesterday);
+
+                    Toast.makeText(
+                            getActivity(),
+                            R.string.toast_cachebackfill_started,
+                            Toast.LENGTH_SHORT).show();
+                    return true;
+                });
+            }
+
             // As is the reminder unremindening.
             pref = findPreference("_resetBuggingMe");
             if(pref != null) {
@@ -592,6 +692,61 @@ public class PreferencesScreen extends AppCompatActivity
             }
         }
 
+        @Override
+        public void onActivityResult(int requestCode, int resultCode, Intent data) {
+            if((requestCode == EXPORT_CACHE || requestCode == IMPORT_CACHE)
+                    && resultCode == RESULT_OK && data != null && data.getData() != null) {
+                transferCache(data.getData(), requestCode == EXPORT_CACHE);
+                return;
+            }
+
+            super.onActivityResult(requestCode, resultCode, data);
+        }
+
+        private void transferCache(@NonNull final Uri uri, final boolean export) {
+            // It's quick, but it's still disk (and maybe a network drive, for
+            // all we know), so it's off the main thread it goes.
+            final Context context = requireContext().getApplicationContext();
+
+            new Thread(() -> {
+                boolean success;
+
+                try {
+                    if(export) {
+                        OutputStream out = context.getContentResolver().openOutputStream(uri);
+                        if(out == null) throw new IOException("Couldn't open " + uri);
+                        try {
+                            HashBuilder.exportCache(context, out);
+                        } finally {
+                            out.close();
+                        }
+                    } else {
+                        InputStream in = context.getContentResolver().openInputStream(uri);
+                        if(in == null) throw new IOException("Couldn't open " + uri);
+                        try {
+                            HashBuilder.importCache(context, in);
+                        } finally {
+                            in.close();
+                        }
+                    }
+
+                    success = true;
+                } catch (IOException | SecurityException e) {
+                    Log.w(DEBUG_TAG, "Couldn't " + (export ? "export" : "import") + " the stock cache", e);
+                    success = false;
+                }
+
+                final int message;
+                if(export)
+                    message = success ? R.string.toast_cacheexport_success : R.string.toast_cacheexport_failure;
+                else
+                    message = success ? R.string.toast_cacheimport_success : R.string.toast_cacheimport_failure;
+
+                new Handler(Looper.getMainLooper()).post(() ->
+                        Toast.makeText(context, message, Toast.LENGTH_SHORT).show());
+            }, "Stock cache " + (export ? "export" : "import")).start();
+        }
+
         @Override
         public void onStop() {
             BackupManager bm = new BackupManager(getActivity());
@@ -0,0 +1,85 @@
+/*
+ * CacheDiagnosticsFragment.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.fragments;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.core.StatsRegistry;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+/**
+ * This shows the hit/miss counts and latencies for every cache tier and stock
+ * server, straight out of {@link StatsRegistry}.  It's reachable from the
+ * "Other" preferences, and it can hand the report off as plain text to
+ * whatever wants it (email, a note, a bug report...), which is really the
+ * point: it's for figuring out if the cache sizes make any sense for how
+ * people actually use the app.
+ *
+ * @author Nicholas Killewald
+ */
+public class CacheDiagnosticsFragment extends Fragment {
+    private TextView mReport;
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater,
+                             @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View layout = inflater.inflate(R.layout.cache_diagnostics, container, false);
+
+        mReport = layout.findViewById(R.id.diagnostics_report);
+
+        layout.findViewById(R.id.diagnostics_refresh).setOnClickListener(v -> refresh());
+
+        layout.findViewById(R.id.diagnostics_reset).setOnClickListener(v -> {
+            StatsRegistry.getDefault().reset();
+            refresh();
+        });
+
+        layout.findViewById(R.id.diagnostics_export).setOnClickListener(v -> export());
+
+        return layout;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // The numbers keep going while we're not looking, so grab a fresh set
+        // every time we come back.
+        refresh();
+    }
+
+    private void refresh() {
+        mReport.setText(StatsRegistry.getDefault().makeReport());
+    }
+
+    private void export() {
+        // Make a fresh report rather than whatever's on screen; it might've
+        // been a while.
+        String report = StatsRegistry.getDefault().makeReport();
+        mReport.setText(report);
+
+        Intent send = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, getString(R.string.diagnostics_export_subject))
+                .putExtra(Intent.EXTRA_TEXT, report);
+
+        startActivity(Intent.createChooser(send, getString(R.string.diagnostics_export_chooser)));
+    }
+}
@@ -29,6 +29,7 @@ import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.geohashdroid.util.KnownLocation;
 import net.exclaimindustries.geohashdroid.util.UnitConverter;
 import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.tools.EpochDay;
 
 import java.text.DateFormat;
 import java.util.Calendar;
@@ -437,8 +438,11 @@ public class AlarmWorker extends Worker {
                 .putExtra(StockWorker.EXTRA_REQUEST_FLAGS, StockWorker.FLAG_ALARM)
                 .putExtra(StockWorker.EXTRA_RESPOND_TO, StockReceiver.class);
 
-        // The notification goes up first, if need be.
-        if(HashBuilder.getStoredStock(context, cal) != null) {
+        // The notification goes up first, if need be.  Check for the stock
+        // we'll actually need; if today's a holiday, that's the last trading
+        // day's, which we've probably already got.
+        Calendar stockCal = Info.makeAdjustedCalendar(cal, g);
+        if(HashBuilder.getStoredStock(context, stockCal) != null) {
             // Hold up, we've already got a stock for that.  Don't throw up the
             // notification; StockService will send the Intent immediately.
             Log.d(DEBUG_TAG, "Stock is already cached for "
@@ -448,7 +452,7 @@ public class AlarmWorker extends Worker {
             Log.d(DEBUG_TAG, "Notification going up for a fetch on "
                     + DateTools.getHyphenatedDateString(cal)
                     + "...");
-            showNotification(context, Info.makeAdjustedCalendar(cal, g));
+            showNotification(context, stockCal);
         }
 
         // THEN we send the request.
@@ -708,7 +712,12 @@ public class AlarmWorker extends Worker {
         Calendar tomorrow = (Calendar) today.clone();
         tomorrow.add(Calendar.DATE, 1);
 
-        Info global = HashBuilder.getStoredInfo(context, today, null);
+        // Every lookup from here on out is for one of those two dates, so
+        // convert 'em once.
+        int todayDay = EpochDay.fromCalendar(today);
+        int tomorrowDay = EpochDay.fromCalendar(tomorrow);
+
+        Info global = HashBuilder.getStoredInfo(context, todayDay, null);
 
         for(KnownLocation kl : locations) {
             // Every KnownLocation has a method to do this.  Maybe it's a wee
@@ -716,7 +725,7 @@ public class AlarmWorker extends Worker {
             Info best;
 
             try {
-                best = kl.getClosestInfo(context, (kl.is30w() ? tomorrow : today));
+                best = kl.getClosestInfo(context, (kl.is30w() ? tomorrowDay : todayDay));
             } catch(IllegalArgumentException iae) {
                 // This shouldn't happen under normal operation, but if this is
                 // the debug build and the party alarm's been triggered,
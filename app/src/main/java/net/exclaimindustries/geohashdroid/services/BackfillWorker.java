@@ -0,0 +1,244 @@
+/*
+ * BackfillWorker.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENCE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.geohashdroid.core.StockBackfill;
+import net.exclaimindustries.geohashdroid.util.GHDConstants;
+import net.exclaimindustries.geohashdroid.util.HashBuilder;
+import net.exclaimindustries.tools.DateTools;
+
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+/**
+ * <p>
+ * <code>BackfillWorker</code> fills the stock cache in for a whole range of
+ * dates at once, using a {@link StockBackfill}.  Only one of these runs at a
+ * time; asking for another range replaces whatever was going before.
+ * </p>
+ *
+ * <p>
+ * WorkManager only gives a worker so long before it stops it, and a year or
+ * two of stocks might well take longer than that on a slow connection.  So
+ * as each batch goes in, this writes down how far it got, and when it gets
+ * started back up for the same range, it picks up from there.  Progress goes
+ * out through {@link #setProgressAsync(Data)} (see {@link #PROGRESS_DONE} and
+ * {@link #PROGRESS_TOTAL}) and a quiet notification.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class BackfillWorker extends Worker {
+    private static final String DEBUG_TAG = "BackfillWorker";
+
+    /** The unique work name.  There's only ever one backfill. */
+    public static final String WORK_NAME = "net.exclaimindustries.geohashdroid.STOCK_BACKFILL";
+
+    /** Progress key for how many missing days are done with so far. */
+    public static final String PROGRESS_DONE = "done";
+    /** Progress key for how many days were missing to start with. */
+    public static final String PROGRESS_TOTAL = "total";
+
+    /** Output key for how many stocks got fetched. */
+    public static final String OUTPUT_FETCHED = "fetched";
+    /** Output key for how many days no mirror had. */
+    public static final String OUTPUT_NOT_POSTED = "notPosted";
+    /** Output key for how many days couldn't be fetched at all. */
+    public static final String OUTPUT_FAILED = "failed";
+
+    /** Data key for the first expedition date, as an epoch day. */
+    private static final String DATA_FIRST_DAY = "firstDay";
+    /** Data key for the last expedition date, as an epoch day. */
+    private static final String DATA_LAST_DAY = "lastDay";
+
+    // Where we write down how far we got.  It's its own prefs file, as it's
+    // got nothing to do with the user's settings and shouldn't get backed up.
+    private static final String STATE_PREFS = "StockBackfill";
+    private static final String STATE_FIRST_DAY = "firstDay";
+    private static final String STATE_LAST_DAY = "lastDay";
+    private static final String STATE_RESUME_FROM = "resumeFrom";
+
+    private volatile StockBackfill mBackfill;
+
+    /**
+     * Starts a backfill for the given range of expedition dates, once there's
+     * a network connection.  If one was already going for some other range,
+     * it gets replaced.
+     *
+     * @param context a Context
+     * @param firstDay the first expedition date, as an epoch day
+     * @param lastDay the last expedition date (inclusive)
+     */
+    public static void enqueueWork(@NonNull Context context, int firstDay, int lastDay) {
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME,
+                ExistingWorkPolicy.REPLACE,
+                new OneTimeWorkRequest.Builder(BackfillWorker.class)
+                        .setConstraints(new Constraints.Builder()
+                                .setRequiredNetworkType(NetworkType.CONNECTED)
+                                .build())
+                        .setInputData(new Data.Builder()
+                                .putInt(DATA_FIRST_DAY, firstDay)
+                                .putInt(DATA_LAST_DAY, lastDay)
+                                .build())
+                        .build());
+    }
+
+    public BackfillWorker(@NonNull Context appContext, @NonNull WorkerParameters workerParams) {
+        super(appContext, workerParams);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Data data = getInputData();
+
+        if(!data.hasKeyWithValueOfType(DATA_FIRST_DAY, Integer.class)
+                || !data.hasKeyWithValueOfType(DATA_LAST_DAY, Integer.class)) {
+            Log.e(DEBUG_TAG, "BAILING OUT: There's no date range!");
+            return Result.failure();
+        }
+
+        final int lastDay = data.getInt(DATA_LAST_DAY, 0);
+        final Context context = getApplicationContext();
+        final SharedPreferences state = context.getSharedPreferences(STATE_PREFS, Context.MODE_PRIVATE);
+
+        // Anything longer than this would get pruned right back out of the
+        // atlas, so it's not worth fetching.
+        int requestedFirstDay = data.getInt(DATA_FIRST_DAY, 0);
+        final int firstDay = Math.max(requestedFirstDay, lastDay - HashBuilder.MAX_BACKFILL_DAYS + 1);
+        if(firstDay != requestedFirstDay)
+            Log.w(DEBUG_TAG, "That's too many days to backfill, only going back to "
+                    + DateTools.getHyphenatedDateString(firstDay));
+
+        StockBackfill backfill = HashBuilder.makeBackfill(context);
+        if(backfill == null) {
+            // There's nowhere to put it.  Trying again won't help unless the
+            // user turns the cache back on, and then they can ask again.
+            Log.w(DEBUG_TAG, "BAILING OUT: The stock cache is off, so there's nowhere for a backfill to go!");
+            state.edit().clear().apply();
+            return Result.failure();
+        }
+
+        // If we were already partway through this same range, pick up from
+        // there.  If it was some other range, that's not ours to finish.
+        boolean resuming = state.contains(STATE_RESUME_FROM)
+                && state.getInt(STATE_FIRST_DAY, 0) == firstDay
+                && state.getInt(STATE_LAST_DAY, 0) == lastDay;
+        int resumeFrom = resuming ? state.getInt(STATE_RESUME_FROM, 0) : Integer.MIN_VALUE;
+
+        if(!resuming) {
+            state.edit()
+                    .putInt(STATE_FIRST_DAY, firstDay)
+                    .putInt(STATE_LAST_DAY, lastDay)
+                    .remove(STATE_RESUME_FROM)
+                    .apply();
+        }
+
+        Log.d(DEBUG_TAG, "Backfilling stocks from " + DateTools.getHyphenatedDateString(firstDay)
+                + " to " + DateTools.getHyphenatedDateString(lastDay)
+                + (resuming ? ", resuming from " + DateTools.getHyphenatedDateString(resumeFrom) : "")
+                + "...");
+
+        backfill.setListener((done, total, resume) -> {
+            state.edit().putInt(STATE_RESUME_FROM, resume).apply();
+            setProgressAsync(new Data.Builder()
+                    .putInt(PROGRESS_DONE, done)
+                    .putInt(PROGRESS_TOTAL, total)
+                    .build());
+            showNotification(context, done, total);
+        });
+
+        mBackfill = backfill;
+
+        // It might've gotten stopped before we even got the backfill made.
+        if(isStopped()) backfill.cancel();
+
+        StockBackfill.Result result;
+        try {
+            result = backfill.run(firstDay, lastDay, resumeFrom);
+        } catch (IOException ioe) {
+            // The atlas fell over, or the cache got turned off.  Whatever
+            // made it in is written down, so we'll try again later from there
+            // (or give up then, if the cache is still off).
+            Log.w(DEBUG_TAG, "Couldn't store the backfill, trying again later", ioe);
+            clearNotification(context);
+            return Result.retry();
+        } finally {
+            mBackfill = null;
+        }
+
+        if(!result.isFinished()) {
+            // We got stopped.  WorkManager will start us back up (or not, if
+            // it was cancelled), and we'll carry on from where we were.
+            Log.d(DEBUG_TAG, "Backfill stopped, will resume from "
+                    + DateTools.getHyphenatedDateString(result.getResumeFrom()));
+            return Result.retry();
+        }
+
+        Log.d(DEBUG_TAG, "Backfill done!  " + result.getFetched() + " fetched, "
+                + result.getNotPosted() + " not posted, " + result.getFailed() + " failed.");
+
+        state.edit().clear().apply();
+        clearNotification(context);
+
+        return Result.success(new Data.Builder()
+                .putInt(OUTPUT_FETCHED, result.getFetched())
+                .putInt(OUTPUT_NOT_POSTED, result.getNotPosted())
+                .putInt(OUTPUT_FAILED, result.getFailed())
+                .build());
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+
+        // Whatever's in flight finishes up and gets committed, and then
+        // doWork returns.
+        StockBackfill backfill = mBackfill;
+        if(backfill != null) backfill.cancel();
+
+        clearNotification(getApplicationContext());
+    }
+
+    private static void showNotification(@NonNull Context context, int done, int total) {
+        // This is the same sort of thing as the stock prefetcher, so it goes
+        // on that channel, just as quietly.
+        NotificationManagerCompat.from(context).notify(R.id.backfill_notification, new NotificationCompat.Builder(
+                context,
+                GHDConstants.CHANNEL_STOCK_PREFETCHER)
+                .setSmallIcon(R.drawable.notification_icon_download)
+                .setContentTitle(context.getString(R.string.notification_backfill_title))
+                .setPriority(NotificationCompat.PRIORITY_MIN)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setProgress(total, done, false)
+                .setContentText(context.getString(R.string.notification_backfill_detail, done, total))
+                .build());
+    }
+
+    private static void clearNotification(@NonNull Context context) {
+        NotificationManagerCompat.from(context).cancel(R.id.backfill_notification);
+    }
+}
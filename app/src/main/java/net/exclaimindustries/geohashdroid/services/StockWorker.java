@@ -26,6 +26,7 @@ import net.exclaimindustries.geohashdroid.util.HashBuilder;
 import net.exclaimindustries.geohashdroid.util.HashBuilder.StockRunner;
 import net.exclaimindustries.geohashdroid.util.Info;
 import net.exclaimindustries.tools.AndroidUtil;
+import net.exclaimindustries.tools.EpochDay;
 
 import java.io.Serializable;
 import java.util.Calendar;
@@ -318,6 +319,10 @@ public class StockWorker extends Worker {
         Calendar cal = Calendar.getInstance();
         cal.setTimeInMillis(timestamp);
 
+        // The Calendar's only for the response Intent.  Everything in the
+        // middle goes by epoch day.
+        int epochDay = EpochDay.fromCalendar(cal);
+
         long requestId = data.getLong(EXTRA_REQUEST_ID, -1L);
         int flags = data.getInt(EXTRA_REQUEST_FLAGS, 0);
 
@@ -354,14 +359,14 @@ public class StockWorker extends Worker {
         Context context = getApplicationContext();
 
         // First, ask the stock cache if we've got an Info we can throw back.
-        Info info = HashBuilder.getStoredInfo(context, cal, graticule);
+        Info info = HashBuilder.getStoredInfo(context, epochDay, graticule);
 
         // If we got something, great!  Broadcast it right on out!
         if(info != null) {
             respFlags |= FLAG_CACHED;
             Info[] nearby = null;
             if((flags & FLAG_INCLUDE_NEARBY_POINTS) != 0)
-                nearby = getNearbyPoints(context, cal, graticule);
+                nearby = getNearbyPoints(context, epochDay, graticule);
             dispatchIntent(context, RESPONSE_OKAY, requestId, flags, respFlags, cal, graticule, info, nearby, respondTo);
         } else {
             // Otherwise, we need to go to the web.
@@ -370,7 +375,11 @@ public class StockWorker extends Worker {
                 Log.i(DEBUG_TAG, "We're not connected, stopping now.");
                 dispatchIntent(context, RESPONSE_NO_CONNECTION, requestId, flags, respFlags, cal, graticule, null, null, respondTo);
             } else {
-                StockRunner runner = HashBuilder.requestStockRunner(context, cal, graticule);
+                StockRunner runner = HashBuilder.requestStockRunner(context, epochDay, graticule);
+
+                // If the user's sitting there waiting on this, ask every
+                // mirror at once rather than waiting around on the first.
+                runner.setUserInitiated((flags & FLAG_USER_INITIATED) != 0);
                 runner.runStock();
 
                 // And the results are in!
@@ -382,7 +391,7 @@ public class StockWorker extends Worker {
                         Log.d(DEBUG_TAG, "Stock's good!  Away it goes!");
                         Info[] nearby = null;
                         if((flags & FLAG_INCLUDE_NEARBY_POINTS) != 0)
-                            nearby = getNearbyPoints(context, cal, graticule);
+                            nearby = getNearbyPoints(context, epochDay, graticule);
                         dispatchIntent(context, RESPONSE_OKAY, requestId, flags, respFlags, cal, graticule, runner.getLastResultObject(), nearby, respondTo);
                         break;
                     case HashBuilder.StockRunner.ERROR_NOT_POSTED:
@@ -447,7 +456,7 @@ public class StockWorker extends Worker {
         context.sendBroadcast(intent);
     }
 
-    private static Info[] getNearbyPoints(Context context, Calendar cal, Graticule g) {
+    private static Info[] getNearbyPoints(Context context, int epochDay, Graticule g) {
         if(g == null) return new Info[0];
 
         List<Info> infos = new LinkedList<>();
@@ -474,10 +483,10 @@ public class StockWorker extends Worker {
                 Graticule offset = Graticule.createOffsetFrom(g, i, j);
 
                 // ...then do the request.  Check the cache first!
-                Info info = HashBuilder.getStoredInfo(context, cal, offset);
+                Info info = HashBuilder.getStoredInfo(context, epochDay, offset);
                 if(info == null) {
                     // It's not in the cache.  Try to make it be in the cache.
-                    StockRunner runner = HashBuilder.requestStockRunner(context, cal, offset);
+                    StockRunner runner = HashBuilder.requestStockRunner(context, epochDay, offset);
                     runner.runStock();
 
                     if(runner.getStatus() == HashBuilder.StockRunner.ALL_OKAY) {
@@ -13,10 +13,13 @@ import android.app.backup.SharedPreferencesBackupHelper;
 
 /**
  * This is your standard run-of-the-mill BackupAgentHelper for pre-Marshmallow
- * backups.
+ * backups.  Besides the prefs, this also backs up the stock cache (see
+ * {@link StockCacheBackupHelper}), so a restored install doesn't have to look
+ * everything up all over again.
  */
 public class GHDBackupAgent extends BackupAgentHelper {
     static final String PREFS_BACKUP_KEY = "prefsBackupKey";
+    static final String STOCK_CACHE_BACKUP_KEY = "stockCacheBackupKey";
 
     @Override
     public void onCreate() {
@@ -38,11 +41,13 @@ public class GHDBackupAgent extends BackupAgentHelper {
                 GHDConstants.PREF_STARTUP_BEHAVIOR,
                 GHDConstants.PREF_STOCK_ALARM,
                 GHDConstants.PREF_STOCK_CACHE_SIZE,
+                GHDConstants.PREF_STOCK_MIRRORS,
                 GHDConstants.PREF_STOP_BUGGING_ME_PREFETCH_WARNING,
                 GHDConstants.PREF_WIKI_PASS,
                 GHDConstants.PREF_WIKI_USER,
                 GHDConstants.PREF_NIGHT_MODE
         );
         addHelper(PREFS_BACKUP_KEY, helper);
+        addHelper(STOCK_CACHE_BACKUP_KEY, new StockCacheBackupHelper(this));
     }
 }
@@ -7,6 +7,8 @@
  */
 package net.exclaimindustries.geohashdroid.util;
 
+import net.exclaimindustries.tools.CoordinateFormat;
+
 import java.text.DecimalFormat;
 
 /**
@@ -82,6 +84,12 @@ public final class GHDConstants {
      * the name's from an older time when AlarmWorker was called StockService.
      */
     public static final String PREF_STOCK_ALARM = "UseStockService";
+    /**
+     * Prefs key specifying the user's own list of stock mirrors, as URL
+     * templates, one per line.  If blank (or if none of them are any good),
+     * the usual mirrors get used.
+     */
+    public static final String PREF_STOCK_MIRRORS = "StockMirrors";
     /**
      * Prefs key specifying the last map type the user picked.  This will
      * default to the street map and be updated any time the user picks a new
@@ -109,11 +117,11 @@ public final class GHDConstants {
     public static final String PREFVAL_DIST_IMPERIAL = "Imperial";
     
     /** Prefs value for coordinates in degrees. */
-    public static final String PREFVAL_COORD_DEGREES = "Degrees";
+    public static final String PREFVAL_COORD_DEGREES = CoordinateFormat.DEGREES;
     /** Prefs value for coordinates in minutes. */
-    public static final String PREFVAL_COORD_MINUTES = "Minutes";
+    public static final String PREFVAL_COORD_MINUTES = CoordinateFormat.MINUTES;
     /** Prefs value for coordinates in minutes and seconds. */
-    public static final String PREFVAL_COORD_SECONDS = "Seconds";
+    public static final String PREFVAL_COORD_SECONDS = CoordinateFormat.SECONDS;
 
     /** Prefs value to start with the graticule with the closest hashpoint. */
     public static final String PREFVAL_STARTUP_CLOSEST = "UseClosest";
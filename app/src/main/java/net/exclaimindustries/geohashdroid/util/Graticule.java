@@ -15,6 +15,8 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
 
+import net.exclaimindustries.geohashdroid.core.GraticuleMath;
+
 /**
  * <p>
  * A <code>Graticule</code> represents, well, a graticule. A 1x1 square degree
@@ -160,62 +162,34 @@ public class Graticule implements Parcelable {
         // If we're just returning the same Graticule, seriously, come on now.
         if(latOff == 0 && lonOff == 0) return g;
 
-        // We already have all the data we need from the old Graticule.  But,
-        // we need to account for passing through the Prime Meridian and/or
-        // equator.  If the sign changes, decrement the amount of the change by
-        // one.  This logic is gratuitously loopy.
-        boolean goingSouth = (latOff < 0);
-        latOff = Math.abs(latOff);
-
-        int finalLat = g.getLatitude();
-        int finalLon = g.getLongitude();
-        boolean finalSouth = g.isSouth();
-        boolean finalWest = g.isWest();
-
-        // Skip the following if latitude is unaffected.
-        if (latOff != 0) {
-            if (g.isSouth() == goingSouth) {
-                // Going the same direction, no equator-hacking needed.
-                finalLat = g.getLatitude() + latOff;
-            } else {
-                // Going opposite directions, check for equator-hacking.
-                if (g.getLatitude() < latOff) {
-                    // We cross the equator!
-                    latOff--;
-                    finalSouth = !finalSouth;
-                }
-                finalLat = Math.abs(g.getLatitude() - latOff);
-            }
-        }
+        // Otherwise, all the equator-hacking and planet-wrapping happens over
+        // in GraticuleMath.
+        return fromPacked(GraticuleMath.offset(g.getPacked(), latOff, lonOff));
+    }
 
-        // Meridian hacking can be handled differently to also cover planet-
-        // wrapping at the same time.  This entire stunt depends on treating
-        // the longitude as a value between 0 and 359, inclusive.  In this,
-        // 179W is 0, 0W is 179, 0E is 180, and 179E is 359.
-        
-        // Adjust us properly.  Remember the negative zero graticules!
-        if(finalWest)
-            finalLon = -finalLon + 179;
-        else
-            finalLon += 180;
-        
-        finalLon += lonOff;
-        finalLon %= 360;
-        
-        if(finalLon < 0) finalLon = 360 - Math.abs(finalLon);
-        
-        if(finalLon >= 180) {
-            finalWest = false;
-            finalLon -= 180;
-        } else {
-            finalWest = true;
-            finalLon -= 179;
-        }
-        
-        finalLon = Math.abs(finalLon);
-        
-        // Now make the new Graticule object and return it.
-        return new Graticule(finalLat, finalSouth, finalLon, finalWest);
+    /**
+     * Makes a Graticule out of a packed int, as used by {@link GraticuleMath}.
+     *
+     * @param packed the packed graticule (which had better not be
+     *               {@link GraticuleMath#GLOBALHASH})
+     * @return a new Graticule
+     */
+    @NonNull
+    public static Graticule fromPacked(int packed) {
+        return new Graticule(GraticuleMath.getLatitude(packed),
+                GraticuleMath.isSouth(packed),
+                GraticuleMath.getLongitude(packed),
+                GraticuleMath.isWest(packed));
+    }
+
+    /**
+     * Packs this Graticule into an int, for use with {@link GraticuleMath}
+     * and anything else in the core library.
+     *
+     * @return this Graticule, packed
+     */
+    public int getPacked() {
+        return GraticuleMath.pack(mLatitude, mSouth, mLongitude, mWest);
     }
     
     /**
@@ -305,7 +279,7 @@ public class Graticule implements Parcelable {
      * @return true if the 30W Rule is in effect, false otherwise
      */
     public boolean uses30WRule() {
-        return (mLongitude < 30 || !isWest());
+        return GraticuleMath.uses30WRule(getPacked());
     }
 
     private void setLatitude(int latitude) {
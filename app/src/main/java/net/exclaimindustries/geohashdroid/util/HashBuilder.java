@@ -8,30 +8,44 @@
 package net.exclaimindustries.geohashdroid.util;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
 
+import net.exclaimindustries.geohashdroid.core.CacheSnapshot;
+import net.exclaimindustries.geohashdroid.core.EvictionPolicy;
+import net.exclaimindustries.geohashdroid.core.HashAtlas;
+import net.exclaimindustries.geohashdroid.core.HashCache;
+import net.exclaimindustries.geohashdroid.core.HashEngine;
+import net.exclaimindustries.geohashdroid.core.HedgedFetch;
+import net.exclaimindustries.geohashdroid.core.MirrorRegistry;
+import net.exclaimindustries.geohashdroid.core.NegativeCache;
+import net.exclaimindustries.geohashdroid.core.SingleFlight;
+import net.exclaimindustries.geohashdroid.core.StatsRegistry;
+import net.exclaimindustries.geohashdroid.core.StockBackfill;
+import net.exclaimindustries.geohashdroid.core.StockDates;
+import net.exclaimindustries.geohashdroid.core.TierStats;
+import net.exclaimindustries.tools.CharToByte;
 import net.exclaimindustries.tools.DateTools;
-import net.exclaimindustries.tools.HexFraction;
-import net.exclaimindustries.tools.MD5Tools;
+import net.exclaimindustries.tools.EpochDay;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.security.InvalidParameterException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import cz.msebera.android.httpclient.HttpResponse;
-import cz.msebera.android.httpclient.client.methods.HttpGet;
-import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
-import cz.msebera.android.httpclient.impl.client.HttpClients;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -56,19 +70,95 @@ import cz.msebera.android.httpclient.impl.client.HttpClients;
  */
 public class HashBuilder {
     
-    // This is used as the lock to prevent multiple requests from happening at
-    // once.  This really shouldn't ever happen, but just in case.
-    private static final Object locker = new Object();
+    // Every stock fetch goes through here, keyed on the stock date.  If the
+    // alarm, the nearby points, and the expedition screen all want the same
+    // stock at once, only one of them goes out and gets it, and the rest wait
+    // for that one.  Fetches for different dates go ahead at the same time.
+    private static final SingleFlight<String> mStockFlights = new SingleFlight<>();
     
     private static final String DEBUG_TAG = "HashBuilder";
+
+    private static final String ATLAS_FILENAME = "hashatlas.bin";
+
+    // How many hashes the quick cache holds.  Each one's a date and a 30W-ness,
+    // so this is enough to keep a month or so of retrohash browsing (30W and
+    // non-30W) without ever touching the atlas or database.
+    private static final int QUICK_CACHE_SIZE = 64;
     
-    private static StockStoreDatabase mStore;
-    // This set allows for quick reloading of the most recent stock and hash in
-    // a given instance of the program, bypassing the SQLite database, as well
-    // as allow for a small cache even if the SQLite database is turned off by
-    // preferences.
-    private static Info mLastInfo;
-    private static Info mTwoInfosAgo;
+    // The store and atlas are volatile so that once they're set up, looking
+    // them up doesn't need a lock.  Both of them are thread-safe on their own,
+    // so lookups from the UI never have to wait behind a worker that's busy
+    // writing.
+    private static volatile StockStoreDatabase mStore;
+    // The atlas sits in front of the database.  Every hash we work out lands
+    // in there, and looking one back up is a couple reads out of a mapped file
+    // instead of a trip through SQLite.  If it can't be opened for whatever
+    // reason, we just go without it and don't try again.  It gets its own
+    // budget, a lot bigger than the database's (see
+    // HashAtlas.DEFAULT_MAX_HASHES), since a fixed-width record is cheap and
+    // a hash that's been pruned out of it costs a trip through SQLite or
+    // worse.  If the cache is turned off entirely, though, it gets wiped
+    // (once) and left alone.
+    private static volatile HashAtlas mAtlas;
+    private static volatile boolean mAtlasFailed;
+    private static volatile boolean mAtlasWiped;
+    // The cache size preference, parsed.  Every atlas lookup needs to know
+    // if the cache is off, and that's no time to be reading preferences and
+    // parsing strings, so it gets read once and the listener keeps it up to
+    // date from then on.  SharedPreferences only holds on to its listeners
+    // weakly, hence holding on to it here.
+    private static volatile EvictionPolicy mCachePolicy;
+    private static final SharedPreferences.OnSharedPreferenceChangeListener mCachePolicyListener =
+            (prefs, key) -> {
+                // A null key means the whole thing got cleared.
+                if(key == null || GHDConstants.PREF_STOCK_CACHE_SIZE.equals(key))
+                    mCachePolicy = StockStoreDatabase.getEvictionPolicy(prefs);
+            };
+    // This allows for quick reloading of recent hashes in a given instance of
+    // the program, bypassing the atlas and the SQLite database, as well as
+    // allowing for a small cache even if the SQLite database is turned off by
+    // preferences.  It's thread-safe all on its own, so the UI and any number
+    // of workers can go at it without holding anything else up.
+    private static final HashCache mQuickCache = new HashCache(QUICK_CACHE_SIZE);
+
+    // How long a failed stock fetch gets remembered.  Both of these are well
+    // under the alarm's snooze, so a snooze always gets a fresh try.  A server
+    // error is the sort of thing that might clear up any second, so that one's
+    // shorter.
+    private static final long NOT_POSTED_TTL_MS = 5 * 60 * 1000;
+    private static final long SERVER_ERROR_TTL_MS = 60 * 1000;
+
+    // This remembers stock dates that came back not posted or with server
+    // errors, so that when the nearby points, the alarm, and whatever else all
+    // ask for the same date at once, only the first one actually goes out to
+    // the internet.  It's keyed on the stock date, since that's what the
+    // servers care about.
+    private static final NegativeCache mNegativeCache =
+            new NegativeCache(NOT_POSTED_TTL_MS, SERVER_ERROR_TTL_MS);
+
+    // Hit/miss counts and timings for each place a lookup can be answered
+    // from, for the diagnostics screen.  Each mirror gets its own, too (see
+    // StockRunner).
+    private static final TierStats mQuickCacheStats = StatsRegistry.getDefault().getTier("Quick cache");
+    private static final TierStats mAtlasStats = StatsRegistry.getDefault().getTier("Hash atlas");
+    private static final TierStats mDatabaseStats = StatsRegistry.getDefault().getTier("Database (hashes)");
+    private static final TierStats mStockDatabaseStats = StatsRegistry.getDefault().getTier("Database (stocks)");
+    private static final TierStats mNegativeCacheStats = StatsRegistry.getDefault().getTier("Negative cache");
+
+    // A backfill only gets this many connections to each mirror at once.
+    // StockClient allows more than that, so there's always room left for
+    // whatever the user's actually waiting on.
+    private static final int BACKFILL_CONNECTIONS_PER_MIRROR = 2;
+    // And it writes this many stocks (and all their hashes) at a time.
+    private static final int BACKFILL_BATCH_SIZE = 25;
+
+    /**
+     * The most days a backfill can cover.  It's about two hashes a day, and
+     * the atlas has to hold all of them with plenty of room left over for
+     * everything else, or the oldest of them get pruned right back out.  So,
+     * about ten years.
+     */
+    public static final int MAX_BACKFILL_DAYS = HashAtlas.DEFAULT_MAX_HASHES / 4;
 
     /**
      * <code>StockRunner</code> is what fetches the stocks.  It spawns off
@@ -80,10 +170,6 @@ public class HashBuilder {
     public static class StockRunner {
         private static final String DEBUG_TAG = "StockRunner";
 
-        // In milliseconds, remember.
-        private static final int CONNECTION_TIMEOUT_SEC = 10;
-        private static final int CONNECTION_TIMEOUT_MS = CONNECTION_TIMEOUT_SEC * 1000;
-
         /**
          * This is busy, either with getting the stock price or working out
          * the hash.
@@ -110,23 +196,48 @@ public class HashBuilder {
         public static final int ERROR_SERVER = 4;
 
         private final Context mContext;
-        private final Calendar mCal;
+        private final int mEpochDay;
         private final Graticule mGrat;
-        private HttpGet mRequest;
         private int mStatus;
         private Info mLastObject;
+        private boolean mUserInitiated;
+
+        // How long to give the first mirror before asking the next one too,
+        // if it's got no track record yet.  Once it does, it's the 90th
+        // percentile of how long it takes, clamped between the other two.
+        private static final long HEDGE_DEFAULT_DELAY_MS = 1000;
+        private static final long HEDGE_MIN_DELAY_MS = 150;
+        private static final long HEDGE_MAX_DELAY_MS = 3000;
+        private static final double HEDGE_PERCENTILE = 90;
+        private static final int HEDGE_MIN_SAMPLES = 5;
+
+        private static final long FETCH_THREAD_KEEP_ALIVE_SEC = 30;
 
-        // This may be expanded later to allow a user-definable list, hence why
-        // it doesn't follow the usual naming conventions I use.  Of course, in
-        // THAT case, we'd need to make it not be a raw array.  The general form
-        // is that %Y is the four-digit year, %m is the zero-padded month, and
-        // %d is the zero-padded date.
-        private final static String[] mServers = { "http://irc.peeron.com/xkcd/map/data/%Y/%m/%d",
+        // Every mirror attempt runs on one of these, so hedged requests can go
+        // at the same time.
+        private static volatile Executor mFetchExecutor;
+
+        /**
+         * The usual stock mirrors, used unless the user says otherwise.  The
+         * general form is that %Y is the four-digit year, %m is the
+         * zero-padded month, and %d is the zero-padded date.
+         */
+        public static final String[] DEFAULT_MIRRORS = { "http://irc.peeron.com/xkcd/map/data/%Y/%m/%d",
                 "http://geo.crox.net/djia/%Y/%m/%d" };
 
-        private StockRunner(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
+        // Where the mirrors' track records get saved, so we don't have to
+        // learn them all over again every time the process starts.  This is
+        // its own prefs file, so it doesn't get backed up with everything
+        // else; how well a mirror does depends on where the device is.
+        private static final String MIRROR_HEALTH_PREFS = "MirrorHealth";
+        private static final String MIRROR_HEALTH_KEY = "health";
+
+        // How each mirror's been doing, for deciding which to ask first.
+        private static volatile MirrorRegistry mMirrors;
+
+        private StockRunner(@NonNull Context con, int epochDay, @Nullable Graticule g) {
             mContext = con;
-            mCal = c;
+            mEpochDay = epochDay;
             mGrat = g;
             mStatus = IDLE;
         }
@@ -146,7 +257,7 @@ public class HashBuilder {
          */
         public void runStock() {
             Log.d(DEBUG_TAG, "Now starting a StockRunner for " +
-                DateTools.getHyphenatedDateString(mCal) +
+                DateTools.getHyphenatedDateString(mEpochDay) +
                     (mGrat == null ? " for the Globalhash" : " at " +
                         mGrat.getTitleString(false))
                     + "...");
@@ -155,50 +266,62 @@ public class HashBuilder {
             
             mStatus = BUSY;
             
-            // First, we need to adjust the calendar in the event we're in the
-            // range of the 30W rule.  To that end, sCal is for stock calendar.
-            Calendar sCal = Info.makeAdjustedCalendar(mCal, mGrat);
+            // First, we need to adjust the date in the event we're in the
+            // range of the 30W rule.  To that end, sDay is for stock day.
+            int sDay = Info.makeAdjustedEpochDay(mEpochDay, mGrat);
             
-            // Grab a lock on our lock object.
-            synchronized(locker) {
-                // First, if this exists in the cache, use it instead of going
-                // off to the internet.  This method uses the ACTUAL date, so
-                // we can ignore sCal for now.
-                toReturn = getStoredInfo(mContext, mCal, mGrat);
-                if(toReturn != null) {
-                    // Hey, whadya know, we've got something!  Send this data
-                    // back to the Handler and return!
-                    Log.d(DEBUG_TAG, "Found it in the cache!");
-                    mStatus = ALL_OKAY;
-                    sendMessage(toReturn);
-                    return;
-                }
-                
-                // If that failed, we need a stock price.  First, check to see
-                // if it's in the database.  
-                stock = getStoredStock(mContext, sCal);
-                
-                // If we found something, great!  Let's move on!
-                if(stock == null) {
-                    // Otherwise, we need to start heading off to the net.
-                    mStatus = BUSY;
-                    try {
-                        stock = fetchStock(sCal);
-                        // If this didn't throw an exception AND it's not blank,
-                        // stash it in the database.
-                        if(stock.trim().length() != 0)
-                            storeStock(mContext, sCal, stock);
-                    } catch (FileNotFoundException fnfe) {
-                        // If we got a 404, assume it's not posted yet.
+            // First, if this exists in the cache, use it instead of going off
+            // to the internet.  This method uses the ACTUAL date, so we can
+            // ignore sDay for now.
+            toReturn = getStoredInfo(mContext, mEpochDay, mGrat);
+            if(toReturn != null) {
+                // Hey, whadya know, we've got something!  Send this data back
+                // to the Handler and return!
+                Log.d(DEBUG_TAG, "Found it in the cache!");
+                mStatus = ALL_OKAY;
+                sendMessage(toReturn);
+                return;
+            }
+
+            // If that failed, we need a stock price.  First, check to see if
+            // it's in the database.
+            stock = getStoredStock(mContext, sDay);
+
+            // If we found something, great!  Let's move on!
+            if(stock == null) {
+                // If not, did we JUST fail to get this one?  If so, give the
+                // same answer as last time and don't bother the servers about
+                // it.
+                switch(checkNegativeCache(sDay)) {
+                    case NegativeCache.NOT_POSTED:
+                        Log.d(DEBUG_TAG, "Stock was recently not posted, not checking again yet.");
                         mStatus = ERROR_NOT_POSTED;
-                        sendMessage(createInvalidInfo(mCal, mGrat));
+                        sendMessage(createInvalidInfo(mEpochDay, mGrat));
                         return;
-                    } catch (IOException ioe) {
-                        // If we got anything else, assume a problem.
+                    case NegativeCache.SERVER_ERROR:
+                        Log.d(DEBUG_TAG, "Servers recently had errors, not checking again yet.");
                         mStatus = ERROR_SERVER;
-                        sendMessage(createInvalidInfo(mCal, mGrat));
+                        sendMessage(createInvalidInfo(mEpochDay, mGrat));
                         return;
-                    }
+                }
+
+                // Otherwise, we need to start heading off to the net.  If
+                // something else is already fetching this same stock date, we
+                // just wait for it and take what it gets.  Anything fetching
+                // some OTHER date isn't our problem and doesn't hold us up.
+                mStatus = BUSY;
+                try {
+                    stock = mStockFlights.run(sDay, () -> fetchAndStoreStock(sDay));
+                } catch (FileNotFoundException fnfe) {
+                    // If we got a 404, assume it's not posted yet.
+                    mStatus = ERROR_NOT_POSTED;
+                    sendMessage(createInvalidInfo(mEpochDay, mGrat));
+                    return;
+                } catch (IOException ioe) {
+                    // If we got anything else, assume a problem.
+                    mStatus = ERROR_SERVER;
+                    sendMessage(createInvalidInfo(mEpochDay, mGrat));
+                    return;
                 }
             }
 
@@ -206,7 +329,7 @@ public class HashBuilder {
             // the REAL date so we display the right thing on the detail screen
             // (or anywhere else; the point is, we can report to the user if
             // they're in the influence of the 30W Rule).
-            toReturn = createInfo(mCal, stock, mGrat);
+            toReturn = createInfo(mEpochDay, stock, mGrat);
                 
             // Good!  Now, we can stash this away in the database for later.
             storeInfo(mContext, toReturn);
@@ -219,6 +342,69 @@ public class HashBuilder {
         private void sendMessage(@NonNull Info toReturn) {
             mLastObject = toReturn;
         }
+
+        private int checkNegativeCache(int sDay) {
+            // If the user's sitting there asking for it, they get a real
+            // answer from the servers, not whatever we remember from a
+            // minute ago.  Whatever they get updates the negative cache as
+            // usual.
+            if(mUserInitiated) return NegativeCache.NONE;
+
+            long start = System.nanoTime();
+            int lastFailure = mNegativeCache.get(sDay, SystemClock.elapsedRealtime());
+            mNegativeCacheStats.recordSince(lastFailure != NegativeCache.NONE, start);
+            return lastFailure;
+        }
+
+        /**
+         * Goes and gets a stock, and stashes it (and every hash it's good for)
+         * away.  This is what actually runs inside a flight, so only one of
+         * these ever runs per stock date at a time.
+         *
+         * @param sDay the stock date
+         * @return the stock
+         * @throws FileNotFoundException it's not posted yet
+         * @throws IOException something else went wrong
+         */
+        @NonNull
+        private String fetchAndStoreStock(int sDay) throws IOException {
+            // Whoever had this date before us might've JUST finished with it
+            // between when we checked and when we got here.  If so, there's
+            // no need to ask again.
+            String stock = getStoredStock(mContext, sDay);
+            if(stock != null) return stock;
+
+            switch(checkNegativeCache(sDay)) {
+                case NegativeCache.NOT_POSTED:
+                    throw new FileNotFoundException("Stock was recently not posted");
+                case NegativeCache.SERVER_ERROR:
+                    throw new IOException("Servers recently had errors");
+            }
+
+            try {
+                stock = fetchStock(sDay);
+            } catch (FileNotFoundException fnfe) {
+                mNegativeCache.put(sDay, NegativeCache.NOT_POSTED, SystemClock.elapsedRealtime());
+                throw fnfe;
+            } catch (IOException ioe) {
+                mNegativeCache.put(sDay, NegativeCache.SERVER_ERROR, SystemClock.elapsedRealtime());
+                throw ioe;
+            }
+
+            // If this didn't throw an exception AND it's not blank, stash it
+            // in the database.
+            mNegativeCache.invalidate(sDay);
+            if(stock.trim().length() != 0) {
+                storeStock(mContext, sDay, stock);
+
+                // While we're at it, that stock's good for more than just this
+                // one date.  Work them all out now, so none of them ever miss
+                // later.
+                storeDependentHashes(mContext, sDay, stock);
+            }
+
+            return stock;
+        }
         
         /**
          * Returns the last result Info created from this StockRunner.  This is
@@ -233,136 +419,229 @@ public class HashBuilder {
             return mLastObject;
         }
 
+        /**
+         * Marks this as something the user asked for directly, in which case
+         * there's no waiting around on the first mirror; every mirror gets
+         * asked at once, and whichever answers first wins.  Otherwise, the
+         * second mirror only gets asked if the first one's taking longer
+         * than usual.  A user-initiated request also skips the negative
+         * cache, so a retry really does go back to the servers.
+         *
+         * @param userInitiated true if the user's sitting there waiting
+         */
+        public void setUserInitiated(boolean userInitiated) {
+            mUserInitiated = userInitiated;
+        }
+
         @NonNull
-        private String fetchStock(@NonNull Calendar sCal) throws IOException {
-            // Now, generate a string for the URL.
-            String sMonthStr = String.format(Locale.US, "%02d", sCal.get(Calendar.MONTH) + 1);
-            String sDayStr = String.format(Locale.US, "%02d", sCal.get(Calendar.DAY_OF_MONTH));
-
-            // Good, good! Now, to the web!  Go through our list of sites in
-            // order until we find an answer, we bottom out, or we abort.  In
-            // terms of what we report to the user, "Server error" is lowest-
-            // priority, with "Stock not posted" rating above it.  That is to
-            // say, if one server reports and error but another one explicitly
-            // tells us the stock wasn't found, the latter is what we use.  Of
-            // course, if we get an abort request, that takes absolute
-            // precedence.
-            int curStatus = ERROR_SERVER;
-            String result = "";
-
-            for(String s : mServers) {
-                // Do all our substitutions...
-                String location = s.replaceAll("%Y", Integer.toString(sCal.get(Calendar.YEAR)));
-                location = location.replaceAll("%m", sMonthStr);
-                location = location.replaceAll("%d", sDayStr);
-                Log.v(DEBUG_TAG, "Trying " + location + "...");
-                
-                // And go fetch!
-                CloseableHttpClient client = HttpClients.createDefault();
-                mRequest = new HttpGet(location);
+        private String fetchStock(int sDay) throws IOException {
+            // Good, good! Now, to the web!  The best mirror (whichever's been
+            // quickest and most reliable lately) goes right away, and if it's
+            // dragging its feet, the next one goes too, and so on.  Whichever
+            // comes back with a stock first wins, and the rest get dropped.
+            // In terms of what we report to the user, "Server error" is
+            // lowest-priority, with "Stock not posted" rating above it.  That
+            // is to say, if one server reports and error but another one
+            // explicitly tells us the stock wasn't found, the latter is what
+            // we use.  HedgedFetch takes care of all that.
+            MirrorRegistry mirrors = getMirrors(mContext);
+            List<MirrorAttempt> attempts = new ArrayList<>();
 
-                HttpResponse response;
+            for(String template : mirrors.getRanked()) {
+                attempts.add(new MirrorAttempt(mirrors, template, sDay));
+            }
 
-                // Get ready to time out if need be.  You never know.
-                TimerTask task = new TimerTask() {
-                    @Override
-                    public void run() {
-                        Log.i(DEBUG_TAG, "Stock fetch connection timed out, aborting now.");
-                        try {
-                            mRequest.abort();
-                        } catch (NullPointerException npe) {
-                            // It COULD be null at that point.  If it is, we can
-                            // just safely ignore it.
-                        }
-                    }
-                };
+            try {
+                String result = HedgedFetch.fetch(getFetchExecutor(), attempts,
+                        mUserInitiated ? 0 : getHedgeDelayMillis(attempts.get(0).mStats));
 
-                // Timer goes now!  We'll start the client immediately in the
-                // upcoming try block.
-                new Timer(true).schedule(task, CONNECTION_TIMEOUT_MS);
+                // If we finally, FINALLY got this far, we've got a successful stock!
+                Log.d(DEBUG_TAG, "Success!  Stock found!  It's " + result + "!");
+                return result;
+            } finally {
+                saveMirrors(mContext, mirrors);
+            }
+        }
 
-                try {
-                    response = client.execute(mRequest);
-                    task.cancel();
-
-                    // If that came out aborted, it was a timeout, so move on.
-                    if(mRequest.isAborted()) continue;
-                } catch (IOException e) {
-                    // If there was an exception, there was some issue with the
-                    // server.  It might've been aborted by timeout, but still,
-                    // move on to the next server.
-                    Log.d(DEBUG_TAG, "IOException!", e);
-                    continue;
+        /**
+         * Works out how long to give the first mirror before asking the next
+         * one as well.  That's however long the first mirror takes nine times
+         * out of ten, within reason.  If it's usually quick, we don't wait
+         * long; if it's usually slow, we don't go doubling up on requests
+         * that would've come back fine anyway.
+         *
+         * @param primary the stats for the first mirror
+         * @return the hedge delay, in milliseconds
+         */
+        private static long getHedgeDelayMillis(@NonNull TierStats primary) {
+            if(primary.getCount() < HEDGE_MIN_SAMPLES) return HEDGE_DEFAULT_DELAY_MS;
+
+            long delay = primary.getPercentileMicros(HEDGE_PERCENTILE) / 1000;
+            return Math.max(HEDGE_MIN_DELAY_MS, Math.min(HEDGE_MAX_DELAY_MS, delay));
+        }
+
+        @NonNull
+        private static Executor getFetchExecutor() {
+            Executor executor = mFetchExecutor;
+            if(executor != null) return executor;
+
+            synchronized(StockRunner.class) {
+                if(mFetchExecutor == null) {
+                    // Idle threads go away after a bit, so this doesn't hang
+                    // onto anything between fetches.
+                    mFetchExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                            FETCH_THREAD_KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                            new SynchronousQueue<Runnable>(),
+                            r -> {
+                                Thread t = new Thread(r, "StockRunner fetch");
+                                t.setDaemon(true);
+                                return t;
+                            });
                 }
 
-                if (response.getStatusLine().getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
-                    // If the server gives us a 404, that's saying it can't find
-                    // the stock for the day, which in turn implies it hasn't
-                    // been posted yet.  Log as such and try the next server.
-                    // Maybe they're just not in sync.
-                    Log.d(DEBUG_TAG, "Server said there was no stock for " + DateTools.getHyphenatedDateString(sCal));
-                    curStatus = ERROR_NOT_POSTED;
-                    continue;
-                } else if (response.getStatusLine().getStatusCode() != HttpURLConnection.HTTP_OK) {
-                    // A non-okay response that isn't a 404 is bad.  Count this
-                    // one as ERROR_SERVER and just continue.
-                    continue;
+                return mFetchExecutor;
+            }
+        }
+
+        /**
+         * Gets the mirror registry, with whatever mirrors the user wants
+         * right now.  The first time, this loads up the track records from
+         * last time.
+         *
+         * @param con Context for prefs
+         * @return the registry
+         */
+        @NonNull
+        private static MirrorRegistry getMirrors(@NonNull Context con) {
+            List<String> templates = MirrorRegistry.parseTemplates(
+                    PreferenceManager.getDefaultSharedPreferences(con)
+                            .getString(GHDConstants.PREF_STOCK_MIRRORS, ""));
+            if(templates.isEmpty()) templates = Arrays.asList(DEFAULT_MIRRORS);
+
+            MirrorRegistry mirrors = mMirrors;
+
+            if(mirrors == null) {
+                synchronized(StockRunner.class) {
+                    if(mMirrors == null) {
+                        MirrorRegistry loading = new MirrorRegistry(templates);
+                        loading.load(con.getSharedPreferences(MIRROR_HEALTH_PREFS, Context.MODE_PRIVATE)
+                                .getString(MIRROR_HEALTH_KEY, null));
+                        mMirrors = loading;
+                    }
+
+                    mirrors = mMirrors;
                 }
-                
-                // Well, we got this far!  Let's read!
-                result = getStringFromStream(response.getEntity().getContent());
-                
-                // With that done, we try to convert the output to the float.
-                // If this fails, we got bogus data and should roll on.
+            }
+
+            // The user might've changed the list since last time.  Anything
+            // that's still in there keeps its track record.
+            if(!mirrors.getMirrors().equals(templates)) mirrors.setMirrors(templates);
+
+            return mirrors;
+        }
+
+        private static void saveMirrors(@NonNull Context con, @NonNull MirrorRegistry mirrors) {
+            con.getSharedPreferences(MIRROR_HEALTH_PREFS, Context.MODE_PRIVATE)
+                    .edit()
+                    .putString(MIRROR_HEALTH_KEY, mirrors.save())
+                    .apply();
+        }
+
+        /**
+         * One go at one mirror.  This keeps the stats and track record for
+         * that mirror, and only counts it as a success if what came back is
+         * actually a number.
+         */
+        private static class MirrorAttempt implements HedgedFetch.Attempt {
+            private final MirrorRegistry mMirrors;
+            private final String mTemplate;
+            private final StockClient.Call mCall;
+            private final String mLocation;
+            private final TierStats mStats;
+            private final int mStockDay;
+
+            MirrorAttempt(@NonNull MirrorRegistry mirrors, @NonNull String template, int stockDay) {
+                mMirrors = mirrors;
+                mTemplate = template;
+                mLocation = MirrorRegistry.makeUrl(template, stockDay);
+                mCall = StockClient.newCall(mLocation);
+                mStats = StatsRegistry.getDefault().getTier("Mirror: " + getServerName(template));
+                mStockDay = stockDay;
+            }
+
+            @NonNull
+            @Override
+            public String run() throws IOException {
+                Log.v(DEBUG_TAG, "Trying " + mLocation + "...");
+                long start = System.nanoTime();
+                int outcome = MirrorRegistry.ERROR;
+
                 try {
-                    Float.parseFloat(result);
-                } catch (NumberFormatException nfe) {
-                    result = "";
-                    continue;
+                    // The client takes care of the timeouts, and reads only
+                    // so much; a stock's only a few characters long.
+                    String result = mCall.execute();
+
+                    // With that done, we try to convert the output to the
+                    // float.  If this fails, we got bogus data and should
+                    // roll on.
+                    try {
+                        Float.parseFloat(result);
+                    } catch (NumberFormatException nfe) {
+                        throw new IOException("Not a stock: " + result);
+                    }
+
+                    outcome = MirrorRegistry.SUCCESS;
+                    return result;
+                } catch (FileNotFoundException fnfe) {
+                    // If the server gives us a 404, that's saying it can't
+                    // find the stock for the day, which in turn implies it
+                    // hasn't been posted yet.  Maybe the others aren't in
+                    // sync, though.
+                    Log.d(DEBUG_TAG, "Server said there was no stock for "
+                            + DateTools.getHyphenatedDateString(mStockDay));
+                    outcome = MirrorRegistry.NOT_POSTED;
+                    throw fnfe;
+                } catch (IOException ioe) {
+                    // Anything else (a timeout, a non-okay response, a
+                    // connection problem) counts as ERROR_SERVER.
+                    if(!mCall.isCancelled()) Log.d(DEBUG_TAG, "IOException!", ioe);
+                    throw ioe;
+                } finally {
+                    // If it lost the race, that's not the mirror's fault, so
+                    // it doesn't count against it.
+                    boolean hit = (outcome == MirrorRegistry.SUCCESS);
+                    if(hit || !mCall.isCancelled()) {
+                        mStats.recordSince(hit, start);
+                        mMirrors.record(mTemplate, outcome,
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
                 }
-                
-                // We survived!  Set the status flag and keep going!
-                Log.d(DEBUG_TAG, "Success!  Stock found!  It's " + result + "!");
-                curStatus = ALL_OKAY;
-                client.close();
-                break;
             }
-            
-            // If we got this far and we still had an ERROR_SERVER or
-            // ERROR_NOT_POSTED, throw 'em.  We failed.
-            if(curStatus == ERROR_NOT_POSTED)
-                throw new FileNotFoundException();
-            else if(curStatus == ERROR_SERVER)
-                throw new IOException();
-
-            // If we finally, FINALLY got this far, we've got a successful stock!
-            return result;
+
+            @Override
+            public void cancel() {
+                mCall.cancel();
+            }
         }
         
         /**
-         * Takes the given stream and makes a String out of whatever data it has. Be
-         * really careful with this, as it will just attempt to read whatever's in
-         * the stream until it stops, meaning it'll spin endlessly if this isn't the
-         * sort of stream that ends.
-         * 
-         * @param stream
-         *            InputStream to read from
-         * @return a String consisting of the data from the stream
+         * Gets a short name for a server, for the stats.  That's just the host
+         * part of the URL template.
+         *
+         * @param template the server's URL template
+         * @return the host, or the whole template if that can't be found
          */
         @NonNull
-        private static String getStringFromStream(@NonNull InputStream stream)
-                throws IOException {
-            BufferedReader buff = new BufferedReader(new InputStreamReader(stream));
-
-            // Load it up...
-            StringBuilder tempstring = new StringBuilder();
-            char[] bean = new char[1024];
-            int read;
-            while ((read = buff.read(bean)) != -1) {
-                tempstring.append(bean, 0, read);
-            }
+        private static String getServerName(@NonNull String template) {
+            // The template isn't a legal URI thanks to all the percent signs,
+            // so do this by hand.
+            int start = template.indexOf("://");
+            start = (start < 0) ? 0 : start + 3;
+
+            int end = template.indexOf('/', start);
+            if(end < 0) end = template.length();
 
-            return tempstring.toString();
+            return end > start ? template.substring(start, end) : template;
         }
 
         /**
@@ -390,12 +669,84 @@ public class HashBuilder {
      * @return a new StockStoreDatabase object
      */
     @NonNull
-    private static synchronized StockStoreDatabase getStore(@NonNull Context c) {
-        if(mStore == null) {
-            mStore = new StockStoreDatabase().init(c);
+    private static StockStoreDatabase getStore(@NonNull Context c) {
+        StockStoreDatabase store = mStore;
+        if(store != null) return store;
+
+        synchronized(HashBuilder.class) {
+            if(mStore == null) {
+                mStore = new StockStoreDatabase().init(c);
+            }
+
+            return mStore;
+        }
+    }
+
+    /**
+     * Returns the HashAtlas, if it can be opened at all and the stock cache
+     * isn't turned off.  If it's off, the atlas gets emptied out the first
+     * time this notices, and this returns null until it's turned back on.
+     *
+     * @param c Context with which to find the atlas file and preferences
+     * @return the HashAtlas, or null if there isn't one
+     */
+    @Nullable
+    private static HashAtlas getAtlas(@NonNull Context c) {
+        if(getCachePolicy(c).getBudget() == 0) {
+            if(!mAtlasWiped) {
+                HashAtlas atlas = openAtlas(c);
+                if(atlas != null) atlas.clear();
+                mAtlasWiped = true;
+            }
+
+            return null;
+        }
+
+        mAtlasWiped = false;
+        return openAtlas(c);
+    }
+
+    @NonNull
+    private static EvictionPolicy getCachePolicy(@NonNull Context c) {
+        EvictionPolicy policy = mCachePolicy;
+        if(policy != null) return policy;
+
+        synchronized(HashBuilder.class) {
+            if(mCachePolicy == null) {
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(c);
+                prefs.registerOnSharedPreferenceChangeListener(mCachePolicyListener);
+                mCachePolicy = StockStoreDatabase.getEvictionPolicy(prefs);
+            }
+
+            return mCachePolicy;
+        }
+    }
+
+    /**
+     * Opens and returns the HashAtlas, preferences or no.  If it can't be
+     * opened, this returns null, and will keep returning null for the life of
+     * the process, in which case everything just goes to the database.
+     *
+     * @param c Context with which to find the atlas file
+     * @return the HashAtlas, or null if there isn't one
+     */
+    @Nullable
+    private static HashAtlas openAtlas(@NonNull Context c) {
+        HashAtlas atlas = mAtlas;
+        if(atlas != null || mAtlasFailed) return atlas;
+
+        synchronized(HashBuilder.class) {
+            if(mAtlas == null && !mAtlasFailed) {
+                try {
+                    mAtlas = HashAtlas.open(new File(c.getNoBackupFilesDir(), ATLAS_FILENAME));
+                } catch (IOException ioe) {
+                    Log.w(DEBUG_TAG, "Couldn't open the hash atlas, going without it", ioe);
+                    mAtlasFailed = true;
+                }
+            }
+
+            return mAtlas;
         }
-        
-        return mStore;
     }
     
     /**
@@ -409,7 +760,21 @@ public class HashBuilder {
      */
     @NonNull
     public static StockRunner requestStockRunner(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
-        return new StockRunner(con, c, g);
+        return new StockRunner(con, EpochDay.fromCalendar(c), g);
+    }
+
+    /**
+     * Requests a <code>StockRunner</code> object to perform a stock-fetching
+     * operation, with the date as an epoch day.
+     *
+     * @param con Context for databasey stuff
+     * @param epochDay the adventure date requested (this will account for the
+     *                 30W Rule, so don't put it in)
+     * @param g Graticule to use
+     */
+    @NonNull
+    public static StockRunner requestStockRunner(@NonNull Context con, int epochDay, @Nullable Graticule g) {
+        return new StockRunner(con, epochDay, g);
     }
 
     /**
@@ -426,25 +791,71 @@ public class HashBuilder {
      */
     @Nullable
     public static Info getStoredInfo(@NonNull Context con, @NonNull Calendar c, @Nullable Graticule g) {
+        return getStoredInfo(con, EpochDay.fromCalendar(c), g);
+    }
+
+    /**
+     * Attempt to construct an Info object from stored info and return it,
+     * explicitly without going to the internet.  This is the same as the
+     * Calendar version, but if you're looking up a bunch of Infos for the same
+     * date, convert it to an epoch day once and use this instead.
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param epochDay the adventure date requested (this will account for the
+     *                 30W Rule, so don't put it in)
+     * @param g Graticule to use
+     * @return the Info object for the given data, or null if can't be built
+     *         without going to the internet.
+     */
+    @Nullable
+    public static Info getStoredInfo(@NonNull Context con, int epochDay, @Nullable Graticule g) {
+        // Whether or not the 30W Rule is in effect depends on the date AND the
+        // graticule.  Every cache is keyed on that.
+        boolean uses30W = (g == null || StockDates.uses30WRule(epochDay, g.getPacked()));
+
         // First, check the quick cache.  If it's in the quick cache, use it.
-        Log.v(DEBUG_TAG, "Checking caches for " + DateTools.getDateString(c)
-                + ((g == null || g.uses30WRule()) ? " with 30W rule" : " without 30W rule"));
-        Info result = getQuickCache(c, g);
-        if(result != null) {
+        Log.v(DEBUG_TAG, "Checking caches for " + DateTools.getDateString(epochDay)
+                + (uses30W ? " with 30W rule" : " without 30W rule"));
+        double[] fractions = new double[2];
+        long start = System.nanoTime();
+        boolean hit = mQuickCache.get(epochDay, uses30W, fractions);
+        mQuickCacheStats.recordSince(hit, start);
+        if(hit) {
             Log.v(DEBUG_TAG, "Data found in quickcache!");
-            if(result.isGlobalHash()) return result;
-            else return cloneInfo(result, g);
+            return Info.fromHash(epochDay, g,
+                    fractions[HashEngine.LATITUDE],
+                    fractions[HashEngine.LONGITUDE]);
+        }
+
+        // Next, the atlas.
+        HashAtlas atlas = getAtlas(con);
+        if(atlas != null) {
+            start = System.nanoTime();
+            hit = atlas.get(epochDay, uses30W, fractions);
+            mAtlasStats.recordSince(hit, start);
+            if(hit) {
+                Log.v(DEBUG_TAG, "Data found in atlas!  Quickcaching...");
+                Info result = Info.fromHash(epochDay, g,
+                        fractions[HashEngine.LATITUDE],
+                        fractions[HashEngine.LONGITUDE]);
+                quickCache(result);
+                return result;
+            }
         }
         
         // Otherwise, check the stock cache.
-        Info i = getStore(con).getInfo(c, g);
+        start = System.nanoTime();
+        Info i = getStore(con).getInfo(epochDay, uses30W, g);
+        mDatabaseStats.recordSince(i != null, start);
         
         if(i == null)
             return null;
             
         Log.v(DEBUG_TAG, "Data found in database!  Quickcaching...");
         // If it was in the main cache but not the quick cache, quick cache it.
+        // And atlas it, too, since evidently it wasn't in there.
         quickCache(i);
+        storeInAtlas(con, i);
         return i;
     }
     
@@ -459,22 +870,36 @@ public class HashBuilder {
      */
     @Nullable
     public static String getStoredStock(@NonNull Context con, @NonNull Calendar c) {
+        return getStoredStock(con, EpochDay.fromCalendar(c));
+    }
+
+    /**
+     * Attempt to get the stock value stored in the database for the given
+     * already-adjusted date, as an epoch day.
+     *
+     * @param con Context used to retrieve the database, if needed
+     * @param epochDay already-adjusted date to check
+     * @return the String representation of the stock, or null if it's not there
+     */
+    @Nullable
+    public static String getStoredStock(@NonNull Context con, int epochDay) {
         // We don't quickcache the stock values.
-        Log.v(DEBUG_TAG, "Going to the database for a stock for " + DateTools.getDateString(c));
+        Log.v(DEBUG_TAG, "Going to the database for a stock for " + DateTools.getDateString(epochDay));
         
-        return getStore(con).getStock(c);
+        long start = System.nanoTime();
+        String stock = getStore(con).getStock(epochDay);
+        mStockDatabaseStats.recordSince(stock != null, start);
+        return stock;
     }
     
     /**
-     * Puts the given data into the quick cache.  Note that the Calendar object
-     * is the date of the stock, not the date of the expedition.
+     * Puts the given Info's fractions into the quick cache.  Only the
+     * fractions, mind; any graticule can be rebuilt from those.
      * 
      * @param i Info to store
      */
     private static void quickCache(@NonNull Info i) {
-        // Slide over!
-        mTwoInfosAgo = mLastInfo;
-        mLastInfo = i;
+        mQuickCache.put(i.getEpochDay(), i.uses30WRule(), i.getLatitudeHash(), i.getLongitudeHash());
     }
     
     /**
@@ -484,22 +909,176 @@ public class HashBuilder {
      * @param con Context used to retrieve the database, if needed
      * @param i an Info bundle with everything we need
      */
-    private synchronized static void storeInfo(@NonNull Context con, @NonNull Info i) {
+    private static void storeInfo(@NonNull Context con, @NonNull Info i) {
         // First, replace the last-known results.
         quickCache(i);
         
-        StockStoreDatabase store = getStore(con);
-        
-        // Then, write it to the database.
-        store.storeInfo(i);
-        store.cleanup(con);
+        // Then, write it to the database.  Well, queue it up to be written.
+        // The database batches those up and prunes itself when it gets to it.
+        getStore(con).storeInfo(i);
+
+        // And the atlas, which prunes itself on its own budget.
+        storeInAtlas(con, i);
+    }
+
+    private static void storeInAtlas(@NonNull Context con, @NonNull Info i) {
+        HashAtlas atlas = getAtlas(con);
+        if(atlas == null) return;
+
+        try {
+            atlas.put(i.getEpochDay(),
+                    i.uses30WRule(),
+                    i.getLatitudeHash(),
+                    i.getLongitudeHash());
+        } catch (IOException ioe) {
+            // Not the end of the world.  It's still in the database.
+            Log.w(DEBUG_TAG, "Couldn't write to the hash atlas", ioe);
+        }
+
+        pruneAtlas(atlas);
+    }
+
+    private static void pruneAtlas(@NonNull HashAtlas atlas) {
+        // The atlas has its own budget, and today's hashes and later are
+        // pinned, same as the database.  It keeps count as it goes, so this
+        // is nothing until it's actually over.
+        int pruned = atlas.prune(HashAtlas.DEFAULT_MAX_HASHES, EpochDay.today());
+        if(pruned > 0) Log.v(DEBUG_TAG, "Hashes pruned from the atlas: " + pruned);
     }
     
-    private synchronized static void storeStock(@NonNull Context con, @NonNull Calendar cal, @NonNull String stock) {
-        StockStoreDatabase store = getStore(con);
-        
-        store.storeStock(cal, stock);
-        store.cleanup(con);
+    private static void storeStock(@NonNull Context con, int epochDay, @NonNull String stock) {
+        getStore(con).storeStock(epochDay, stock);
+    }
+
+    /**
+     * <p>
+     * Works out and stores the hash for every expedition date that depends on
+     * the given stock, 30W and not.  A Friday stock, for instance, is good
+     * for Friday, Saturday, and Sunday without the 30W Rule, and Saturday,
+     * Sunday, and Monday with it.  Asking for any one of those means we're
+     * likely to want the rest soon (the nearby points, the weekend, the
+     * globalhash), so they may as well all go in now.
+     * </p>
+     *
+     * <p>
+     * These ONLY go in the atlas, which has room for years of them.  The
+     * database's budget is the user's, and it's usually tiny; six or so hashes
+     * per stock would shove out whatever the user was actually looking at.
+     * Whichever one was actually asked for goes in the database the usual way
+     * (see {@link #storeInfo(Context, Info)}).  If there's no atlas, they go
+     * in the quick cache instead, since that's only memory and doesn't last
+     * past the process anyway.  Either way, the stock's in the database, so a
+     * miss later is only an MD5 away, not a trip to the internet.
+     * </p>
+     *
+     * @param con Context used to retrieve the atlas, if needed
+     * @param stockDay the date of the stock
+     * @param stock the stock itself
+     */
+    private static void storeDependentHashes(@NonNull Context con, int stockDay, @NonNull String stock) {
+        HashAtlas atlas = getAtlas(con);
+
+        if(atlas != null) {
+            try {
+                int count = atlas.putStock(stockDay, stock);
+                Log.d(DEBUG_TAG, "Stored " + count + " hashes in the atlas for the stock from "
+                        + DateTools.getHyphenatedDateString(stockDay));
+                pruneAtlas(atlas);
+                return;
+            } catch (IOException ioe) {
+                Log.w(DEBUG_TAG, "Couldn't write to the hash atlas", ioe);
+            }
+        }
+
+        double[] fractions = new double[2];
+        for(boolean uses30W : new boolean[] { false, true }) {
+            for(int epochDay : StockDates.getDependentDates(stockDay, uses30W)) {
+                HashEngine.makeFractions(EpochDay.getYear(epochDay),
+                        EpochDay.getMonth(epochDay),
+                        EpochDay.getDay(epochDay),
+                        stock,
+                        fractions);
+
+                mQuickCache.put(epochDay, uses30W,
+                        fractions[HashEngine.LATITUDE],
+                        fractions[HashEngine.LONGITUDE]);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Makes a {@link StockBackfill} that fills the atlas in from the user's
+     * mirrors, best first.  A stock date counts as already there if the atlas
+     * has its hashes (see {@link StockBackfill.AtlasStore}).
+     * </p>
+     *
+     * <p>
+     * Everything goes in the atlas and ONLY the atlas, on the atlas's own
+     * budget.  The database's budget is the user's, and it's usually all of
+     * fifteen rows; a backfill that went in there would get pruned right back
+     * out in the same transaction it went in.  So if there's no atlas (the
+     * cache is off, or the atlas couldn't be opened), there's nowhere for a
+     * backfill to go, and this returns null.  See
+     * {@link #canBackfill(Context)}.
+     * </p>
+     *
+     * <p>
+     * It's up to the caller to run it (off the main thread!), cancel it, and
+     * keep the range down to {@link #MAX_BACKFILL_DAYS}.
+     * </p>
+     *
+     * @param con Context used to retrieve the atlas and mirrors
+     * @return a new backfill, ready to run, or null if there's no atlas
+     */
+    @Nullable
+    public static StockBackfill makeBackfill(@NonNull Context con) {
+        final Context context = con.getApplicationContext();
+        final MirrorRegistry mirrors = StockRunner.getMirrors(context);
+
+        HashAtlas atlas = getAtlas(context);
+        if(atlas == null) return null;
+
+        StockBackfill.Store store = new StockBackfill.AtlasStore(atlas, HashAtlas.DEFAULT_MAX_HASHES) {
+            @Override
+            public void commit(@NonNull Map<Integer, String> stocks) throws IOException {
+                // If the cache got turned off partway through, stop.
+                if(getAtlas(context) == null)
+                    throw new IOException("The stock cache was turned off");
+
+                // Whatever we got, we can evidently get now.
+                for(int stockDay : stocks.keySet())
+                    mNegativeCache.invalidate(stockDay);
+
+                super.commit(stocks);
+
+                // Might as well keep the mirrors' track records up to date
+                // while we're at it.
+                StockRunner.saveMirrors(context, mirrors);
+            }
+        };
+
+        StockBackfill.Fetcher fetcher = new StockBackfill.Fetcher() {
+            @NonNull
+            @Override
+            public String fetch(@NonNull String mirror, int stockDay) throws IOException {
+                return new StockRunner.MirrorAttempt(mirrors, mirror, stockDay).run();
+            }
+        };
+
+        return new StockBackfill(store, fetcher, mirrors.getRanked(),
+                BACKFILL_CONNECTIONS_PER_MIRROR, BACKFILL_BATCH_SIZE);
+    }
+
+    /**
+     * Determines if there's anywhere for a backfill to go; that is, if the
+     * cache is on and the atlas could be opened.
+     *
+     * @param con Context used to retrieve the atlas and preferences
+     * @return true if {@link #makeBackfill(Context)} won't return null
+     */
+    public static boolean canBackfill(@NonNull Context con) {
+        return getAtlas(con) != null;
     }
 
     /**
@@ -509,201 +1088,152 @@ public class HashBuilder {
      * @return true on success, false on failure
      */
     public synchronized static boolean deleteCache(@NonNull Context con) {
+        mQuickCache.clear();
+        mNegativeCache.clear();
+
+        // Off or not, this empties the atlas.
+        HashAtlas atlas = openAtlas(con);
+        if(atlas != null) atlas.clear();
+
         return getStore(con).deleteCache();
     }
     
+    /**
+     * Writes the whole stock cache out as a {@link CacheSnapshot}: every stock
+     * in the database and every hash we know about.  The hashes come from the
+     * atlas if there is one, since every hash that goes in the database goes
+     * in there, too.  The stream isn't closed.
+     *
+     * @param con Context used to retrieve the database and atlas
+     * @param out where the snapshot goes
+     * @return how many stocks and hashes were written
+     * @throws IOException the snapshot couldn't be written
+     */
+    public static int exportCache(@NonNull Context con, @NonNull OutputStream out) throws IOException {
+        StockStoreDatabase store = getStore(con);
+        HashAtlas atlas = getAtlas(con);
+        CacheSnapshot.Writer writer = new CacheSnapshot.Writer(out);
+
+        store.exportTo(writer, atlas == null);
+        if(atlas != null) atlas.forEach(writer);
+
+        int count = writer.finish();
+        Log.d(DEBUG_TAG, "Exported " + count + " stock(s) and hash(es)");
+        return count;
+    }
+
+    /**
+     * <p>
+     * Reads a {@link CacheSnapshot} back into the stock cache.  It all goes
+     * in the database in one transaction, so a bad snapshot doesn't leave
+     * anything behind.  Once that's done, the hashes get copied into the
+     * atlas, and only THEN do the database and atlas get pruned back down to
+     * size.  So both of them keep whatever they normally would.
+     * </p>
+     *
+     * <p>
+     * Anything the negative cache had is forgotten, since the snapshot might
+     * well have the stock it was remembering we couldn't get.
+     * </p>
+     *
+     * @param con Context used to retrieve the database and atlas
+     * @param in the snapshot
+     * @return how many stocks and hashes were in the snapshot
+     * @throws IOException the snapshot couldn't be read
+     */
+    public static int importCache(@NonNull Context con, @NonNull InputStream in) throws IOException {
+        StockStoreDatabase store = getStore(con);
+        int count = store.importFrom(in);
+
+        mNegativeCache.clear();
+
+        final HashAtlas atlas = getAtlas(con);
+        if(atlas != null) {
+            try {
+                store.exportTo(new CacheSnapshot.Consumer() {
+                    @Override
+                    public void onStock(int stockDay, @NonNull String stock) {
+                        // The atlas doesn't do stocks.
+                    }
+
+                    @Override
+                    public void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) throws IOException {
+                        atlas.put(epochDay, uses30W, latHash, lonHash);
+                    }
+                }, true);
+            } catch (IOException ioe) {
+                // It's still all in the database (for now, at least).
+                Log.w(DEBUG_TAG, "Couldn't copy the snapshot to the hash atlas", ioe);
+            }
+
+            pruneAtlas(atlas);
+        }
+
+        store.cleanup(con);
+        return count;
+    }
+
     /**
      * Build an Info object.  Since this assumes we already have a stock price
      * AND the Graticule can tell us if we need to use the 30W rule, use the
-     * REAL date on the Calendar object.
+     * REAL date.
      * 
-     * @param c date from which this hash comes
+     * @param epochDay date from which this hash comes, as an epoch day
      * @param stockPrice effective stock price (already adjusted for the 30W Rule)
      * @param g the graticule in question
      * @return a new Info object
      */
     @NonNull
-    private static Info createInfo(@NonNull Calendar c, @NonNull String stockPrice, @Nullable Graticule g) {
+    private static Info createInfo(int epochDay, @NonNull String stockPrice, @Nullable Graticule g) {
         // This creates the Info object that'll go right back to whatever was
         // calling it.  In general, this is the Handler in StockRunner.
         
-        // So to that end, we first build up the hash.
-        String hash = makeHash(c, stockPrice);
-        
-        // Then, get the latitude and longitude from that.
-        double lat = getLatitude(g, hash);
-        double lon = getLongitude(g, hash);
-        
-        // And finally...
-        return new Info(lat, lon, g, c);
+        // So to that end, we first work out the fractions straight from the
+        // digest.  No hex strings required.
+        double[] fractions = new double[2];
+        HashEngine.makeFractions(EpochDay.getYear(epochDay),
+                EpochDay.getMonth(epochDay),
+                EpochDay.getDay(epochDay),
+                stockPrice,
+                fractions);
+
+        // And finally, Info works out the rest from the fractions.
+        return Info.fromHash(epochDay, g,
+                fractions[HashEngine.LATITUDE],
+                fractions[HashEngine.LONGITUDE]);
     }
     
     /**
      * Build an Info object marked as invalid.  This is for error-reporting.
      * 
-     * @param c date from which this hash should've come
+     * @param epochDay date from which this hash should've come
      * @param g the graticule in question
      * @return an Info object marked invalid
      */
     @NonNull
-    private static Info createInvalidInfo(@NonNull Calendar c, @Nullable Graticule g) {
-        return new Info(g, c);
-    }
-    
-    /**
-     * Builds a new Info object by applying a new Graticule to an existing Info
-     * object.  That is to say, change the destination of an Info object to
-     * somewhere else, as if it were the same day and same stock value (and
-     * thus the same hash).  Note that this will throw an exception if the 
-     * existing Info's 30W-alignment isn't the same as the new Graticule's,
-     * because that might require a trip back to the internet, and by this
-     * point, we should know that we don't need to do so.
-     * 
-     * Also note that you can't do any cloning actions on a globalhash, since
-     * that doesn't make any sense.
-     * 
-     * @param i old Info object to clone
-     * @param g new Graticule to apply
-     * @throws InvalidParameterException the Info and Graticule do not lie on
-     *                                   the same side of the 30W line, or one
-     *                                   of the Graticules in question
-     *                                   represents a globalhash.
-     * @return a new, improved Info object
-     */
-    @NonNull
-    private static Info cloneInfo(@NonNull Info i, @Nullable Graticule g) {
-        if(i.isGlobalHash() || g == null)
-            throw new InvalidParameterException("You can't clone a globalhash point, since that doesn't make any sense.");
-
-        Graticule source = i.getGraticule();
-
-        if(source == null)
-            throw new InvalidParameterException("You can't clone a globalhash point, since that doesn't make any sense.");
-        
-        // This sort of requires the 30W-itude of both to match.
-        if(source.uses30WRule() != g.uses30WRule())
-            throw new InvalidParameterException("The given Info and Graticule do not lie on the same side of the 30W line; this should not have happened.");
-        
-        // Get the destination set...
-        double lat = (g.getLatitude() + i.getLatitudeHash()) * (g.isSouth() ? -1 : 1);
-        double lon = (g.getLongitude() + i.getLongitudeHash()) * (g.isWest() ? -1 : 1);
-        
-        // Then...
-        return new Info(lat, lon, g, i.getCalendar());
+    private static Info createInvalidInfo(int epochDay, @Nullable Graticule g) {
+        return new Info(g, epochDay);
     }
     
     /**
      * Generate the hash string from the date and stock price.  The REAL date,
-     * that is.  Not a 30W Rule-adjusted date.
+     * that is.  Not a 30W Rule-adjusted date.  Nothing in the hash path needs
+     * the hex string anymore (that all goes through {@link HashEngine}), but
+     * it's handy for debugging and for checking against other implementations.
      * 
      * @param c date to use
      * @param stockPrice stock price to use
      * @return the hash you're looking for
      */
     @NonNull
-    private static String makeHash(@NonNull Calendar c, @NonNull String stockPrice) {
-        // Just reset the hash. This can be handy alone if the graticule has
-        // changed.  Remember, c is the REAL date, not the STOCK date!
-        return MD5Tools.MD5hash(String.format(Locale.US,
-                "%4d-%02d-%02d-%s",
-                c.get(Calendar.YEAR),
+    public static String makeHash(@NonNull Calendar c, @NonNull String stockPrice) {
+        // Remember, c is the REAL date, not the STOCK date!
+        byte[] digest = new byte[HashEngine.DIGEST_LENGTH];
+        HashEngine.makeDigest(c.get(Calendar.YEAR),
                 c.get(Calendar.MONTH) + 1,
                 c.get(Calendar.DAY_OF_MONTH),
-                stockPrice));
+                stockPrice,
+                digest);
+        return CharToByte.bytesToString(digest);
     }
-
-    @Nullable
-    private static Info getQuickCache(@NonNull Calendar sCal, @Nullable Graticule g) {
-        // We don't use Calendar.equals here, as that checks all properties,
-        // including potentially some we don't really care about.
-        boolean is30W = (g == null || g.uses30WRule());
-        
-        // At any rate, first off, the most recent date/30W combo.  Then, the
-        // second-most.  Failing THAT, return null.
-        Log.v(DEBUG_TAG, "Checking quickcache for data...");
-        if(mLastInfo != null) {
-            Calendar stored = mLastInfo.getCalendar();
-            
-            if(stored.get(Calendar.MONTH) ==  sCal.get(Calendar.MONTH)
-                    && stored.get(Calendar.DAY_OF_MONTH) ==  sCal.get(Calendar.DAY_OF_MONTH)
-                    && stored.get(Calendar.YEAR) ==  sCal.get(Calendar.YEAR)
-                    && ((mLastInfo.getGraticule() == null && g == null)
-                            || (mLastInfo.getGraticule() != null && g != null))
-                    && mLastInfo.uses30WRule() == is30W) {
-                Log.v(DEBUG_TAG, "Hash data is in quick cache (mLastInfo): " + mLastInfo.getLatitudeHash() + ", " + mLastInfo.getLongitudeHash());
-                return mLastInfo;
-            }
-        }
-        
-        if(mTwoInfosAgo != null) {
-            Calendar stored = mTwoInfosAgo.getCalendar();
-            
-            if(stored.get(Calendar.MONTH) ==  sCal.get(Calendar.MONTH)
-                    && stored.get(Calendar.DAY_OF_MONTH) ==  sCal.get(Calendar.DAY_OF_MONTH)
-                    && stored.get(Calendar.YEAR) ==  sCal.get(Calendar.YEAR)
-                    && ((mTwoInfosAgo.getGraticule() == null && g == null)
-                            || (mTwoInfosAgo.getGraticule() != null && g != null))
-                    && mTwoInfosAgo.uses30WRule() == is30W) {
-                Log.v(DEBUG_TAG, "Hash data is in quick cache (mTwoInfosAgo): " + mTwoInfosAgo.getLatitudeHash() + ", " + mTwoInfosAgo.getLongitudeHash());
-                return mTwoInfosAgo;
-            }
-        }
-        
-        Log.v(DEBUG_TAG, "Data wasn't in quickcache.");
-        
-        return null;
-    }
-    
-    /**
-     * Gets the latitude value of the location for the current date. This is
-     * attached to the current graticule integer value to produce the longitude.
-     * 
-     * @return the fractional latitude value
-     */
-    private static double getLatitudeHash(@NonNull String hash) {
-        String chunk = hash.substring(0, 16);
-        return HexFraction.calculate(chunk);
-    }
-
-    /**
-     * Gets the longitude value of the location for the current date. This is
-     * attached to the current graticule integer value to produce the latitude.
-     * 
-     * @return the fractional longitude value
-     */
-    private static double getLongitudeHash(@NonNull String hash) {
-        String chunk = hash.substring(16, 32);
-        return HexFraction.calculate(chunk);
-    }
-
-    private static double getLatitude(@Nullable Graticule g, @NonNull String hash) {
-        // If the Graticule's not null, this is a normal hash.  If it is, it's a
-        // globalhash, and has to be treated differently.
-        if(g != null) {
-            int lat = g.getLatitude();
-            if (g.isSouth()) {
-                return (lat + getLatitudeHash(hash)) * -1;
-            } else {
-                return lat + getLatitudeHash(hash);
-            }
-        } else {
-            return getLatitudeHash(hash);
-        }
-
-    }
-
-    private static double getLongitude(@Nullable Graticule g, @NonNull String hash) {
-        // Same deal as with getLatitude.
-        if(g != null) {
-            int lon = g.getLongitude();
-            if (g.isWest()) {
-                return (lon + getLongitudeHash(hash)) * -1;
-            } else {
-                return lon + getLongitudeHash(hash);
-            }
-        } else {
-            return getLongitudeHash(hash);
-        }
-    }
-
 }
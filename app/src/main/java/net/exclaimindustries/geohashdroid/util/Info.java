@@ -9,7 +9,6 @@ package net.exclaimindustries.geohashdroid.util;
 
 import java.util.Date;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
 
 import android.location.Location;
 import android.os.Parcel;
@@ -19,7 +18,10 @@ import androidx.annotation.NonNull;
 
 import com.google.android.gms.maps.model.LatLng;
 
+import net.exclaimindustries.geohashdroid.core.GraticuleMath;
+import net.exclaimindustries.geohashdroid.core.StockDates;
 import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.tools.EpochDay;
 
 /**
  * <p>
@@ -40,15 +42,31 @@ import net.exclaimindustries.tools.DateTools;
  * 
  */
 public class Info implements Parcelable {
-    /** The earliest date at which the 30W Rule is used. */
-    private static final Calendar LIMIT_30W = new GregorianCalendar(2008, Calendar.MAY, 26);
-
-    private double mLatitude;
-    private double mLongitude;
-    private Graticule mGraticule;
-    private Calendar mDate;
-    private boolean mRetroHash;
-    private boolean mValid;
+    // Bits for mFlags.
+    private static final int FLAG_VALID = 1;
+    private static final int FLAG_RETRO = 2;
+
+    // The stuff that actually defines an Info.  It's all primitives so that
+    // Parcels are a fixed size and nothing needs to be deep-copied.  The
+    // packed graticule is GraticuleMath.GLOBALHASH for globalhashes.
+    private final int mEpochDay;
+    private final int mPackedGraticule;
+    private final double mLatitudeHash;
+    private final double mLongitudeHash;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final int mFlags;
+
+    // These only get made if something actually asks for them.  If two
+    // threads race to make one, they'll both make the same thing, so it
+    // doesn't much matter who wins.  They're volatile so that whoever loses
+    // (or comes along later) sees a finished object; Location and Calendar
+    // are mutable, so without that, another thread could get one that's only
+    // half set up.
+    private volatile Graticule mGraticule;
+    private volatile Calendar mDate;
+    private volatile LatLng mFinalLatLng;
+    private volatile Location mFinalLocation;
 
     /**
      * Creates an Info object with the given data. That's it.  If making a
@@ -68,13 +86,51 @@ public class Info implements Parcelable {
      */
     public Info(double latitude, double longitude, @Nullable Graticule graticule,
             @NonNull Calendar date) {
-        mLatitude = latitude;
-        mLongitude = longitude;
+        this(latitude, longitude, graticule, EpochDay.fromCalendar(date));
+
+        // Hang on to the Calendar we were given, since we've got it anyway.
+        mDate = date;
+    }
+
+    /**
+     * Creates an Info object with the given data, same as the Calendar
+     * version, only with the date given as an epoch day.
+     *
+     * @param latitude
+     *            the destination's latitude, as a double
+     * @param longitude
+     *            the destination's longitude, as a double
+     * @param graticule
+     *            the graticule
+     * @param epochDay
+     *            the date, as an epoch day
+     * @see EpochDay
+     * @see #fromHash(int, Graticule, double, double)
+     */
+    public Info(double latitude, double longitude, @Nullable Graticule graticule,
+            int epochDay) {
+        mEpochDay = epochDay;
         mGraticule = graticule;
-        setDate(date);
-        mValid = true;
+        mFlags = FLAG_VALID | makeRetroFlag(epochDay);
+
+        if(graticule == null) {
+            // Globalhash!  What we got was the hash itself.
+            mPackedGraticule = GraticuleMath.GLOBALHASH;
+            mLatitudeHash = latitude;
+            mLongitudeHash = longitude;
+            mLatitude = GraticuleMath.makeLatitude(mPackedGraticule, latitude);
+            mLongitude = GraticuleMath.makeLongitude(mPackedGraticule, longitude);
+        } else {
+            // Keep the coordinates exactly as given, and work the hash back
+            // out of them.
+            mPackedGraticule = graticule.getPacked();
+            mLatitudeHash = Math.abs(latitude) - graticule.getLatitude();
+            mLongitudeHash = Math.abs(longitude) - graticule.getLongitude();
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
     }
-    
+
     /**
      * Creates an Info object with the given graticule and date, but which is
      * invalid (i.e. has no valid latitude/longitude data).  This is used when
@@ -85,23 +141,84 @@ public class Info implements Parcelable {
      * @param date the date
      */
     public Info(@Nullable Graticule graticule, @NonNull Calendar date) {
+        this(graticule, EpochDay.fromCalendar(date));
+        mDate = date;
+    }
+
+    /**
+     * Creates an invalid Info object, same as the Calendar version, only with
+     * the date given as an epoch day.
+     *
+     * @param graticule the graticule
+     * @param epochDay the date, as an epoch day
+     */
+    public Info(@Nullable Graticule graticule, int epochDay) {
+        mEpochDay = epochDay;
+        mGraticule = graticule;
+        mPackedGraticule = (graticule == null ? GraticuleMath.GLOBALHASH : graticule.getPacked());
+        mLatitudeHash = 0;
+        mLongitudeHash = 0;
         mLatitude = 0;
         mLongitude = 0;
-        mGraticule = graticule;
-        setDate(date);
-        mValid = false;
+        mFlags = makeRetroFlag(epochDay);
+    }
+
+    private Info(int epochDay, int packedGraticule, double latHash, double lonHash,
+                 double latitude, double longitude, int flags) {
+        mEpochDay = epochDay;
+        mPackedGraticule = packedGraticule;
+        mLatitudeHash = latHash;
+        mLongitudeHash = lonHash;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mFlags = flags;
     }
 
     /**
      * Deparcelizes an Info object.  Obviously, this is used internally when we
      * need to rebuild Info from a Parcel, such as during Service operations.
+     * I'm going to keep using the term "deparcelize" and its most logical
+     * forms until it catches on.
      * 
      * @param in the parcel to deparcelize
      */
     private Info(Parcel in) {
-        readFromParcel(in);
+        // Same order as writeToParcel!  Go!
+        this(in.readInt(), in.readInt(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(), in.readInt());
+    }
+
+    /**
+     * Creates a valid Info straight from the fractional parts of the hash,
+     * which is what HashBuilder, the database, and the atlas all have on hand
+     * anyway.  The fractions are kept exactly as given.
+     *
+     * @param epochDay the date, as an epoch day
+     * @param graticule the graticule, or null for a globalhash
+     * @param latHash the fractional part of the latitude
+     * @param lonHash the fractional part of the longitude
+     * @return a new Info
+     */
+    @NonNull
+    public static Info fromHash(int epochDay, @Nullable Graticule graticule,
+                                double latHash, double lonHash) {
+        int packed = (graticule == null ? GraticuleMath.GLOBALHASH : graticule.getPacked());
+        Info toReturn = new Info(epochDay, packed, latHash, lonHash,
+                GraticuleMath.makeLatitude(packed, latHash),
+                GraticuleMath.makeLongitude(packed, lonHash),
+                FLAG_VALID | makeRetroFlag(epochDay));
+        toReturn.mGraticule = graticule;
+        return toReturn;
     }
 
+    private static int makeRetroFlag(int epochDay) {
+        // Determine if this is before today's date.  Epoch days don't have
+        // times of day, so there's no need to force anything to midnight.
+        // Yes, this means that if the hash is in the future, it won't count as
+        // a retrohash.  The only way that can happen is if this is a weekend
+        // hash and we're checking on Friday or something.
+        return epochDay < EpochDay.today() ? FLAG_RETRO : 0;
+    }
 
     /**
      * Gets the latitude of the final destination.
@@ -109,10 +226,7 @@ public class Info implements Parcelable {
      * @return the latitude
      */
     public double getLatitude() {
-        if(mGraticule != null)
-            return mLatitude;
-        else
-            return mLatitude * 180 - 90;
+        return mLatitude;
     }
 
     /**
@@ -121,10 +235,7 @@ public class Info implements Parcelable {
      * @return the longitude
      */
     public double getLongitude() {
-        if(mGraticule != null)
-            return mLongitude;
-        else
-            return mLongitude * 360 - 180;
+        return mLongitude;
     }
 
     /**
@@ -134,10 +245,7 @@ public class Info implements Parcelable {
      * @return the fractional part of the latitude
      */
     public double getLatitudeHash() {
-        if(mGraticule != null)
-            return Math.abs(mLatitude) - mGraticule.getLatitude();
-        else
-            return mLatitude;
+        return mLatitudeHash;
     }
 
     /**
@@ -147,35 +255,55 @@ public class Info implements Parcelable {
      * @return the fractional part of the longitude
      */
     public double getLongitudeHash() {
-        if(mGraticule != null)
-            return Math.abs(mLongitude) - mGraticule.getLongitude();
-        else
-            return mLongitude;
+        return mLongitudeHash;
     }
 
     /**
      * Returns the final destination as a LatLng object, convenient for the Maps
-     * v2 API.
+     * v2 API.  This is the same object every time.
      *
      * @return a LatLng based on the data obtained from the connection
      */
     @NonNull
     public LatLng getFinalDestinationLatLng() {
-        return new LatLng(getLatitude(), getLongitude());
+        LatLng latLng = mFinalLatLng;
+
+        if(latLng == null) {
+            latLng = new LatLng(mLatitude, mLongitude);
+            mFinalLatLng = latLng;
+        }
+
+        return latLng;
     }
 
     /**
+     * <p>
      * Returns the final destination as a Location object, which isn't quite as
      * useful as a LatLng object, but you never know, it could come in handy.
+     * </p>
+     *
+     * <p>
+     * This gets called on every single location update in a bunch of places,
+     * so it's made once and the same object comes back every time after.
+     * Location isn't immutable, so DON'T CHANGE IT.  If you need to, make a
+     * copy with <code>new Location(info.getFinalLocation())</code>.
+     * </p>
      * 
      * @return a providerless Location based on the data obtained from the
      *         connection
      */
     @NonNull
     public Location getFinalLocation() {
-        Location loc = new Location("");
-        loc.setLatitude(getLatitude());
-        loc.setLongitude(getLongitude());
+        // One volatile read on the way in, and it's all set up before the
+        // one volatile write.
+        Location loc = mFinalLocation;
+
+        if(loc == null) {
+            loc = new Location("");
+            loc.setLatitude(mLatitude);
+            loc.setLongitude(mLongitude);
+            mFinalLocation = loc;
+        }
 
         return loc;
     }
@@ -187,7 +315,24 @@ public class Info implements Parcelable {
      */
     @Nullable
     public Graticule getGraticule() {
-        return mGraticule;
+        Graticule graticule = mGraticule;
+
+        if(graticule == null && mPackedGraticule != GraticuleMath.GLOBALHASH) {
+            graticule = Graticule.fromPacked(mPackedGraticule);
+            mGraticule = graticule;
+        }
+
+        return graticule;
+    }
+
+    /**
+     * Gets the graticule, packed up for {@link GraticuleMath}.  This will be
+     * {@link GraticuleMath#GLOBALHASH} if this is a globalhash.
+     *
+     * @return the packed graticule
+     */
+    public int getPackedGraticule() {
+        return mPackedGraticule;
     }
 
     /**
@@ -197,7 +342,25 @@ public class Info implements Parcelable {
      */
     @NonNull
     public Calendar getCalendar() {
-        return mDate;
+        Calendar date = mDate;
+
+        if(date == null) {
+            date = EpochDay.toCalendar(mEpochDay);
+            mDate = date;
+        }
+
+        return date;
+    }
+
+    /**
+     * Gets the date of this set of information as an epoch day.  This is what
+     * should be used for any comparisons or keys; the Calendar is for display.
+     *
+     * @return the epoch day
+     * @see EpochDay
+     */
+    public int getEpochDay() {
+        return mEpochDay;
     }
 
     /**
@@ -208,7 +371,7 @@ public class Info implements Parcelable {
      */
     @NonNull
     public Date getDate() {
-        return mDate.getTime();
+        return getCalendar().getTime();
     }
     
     /**
@@ -226,7 +389,8 @@ public class Info implements Parcelable {
     /**
      * Returns a calendar representing the date from which the stock price was
      * pulled from a given date/graticule pair.  That is, back a day for the 30W
-     * Rule or globalhashes and rewinding to Friday if it falls on a weekend.
+     * Rule or globalhashes and rewinding to the last trading day if it falls
+     * on a weekend or market holiday.
      * 
      * @param c date to adjust
      * @param g Graticule to use to determine if the 30W Rule is in effect (if
@@ -236,33 +400,34 @@ public class Info implements Parcelable {
     @NonNull
     public static Calendar makeAdjustedCalendar(@NonNull Calendar c, @Nullable Graticule g) {
         // This adjusts the calendar for both the 30W Rule and to clamp all
-        // weekend stocks to the preceding Friday.  This saves a few database
-        // entries, as the weekend will always be Friday's value.  Note that
-        // this doesn't account for holidays when the US stocks aren't trading.
-        
-        // First, clone the calendar.  We don't want to muck about with the
-        // original for various reasons.
+        // weekend and holiday stocks to the preceding trading day.  This saves
+        // a few database entries, as the weekend will always be Friday's value,
+        // and it means we never ask the servers for a day that can't exist.  The actual
+        // rules live in StockDates; all we do here is apply the difference to
+        // a clone of the calendar (we don't want to muck about with the
+        // original for various reasons).
+        int day = EpochDay.fromCalendar(c);
         Calendar cal = (Calendar)(c.clone());
-        
-        // Second, 30W Rule hackery.  If g is null, assume we're in a globalhash
-        // (that is, adjustment is needed).  If the date is May 26, 2008 or
-        // earlier (and this isn't a globalhash), ignore it anyway (the 30W Rule
-        // only applies to non-globalhashes AFTER it was created).
-        if(g == null || (cal.after(LIMIT_30W) && g.uses30WRule()))
-            cal.add(Calendar.DAY_OF_MONTH, -1);
-        
-        // Third, if this new date is a weekend, clamp it back to Friday.
-        if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY)
-            // Saturday: Back one day
-            cal.add(Calendar.DAY_OF_MONTH, -1);
-        else if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY)
-            // SUNDAY SUNDAY SUNDAY!!!!!!: Back two days
-            cal.add(Calendar.DAY_OF_MONTH, -2);
+        cal.add(Calendar.DAY_OF_MONTH, makeAdjustedEpochDay(day, g) - day);
         
         // There!  Done!
         return cal;
     }
 
+    /**
+     * Does the same thing as {@link #makeAdjustedCalendar(Calendar, Graticule)},
+     * only with epoch days instead of Calendars.  This is for anything that
+     * needs to adjust a whole lot of dates in a hurry.
+     *
+     * @param epochDay date to adjust, as an epoch day
+     * @param g Graticule to use to determine if the 30W Rule is in effect (if
+     *          null, assumes this is a globalhash which is always back a day)
+     * @return the adjusted epoch day
+     */
+    public static int makeAdjustedEpochDay(int epochDay, @Nullable Graticule g) {
+        return StockDates.getStockDate(epochDay, g == null ? GraticuleMath.GLOBALHASH : g.getPacked());
+    }
+
     /**
      * Determines if this Info represents a point whose date follows the 30W
      * Rule.  Note that globalhashes always follow the 30W Rule.
@@ -270,11 +435,9 @@ public class Info implements Parcelable {
      * @return true if 30W or global, false if not
      */
     public boolean uses30WRule() {
-        // If mGraticule is null, this is always 30W.
-        if(mGraticule == null) return true;
-        
-        // Otherwise, just forward it to the graticule itself.
-        return mDate.after(LIMIT_30W) && mGraticule.uses30WRule();
+        // Globalhashes are always 30W.  Otherwise, it depends on both the date
+        // and the graticule.  StockDates knows all that.
+        return StockDates.uses30WRule(mEpochDay, mPackedGraticule);
     }
     
     /**
@@ -287,7 +450,7 @@ public class Info implements Parcelable {
      * @return true if global, false if not
      */
     public boolean isGlobalHash() {
-        return mGraticule == null;
+        return mPackedGraticule == GraticuleMath.GLOBALHASH;
     }
     
     /**
@@ -299,7 +462,7 @@ public class Info implements Parcelable {
      * @return true if a retrohash, false if a current hash
      */
     public boolean isRetroHash() {
-        return mRetroHash;
+        return (mFlags & FLAG_RETRO) != 0;
     }
     
     /**
@@ -311,7 +474,7 @@ public class Info implements Parcelable {
      * @return true if valid, false if not
      */
     public boolean isValid() {
-        return mValid;
+        return (mFlags & FLAG_VALID) != 0;
     }
     
     public static final Parcelable.Creator<Info> CREATOR = new Parcelable.Creator<Info>() {
@@ -333,52 +496,16 @@ public class Info implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        // Let's make us a parcel.  Order is important, remember!
+        // Let's make us a parcel.  Order is important, remember!  It's all
+        // primitives, so every Info comes out the same size and there's no
+        // nested Graticule to write out by class name.
+        dest.writeInt(mEpochDay);
+        dest.writeInt(mPackedGraticule);
+        dest.writeDouble(mLatitudeHash);
+        dest.writeDouble(mLongitudeHash);
         dest.writeDouble(mLatitude);
         dest.writeDouble(mLongitude);
-        dest.writeParcelable(mGraticule, 0);
-        dest.writeInt(mDate.get(Calendar.YEAR));
-        dest.writeInt(mDate.get(Calendar.MONTH));
-        dest.writeInt(mDate.get(Calendar.DAY_OF_MONTH));
-        dest.writeInt(mRetroHash ? 1 : 0);
-    }
-    
-    /**
-     * Reads an incoming Parcel and deparcelizes it.  I'm going to keep using
-     * the term "deparcelize" and its most logical forms until it catches on.
-     * 
-     * @param in parcel to deparcelize
-     */
-    public void readFromParcel(Parcel in) {
-        // Same order!  Go!
-        mLatitude = in.readDouble();
-        mLongitude = in.readDouble();
-        mGraticule = in.readParcelable(Graticule.class.getClassLoader());
-
-        mDate = Calendar.getInstance();
-
-        // In order, this better be year, month, day-of-month.
-        mDate.set(in.readInt(), in.readInt(), in.readInt());
-
-        mRetroHash = (in.readInt() == 1);
-    }
-    
-    private void setDate(@NonNull Calendar cal) {
-        // First, actually set the date.
-        mDate = cal;
-        
-        // Then, determine if this is before or after today's date.  Since a
-        // straight comparison also takes time into account, we need to force
-        // today's date to midnight.
-        Calendar today = Calendar.getInstance();
-        
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        
-        // Yes, this means that if the hash is in the future, mRetroHash will
-        // be false.  The only way that can happen is if this is a weekend hash
-        // and we're checking on Friday or something.
-        mRetroHash = cal.before(today);
+        dest.writeInt(mFlags);
     }
 
     /**
@@ -447,10 +574,10 @@ public class Info implements Parcelable {
         // This is mostly used for debugging purposes, so we may as well make it
         // useful.
         return "Info for "
-                + (mGraticule == null ? "Globalhash" : "Graticule")
-                + " on " + DateTools.getDateString(mDate)
+                + (isGlobalHash() ? "Globalhash" : "Graticule")
+                + " on " + DateTools.getDateString(mEpochDay)
                 + "; point is at "
-                + getLatitude() + "," + getLongitude();
+                + mLatitude + "," + mLongitude;
     }
 
     @Override
@@ -460,25 +587,12 @@ public class Info implements Parcelable {
 
         final Info other = (Info)o;
 
-        // I'm really sure I could make this clearer and/or more efficient if I
-        // really thought more about it, and was not in a room full of other
-        // reveling nerds as I tried writing it, but to compare the graticules
-        // while making sure it doesn't NPE if either Info is a Globalhash...
-        if(isGlobalHash() != other.isGlobalHash()) return false;
-
-        // ...then, we see if the graticules match (if neither is a
-        // Globalhash)...
-        if(!isGlobalHash() && !(mGraticule.equals(other.mGraticule))) return false;
-
-        // ...and also check the date, latitude, and longitude.
-        //noinspection RedundantIfStatement
-        if(!mDate.equals(other.mDate)
-                || (getLatitude() != other.getLatitude())
-                || (getLongitude() != other.getLongitude()))
-            return false;
-
-        // Otherwise, we match!
-        return true;
+        // The packed graticule takes care of the globalhash case, too, so this
+        // is all just comparing numbers.
+        return mEpochDay == other.mEpochDay
+                && mPackedGraticule == other.mPackedGraticule
+                && mLatitude == other.mLatitude
+                && mLongitude == other.mLongitude;
     }
 
     @Override
@@ -486,14 +600,12 @@ public class Info implements Parcelable {
         // Hash!
         int toReturn = 13;
 
-        toReturn = 27 * toReturn + (mValid ? 1 : 0);
-        toReturn = 27 * toReturn + (mRetroHash ? 1 : 0);
         long convert = Double.doubleToLongBits(mLatitude);
         toReturn = 27 * toReturn + (int)(convert ^ (convert >>> 32));
         convert = Double.doubleToLongBits(mLongitude);
         toReturn = 27 * toReturn + (int)(convert ^ (convert >>> 32));
-        toReturn = 27 * toReturn + (mGraticule == null ? 0 : mGraticule.hashCode());
-        toReturn = 27 * toReturn + (mDate == null ? 0 : mDate.hashCode());
+        toReturn = 27 * toReturn + mPackedGraticule;
+        toReturn = 27 * toReturn + mEpochDay;
 
         return toReturn;
     }
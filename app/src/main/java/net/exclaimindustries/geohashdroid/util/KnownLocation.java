@@ -29,6 +29,7 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 import net.exclaimindustries.geohashdroid.R;
+import net.exclaimindustries.tools.EpochDay;
 import net.exclaimindustries.tools.LocationUtil;
 
 import org.json.JSONArray;
@@ -325,13 +326,29 @@ public class KnownLocation implements Parcelable {
     @NonNull
     public Info getClosestInfo(@NonNull Context con,
                                @NonNull Calendar cal) throws IllegalArgumentException {
+        return getClosestInfo(con, EpochDay.fromCalendar(cal));
+    }
+
+    /**
+     * Same as {@link #getClosestInfo(Context, Calendar)}, only with the date
+     * as an epoch day.  If you're checking a bunch of KnownLocations against
+     * the same date, convert it once and use this.
+     *
+     * @param con a Context so we can get additional Infos
+     * @param epochDay the date to use, as an epoch day
+     * @return the closest Info to this KnownLocation
+     * @throws IllegalArgumentException if there isn't any stock data for the given date
+     */
+    @NonNull
+    public Info getClosestInfo(@NonNull Context con,
+                               int epochDay) throws IllegalArgumentException {
         // Get us a base Graticule.
         Graticule base = new Graticule(mLocation);
 
         // If we're in graticule restriction, short-circuit it to ONLY stick
         // to the base Graticule.
         if(mRestrictGraticule) {
-            Info info = HashBuilder.getStoredInfo(con, cal, base);
+            Info info = HashBuilder.getStoredInfo(con, epochDay, base);
 
             if(info == null)
                 throw new IllegalArgumentException("Info didn't exist in the cache for that date!");
@@ -351,7 +368,7 @@ public class KnownLocation implements Parcelable {
                 }
 
                 // Okay, now we can get an Info...
-                Info info = HashBuilder.getStoredInfo(con, cal, check);
+                Info info = HashBuilder.getStoredInfo(con, epochDay, check);
 
                 if(info == null) {
                     // If the info is ever null, we're asking for a date that
@@ -0,0 +1,153 @@
+/*
+ * StockCacheBackupHelper.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.util;
+
+import android.app.backup.BackupDataInputStream;
+import android.app.backup.BackupDataOutput;
+import android.app.backup.BackupHelper;
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * <p>
+ * This backs up the stock cache (stocks and hashes both) as a
+ * {@link net.exclaimindustries.geohashdroid.core.CacheSnapshot}, so a new
+ * device doesn't have to go back to the internet for every retrohash the old
+ * one already knew.  It's one entity, written whole each time.
+ * </p>
+ *
+ * <p>
+ * The state it leaves behind is just the length and CRC32 of the last
+ * snapshot it sent, so if nothing's changed since then, nothing gets sent.
+ * </p>
+ */
+public class StockCacheBackupHelper implements BackupHelper {
+    private static final String DEBUG_TAG = "StockCacheBackupHelper";
+
+    /** The key of the one entity this writes. */
+    static final String ENTITY_KEY = "stockCacheSnapshot";
+
+    private final Context mContext;
+    private long mLastLength = -1;
+    private long mLastChecksum;
+
+    public StockCacheBackupHelper(@NonNull Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public void performBackup(@Nullable ParcelFileDescriptor oldState,
+                              @NonNull BackupDataOutput data,
+                              @NonNull ParcelFileDescriptor newState) {
+        byte[] snapshot;
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HashBuilder.exportCache(mContext, out);
+            snapshot = out.toByteArray();
+        } catch (Exception e) {
+            // If we can't get the cache out, don't send anything this time.
+            // Whatever was backed up before stays backed up.
+            Log.w(DEBUG_TAG, "Couldn't snapshot the stock cache for backup", e);
+            copyState(oldState, newState);
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(snapshot, 0, snapshot.length);
+        mLastLength = snapshot.length;
+        mLastChecksum = crc.getValue();
+
+        if(!sameAsState(oldState)) {
+            try {
+                data.writeEntityHeader(ENTITY_KEY, snapshot.length);
+                data.writeEntityData(snapshot, snapshot.length);
+                Log.d(DEBUG_TAG, "Backed up " + snapshot.length + " bytes of stock cache");
+            } catch (IOException ioe) {
+                Log.w(DEBUG_TAG, "Couldn't write the stock cache backup", ioe);
+                copyState(oldState, newState);
+                return;
+            }
+        } else {
+            Log.d(DEBUG_TAG, "Stock cache hasn't changed since the last backup");
+        }
+
+        writeNewStateDescription(newState);
+    }
+
+    @Override
+    public void restoreEntity(@NonNull BackupDataInputStream data) {
+        if(!ENTITY_KEY.equals(data.getKey())) return;
+
+        try {
+            int count = HashBuilder.importCache(mContext, data);
+            Log.d(DEBUG_TAG, "Restored " + count + " stock(s) and hash(es) from backup");
+        } catch (IOException ioe) {
+            // Then we'll just have to go fetch everything again like normal.
+            Log.w(DEBUG_TAG, "Couldn't restore the stock cache backup", ioe);
+        }
+    }
+
+    @Override
+    public void writeNewStateDescription(@NonNull ParcelFileDescriptor newState) {
+        // After a restore, we don't know what the snapshot will look like
+        // until we make one, so this just writes something that won't match.
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(newState.getFileDescriptor()));
+            out.writeLong(mLastLength);
+            out.writeLong(mLastChecksum);
+            out.flush();
+        } catch (IOException ioe) {
+            Log.w(DEBUG_TAG, "Couldn't write the backup state", ioe);
+        }
+    }
+
+    private boolean sameAsState(@Nullable ParcelFileDescriptor oldState) {
+        if(oldState == null) return false;
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(oldState.getFileDescriptor()));
+            return in.readLong() == mLastLength && in.readLong() == mLastChecksum;
+        } catch (IOException ioe) {
+            // No state (or garbage state) means back it up.
+            return false;
+        }
+    }
+
+    private static void copyState(@Nullable ParcelFileDescriptor oldState,
+                                  @NonNull ParcelFileDescriptor newState) {
+        // If this backup didn't happen, the old state is still the right one.
+        if(oldState == null) return;
+
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(oldState.getFileDescriptor()));
+            long length = in.readLong();
+            long checksum = in.readLong();
+
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(newState.getFileDescriptor()));
+            out.writeLong(length);
+            out.writeLong(checksum);
+            out.flush();
+        } catch (IOException ioe) {
+            // Then next time, it'll just back everything up.
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * StockClient.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.util;
+
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import cz.msebera.android.httpclient.HeaderElement;
+import cz.msebera.android.httpclient.HeaderElementIterator;
+import cz.msebera.android.httpclient.HttpEntity;
+import cz.msebera.android.httpclient.HttpResponse;
+import cz.msebera.android.httpclient.client.config.RequestConfig;
+import cz.msebera.android.httpclient.client.methods.CloseableHttpResponse;
+import cz.msebera.android.httpclient.client.methods.HttpGet;
+import cz.msebera.android.httpclient.conn.ConnectionKeepAliveStrategy;
+import cz.msebera.android.httpclient.impl.client.CloseableHttpClient;
+import cz.msebera.android.httpclient.impl.client.HttpClients;
+import cz.msebera.android.httpclient.impl.conn.PoolingHttpClientConnectionManager;
+import cz.msebera.android.httpclient.message.BasicHeaderElementIterator;
+import cz.msebera.android.httpclient.protocol.HTTP;
+import cz.msebera.android.httpclient.protocol.HttpContext;
+
+/**
+ * <p>
+ * <code>StockClient</code> is the one HTTP client everything uses to go get
+ * stocks.  There's only ever one per process, and its connections are pooled
+ * and kept alive, so the second fetch to a mirror (the nearby points, the
+ * weekend, a retrohash) doesn't have to connect all over again.
+ * </p>
+ *
+ * <p>
+ * Each fetch is a {@link Call}.  It has a connect timeout, a read timeout,
+ * and an overall deadline, after which it gets aborted no matter what it's
+ * doing.  The deadlines all run off the one shared watchdog thread, so a
+ * fetch doesn't start any threads of its own.  Responses are read only up to
+ * {@link #MAX_RESPONSE_BYTES}; a stock is a handful of digits, so anything
+ * bigger than that isn't a stock.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class StockClient {
+    private static final String DEBUG_TAG = "StockClient";
+
+    /** How long to wait for a connection to a mirror, in milliseconds. */
+    public static final int CONNECT_TIMEOUT_MS = 5000;
+    /** How long to wait between bytes from a mirror, in milliseconds. */
+    public static final int READ_TIMEOUT_MS = 5000;
+    /** How long a whole fetch can take before it's aborted, in milliseconds. */
+    public static final int TOTAL_TIMEOUT_MS = 10000;
+    /** The most of a response that'll be read, in bytes. */
+    public static final int MAX_RESPONSE_BYTES = 4096;
+
+    // How long an idle connection is kept around if the server doesn't say.
+    private static final long DEFAULT_KEEP_ALIVE_MS = 30 * 1000;
+    // Connections idle longer than this get checked before they're reused.
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private static final int MAX_CONNECTIONS = 8;
+    private static final int MAX_CONNECTIONS_PER_MIRROR = 4;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static volatile CloseableHttpClient mClient;
+    private static volatile ScheduledExecutorService mWatchdog;
+
+    /**
+     * A single fetch.  Make one, {@link #execute()} it on a thread that's
+     * allowed to do network things, and if something else decides it doesn't
+     * need the answer anymore, {@link #cancel()} it from wherever.
+     */
+    public static class Call {
+        private final HttpGet mRequest;
+        private volatile boolean mCancelled;
+        private volatile boolean mTimedOut;
+
+        private Call(@NonNull String url) {
+            mRequest = new HttpGet(url);
+        }
+
+        /**
+         * Fetches the URL and hands back whatever the server said, assuming
+         * the server said "OK".
+         *
+         * @return the body of the response, trimmed
+         * @throws FileNotFoundException the server said 404
+         * @throws IOException anything else went wrong (including a timeout,
+         *                     an oversized response, or being cancelled)
+         */
+        @NonNull
+        public String execute() throws IOException {
+            ScheduledFuture<?> deadline = getWatchdog().schedule(() -> {
+                Log.i(DEBUG_TAG, "Stock fetch timed out, aborting now.");
+                mTimedOut = true;
+                mRequest.abort();
+            }, TOTAL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+            CloseableHttpResponse response = null;
+
+            try {
+                response = getClient().execute(mRequest);
+                int status = response.getStatusLine().getStatusCode();
+
+                // Read the whole thing (up to a point) either way, so the
+                // connection can go back in the pool.
+                String body = readBody(mRequest, response.getEntity());
+
+                if(status == HttpURLConnection.HTTP_NOT_FOUND)
+                    throw new FileNotFoundException(mRequest.getURI().toString());
+                if(status != HttpURLConnection.HTTP_OK)
+                    throw new IOException("Server returned HTTP " + status);
+
+                return body.trim();
+            } catch (IOException ioe) {
+                // If it was aborted, say why.
+                if(mTimedOut)
+                    throw new IOException("Timed out after " + TOTAL_TIMEOUT_MS + "ms", ioe);
+                if(mCancelled)
+                    throw new IOException("Cancelled", ioe);
+                throw ioe;
+            } finally {
+                deadline.cancel(false);
+
+                if(response != null) {
+                    try {
+                        response.close();
+                    } catch (IOException ioe) {
+                        // Then the connection just won't be reused.
+                    }
+                }
+            }
+        }
+
+        /**
+         * Aborts the fetch, if it's still going.  {@link #execute()} will
+         * throw an IOException soon after, if it hasn't returned already.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mRequest.abort();
+        }
+
+        /**
+         * Whether or not {@link #cancel()} was called.
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private StockClient() { }
+
+    /**
+     * Makes a new {@link Call} for the given URL.  It doesn't start until
+     * {@link Call#execute()} is called.
+     *
+     * @param url what to fetch
+     * @return a new Call
+     */
+    @NonNull
+    public static Call newCall(@NonNull String url) {
+        return new Call(url);
+    }
+
+    @NonNull
+    private static CloseableHttpClient getClient() {
+        CloseableHttpClient client = mClient;
+        if(client != null) return client;
+
+        synchronized(StockClient.class) {
+            if(mClient == null) {
+                PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+                manager.setMaxTotal(MAX_CONNECTIONS);
+                manager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_MIRROR);
+                manager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+                RequestConfig config = RequestConfig.custom()
+                        .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                        .setSocketTimeout(READ_TIMEOUT_MS)
+                        .setConnectionRequestTimeout(TOTAL_TIMEOUT_MS)
+                        .build();
+
+                mClient = HttpClients.custom()
+                        .setConnectionManager(manager)
+                        .setDefaultRequestConfig(config)
+                        .setKeepAliveStrategy(new KeepAliveStrategy())
+                        .build();
+            }
+
+            return mClient;
+        }
+    }
+
+    @NonNull
+    private static ScheduledExecutorService getWatchdog() {
+        ScheduledExecutorService watchdog = mWatchdog;
+        if(watchdog != null) return watchdog;
+
+        synchronized(StockClient.class) {
+            if(mWatchdog == null) {
+                mWatchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "StockClient watchdog");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+
+            return mWatchdog;
+        }
+    }
+
+    @NonNull
+    private static String readBody(@NonNull HttpGet request, HttpEntity entity) throws IOException {
+        if(entity == null) return "";
+
+        InputStream stream = entity.getContent();
+        if(stream == null) return "";
+
+        try {
+            byte[] buffer = new byte[MAX_RESPONSE_BYTES];
+            int total = 0;
+            int read;
+
+            while((read = stream.read(buffer, total, buffer.length - total)) > 0) {
+                total += read;
+            }
+
+            // If the buffer's full, see if there's any more.  If so, that's
+            // too much.  Abort it, or else closing the stream would read the
+            // rest of it anyway.
+            if(total == buffer.length && stream.read() != -1) {
+                request.abort();
+                throw new IOException("Response was longer than " + MAX_RESPONSE_BYTES + " bytes");
+            }
+
+            return new String(buffer, 0, total, CHARSET);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Keeps connections alive as long as the server says, or
+     * {@link #DEFAULT_KEEP_ALIVE_MS} if it doesn't say.
+     */
+    private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            HeaderElementIterator it = new BasicHeaderElementIterator(
+                    response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+
+            while(it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, DEFAULT_KEEP_ALIVE_MS);
+                    } catch (NumberFormatException nfe) {
+                        // Then go with the default.
+                    }
+                }
+            }
+
+            return DEFAULT_KEEP_ALIVE_MS;
+        }
+    }
+}
@@ -14,13 +14,28 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.Log;
 
+import net.exclaimindustries.geohashdroid.core.CacheSnapshot;
+import net.exclaimindustries.geohashdroid.core.EvictionPolicy;
+import net.exclaimindustries.geohashdroid.core.HashEngine;
+import net.exclaimindustries.geohashdroid.core.StockDates;
 import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.tools.EpochDay;
 
-import java.util.Calendar;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -29,25 +44,82 @@ import java.util.Calendar;
  * <code>Info</code> bundles, so it will account for the 30W Rule as need be,
  * assuming it was created properly from <code>HashBuilder</code>.
  * </p>
+ *
+ * <p>
+ * Writes don't go straight to the database.  They get buffered for a moment
+ * and then committed all together in one transaction, with one round of
+ * pruning at the end.  That way, something like the nearby points, which can
+ * store nine hashes in a row, only costs one commit instead of nine (and nine
+ * rounds of pruning).  Anything waiting to be written still shows up in
+ * lookups, so nobody can tell the difference except by timing it.  If the
+ * process dies before a batch goes out, well, it's a cache; we'll just have to
+ * look those up again.
+ * </p>
+ *
+ * <p>
+ * The database runs with write-ahead logging, and lookups never wait on
+ * writes.  Only the writer (a batch going out, a prune, wiping the cache)
+ * holds the lock on this object; a lookup checks the pending batch under a
+ * much smaller lock, then reads whatever was last committed on its own
+ * connection, even if a batch is halfway through its transaction.  So the UI
+ * thread can look up a hash while the writer's off pruning and never notice.
+ * </p>
  * 
  * @author Nicholas Killewald
  */
 public class StockStoreDatabase {
     private DatabaseHelper mHelper;
     private SQLiteDatabase mDatabase;
+
+    // The write paths get compiled once in init() and reused from then on, so
+    // SQLite doesn't have to parse and plan the same thing every time.  These
+    // aren't thread-safe, so only the writer uses them, and the writer always
+    // holds the lock on this.  Lookups use rawQuery with constant SQL instead,
+    // which any number of threads can do at once; Android keeps those
+    // prepared in each connection's statement cache, so they don't get
+    // re-parsed either.
+    private SQLiteStatement mInsertStock;
+    private SQLiteStatement mInsertHash;
+    private SQLiteStatement mTouchStock;
+    private SQLiteStatement mTouchHash;
+    private SQLiteStatement mDeleteStock;
+    private SQLiteStatement mDeleteHash;
+
+    // This is the write-behind part.  Everything stored goes in these first,
+    // and the writer thread flushes them to the database FLUSH_DELAY_MS after
+    // the first one shows up.  Hashes are keyed the same way as the table:
+    // date and 30W-ness.  These (and mFlushScheduled) are guarded by
+    // mPendingLock, NOT the lock on this, so lookups and stores never have to
+    // wait for a flush to finish.
+    private static final long FLUSH_DELAY_MS = 1000;
+    private final Object mPendingLock = new Object();
+    private final Map<Integer, String> mPendingStocks = new LinkedHashMap<>();
+    private final Map<Integer, double[]> mPendingHashes = new LinkedHashMap<>();
+    // Lookups that hit the database get their access times updated in the
+    // same batch, so a read doesn't turn into a write all on its own.  They
+    // don't schedule a flush themselves; they wait for the next batch of
+    // stores, or for the writer to come around every TOUCH_FLUSH_INTERVAL_MS,
+    // whichever's first.  Access times only need to be roughly right for
+    // pruning, anyway.
+    private static final long TOUCH_FLUSH_INTERVAL_MS = 5 * 60 * 1000;
+    private final Set<Integer> mTouchedStocks = new LinkedHashSet<>();
+    private final Set<Integer> mTouchedHashes = new LinkedHashSet<>();
+    private ScheduledExecutorService mWriter;
+    private boolean mFlushScheduled;
+    private Context mContext;
     
     private static final String DEBUG_TAG = "StockStoreDatabase";
     
-    /** The name of the column for the row's ID. */
-    private static final String KEY_STOCKS_ROWID = "_id";
-    /** The name of the date column. */
+    /** The name of the date column (an epoch day, and the primary key). */
     private static final String KEY_STOCKS_DATE = "date";
     /** The name of the stock value column. */
     private static final String KEY_STOCKS_STOCK = "stock";
+    /** The name of the column holding when the stock was stored. */
+    private static final String KEY_STOCKS_ADDED = "added";
+    /** The name of the column holding when the stock was last looked up. */
+    private static final String KEY_STOCKS_ACCESSED = "accessed";
     
-    /** The name of the column for the row's IDs for hashes. */
-    private static final String KEY_HASHES_ROWID = "_id";
-    /** The name of the date column for hashes. */
+    /** The name of the date column for hashes (an epoch day). */
     private static final String KEY_HASHES_DATE = "date";
     /** The name of the column flagging if the 30W rule was in effect here. */
     private static final String KEY_HASHES_30W = "uses30w";
@@ -55,9 +127,68 @@ public class StockStoreDatabase {
     private static final String KEY_HASHES_LATHASH = "lathash";
     /** The name of the longitude hashpart column. */
     private static final String KEY_HASHES_LONHASH = "lonhash";
+    /** The name of the column holding when the hash was stored. */
+    private static final String KEY_HASHES_ADDED = "added";
+    /** The name of the column holding when the hash was last looked up. */
+    private static final String KEY_HASHES_ACCESSED = "accessed";
+
+    // Roughly how many bytes a row takes up, for byte budgets.  A stock row
+    // is that plus however long the stock string is.
+    private static final int STOCK_ROW_OVERHEAD = 24;
+    private static final int HASH_ROW_SIZE = 48;
     
     private static final String TABLE_STOCKS = "stocks";
     private static final String TABLE_HASHES = "hashes";
+
+    private static final String SQL_GET_STOCK =
+            "SELECT " + KEY_STOCKS_STOCK + " FROM " + TABLE_STOCKS
+                    + " WHERE " + KEY_STOCKS_DATE + " = ?";
+    // SQLiteStatement's simple queries can only hand back a long or a string,
+    // and a REAL turned into a string loses the last couple digits.  So the
+    // hash lookup has to be a Cursor.  The SQL never changes, though, and
+    // SQLiteDatabase keeps a cache of compiled statements keyed on the SQL,
+    // so it still only gets compiled the once.
+    private static final String SQL_GET_HASH =
+            "SELECT " + KEY_HASHES_LATHASH + ", " + KEY_HASHES_LONHASH + " FROM " + TABLE_HASHES
+                    + " WHERE " + KEY_HASHES_DATE + " = ? AND " + KEY_HASHES_30W + " = ?";
+    private static final String SQL_INSERT_STOCK =
+            "INSERT OR IGNORE INTO " + TABLE_STOCKS
+                    + " (" + KEY_STOCKS_DATE + ", " + KEY_STOCKS_STOCK + ", " + KEY_STOCKS_ADDED
+                    + ", " + KEY_STOCKS_ACCESSED + ") VALUES (?, ?, ?, ?)";
+    private static final String SQL_INSERT_HASH =
+            "INSERT OR IGNORE INTO " + TABLE_HASHES
+                    + " (" + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ", " + KEY_HASHES_LATHASH
+                    + ", " + KEY_HASHES_LONHASH + ", " + KEY_HASHES_ADDED + ", " + KEY_HASHES_ACCESSED
+                    + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_TOUCH_STOCK =
+            "UPDATE " + TABLE_STOCKS + " SET " + KEY_STOCKS_ACCESSED + " = ? WHERE "
+                    + KEY_STOCKS_DATE + " = ?";
+    private static final String SQL_TOUCH_HASH =
+            "UPDATE " + TABLE_HASHES + " SET " + KEY_HASHES_ACCESSED + " = ? WHERE "
+                    + KEY_HASHES_DATE + " = ? AND " + KEY_HASHES_30W + " = ?";
+    private static final String SQL_DELETE_STOCK =
+            "DELETE FROM " + TABLE_STOCKS + " WHERE " + KEY_STOCKS_DATE + " = ?";
+    private static final String SQL_DELETE_HASH =
+            "DELETE FROM " + TABLE_HASHES + " WHERE " + KEY_HASHES_DATE + " = ? AND "
+                    + KEY_HASHES_30W + " = ?";
+    // These are what the eviction policy looks at: date, 30W-ness, last
+    // access, and size, oldest date first.
+    private static final String SQL_LIST_STOCKS =
+            "SELECT " + KEY_STOCKS_DATE + ", 0, " + KEY_STOCKS_ACCESSED + ", length("
+                    + KEY_STOCKS_STOCK + ") + " + STOCK_ROW_OVERHEAD + " FROM " + TABLE_STOCKS
+                    + " ORDER BY " + KEY_STOCKS_DATE;
+    private static final String SQL_LIST_HASHES =
+            "SELECT " + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ", " + KEY_HASHES_ACCESSED
+                    + ", " + HASH_ROW_SIZE + " FROM " + TABLE_HASHES
+                    + " ORDER BY " + KEY_HASHES_DATE + ", " + KEY_HASHES_30W;
+    // And these are what go in a snapshot.
+    private static final String SQL_ALL_STOCKS =
+            "SELECT " + KEY_STOCKS_DATE + ", " + KEY_STOCKS_STOCK + " FROM " + TABLE_STOCKS
+                    + " ORDER BY " + KEY_STOCKS_DATE;
+    private static final String SQL_ALL_HASHES =
+            "SELECT " + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ", " + KEY_HASHES_LATHASH
+                    + ", " + KEY_HASHES_LONHASH + " FROM " + TABLE_HASHES
+                    + " ORDER BY " + KEY_HASHES_DATE + ", " + KEY_HASHES_30W;
     
     /**
      * Implements SQLiteOpenHelper.  Much like Hamburger Helper, this can take
@@ -67,24 +198,37 @@ public class StockStoreDatabase {
      */
     private static class DatabaseHelper extends SQLiteOpenHelper {
         private static final String DATABASE_NAME = "stockstore";
-        private static final int DATABASE_VERSION = 3;
+        private static final int DATABASE_VERSION = 5;
 
+        // As of version 4, dates are epoch days, and each table is keyed on
+        // exactly what gets looked up, so a lookup is a seek on the primary
+        // key and a duplicate insert just gets ignored.  There's no rowid at
+        // all.  Version 5 added the "accessed" column, which is what eviction
+        // goes by.
         private static final String CREATE_STOCKS_TABLE =
                 "CREATE TABLE " + TABLE_STOCKS
-                        + " (" + KEY_STOCKS_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + KEY_STOCKS_DATE + " INTEGER NOT NULL, "
-                        + KEY_STOCKS_STOCK + " TEXT NOT NULL);";
+                        + " (" + KEY_STOCKS_DATE + " INTEGER PRIMARY KEY NOT NULL, "
+                        + KEY_STOCKS_STOCK + " TEXT NOT NULL, "
+                        + KEY_STOCKS_ADDED + " INTEGER NOT NULL, "
+                        + KEY_STOCKS_ACCESSED + " INTEGER NOT NULL DEFAULT 0) WITHOUT ROWID;";
 
         private static final String CREATE_HASHES_TABLE =
                 "CREATE TABLE " + TABLE_HASHES
-                        + " (" + KEY_HASHES_ROWID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + KEY_HASHES_DATE + " INTEGER NOT NULL, "
+                        + " (" + KEY_HASHES_DATE + " INTEGER NOT NULL, "
                         + KEY_HASHES_30W + " INTEGER NOT NULL, "
                         + KEY_HASHES_LATHASH + " REAL NOT NULL, "
-                        + KEY_HASHES_LONHASH + " REAL NOT NULL);";
+                        + KEY_HASHES_LONHASH + " REAL NOT NULL, "
+                        + KEY_HASHES_ADDED + " INTEGER NOT NULL, "
+                        + KEY_HASHES_ACCESSED + " INTEGER NOT NULL DEFAULT 0, "
+                        + "PRIMARY KEY (" + KEY_HASHES_DATE + ", " + KEY_HASHES_30W + ")) WITHOUT ROWID;";
 
         DatabaseHelper(Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+            // Write-ahead logging lets lookups on other connections carry on
+            // while a batch is being written.  Without it, a read would have
+            // to wait for the whole transaction.
+            setWriteAheadLoggingEnabled(true);
         }
 
         @Override
@@ -98,9 +242,75 @@ public class StockStoreDatabase {
             if(oldVersion == 1 || oldVersion == 2) {
                 // Versions 1 and 2 only had one table, named "stocks".
                 db.execSQL("DROP TABLE IF EXISTS stocks");
+                db.execSQL("DROP TABLE IF EXISTS hashes");
                 db.execSQL(CREATE_STOCKS_TABLE);
                 db.execSQL(CREATE_HASHES_TABLE);
+            } else if(oldVersion == 3) {
+                // Version 3 had YYYYMMDD dates and autoincrement rowids, with
+                // no constraints whatsoever.  Move everything over.  We're
+                // already in a transaction here, so this is all or nothing.
+                upgradeFromVersion3(db);
+            } else if(oldVersion == 4) {
+                // Version 4 just didn't know when anything was last used.
+                // Until it gets used again, call it when it was added.
+                db.execSQL("ALTER TABLE " + TABLE_STOCKS + " ADD COLUMN "
+                        + KEY_STOCKS_ACCESSED + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE_HASHES + " ADD COLUMN "
+                        + KEY_HASHES_ACCESSED + " INTEGER NOT NULL DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_STOCKS + " SET " + KEY_STOCKS_ACCESSED + " = " + KEY_STOCKS_ADDED);
+                db.execSQL("UPDATE " + TABLE_HASHES + " SET " + KEY_HASHES_ACCESSED + " = " + KEY_HASHES_ADDED);
+            }
+        }
+
+        private static void upgradeFromVersion3(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + TABLE_STOCKS + " RENAME TO " + TABLE_STOCKS + "_v3");
+            db.execSQL("ALTER TABLE " + TABLE_HASHES + " RENAME TO " + TABLE_HASHES + "_v3");
+            db.execSQL(CREATE_STOCKS_TABLE);
+            db.execSQL(CREATE_HASHES_TABLE);
+
+            // The old rowids go in as the "added" and "accessed" times.  They're in the same
+            // order as they were stored, and they're all way smaller than any
+            // real timestamp, so they'll be the first to go later on.  Any
+            // duplicates that snuck in just get ignored.
+            Cursor cursor = db.query(TABLE_STOCKS + "_v3",
+                    new String[] {"_id", KEY_STOCKS_DATE, KEY_STOCKS_STOCK},
+                    null, null, null, null, null);
+            if(cursor != null) {
+                while(cursor.moveToNext()) {
+                    ContentValues toGo = new ContentValues();
+                    toGo.put(KEY_STOCKS_DATE, fromDateKey(cursor.getInt(1)));
+                    toGo.put(KEY_STOCKS_STOCK, cursor.getString(2));
+                    toGo.put(KEY_STOCKS_ADDED, cursor.getLong(0));
+                    toGo.put(KEY_STOCKS_ACCESSED, cursor.getLong(0));
+                    db.insertWithOnConflict(TABLE_STOCKS, null, toGo, SQLiteDatabase.CONFLICT_IGNORE);
+                }
+                cursor.close();
+            }
+
+            cursor = db.query(TABLE_HASHES + "_v3",
+                    new String[] {"_id", KEY_HASHES_DATE, KEY_HASHES_30W, KEY_HASHES_LATHASH, KEY_HASHES_LONHASH},
+                    null, null, null, null, null);
+            if(cursor != null) {
+                while(cursor.moveToNext()) {
+                    ContentValues toGo = new ContentValues();
+                    toGo.put(KEY_HASHES_DATE, fromDateKey(cursor.getInt(1)));
+                    toGo.put(KEY_HASHES_30W, cursor.getInt(2));
+                    toGo.put(KEY_HASHES_LATHASH, cursor.getDouble(3));
+                    toGo.put(KEY_HASHES_LONHASH, cursor.getDouble(4));
+                    toGo.put(KEY_HASHES_ADDED, cursor.getLong(0));
+                    toGo.put(KEY_HASHES_ACCESSED, cursor.getLong(0));
+                    db.insertWithOnConflict(TABLE_HASHES, null, toGo, SQLiteDatabase.CONFLICT_IGNORE);
+                }
+                cursor.close();
             }
+
+            db.execSQL("DROP TABLE " + TABLE_STOCKS + "_v3");
+            db.execSQL("DROP TABLE " + TABLE_HASHES + "_v3");
+        }
+
+        private static int fromDateKey(int dateKey) {
+            // Versions 3 and earlier held YYYYMMDD as an integer.
+            return EpochDay.fromYmd(dateKey / 10000, (dateKey / 100) % 100, dateKey % 100);
         }
     }
 
@@ -115,235 +325,556 @@ public class StockStoreDatabase {
      * @throws SQLException if the database could be neither opened or created
      */
     public StockStoreDatabase init(@NonNull Context c) throws SQLException {
-        mHelper = new DatabaseHelper(c);
+        mContext = c.getApplicationContext();
+        mHelper = new DatabaseHelper(mContext);
         mDatabase = mHelper.getWritableDatabase();
+        mWriter = Executors.newSingleThreadScheduledExecutor();
+        mWriter.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, TOUCH_FLUSH_INTERVAL_MS, TOUCH_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        mInsertStock = mDatabase.compileStatement(SQL_INSERT_STOCK);
+        mInsertHash = mDatabase.compileStatement(SQL_INSERT_HASH);
+        mTouchStock = mDatabase.compileStatement(SQL_TOUCH_STOCK);
+        mTouchHash = mDatabase.compileStatement(SQL_TOUCH_HASH);
+        mDeleteStock = mDatabase.compileStatement(SQL_DELETE_STOCK);
+        mDeleteHash = mDatabase.compileStatement(SQL_DELETE_HASH);
         return this;
     }
     
     /**
-     * Finishes up.  In this case, closes the database.
+     * Finishes up.  In this case, writes out anything that's still waiting,
+     * then closes the database.
      */
     public void finish() {
-        mHelper.close();
+        synchronized(this) {
+            flush();
+            mWriter.shutdown();
+
+            mInsertStock.close();
+            mInsertHash.close();
+            mTouchStock.close();
+            mTouchHash.close();
+            mDeleteStock.close();
+            mDeleteHash.close();
+            mHelper.close();
+        }
     }
     
     /**
      * Stores a bundle of Info into the database.  That is, store a new entry in
      * the hashes table.  It is presumed this has nothing to do with the actual
      * stock value.  When retrieved later, this will preserve the fractional
-     * parts of the coordinates (that is, the hash part).
+     * parts of the coordinates (that is, the hash part).  It won't actually
+     * hit the database until the next batch goes out (see {@link #flush()}).
      * 
      * @param i the aforementioned bundle of Info to be stored into the database
      */
     public void storeInfo(Info i) {
-        synchronized(this) {
-            // Fortunately, there's a handy ContentValues object for this sort
-            // of thing.  I mean, we COULD do manual SQLite calls, but why
-            // bother?
-            
-            // But first!  First we need to know if this already exists.  If it
-            // does, return a -1.
-            // TODO: No, wrong.  I need a better mechanism for that.
-            if(getInfo(i.getCalendar(), i.getGraticule()) != null) {
-                Log.v(DEBUG_TAG, "Info already exists for that data, ignoring...");
-                return;
-            }
-            
-            ContentValues toGo = new ContentValues();
-            Calendar cal = i.getCalendar();
-            toGo.put(KEY_HASHES_DATE, DateTools.getDateString(cal));
-            toGo.put(KEY_HASHES_30W, i.uses30WRule());
-            toGo.put(KEY_HASHES_LATHASH, i.getLatitudeHash());
-            toGo.put(KEY_HASHES_LONHASH, i.getLongitudeHash());
-            
-            Log.v(DEBUG_TAG, "NOW STORING TO HASHES " + DateTools.getDateString(cal)
-                    + (i.uses30WRule() ? " (30W)" : "") + " : "
-                    + i.getLatitudeHash() + "," + i.getLongitudeHash());
-
-            mDatabase.insert(TABLE_HASHES, null, toGo);
+        storeHash(i.getEpochDay(), i.uses30WRule(), i.getLatitudeHash(), i.getLongitudeHash());
+    }
+
+    /**
+     * Stores the fractional parts of a hash in the hashes table, without
+     * needing a whole Info for it.  Same as {@link #storeInfo(Info)}, this
+     * goes out with the next batch.
+     *
+     * @param epochDay the expedition date (NOT the stock date)
+     * @param uses30W whether or not the 30W Rule is in effect
+     * @param latHash the fractional part of the latitude
+     * @param lonHash the fractional part of the longitude
+     */
+    public void storeHash(int epochDay, boolean uses30W, double latHash, double lonHash) {
+        synchronized(mPendingLock) {
+            // It goes in the queue for now.  If the same date and 30W-ness is
+            // already in there, it's the same hash anyway.
+            mPendingHashes.put(makeHashKey(epochDay, uses30W), makeFractions(latHash, lonHash));
+            scheduleFlush();
         }
     }
     
     /**
      * Stores a stock value in the stock table.  Presumably, the given calendar
      * value is already adjusted for weekends and 30W (that is, this is the raw
-     * stock value for that date).
+     * stock value for that date).  If there's already a stock for that date,
+     * this doesn't do anything.
      * 
-     * @param cal the date of the stock
+     * @param epochDay the date of the stock, as an epoch day
      * @param stock the stock itself, as a string
      */
-    public void storeStock(Calendar cal, String stock) {
+    public void storeStock(int epochDay, String stock) {
+        synchronized(mPendingLock) {
+            mPendingStocks.put(epochDay, stock);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes everything that's waiting to go into the database right now, in
+     * one transaction, and prunes the database afterward if anything new went
+     * in.  This normally happens on its own shortly after something gets
+     * stored, so there's usually no need to call it directly unless you need
+     * it on disk NOW.
+     */
+    public void flush() {
         synchronized(this) {
-            // First, check over the database to make sure it doesn't already
-            // exist.
-            if(getStock(cal) != null) {
-                Log.v(DEBUG_TAG, "Stock price already exists in database for " + DateTools.getDateString(cal) + ", ignoring...");
-                return;
+            Map<Integer, String> stocks;
+            Map<Integer, double[]> hashes;
+            Set<Integer> touchedStocks;
+            Set<Integer> touchedHashes;
+
+            // Grab a copy of what's waiting.  The pending stocks and hashes
+            // stay put until they're committed, so lookups can still find them
+            // while the transaction's going (they can't see it until it's
+            // done).  Touches can just go.
+            synchronized(mPendingLock) {
+                mFlushScheduled = false;
+
+                if(mPendingStocks.isEmpty() && mPendingHashes.isEmpty()
+                        && mTouchedStocks.isEmpty() && mTouchedHashes.isEmpty()) return;
+
+                stocks = new LinkedHashMap<>(mPendingStocks);
+                hashes = new LinkedHashMap<>(mPendingHashes);
+                touchedStocks = new LinkedHashSet<>(mTouchedStocks);
+                touchedHashes = new LinkedHashSet<>(mTouchedHashes);
+                mTouchedStocks.clear();
+                mTouchedHashes.clear();
+            }
+
+            Log.v(DEBUG_TAG, "Writing " + stocks.size() + " stock(s) and "
+                    + hashes.size() + " hash(es) to the database...");
+
+            long now = System.currentTimeMillis();
+
+            mDatabase.beginTransaction();
+            try {
+                // The primary keys take care of duplicates; if it's already
+                // there, the insert just doesn't happen.
+                for(Map.Entry<Integer, String> entry : stocks.entrySet()) {
+                    mInsertStock.bindLong(1, entry.getKey());
+                    mInsertStock.bindString(2, entry.getValue());
+                    mInsertStock.bindLong(3, now);
+                    mInsertStock.bindLong(4, now);
+                    mInsertStock.executeInsert();
+                }
+
+                for(Map.Entry<Integer, double[]> entry : hashes.entrySet()) {
+                    int key = entry.getKey();
+                    mInsertHash.bindLong(1, key >> 1);
+                    mInsertHash.bindLong(2, key & 1);
+                    mInsertHash.bindDouble(3, entry.getValue()[HashEngine.LATITUDE]);
+                    mInsertHash.bindDouble(4, entry.getValue()[HashEngine.LONGITUDE]);
+                    mInsertHash.bindLong(5, now);
+                    mInsertHash.bindLong(6, now);
+                    mInsertHash.executeInsert();
+                }
+
+                // Then, anything that got looked up.
+                for(int epochDay : touchedStocks) {
+                    mTouchStock.bindLong(1, now);
+                    mTouchStock.bindLong(2, epochDay);
+                    mTouchStock.executeUpdateDelete();
+                }
+
+                for(int key : touchedHashes) {
+                    mTouchHash.bindLong(1, now);
+                    mTouchHash.bindLong(2, key >> 1);
+                    mTouchHash.bindLong(3, key & 1);
+                    mTouchHash.executeUpdateDelete();
+                }
+
+                mDatabase.setTransactionSuccessful();
+            } catch (Exception e) {
+                // If that didn't work, it's only a cache.  Drop it.
+                Log.w(DEBUG_TAG, "HEY!  Couldn't write to the stock cache database: " + e.toString());
+            } finally {
+                mDatabase.endTransaction();
+
+                // Now that it's committed (or not), those can come out of the
+                // pending batch.  Anything stored since we made our copy stays
+                // for next time.  If the same key came in again, it's the
+                // same stock or hash, so that's already been written.
+                synchronized(mPendingLock) {
+                    mPendingStocks.keySet().removeAll(stocks.keySet());
+                    mPendingHashes.keySet().removeAll(hashes.keySet());
+                }
             }
-            
-            // Otherwise, store away!
-            ContentValues toGo = new ContentValues();
-            toGo.put(KEY_STOCKS_DATE, DateTools.getDateString(cal));
-            toGo.put(KEY_STOCKS_STOCK, stock);
-            
-            Log.v(DEBUG_TAG, "NOW STORING TO STOCKS " + DateTools.getDateString(cal)
-                    + " : " + stock);
-
-            mDatabase.insert(TABLE_STOCKS, null, toGo);
+
+            // One prune for the whole batch, in its own transaction.  If that
+            // goes wrong, the batch is still in; we'll just be over budget
+            // until next time.  If all we did was update access times,
+            // nothing got any bigger, so there's nothing to prune.
+            if(!stocks.isEmpty() || !hashes.isEmpty())
+                pruneQuietly(getEvictionPolicy(mContext));
         }
     }
+
+    private void pruneQuietly(@NonNull EvictionPolicy policy) {
+        // Must be called while synchronized on this (that is, by the writer).
+        mDatabase.beginTransaction();
+        try {
+            prune(policy);
+            mDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            // If something went wrong, let it go.
+            Log.w(DEBUG_TAG, "HEY!  Couldn't prune the stock cache database: " + e.toString());
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private void scheduleFlush() {
+        // Must be called while holding mPendingLock.  If there's already a
+        // flush on the way, this'll get picked up with it.
+        if(mFlushScheduled) return;
+
+        mFlushScheduled = true;
+        mWriter.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @NonNull
+    private static double[] makeFractions(double latHash, double lonHash) {
+        double[] toReturn = new double[2];
+        toReturn[HashEngine.LATITUDE] = latHash;
+        toReturn[HashEngine.LONGITUDE] = lonHash;
+        return toReturn;
+    }
+
+    private static int makeHashKey(int epochDay, boolean uses30W) {
+        return (epochDay << 1) | (uses30W ? 1 : 0);
+    }
     
     /**
      * Retrieves enough data from the database to construct an Info bundle, if
      * such data exists.  If not, returns null instead.
      * 
-     * @param c Calendar containing the date to retrieve (this should NOT be
-     *          adjusted for the 30W Rule)
-     * @param g Graticule to use to determine if the 30W Rule is in effect and
-     *          to create the new Info bundle with
+     * @param epochDay the date to retrieve, as an epoch day (this should NOT
+     *                 be adjusted for the 30W Rule)
+     * @param uses30W whether or not the 30W Rule is in effect for that date
+     *                and graticule
+     * @param g Graticule to create the new Info bundle with
      * @return Info bundle you're looking for, or null if the database doesn't
      *         have the data you want
      */
-    public Info getInfo(Calendar c, Graticule g) {
-        synchronized(this) {
-            Log.v(DEBUG_TAG, "Querying the hashes database...");
-            // First, adjust the calendar if we need to.
-            Info toReturn = null;
-            
-            // Now, to the database!
-            Cursor cursor = mDatabase.query(TABLE_HASHES, new String[] {KEY_HASHES_LATHASH, KEY_HASHES_LONHASH},
-                    KEY_HASHES_DATE + " = " + DateTools.getDateString(c) + " AND " + KEY_HASHES_30W + " = "
-                    + ((g == null || g.uses30WRule()) ? "1" : "0"),
-                    null, null, null, null);
-            
-            if(cursor == null) {
-                // If a problem happens, assume there's no stock to get.
-                Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
-                return null;
-            } else if(cursor.getCount() == 0) {
-                // If nothing resulted from this, the stock doesn't exist in the
-                // cache.
-                Log.v(DEBUG_TAG, "Info doesn't exist in database");
-            } else {
-                // Otherwise, grab the first one we come across.
-                if(!cursor.moveToFirst()) return null;
-                
-                double latHash = cursor.getDouble(0);
-                double lonHash = cursor.getDouble(1);
-                Log.v(DEBUG_TAG, "Info found -- Today's lucky numbers are " + latHash + "," + lonHash);
-                
-                // Get the destination set...
-                if(g != null) {
-                    double lat = (g.getLatitude() + latHash) * (g.isSouth() ? -1 : 1);
-                    double lon = (g.getLongitude() + lonHash) * (g.isWest() ? -1 : 1);
-                    
-                    toReturn = new Info(lat, lon, g, c);
-                } else {
-                    toReturn = new Info(latHash, lonHash, null, c);
-                }
+    @Nullable
+    public Info getInfo(int epochDay, boolean uses30W, @Nullable Graticule g) {
+        double[] fractions = new double[2];
+        if(!getHash(epochDay, uses30W, fractions)) return null;
+
+        // Info can take it from here, globalhash or not.
+        return Info.fromHash(epochDay, g,
+                fractions[HashEngine.LATITUDE],
+                fractions[HashEngine.LONGITUDE]);
+    }
+
+    /**
+     * Retrieves just the fractional parts of a hash from the database, without
+     * making an Info out of them.  The latitude goes in
+     * {@link HashEngine#LATITUDE} and the longitude in
+     * {@link HashEngine#LONGITUDE}.  If there's nothing in the database, the
+     * array is left alone.
+     *
+     * @param epochDay the date to retrieve, as an epoch day (this should NOT
+     *                 be adjusted for the 30W Rule)
+     * @param uses30W whether or not the 30W Rule is in effect for that date
+     *                and graticule
+     * @param out a two-element array to hold the fractions
+     * @return true if the hash was found, false if not
+     */
+    public boolean getHash(int epochDay, boolean uses30W, @NonNull double[] out) {
+        int key = makeHashKey(epochDay, uses30W);
+
+        // If it's still waiting to be written, it's right here.
+        synchronized(mPendingLock) {
+            double[] pending = mPendingHashes.get(key);
+            if(pending != null) {
+                out[HashEngine.LATITUDE] = pending[HashEngine.LATITUDE];
+                out[HashEngine.LONGITUDE] = pending[HashEngine.LONGITUDE];
+                return true;
             }
-            
+        }
+
+        // If not, off to the database.  This doesn't take any lock; it just
+        // sees whatever was last committed.
+        Cursor cursor = mDatabase.rawQuery(SQL_GET_HASH,
+                new String[] {Integer.toString(epochDay), uses30W ? "1" : "0"});
+
+        if(cursor == null) {
+            // If a problem happens, assume there's no hash to get.
+            Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
+            return false;
+        }
+
+        try {
+            // The primary key means there's at most one.
+            if(!cursor.moveToFirst()) return false;
+
+            out[HashEngine.LATITUDE] = cursor.getDouble(0);
+            out[HashEngine.LONGITUDE] = cursor.getDouble(1);
+        } finally {
             cursor.close();
-            return toReturn;
         }
+
+        synchronized(mPendingLock) {
+            mTouchedHashes.add(key);
+        }
+
+        return true;
     }
     
     /**
      * Retrieves a stock value from the database for the given date.  This date
      * should already be adjusted for weekends and such.
      * 
-     * @param cal already-adjusted date for which to get a stock
+     * @param epochDay already-adjusted date for which to get a stock, as an
+     *                 epoch day
      * @return the String representation of the stock, or null if none is stored 
      */
-    public String getStock(Calendar cal) {
-        synchronized(this) {
-            Log.v(DEBUG_TAG, "Querying the stock database...");
-            
-            String toReturn = null;
-            
-            // Go!
-            Cursor cursor = mDatabase.query(TABLE_STOCKS, new String[] {KEY_STOCKS_STOCK},
-                    KEY_STOCKS_DATE + " = " + DateTools.getDateString(cal),
-                    null, null, null, null);
-            
-            // And now the check...
-            if(cursor == null) {
-                // If a problem happens, assume there's no stock to get.
-                Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
-                return null;
-            } else if(cursor.getCount() == 0) {
-                // If nothing resulted from this, the stock doesn't exist in the
-                // cache.
-                Log.v(DEBUG_TAG, "Stock doesn't exist in database");
-            } else {
-                // Otherwise, grab the first one we come across.
-                if(!cursor.moveToFirst()) return null;
-                
-                toReturn = cursor.getString(0);
-                Log.v(DEBUG_TAG, "Stock found -- Today's lucky number is " + toReturn);
-            }
-            
+    @Nullable
+    public String getStock(int epochDay) {
+        synchronized(mPendingLock) {
+            String pending = mPendingStocks.get(epochDay);
+            if(pending != null) return pending;
+        }
+
+        Cursor cursor = mDatabase.rawQuery(SQL_GET_STOCK,
+                new String[] {Integer.toString(epochDay)});
+
+        if(cursor == null) {
+            Log.w(DEBUG_TAG, "HEY!  The cursor returned from the query was null!");
+            return null;
+        }
+
+        String toReturn;
+
+        try {
+            // No rows, no stock.
+            if(!cursor.moveToFirst()) return null;
+
+            toReturn = cursor.getString(0);
+        } finally {
             cursor.close();
-            return toReturn;
         }
+
+        synchronized(mPendingLock) {
+            mTouchedStocks.add(epochDay);
+        }
+
+        return toReturn;
     }
     
     /**
-     * Performs cache cleanup.  This involves pruning the cache down to however
-     * many entries should be the max.
+     * <p>
+     * Performs cache cleanup.  This involves pruning the cache down to
+     * whatever budget the preferences say, throwing out whatever was looked up
+     * least recently.  The budget applies to each table separately, and it
+     * can be either a number of rows or a number of bytes (see
+     * {@link EvictionPolicy#fromPreference(String)}).
+     * </p>
+     *
+     * <p>
+     * Today's stock and anything after it are pinned, as are today's hashes
+     * and anything after them.  That's whatever's in use right now, plus the
+     * weekend if it's Friday, and those won't go no matter what (unless the
+     * cache is turned off entirely).
+     * </p>
+     *
+     * <p>
+     * This happens on its own every time a batch of writes goes out, so
+     * there's not a lot of reason to call it.
+     * </p>
      *
      * @param c Context to use to get preferences and such
      */
     public void cleanup(@NonNull Context c) {
         synchronized(this) {
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(c);
-            
-            Log.v(DEBUG_TAG, "Pruning database...");
+            pruneQuietly(getEvictionPolicy(c));
+        }
+    }
+
+    @NonNull
+    static EvictionPolicy getEvictionPolicy(@NonNull Context c) {
+        return getEvictionPolicy(PreferenceManager.getDefaultSharedPreferences(c));
+    }
+
+    @NonNull
+    static EvictionPolicy getEvictionPolicy(@NonNull SharedPreferences prefs) {
+        // If the pref's missing or mangled somehow, this falls back to the
+        // default instead of throwing.
+        return EvictionPolicy.fromPreference(prefs.getString(GHDConstants.PREF_STOCK_CACHE_SIZE, "15"));
+    }
+
+    private void prune(@NonNull EvictionPolicy policy) {
+        // Must be called while synchronized on this (that is, by the writer).
+        int today = EpochDay.today();
+
+        int deleted = pruneTable(policy, SQL_LIST_STOCKS, mDeleteStock, false,
+                StockDates.getStockDate(today, true));
+        Log.v(DEBUG_TAG, "Stock rows deleted: " + deleted);
+
+        deleted = pruneTable(policy, SQL_LIST_HASHES, mDeleteHash, true, today);
+        Log.v(DEBUG_TAG, "Info rows deleted: " + deleted);
+    }
+
+    private int pruneTable(@NonNull EvictionPolicy policy,
+                           @NonNull String listSql,
+                           @NonNull SQLiteStatement delete,
+                           boolean has30W,
+                           int pinFrom) {
+        // Grab everything the policy needs to know.  The tables aren't ever
+        // very big, so this is no big deal.
+        Cursor cursor = mDatabase.rawQuery(listSql, null);
+        if(cursor == null) return 0;
+
+        int count = cursor.getCount();
+        int[] days = new int[count];
+        boolean[] flags = new boolean[count];
+        long[] accessed = new long[count];
+        int[] sizes = new int[count];
+        boolean[] pinned = new boolean[count];
+
+        try {
+            for(int i = 0; i < count && cursor.moveToNext(); i++) {
+                days[i] = cursor.getInt(0);
+                flags[i] = cursor.getInt(1) != 0;
+                accessed[i] = cursor.getLong(2);
+                sizes[i] = cursor.getInt(3);
+                pinned[i] = days[i] >= pinFrom;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int[] victims = policy.selectVictims(accessed, sizes, pinned, count);
+
+        for(int victim : victims) {
+            delete.bindLong(1, days[victim]);
+            if(has30W) delete.bindLong(2, flags[victim] ? 1 : 0);
+            delete.executeUpdateDelete();
+        }
+
+        return victims.length;
+    }
+    
+    /**
+     * Hands every stock (and, if asked, every hash) in the database to the
+     * given consumer, oldest first.  Anything waiting to be written goes out
+     * first, so this is everything there is.  Like any other lookup, this
+     * just reads whatever's committed, so it doesn't hold up the writer.
+     *
+     * @param out where it all goes (usually a {@link CacheSnapshot.Writer})
+     * @param includeHashes true to include the hashes, false for just stocks
+     * @return how many stocks and hashes there were
+     * @throws IOException the consumer threw it
+     */
+    public int exportTo(@NonNull CacheSnapshot.Consumer out, boolean includeHashes) throws IOException {
+        flush();
+
+        int count = 0;
+
+        Cursor cursor = mDatabase.rawQuery(SQL_ALL_STOCKS, null);
+        if(cursor != null) {
             try {
-                // Presumably, initPrefs was already run from the GeohashDroid
-                // class.  Thus, if the pref doesn't exist at this point or
-                // isn't parseable into an int, we can quite justifiably spaz
-                // out.
-                int max = Integer.parseInt(prefs.getString(GHDConstants.PREF_STOCK_CACHE_SIZE, "15"));
-                
-                // Step one: Get the highest row ID.  I could probably ram this
-                // all into one big monolithic SQL statement, but that would get
-                // more than a bit unreadable.  Also note very carefully, this
-                // entire method depends on there being no holes in the rowids.
-                // "SELECT _rowid FROM stocks ORDER BY _rowid DESC LIMIT 1;"
-                Cursor cursor = mDatabase.query(TABLE_STOCKS, new String[] {KEY_STOCKS_ROWID},
-                        null, null, null, null, KEY_STOCKS_ROWID + " DESC", "1");
-                
-                cursor.moveToFirst();
-                int highest = cursor.getInt(0);
+                while(cursor.moveToNext()) {
+                    out.onStock(cursor.getInt(0), cursor.getString(1));
+                    count++;
+                }
+            } finally {
                 cursor.close();
-                
-                // Step two: Delete anything in the database older than the
-                // highest minus the max.
-                // "DELETE FROM stocks WHERE _rowid < (highest - max);"
-                int deleted = mDatabase.delete(TABLE_STOCKS, KEY_STOCKS_ROWID + " <= " + (highest - max), null);
-
-                Log.v(DEBUG_TAG, "Stock rows deleted: " + deleted);
-                
-                // Now, do all that again, but for hashes.
-                
-                cursor = mDatabase.query(TABLE_HASHES, new String[] {KEY_HASHES_ROWID},
-                        null, null, null, null, KEY_HASHES_ROWID + " DESC", "1");
-                
-                cursor.moveToFirst();
-                highest = cursor.getInt(0);
+            }
+        }
+
+        if(!includeHashes) return count;
+
+        cursor = mDatabase.rawQuery(SQL_ALL_HASHES, null);
+        if(cursor != null) {
+            try {
+                while(cursor.moveToNext()) {
+                    out.onHash(cursor.getInt(0), cursor.getInt(1) != 0,
+                            cursor.getDouble(2), cursor.getDouble(3));
+                    count++;
+                }
+            } finally {
                 cursor.close();
-                
-                deleted = mDatabase.delete(TABLE_HASHES, KEY_HASHES_ROWID + " <= " + (highest - max), null);
-                
-                Log.v(DEBUG_TAG, "Info rows deleted: " + deleted);
-            } catch (Exception e) {
-                // If something went wrong, let it go.
-                Log.w(DEBUG_TAG, "HEY!  Couldn't prune the stock cache database: " + e.toString());
             }
         }
+
+        return count;
     }
-    
+
+    /**
+     * <p>
+     * Reads a {@link CacheSnapshot} into the database, all in one
+     * transaction.  If the snapshot turns out to be bad partway through (cut
+     * off, wrong checksum, whatever), the whole thing gets rolled back and
+     * the database is just like it was.  Anything already in the database
+     * stays as it is; it'd be the same stock or hash anyway.
+     * </p>
+     *
+     * <p>
+     * This does NOT prune afterward, so everything in the snapshot is there
+     * to be looked at (or copied to the atlas) until the next batch goes out
+     * or {@link #cleanup(Context)} gets called.
+     * </p>
+     *
+     * @param in the snapshot
+     * @return how many stocks and hashes were in the snapshot
+     * @throws IOException the snapshot couldn't be read
+     */
+    public int importFrom(@NonNull InputStream in) throws IOException {
+        synchronized(this) {
+            // Get anything pending out of the way first, so it doesn't wind
+            // up in (or get rolled back with) this transaction.
+            flush();
+
+            final long now = System.currentTimeMillis();
+            int count;
+
+            mDatabase.beginTransaction();
+            try {
+                count = CacheSnapshot.read(in, new CacheSnapshot.Consumer() {
+                    @Override
+                    public void onStock(int stockDay, @NonNull String stock) {
+                        mInsertStock.bindLong(1, stockDay);
+                        mInsertStock.bindString(2, stock);
+                        mInsertStock.bindLong(3, now);
+                        mInsertStock.bindLong(4, now);
+                        mInsertStock.executeInsert();
+                    }
+
+                    @Override
+                    public void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) {
+                        mInsertHash.bindLong(1, epochDay);
+                        mInsertHash.bindLong(2, uses30W ? 1 : 0);
+                        mInsertHash.bindDouble(3, latHash);
+                        mInsertHash.bindDouble(4, lonHash);
+                        mInsertHash.bindLong(5, now);
+                        mInsertHash.bindLong(6, now);
+                        mInsertHash.executeInsert();
+                    }
+                });
+
+                mDatabase.setTransactionSuccessful();
+            } catch (SQLException e) {
+                // The caller only needs to know it didn't work.
+                throw new IOException("Couldn't write the snapshot to the database", e);
+            } finally {
+                mDatabase.endTransaction();
+            }
+
+            Log.d(DEBUG_TAG, "Restored " + count + " stock(s) and hash(es) from a snapshot");
+            return count;
+        }
+    }
+
     /**
      * Erases everything from the stock cache database.  This is really only to
      * be used if something's gone horribly wrong.
@@ -352,7 +883,13 @@ public class StockStoreDatabase {
         synchronized(this) {
             try {
                 Log.v(DEBUG_TAG, "Emptying the stock cache...");
-                // KABOOM!
+                // KABOOM!  Including whatever hadn't been written yet.
+                synchronized(mPendingLock) {
+                    mPendingStocks.clear();
+                    mPendingHashes.clear();
+                    mTouchedStocks.clear();
+                    mTouchedHashes.clear();
+                }
                 mDatabase.delete(TABLE_STOCKS, null, null);
                 mDatabase.delete(TABLE_HASHES, null, null);
                 return true;
@@ -7,23 +7,23 @@
 package net.exclaimindustries.geohashdroid.util;
 
 import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.location.Location;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
-import android.util.Log;
 
 import com.google.android.gms.maps.model.LatLng;
 
+import net.exclaimindustries.tools.CoordinateFormat;
+
 /**
  * This is a simple utility class which converts a distance output (in meters)
  * into whatever is needed for the job (kilometers, miles, feet).  It also turns
  * coordinates into whatever needs to be displayed (minutes/seconds, etc).
+ * The coordinate formatting itself is all in {@link CoordinateFormat}; this
+ * just figures out which unit the user wants.
  * 
  * @author Nicholas Killewald
  */
@@ -34,28 +34,15 @@ public class UnitConverter {
     public static final int FEET_PER_MILE = 5280;
     
     /** Output should be short, with fewer decimal places. */
-    public static final int OUTPUT_SHORT = 0;
+    public static final int OUTPUT_SHORT = CoordinateFormat.OUTPUT_SHORT;
     /** Output should be long, with more decimal places. */
-    public static final int OUTPUT_LONG = 1;
+    public static final int OUTPUT_LONG = CoordinateFormat.OUTPUT_LONG;
     /** Output should be even longer, with even more decimal places. */
-    public static final int OUTPUT_DETAILED = 2;
-    
-    // All of the coordinate formats use Locale.US for the locale to force the
-    // decimal delimiter to be a period instead of a comma.  Coordinates, as far
-    // as I can tell, are always represented with a period, even if the country
-    // in question uses commas.
-    protected static final DecimalFormat SHORT_FORMAT = new DecimalFormat("##0.000", new DecimalFormatSymbols(Locale.US));
-    protected static final DecimalFormat LONG_FORMAT = new DecimalFormat("##0.00000", new DecimalFormatSymbols(Locale.US));
-    protected static final DecimalFormat DETAIL_FORMAT = new DecimalFormat("##0.00000000", new DecimalFormatSymbols(Locale.US));
-    
-    protected static final DecimalFormat SHORT_SECONDS_FORMAT = new DecimalFormat("##0.00", new DecimalFormatSymbols(Locale.US));
-    protected static final DecimalFormat LONG_SECONDS_FORMAT = new DecimalFormat("##0.0000", new DecimalFormatSymbols(Locale.US));
+    public static final int OUTPUT_DETAILED = CoordinateFormat.OUTPUT_DETAILED;
 
     /** The standard short-form distance format. */
     public static final DecimalFormat DISTANCE_FORMAT_SHORT = new DecimalFormat("###.###");
 
-    private static final String DEBUG_TAG = "UnitConverter";
-
     /**
      * Perform a distance conversion. This will attempt to get whatever
      * preference is set for the job and, using the given DecimalFormat, convert
@@ -173,30 +160,7 @@ public class UnitConverter {
                                                       double lat,
                                                       boolean useNegative,
                                                       int format) {
-        String units = getCoordUnitPreference(c);
-        
-        // Keep track of whether or not this is negative.  We'll attach the
-        // prefix or suffix later.
-        boolean isNegative = lat < 0;
-        // Make this absolute so we know we won't have to juggle negatives until
-        // we know what they'll wind up being.
-        double rawCoord = Math.abs(lat);
-        String coord;
-        
-        coord = makeCoordinateString(units, rawCoord, format);
-        
-        // Now, attach negative or suffix, as need be.
-        if(useNegative) {
-            if(isNegative)
-                return "-" + coord;
-            else
-                return coord;
-        } else {
-            if(isNegative)
-                return coord + "S";
-            else
-                return coord + "N";
-        }
+        return CoordinateFormat.formatLatitude(getCoordUnitPreference(c), lat, useNegative, format);
     }
     
     /**
@@ -218,100 +182,9 @@ public class UnitConverter {
                                                        double lon,
                                                        boolean useNegative,
                                                        int format) {
-        String units = getCoordUnitPreference(c);
-        
-        // Keep track of whether or not this is negative.  We'll attach the
-        // prefix or suffix later.
-        boolean isNegative = lon < 0;
-        // Make this absolute so we know we won't have to juggle negatives until
-        // we know what they'll wind up being.
-        double rawCoord = Math.abs(lon);
-        String coord;
-        
-        coord = makeCoordinateString(units, rawCoord, format);
-        
-        // Now, attach negative or suffix, as need be.
-        if(useNegative) {
-            if(isNegative)
-                return "-" + coord;
-            else
-                return coord;
-        } else {
-            if(isNegative)
-                return coord + "W";
-            else
-                return coord + "E";
-        }
+        return CoordinateFormat.formatLongitude(getCoordUnitPreference(c), lon, useNegative, format);
     }
 
-    @NonNull
-    private static String makeCoordinateString(@NonNull String units,
-                                               double coord,
-                                               int format) {
-        // Just does the generic coordinate conversion stuff for coordinates.
-        NumberFormat nf = NumberFormat.getInstance();
-
-        try {
-            switch(units) {
-                case GHDConstants.PREFVAL_COORD_DEGREES:
-                    // Easy case: Use the result Location gives us, modified by
-                    // the longForm boolean.
-                    switch(format) {
-                        case OUTPUT_SHORT:
-                            return SHORT_FORMAT.format(coord) + "\u00b0";
-                        case OUTPUT_LONG:
-                            return LONG_FORMAT.format(coord) + "\u00b0";
-                        default:
-                            return DETAIL_FORMAT.format(coord) + "\u00b0";
-                    }
-                case GHDConstants.PREFVAL_COORD_MINUTES: {
-                    // Harder case 1: Minutes.
-                    String temp = Location.convert(coord, Location.FORMAT_MINUTES);
-                    String[] split = temp.split(":");
-
-                    // Get the double form of the minutes...
-                    Number parsed = nf.parse(split[1]);
-                    assert parsed != null;
-                    double minutes = parsed.doubleValue();
-
-                    switch(format) {
-                        case OUTPUT_SHORT:
-                            return split[0] + "\u00b0" + SHORT_SECONDS_FORMAT.format(minutes) + "\u2032";
-                        case OUTPUT_LONG:
-                            return split[0] + "\u00b0" + LONG_SECONDS_FORMAT.format(minutes) + "\u2032";
-                        default:
-                            return split[0] + "\u00b0" + split[1] + "\u2032";
-                    }
-                }
-                case GHDConstants.PREFVAL_COORD_SECONDS: {
-                    // Harder case 2: Seconds.
-                    String temp = Location.convert(coord, Location.FORMAT_SECONDS);
-                    String[] split = temp.split(":");
-
-                    // Get the double form of the seconds...
-                    Number parsed = nf.parse(split[2]);
-                    assert parsed != null;
-                    double seconds = parsed.doubleValue();
-
-                    switch(format) {
-                        case OUTPUT_SHORT:
-                            return split[0] + "\u00b0" + split[1] + "\u2032" + SHORT_SECONDS_FORMAT.format(seconds) + "\u2033";
-                        case OUTPUT_LONG:
-                            return split[0] + "\u00b0" + split[1] + "\u2032" + LONG_SECONDS_FORMAT.format(seconds) + "\u2033";
-                        default:
-                            return split[0] + "\u00b0" + split[1] + "\u2032" + split[2] + "\u2033";
-                    }
-                }
-                default:
-                    return "???";
-            }
-        } catch (Exception ex) {
-            Log.e(DEBUG_TAG, "Exception thrown during coordinate conversion: " + ex.toString());
-            ex.printStackTrace();
-            return "???";
-        }
-    }
-    
     /**
      * Grab the current coordinate unit preference.
      * 
@@ -0,0 +1,61 @@
+/*
+ * CoordinateFormatBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.tools.CoordinateFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks coordinate formatting, which is what <code>UnitConverter</code>
+ * does every time the map or the detail screen updates.  The unit and output
+ * format are parameters here instead of preferences, so every combination the
+ * user could pick gets its own numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CoordinateFormatBenchmark {
+    @Param({ CoordinateFormat.DEGREES, CoordinateFormat.MINUTES, CoordinateFormat.SECONDS })
+    public String units;
+
+    @Param({ "0", "1", "2" })
+    public int output;
+
+    // The original xkcd geohash, more or less.
+    private final double mLat = 37.421542;
+    private final double mLon = -122.085589;
+
+    @Benchmark
+    public String latitude() {
+        return CoordinateFormat.formatLatitude(units, mLat, false, output);
+    }
+
+    @Benchmark
+    public String fullCoordinate() {
+        // Same as UnitConverter.makeFullCoordinateString.
+        return CoordinateFormat.formatLatitude(units, mLat, false, output) + " "
+                + CoordinateFormat.formatLongitude(units, mLon, false, output);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String fullCoordinateFourThreads() {
+        return CoordinateFormat.formatLatitude(units, mLat, false, output) + " "
+                + CoordinateFormat.formatLongitude(units, mLon, false, output);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * GraticuleBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.geohashdroid.core.GraticuleMath;
+import net.exclaimindustries.geohashdroid.core.StockDates;
+import net.exclaimindustries.tools.EpochDay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the graticule and date arithmetic that runs for every nearby
+ * point and known location check: offsetting graticules (what
+ * <code>Graticule.createOffsetFrom</code> does) and working out stock dates
+ * (what <code>Info.makeAdjustedCalendar</code> does).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GraticuleBenchmark {
+    // Somewhere right on the Prime Meridian, for maximum negative zero fun.
+    private final int mGraticule = GraticuleMath.pack(51, false, 0, true);
+    private final int mDay = EpochDay.fromYmd(2008, 5, 25);
+
+    @Benchmark
+    public void nearbyOffsets(Blackhole bh) {
+        // Same three-by-three the nearby points search does.
+        for(int lat = -1; lat <= 1; lat++) {
+            for(int lon = -1; lon <= 1; lon++) {
+                bh.consume(GraticuleMath.offset(mGraticule, lat, lon));
+            }
+        }
+    }
+
+    @Benchmark
+    public double makeLatitude() {
+        return GraticuleMath.makeLatitude(mGraticule, 0.857713);
+    }
+
+    @Benchmark
+    public int stockDate() {
+        return StockDates.getStockDate(mDay, mGraticule);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * HashBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.geohashdroid.core.HashEngine;
+import net.exclaimindustries.tools.CharToByte;
+import net.exclaimindustries.tools.HexFraction;
+import net.exclaimindustries.tools.MD5Tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the full trip from a date and stock value to the two hash
+ * fractions.  The "string" benchmarks are how <code>HashBuilder.makeHash</code>
+ * and friends used to do it (String.format, MD5 to hex, then parse the hex
+ * back out); the "engine" ones go through {@link HashEngine}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HashBenchmark {
+    private final Calendar mCal = new GregorianCalendar(2008, Calendar.MAY, 21);
+    private final String mStock = "12620.90";
+    private final double[] mOut = new double[2];
+    private final byte[] mDigest = new byte[HashEngine.DIGEST_LENGTH];
+
+    @Benchmark
+    public void stringPathToFractions(Blackhole bh) {
+        String hash = MD5Tools.MD5hash(String.format(Locale.US,
+                "%4d-%02d-%02d-%s",
+                mCal.get(Calendar.YEAR),
+                mCal.get(Calendar.MONTH) + 1,
+                mCal.get(Calendar.DAY_OF_MONTH),
+                mStock));
+        bh.consume(HexFraction.calculate(hash.substring(0, 16)));
+        bh.consume(HexFraction.calculate(hash.substring(16, 32)));
+    }
+
+    @Benchmark
+    public double[] engineToFractions() {
+        HashEngine.makeFractions(mCal.get(Calendar.YEAR),
+                mCal.get(Calendar.MONTH) + 1,
+                mCal.get(Calendar.DAY_OF_MONTH),
+                mStock,
+                mOut);
+        return mOut;
+    }
+
+    @Benchmark
+    public String engineToHexString() {
+        // This is what HashBuilder.makeHash does these days.
+        HashEngine.makeDigest(mCal.get(Calendar.YEAR),
+                mCal.get(Calendar.MONTH) + 1,
+                mCal.get(Calendar.DAY_OF_MONTH),
+                mStock,
+                mDigest);
+        return CharToByte.bytesToString(mDigest);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * HexFractionBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.tools.HexFraction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link HexFraction}'s various ways of turning half a hash into a
+ * fraction.  The long-string one is there to keep an eye on the BigDecimal
+ * path, which is what every hash used to go through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HexFractionBenchmark {
+    private final String mHash = "db9318c2259923d08b672cb305440f97";
+    private final String mHalf = "db9318c2259923d0";
+    private final String mLong = "db9318c2259923d08b";
+    private final byte[] mBytes = {
+            (byte)0xdb, (byte)0x93, (byte)0x18, (byte)0xc2,
+            (byte)0x25, (byte)0x99, (byte)0x23, (byte)0xd0,
+            (byte)0x8b, (byte)0x67, (byte)0x2c, (byte)0xb3,
+            (byte)0x05, (byte)0x44, (byte)0x0f, (byte)0x97 };
+
+    @Benchmark
+    public double calculateString() {
+        return HexFraction.calculate(mHalf);
+    }
+
+    @Benchmark
+    public double calculateOffset() {
+        return HexFraction.calculate(mHash, 16);
+    }
+
+    @Benchmark
+    public double calculateBytes() {
+        return HexFraction.calculate(mBytes, 8);
+    }
+
+    @Benchmark
+    public double calculateBigDecimal() {
+        return HexFraction.calculate(mLong);
+    }
+}
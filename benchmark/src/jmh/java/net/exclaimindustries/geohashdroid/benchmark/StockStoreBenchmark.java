@@ -0,0 +1,190 @@
+/*
+ * StockStoreBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Benchmarks the queries the app's <code>StockStoreDatabase</code> makes, old
+ * and new, against a populated cache.  The app's SQLite classes are Android
+ * only, so this goes through the same SQLite engine by way of JDBC instead,
+ * with the same schemas and the same SQL.  That's close enough to compare the
+ * approaches, if not the exact numbers you'd get on a phone.
+ * </p>
+ *
+ * <ul>
+ *     <li>v3: YYYYMMDD dates, no keys, SQL rebuilt on every call</li>
+ *     <li>v4: epoch-day primary keys, SQL rebuilt on every call</li>
+ *     <li>prepared: v4, with statements compiled once and bound each time</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StockStoreBenchmark {
+    // A good-sized cache: about eleven years' worth of days, 30W and non-30W.
+    private static final int FIRST_DAY = EpochDay.fromYmd(2010, 1, 1);
+    private static final int DAYS = 4096;
+
+    private Connection mConnection;
+    private Statement mStatement;
+    private PreparedStatement mGetHash;
+    private PreparedStatement mGetStock;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        mStatement = mConnection.createStatement();
+
+        mStatement.execute("CREATE TABLE stocks_v3 (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "date INTEGER NOT NULL, stock TEXT NOT NULL)");
+        mStatement.execute("CREATE TABLE hashes_v3 (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "date INTEGER NOT NULL, uses30w INTEGER NOT NULL, "
+                + "lathash REAL NOT NULL, lonhash REAL NOT NULL)");
+        mStatement.execute("CREATE TABLE stocks (date INTEGER PRIMARY KEY NOT NULL, "
+                + "stock TEXT NOT NULL, added INTEGER NOT NULL) WITHOUT ROWID");
+        mStatement.execute("CREATE TABLE hashes (date INTEGER NOT NULL, uses30w INTEGER NOT NULL, "
+                + "lathash REAL NOT NULL, lonhash REAL NOT NULL, added INTEGER NOT NULL, "
+                + "PRIMARY KEY (date, uses30w)) WITHOUT ROWID");
+
+        mConnection.setAutoCommit(false);
+        PreparedStatement stockV3 = mConnection.prepareStatement("INSERT INTO stocks_v3 (date, stock) VALUES (?, ?)");
+        PreparedStatement hashV3 = mConnection.prepareStatement("INSERT INTO hashes_v3 (date, uses30w, lathash, lonhash) VALUES (?, ?, ?, ?)");
+        PreparedStatement stock = mConnection.prepareStatement("INSERT INTO stocks VALUES (?, ?, ?)");
+        PreparedStatement hash = mConnection.prepareStatement("INSERT INTO hashes VALUES (?, ?, ?, ?, ?)");
+
+        for(int i = 0; i < DAYS; i++) {
+            int day = FIRST_DAY + i;
+            String value = Integer.toString(10000 + i) + ".25";
+
+            stockV3.setInt(1, toDateKey(day));
+            stockV3.setString(2, value);
+            stockV3.executeUpdate();
+            stock.setInt(1, day);
+            stock.setString(2, value);
+            stock.setLong(3, i);
+            stock.executeUpdate();
+
+            for(int uses30W = 0; uses30W <= 1; uses30W++) {
+                double fraction = (i * 2 + uses30W) / (DAYS * 2.0);
+
+                hashV3.setInt(1, toDateKey(day));
+                hashV3.setInt(2, uses30W);
+                hashV3.setDouble(3, fraction);
+                hashV3.setDouble(4, fraction);
+                hashV3.executeUpdate();
+                hash.setInt(1, day);
+                hash.setInt(2, uses30W);
+                hash.setDouble(3, fraction);
+                hash.setDouble(4, fraction);
+                hash.setLong(5, i);
+                hash.executeUpdate();
+            }
+        }
+
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+        stockV3.close();
+        hashV3.close();
+        stock.close();
+        hash.close();
+
+        mGetHash = mConnection.prepareStatement("SELECT lathash, lonhash FROM hashes WHERE date = ? AND uses30w = ?");
+        mGetStock = mConnection.prepareStatement("SELECT stock FROM stocks WHERE date = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    private int nextDay() {
+        // Skip around so it's not always hitting the same page.
+        mNext = (mNext + 997) % DAYS;
+        return FIRST_DAY + mNext;
+    }
+
+    private static int toDateKey(int epochDay) {
+        return EpochDay.getYear(epochDay) * 10000
+                + EpochDay.getMonth(epochDay) * 100
+                + EpochDay.getDay(epochDay);
+    }
+
+    private static double readHash(ResultSet rs) throws SQLException {
+        try {
+            return rs.next() ? rs.getDouble(1) + rs.getDouble(2) : -1;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static String readStock(ResultSet rs) throws SQLException {
+        try {
+            return rs.next() ? rs.getString(1) : null;
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Benchmark
+    public double hashV3() throws SQLException {
+        return readHash(mStatement.executeQuery("SELECT lathash, lonhash FROM hashes_v3 WHERE date = "
+                + toDateKey(nextDay()) + " AND uses30w = 1"));
+    }
+
+    @Benchmark
+    public double hashV4() throws SQLException {
+        return readHash(mStatement.executeQuery("SELECT lathash, lonhash FROM hashes WHERE date = "
+                + nextDay() + " AND uses30w = 1"));
+    }
+
+    @Benchmark
+    public double hashPrepared() throws SQLException {
+        mGetHash.setInt(1, nextDay());
+        mGetHash.setInt(2, 1);
+        return readHash(mGetHash.executeQuery());
+    }
+
+    @Benchmark
+    public String stockV3() throws SQLException {
+        return readStock(mStatement.executeQuery("SELECT stock FROM stocks_v3 WHERE date = "
+                + toDateKey(nextDay())));
+    }
+
+    @Benchmark
+    public String stockV4() throws SQLException {
+        return readStock(mStatement.executeQuery("SELECT stock FROM stocks WHERE date = "
+                + nextDay()));
+    }
+
+    @Benchmark
+    public String stockPrepared() throws SQLException {
+        mGetStock.setInt(1, nextDay());
+        return readStock(mGetStock.executeQuery());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * ToolsBenchmark.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.benchmark;
+
+import net.exclaimindustries.tools.CharToByte;
+import net.exclaimindustries.tools.DateCodec;
+import net.exclaimindustries.tools.DateTools;
+import net.exclaimindustries.tools.EpochDay;
+import net.exclaimindustries.tools.MD5Tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the little helpers from the tools package that sit on the hash
+ * and cache paths: MD5 hashing, char/byte conversion, and date formatting.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ToolsBenchmark {
+    private final Calendar mCal = new GregorianCalendar(2008, Calendar.MAY, 21);
+    private final String mInput = "2008-05-21-12620.90";
+    private final char[] mChars = mInput.toCharArray();
+    private final byte[] mDigest = {
+            (byte)0xdb, (byte)0x93, (byte)0x18, (byte)0xc2,
+            (byte)0x25, (byte)0x99, (byte)0x23, (byte)0xd0,
+            (byte)0x8b, (byte)0x67, (byte)0x2c, (byte)0xb3,
+            (byte)0x05, (byte)0x44, (byte)0x0f, (byte)0x97 };
+    private final int mEpochDay = EpochDay.fromCalendar(mCal);
+    private final char[] mDateBuffer = new char[DateCodec.HYPHENATED_DATE_LENGTH];
+    private final String mHyphenated = "2008-05-21";
+    // One per thread (this is Scope.Thread), which is the only way the old
+    // approach was ever safe.
+    private final SimpleDateFormat mFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+
+    @Benchmark
+    public String md5Hash() {
+        return MD5Tools.MD5hash(mInput);
+    }
+
+    @Benchmark
+    public byte[] charsToBytes() {
+        return CharToByte.charsToBytes(mChars);
+    }
+
+    @Benchmark
+    public String bytesToString() {
+        return CharToByte.bytesToString(mDigest);
+    }
+
+    @Benchmark
+    public String dateString() {
+        return DateTools.getDateString(mCal);
+    }
+
+    @Benchmark
+    public String hyphenatedDateString() {
+        return DateTools.getHyphenatedDateString(mCal);
+    }
+
+    @Benchmark
+    public String simpleDateFormat() {
+        return mFormat.format(mCal.getTime());
+    }
+
+    @Benchmark
+    public char[] codecWriteHyphenated() {
+        DateCodec.writeHyphenatedDate(mEpochDay, mDateBuffer, 0);
+        return mDateBuffer;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public char[] codecWriteHyphenatedFourThreads() {
+        DateCodec.writeHyphenatedDate(mEpochDay, mDateBuffer, 0);
+        return mDateBuffer;
+    }
+
+    @Benchmark
+    public int codecParseHyphenated() {
+        return DateCodec.parseHyphenatedDate(mHyphenated);
+    }
+
+    @Benchmark
+    public long simpleDateFormatParse() throws Exception {
+        return mFormat.parse(mHyphenated).getTime();
+    }
+
+    @Benchmark
+    public int epochDayFromCalendar() {
+        return EpochDay.fromCalendar(mCal);
+    }
+
+    @Benchmark
+    public int epochDayToYmd() {
+        return EpochDay.getYear(mEpochDay) * 10000
+                + EpochDay.getMonth(mEpochDay) * 100
+                + EpochDay.getDay(mEpochDay);
+    }
+}
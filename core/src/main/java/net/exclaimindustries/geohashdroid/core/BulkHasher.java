@@ -0,0 +1,204 @@
+/*
+ * BulkHasher.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * <code>BulkHasher</code> works out the hash fractions for a whole range of
+ * dates at once, given all the stock values it needs up front.  This is for
+ * retrohash browsing and history-type things, where going through the app's
+ * <code>HashBuilder</code> one date at a time would take forever.
+ * </p>
+ *
+ * <p>
+ * The range gets split up and spread across all the cores on a fork/join pool.
+ * Nothing here touches the network or the database; if a stock isn't in the
+ * map, that date just gets skipped.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class BulkHasher {
+    /**
+     * Gets called with each hash as it's computed.  Note very carefully that
+     * this gets called from whatever pool threads happen to be doing the work,
+     * so it had better be thread-safe, and it won't be called in date order.
+     */
+    public interface HashConsumer {
+        /**
+         * Called when a date's hash is ready.
+         *
+         * @param epochDay the expedition date (NOT the stock date)
+         * @param latHash the fractional part of the latitude
+         * @param lonHash the fractional part of the longitude
+         */
+        void onHash(int epochDay, double latHash, double lonHash);
+    }
+
+    // Below this many days, a task just does the work itself instead of
+    // splitting further.  An MD5 is quick enough that anything smaller isn't
+    // worth the overhead of forking.
+    private static final int CHUNK_DAYS = 64;
+
+    private static ForkJoinPool mPool;
+
+    private BulkHasher() { }
+
+    @NonNull
+    private static synchronized ForkJoinPool getPool() {
+        // ForkJoinPool.commonPool() would be nice, but that's API 24.
+        if(mPool == null)
+            mPool = new ForkJoinPool();
+
+        return mPool;
+    }
+
+    /**
+     * Computes the hash fractions for every date in the given range, Calendar
+     * style.  See {@link #computeRange(int, int, int, Map, HashConsumer)}.
+     *
+     * @param start the first expedition date
+     * @param end the last expedition date (inclusive)
+     * @param packedGraticule packed graticule to use to determine if the 30W
+     *                        Rule is in effect (or
+     *                        {@link GraticuleMath#GLOBALHASH})
+     * @param stocks stock values, keyed by stock date as an epoch day
+     * @param consumer where the results go
+     * @return the number of dates that were hashed
+     */
+    public static int computeRange(@NonNull Calendar start,
+                                   @NonNull Calendar end,
+                                   int packedGraticule,
+                                   @NonNull Map<Integer, String> stocks,
+                                   @NonNull HashConsumer consumer) {
+        return computeRange(EpochDay.fromCalendar(start), EpochDay.fromCalendar(end), packedGraticule, stocks, consumer);
+    }
+
+    /**
+     * <p>
+     * Computes the hash fractions for every date in the given range.  The 30W
+     * Rule, weekend, and holiday adjustments are applied by
+     * {@link StockDates}, so the stock map should be keyed by the STOCK date
+     * (that is, the day the Dow opened at that value), not the expedition
+     * date.  Any date whose stock isn't in the map is skipped.
+     * </p>
+     *
+     * <p>
+     * This blocks until the whole range is done, so don't call it from the
+     * main thread.  The consumer, meanwhile, is called from the pool threads
+     * as each date finishes.
+     * </p>
+     *
+     * @param startDay the first expedition date, as an epoch day
+     * @param endDay the last expedition date (inclusive), as an epoch day
+     * @param packedGraticule packed graticule to use to determine if the 30W
+     *                        Rule is in effect (or
+     *                        {@link GraticuleMath#GLOBALHASH})
+     * @param stocks stock values, keyed by stock date as an epoch day
+     * @param consumer where the results go
+     * @return the number of dates that were hashed
+     */
+    public static int computeRange(int startDay,
+                                   int endDay,
+                                   int packedGraticule,
+                                   @NonNull Map<Integer, String> stocks,
+                                   @NonNull HashConsumer consumer) {
+        if(endDay < startDay) return 0;
+
+        boolean global = (packedGraticule == GraticuleMath.GLOBALHASH);
+        boolean graticule30W = GraticuleMath.uses30WRule(packedGraticule);
+
+        // Pull the stocks we need out of the map and into a flat array before
+        // anything forks.  That way, the workers can look them up by index
+        // instead of boxing Integers and hashing them for every single date.
+        // Stock dates never go backwards as the expedition date goes forwards,
+        // and the 30W Rule only ever pushes them further back, so the 30W
+        // stock date of the first day is the earliest one we could need.
+        int base = StockDates.getStockDate(startDay, true);
+        String[] stockTable = new String[endDay - base + 1];
+        for(Map.Entry<Integer, String> entry : stocks.entrySet()) {
+            int day = entry.getKey();
+            if(day >= base && day <= endDay)
+                stockTable[day - base] = entry.getValue();
+        }
+
+        return getPool().invoke(new RangeTask(startDay, endDay, base, stockTable,
+                global, graticule30W, consumer));
+    }
+
+    private static class RangeTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int mStart;
+        private final int mEnd;
+        private final int mBase;
+        private final String[] mStocks;
+        private final boolean mGlobal;
+        private final boolean mGraticule30W;
+        private final HashConsumer mConsumer;
+
+        RangeTask(int start, int end, int base, @NonNull String[] stocks,
+                  boolean global, boolean graticule30W, @NonNull HashConsumer consumer) {
+            mStart = start;
+            mEnd = end;
+            mBase = base;
+            mStocks = stocks;
+            mGlobal = global;
+            mGraticule30W = graticule30W;
+            mConsumer = consumer;
+        }
+
+        @Override
+        protected Integer compute() {
+            if(mEnd - mStart < CHUNK_DAYS)
+                return computeDirectly();
+
+            // Too big!  Split it in half, fork one half off, and do the other
+            // half ourselves.
+            int mid = mStart + (mEnd - mStart) / 2;
+            RangeTask left = new RangeTask(mStart, mid, mBase, mStocks, mGlobal, mGraticule30W, mConsumer);
+            RangeTask right = new RangeTask(mid + 1, mEnd, mBase, mStocks, mGlobal, mGraticule30W, mConsumer);
+
+            left.fork();
+            int rightCount = right.compute();
+            return left.join() + rightCount;
+        }
+
+        private int computeDirectly() {
+            double[] fractions = new double[2];
+            int count = 0;
+
+            for(int day = mStart; day <= mEnd; day++) {
+                boolean uses30W = StockDates.uses30WRule(day, mGlobal, mGraticule30W);
+                String stock = mStocks[StockDates.getStockDate(day, uses30W) - mBase];
+                if(stock == null) continue;
+
+                // Remember, the hash uses the REAL date, not the stock date.
+                HashEngine.makeFractions(EpochDay.getYear(day),
+                        EpochDay.getMonth(day),
+                        EpochDay.getDay(day),
+                        stock,
+                        fractions);
+
+                mConsumer.onHash(day, fractions[HashEngine.LATITUDE], fractions[HashEngine.LONGITUDE]);
+                count++;
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * CacheSnapshot.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <p>
+ * <code>CacheSnapshot</code> reads and writes a compact binary dump of the
+ * stock cache: every stock and every hash, so that a new device (or a fresh
+ * install) can pick up right where the old one left off without going back to
+ * the internet for every last retrohash.  Both directions are a single pass
+ * over a stream, so nothing has to be held in memory.
+ * </p>
+ *
+ * <p>
+ * The format is big-endian (that's what DataOutputStream does), and goes:
+ * </p>
+ *
+ * <ul>
+ *     <li>int: magic ("GHDS")</li>
+ *     <li>int: version ({@link #VERSION})</li>
+ *     <li>any number of records, each a type byte followed by:
+ *         <ul>
+ *             <li>stock: int stock date, then the stock as modified UTF-8</li>
+ *             <li>hash (non-30W or 30W): int expedition date, double latitude
+ *                 fraction, double longitude fraction</li>
+ *         </ul>
+ *     </li>
+ *     <li>an end byte, then an int count of the records</li>
+ *     <li>int: CRC32 of everything before it</li>
+ * </ul>
+ *
+ * <p>
+ * That's 21 bytes per hash and a dozen or so per stock, so even a few thousand
+ * days' worth doesn't amount to much.  Reading checks the magic, version,
+ * count, and checksum, and throws an IOException if anything's off.  Note
+ * that records get handed over as they're read, BEFORE the checksum's been
+ * checked, so whatever's consuming them should be ready to throw them all
+ * out (say, by doing it all in one transaction) if the read fails.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class CacheSnapshot {
+    /** The current version of the format. */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x47484453; // "GHDS"
+
+    private static final int TYPE_END = 0;
+    private static final int TYPE_STOCK = 1;
+    private static final int TYPE_HASH = 2;
+    private static final int TYPE_HASH_30W = 3;
+
+    /**
+     * Gets handed everything in a snapshot as it's read.
+     */
+    public interface Consumer {
+        /**
+         * Called for each stock.
+         *
+         * @param stockDay the stock date
+         * @param stock the stock itself
+         * @throws IOException whatever the consumer wants to throw
+         */
+        void onStock(int stockDay, @NonNull String stock) throws IOException;
+
+        /**
+         * Called for each hash.
+         *
+         * @param epochDay the expedition date (NOT the stock date)
+         * @param uses30W true if these are the 30W fractions
+         * @param latHash the fractional part of the latitude
+         * @param lonHash the fractional part of the longitude
+         * @throws IOException whatever the consumer wants to throw
+         */
+        void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) throws IOException;
+    }
+
+    /**
+     * Writes a snapshot.  Make one, write whatever stocks and hashes you've
+     * got in whatever order, then call {@link #finish()}.  Without that, the
+     * snapshot won't read back.  This implements {@link Consumer} (and
+     * {@link HashAtlas.Visitor}), so it can be handed straight to anything
+     * that wants one.
+     */
+    public static class Writer implements Consumer, HashAtlas.Visitor {
+        private final CRC32 mCrc = new CRC32();
+        private final BufferedOutputStream mBuffered;
+        private final DataOutputStream mOut;
+        private int mRecords;
+
+        /**
+         * Starts a new snapshot, writing the header right away.  The stream
+         * doesn't get closed when this is finished.
+         *
+         * @param out where to write it
+         * @throws IOException the header couldn't be written
+         */
+        public Writer(@NonNull OutputStream out) throws IOException {
+            mBuffered = new BufferedOutputStream(out);
+            mOut = new DataOutputStream(new CheckedOutputStream(mBuffered, mCrc));
+
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(VERSION);
+        }
+
+        @Override
+        public void onStock(int stockDay, @NonNull String stock) throws IOException {
+            mOut.writeByte(TYPE_STOCK);
+            mOut.writeInt(stockDay);
+            mOut.writeUTF(stock);
+            mRecords++;
+        }
+
+        @Override
+        public void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) throws IOException {
+            mOut.writeByte(uses30W ? TYPE_HASH_30W : TYPE_HASH);
+            mOut.writeInt(epochDay);
+            mOut.writeDouble(latHash);
+            mOut.writeDouble(lonHash);
+            mRecords++;
+        }
+
+        /**
+         * Writes the end of the snapshot and the checksum, and flushes it all
+         * out.  Don't write anything else after this.
+         *
+         * @return how many records were written
+         * @throws IOException it couldn't be written
+         */
+        public int finish() throws IOException {
+            mOut.writeByte(TYPE_END);
+            mOut.writeInt(mRecords);
+            mOut.flush();
+
+            // The checksum itself isn't part of the checksum, so that goes
+            // around the checked stream.
+            new DataOutputStream(mBuffered).writeInt((int)mCrc.getValue());
+            mBuffered.flush();
+
+            return mRecords;
+        }
+    }
+
+    private CacheSnapshot() { }
+
+    /**
+     * Reads a snapshot, handing each record to the consumer as it goes.  The
+     * stream is read up through the checksum and no further, and isn't
+     * closed.
+     *
+     * @param in where to read it from
+     * @param consumer where the records go
+     * @return how many records there were
+     * @throws IOException the snapshot couldn't be read, was the wrong
+     *                     version, was cut off, or failed the checksum
+     */
+    public static int read(@NonNull InputStream in, @NonNull Consumer consumer) throws IOException {
+        CRC32 crc = new CRC32();
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        DataInputStream data = new DataInputStream(new CheckedInputStream(buffered, crc));
+
+        if(data.readInt() != MAGIC)
+            throw new IOException("That's not a cache snapshot");
+
+        int version = data.readInt();
+        if(version != VERSION)
+            throw new IOException("Can't read version " + version + " snapshots (only " + VERSION + ")");
+
+        int records = 0;
+
+        while(true) {
+            int type = data.readUnsignedByte();
+
+            switch(type) {
+                case TYPE_STOCK:
+                    consumer.onStock(data.readInt(), data.readUTF());
+                    break;
+                case TYPE_HASH:
+                case TYPE_HASH_30W:
+                    consumer.onHash(data.readInt(), type == TYPE_HASH_30W,
+                            data.readDouble(), data.readDouble());
+                    break;
+                case TYPE_END:
+                    int expected = data.readInt();
+                    int checksum = (int)crc.getValue();
+
+                    if(new DataInputStream(buffered).readInt() != checksum)
+                        throw new IOException("Snapshot failed its checksum");
+                    if(expected != records)
+                        throw new IOException("Snapshot should have had " + expected
+                                + " records, but had " + records);
+
+                    return records;
+                default:
+                    throw new IOException("Unknown snapshot record type " + type);
+            }
+
+            records++;
+        }
+    }
+}
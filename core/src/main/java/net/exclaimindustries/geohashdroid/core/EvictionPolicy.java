@@ -0,0 +1,208 @@
+/*
+ * EvictionPolicy.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <p>
+ * An <code>EvictionPolicy</code> decides what gets thrown out of a cache once
+ * it's over budget.  The budget's either a number of rows or a number of bytes,
+ * and whatever was used least recently goes first.  Anything pinned (say,
+ * today's stock, or the weekend's) doesn't go at all, even if that means
+ * staying over budget.
+ * </p>
+ *
+ * <p>
+ * A budget of zero is special: that means no cache at all, so everything goes,
+ * pinned or not.
+ * </p>
+ *
+ * <p>
+ * This doesn't know anything about databases.  It just gets handed the access
+ * times and sizes and hands back which ones to evict, which makes it a lot
+ * easier to test.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class EvictionPolicy {
+    private final long mBudget;
+    private final boolean mByBytes;
+
+    private EvictionPolicy(long budget, boolean byBytes) {
+        if(budget < 0)
+            throw new IllegalArgumentException("The budget can't be negative, not " + budget);
+
+        mBudget = budget;
+        mByBytes = byBytes;
+    }
+
+    /**
+     * Makes a policy that keeps at most the given number of rows.
+     *
+     * @param maxRows the row budget
+     * @return a new policy
+     */
+    @NonNull
+    public static EvictionPolicy rowBudget(int maxRows) {
+        return new EvictionPolicy(maxRows, false);
+    }
+
+    /**
+     * Makes a policy that keeps at most the given number of bytes.
+     *
+     * @param maxBytes the byte budget
+     * @return a new policy
+     */
+    @NonNull
+    public static EvictionPolicy byteBudget(long maxBytes) {
+        return new EvictionPolicy(maxBytes, true);
+    }
+
+    /**
+     * The row budget used when the preference doesn't make any sense.  It's
+     * the same as the preference's default.
+     */
+    public static final int DEFAULT_ROWS = 15;
+
+    /**
+     * Makes a policy out of a preference value.  A plain number is a row
+     * budget; a number followed by a K is a byte budget, in kilobytes.  So
+     * "15" is fifteen rows, and "64K" is 64 kilobytes.  Anything else (null,
+     * garbage, negative numbers) gets {@link #DEFAULT_ROWS} rows, since a
+     * mangled preference is no reason to stop caching entirely.
+     *
+     * @param value the preference value
+     * @return a new policy
+     */
+    @NonNull
+    public static EvictionPolicy fromPreference(@Nullable String value) {
+        if(value == null) return rowBudget(DEFAULT_ROWS);
+
+        String trimmed = value.trim();
+
+        try {
+            long budget;
+            boolean byBytes = trimmed.endsWith("K") || trimmed.endsWith("k");
+
+            if(byBytes)
+                budget = Long.parseLong(trimmed.substring(0, trimmed.length() - 1).trim()) * 1024;
+            else
+                budget = Integer.parseInt(trimmed);
+
+            if(budget >= 0) return new EvictionPolicy(budget, byBytes);
+        } catch (NumberFormatException nfe) {
+            // Fall through to the default.
+        }
+
+        return rowBudget(DEFAULT_ROWS);
+    }
+
+    /**
+     * Gets the budget, in rows or bytes as the case may be.
+     *
+     * @return the budget
+     * @see #isByteBudget()
+     */
+    public long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Determines if the budget is in bytes or rows.
+     *
+     * @return true for bytes, false for rows
+     */
+    public boolean isByteBudget() {
+        return mByBytes;
+    }
+
+    /**
+     * <p>
+     * Picks which entries to evict.  The arrays are parallel, one element per
+     * entry, and at least <code>count</code> long.  What comes back is the
+     * indexes of the entries to evict, least recently used first.
+     * </p>
+     *
+     * <p>
+     * If two entries were last used at the same time, the one that comes first
+     * in the arrays goes first, so it's a good idea to hand them over oldest
+     * date first.
+     * </p>
+     *
+     * @param lastAccess when each entry was last used (any units, so long as
+     *                   bigger is later)
+     * @param sizes roughly how many bytes each entry takes (ignored for a row
+     *              budget)
+     * @param pinned true for each entry that shouldn't ever be evicted
+     * @param count how many entries there are
+     * @return the indexes of the entries to evict
+     */
+    @NonNull
+    public int[] selectVictims(@NonNull final long[] lastAccess,
+                               @NonNull int[] sizes,
+                               @NonNull boolean[] pinned,
+                               int count) {
+        if(mBudget == 0) {
+            // No budget, no cache.
+            int[] everything = new int[count];
+            for(int i = 0; i < count; i++) everything[i] = i;
+            return everything;
+        }
+
+        long total = 0;
+        int unpinned = 0;
+        for(int i = 0; i < count; i++) {
+            total += getCost(sizes, i);
+            if(!pinned[i]) unpinned++;
+        }
+
+        if(total <= mBudget) return new int[0];
+
+        // Line up everything that CAN go, least recently used first.  That's
+        // a stable sort, so ties stay in the order they came in.
+        Integer[] candidates = new Integer[unpinned];
+        int c = 0;
+        for(int i = 0; i < count; i++) {
+            if(!pinned[i]) candidates[c++] = i;
+        }
+
+        Arrays.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(lastAccess[a], lastAccess[b]);
+            }
+        });
+
+        // Then, out they go until we're under budget or out of candidates.
+        int[] victims = new int[unpinned];
+        int evicted = 0;
+        while(total > mBudget && evicted < unpinned) {
+            int victim = candidates[evicted];
+            victims[evicted++] = victim;
+            total -= getCost(sizes, victim);
+        }
+
+        return Arrays.copyOf(victims, evicted);
+    }
+
+    private long getCost(@NonNull int[] sizes, int index) {
+        return mByBytes ? sizes[index] : 1;
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        return "EvictionPolicy: " + mBudget + (mByBytes ? " bytes" : " rows");
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * GraticuleMath.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+/**
+ * <p>
+ * <code>GraticuleMath</code> does graticule arithmetic on packed ints instead
+ * of Graticule objects.  A packed graticule stores the latitude as an index
+ * from 0 to 179 (89S to 89N, with both zeroes in there) and the longitude as
+ * an index from 0 to 359 (179W to 179E, same deal), which handles the
+ * "negative zero" graticules without needing any separate flags.
+ * </p>
+ *
+ * <p>
+ * The app's Graticule class wraps all this up in something friendlier, but
+ * this is where the actual rules live.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class GraticuleMath {
+    /** The "graticule" of a globalhash, which isn't a graticule at all. */
+    public static final int GLOBALHASH = -1;
+
+    private static final int LON_BITS = 9;
+    private static final int LON_MASK = (1 << LON_BITS) - 1;
+
+    private static final int LAT_INDEXES = 180;
+    private static final int LON_INDEXES = 360;
+
+    private GraticuleMath() { }
+
+    /**
+     * Packs a graticule into an int.  Negative values are treated as their
+     * absolute values (the south and west flags are what count), and anything
+     * past 89 degrees latitude or 179 degrees longitude gets clamped.
+     *
+     * @param latitude latitude of the graticule
+     * @param south true if south, false if north
+     * @param longitude longitude of the graticule
+     * @param west true if west, false if east
+     * @return a packed graticule
+     */
+    public static int pack(int latitude, boolean south, int longitude, boolean west) {
+        latitude = Math.min(Math.abs(latitude), 89);
+        longitude = Math.min(Math.abs(longitude), 179);
+
+        int latIndex = south ? 89 - latitude : latitude + 90;
+        int lonIndex = west ? 179 - longitude : longitude + 180;
+
+        return fromIndexes(latIndex, lonIndex);
+    }
+
+    /**
+     * Gets the absolute value of the latitude of a packed graticule.
+     *
+     * @param packed the packed graticule
+     * @return the absolute latitude
+     */
+    public static int getLatitude(int packed) {
+        int latIndex = getLatIndex(packed);
+        return latIndex < 90 ? 89 - latIndex : latIndex - 90;
+    }
+
+    /**
+     * Gets whether a packed graticule is in the southern hemisphere.
+     *
+     * @param packed the packed graticule
+     * @return true if south, false if north
+     */
+    public static boolean isSouth(int packed) {
+        return getLatIndex(packed) < 90;
+    }
+
+    /**
+     * Gets the absolute value of the longitude of a packed graticule.
+     *
+     * @param packed the packed graticule
+     * @return the absolute longitude
+     */
+    public static int getLongitude(int packed) {
+        int lonIndex = getLonIndex(packed);
+        return lonIndex < 180 ? 179 - lonIndex : lonIndex - 180;
+    }
+
+    /**
+     * Gets whether a packed graticule is in the western hemisphere.
+     *
+     * @param packed the packed graticule
+     * @return true if west, false if east
+     */
+    public static boolean isWest(int packed) {
+        return getLonIndex(packed) < 180;
+    }
+
+    /**
+     * Returns true if the 30W Rule is in effect for a packed graticule.  That
+     * is, anything east of 30W uses the previous day's stock.  Globalhashes
+     * always count.  Note that this says nothing about the date; the rule
+     * didn't exist before 2008-05-27.  See {@link StockDates} for that.
+     *
+     * @param packed the packed graticule
+     * @return true if the 30W Rule is in effect, false otherwise
+     */
+    public static boolean uses30WRule(int packed) {
+        if(packed == GLOBALHASH) return true;
+        return getLongitude(packed) < 30 || !isWest(packed);
+    }
+
+    /**
+     * <p>
+     * Offsets a packed graticule by some number of degrees.  Going past the
+     * poles clamps at 89 degrees, while going past 180 longitude wraps around
+     * the planet.  Crossing the equator or the Prime Meridian goes through the
+     * "negative zero" graticule, as it should.
+     * </p>
+     *
+     * <p>
+     * Working in indexes makes all of that fall out naturally: latitude is
+     * just a clamped add, and longitude is an add modulo 360.
+     * </p>
+     *
+     * @param packed the packed graticule
+     * @param latOff number of degrees north to offset (negative is south)
+     * @param lonOff number of degrees east to offset (negative is west)
+     * @return the offset packed graticule
+     */
+    public static int offset(int packed, int latOff, int lonOff) {
+        int latIndex = getLatIndex(packed) + latOff;
+        if(latIndex < 0) latIndex = 0;
+        if(latIndex >= LAT_INDEXES) latIndex = LAT_INDEXES - 1;
+
+        int lonIndex = (getLonIndex(packed) + lonOff) % LON_INDEXES;
+        if(lonIndex < 0) lonIndex += LON_INDEXES;
+
+        return fromIndexes(latIndex, lonIndex);
+    }
+
+    /**
+     * Makes a full latitude out of a packed graticule and the fractional part
+     * of a hash.  For globalhashes, this maps the fraction over the whole
+     * planet instead.
+     *
+     * @param packed the packed graticule (or {@link #GLOBALHASH})
+     * @param latHash the fractional part of the latitude
+     * @return the latitude
+     */
+    public static double makeLatitude(int packed, double latHash) {
+        if(packed == GLOBALHASH)
+            return latHash * 180 - 90;
+
+        double lat = getLatitude(packed) + latHash;
+        return isSouth(packed) ? -lat : lat;
+    }
+
+    /**
+     * Makes a full longitude out of a packed graticule and the fractional part
+     * of a hash.  For globalhashes, this maps the fraction over the whole
+     * planet instead.
+     *
+     * @param packed the packed graticule (or {@link #GLOBALHASH})
+     * @param lonHash the fractional part of the longitude
+     * @return the longitude
+     */
+    public static double makeLongitude(int packed, double lonHash) {
+        if(packed == GLOBALHASH)
+            return lonHash * 360 - 180;
+
+        double lon = getLongitude(packed) + lonHash;
+        return isWest(packed) ? -lon : lon;
+    }
+
+    private static int fromIndexes(int latIndex, int lonIndex) {
+        return (latIndex << LON_BITS) | lonIndex;
+    }
+
+    private static int getLatIndex(int packed) {
+        return packed >>> LON_BITS;
+    }
+
+    private static int getLonIndex(int packed) {
+        return packed & LON_MASK;
+    }
+}
@@ -0,0 +1,550 @@
+/*
+ * HashAtlas.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * A <code>HashAtlas</code> is an on-disk table of the hashes we've worked
+ * out, one fixed-width record per day.  Each record holds the 30W and
+ * non-30W fractions for that day, plus a couple bits saying which of those are
+ * actually filled in.  Since the record for any day is at a known offset, the
+ * whole thing is memory-mapped and a lookup is just a couple reads out of the
+ * map.  No parsing, no SQL, no nothing.
+ * </p>
+ *
+ * <p>
+ * The file grows as later days get added; it's sparse up until then, so the
+ * gap between the start of the Dow's history and whenever someone first looks
+ * at a hash doesn't cost much of anything.  It never grows past a few days
+ * from now, though (see {@link #MAX_DAYS_AHEAD}).  Lookups don't lock; writes
+ * do.  Instead, every write bumps a sequence number before and after, and a
+ * lookup that sees it change partway through just reads the record again.
+ * </p>
+ *
+ * <p>
+ * The file never shrinks while it's open, either.  Lookups read the mapping
+ * without locking, and touching a mapped page that got truncated out from
+ * under it kills the whole process.  So clearing and pruning just switch off
+ * the validity bits and leave the space where it is.
+ * </p>
+ *
+ * <p>
+ * The layout is a 16-byte header (magic, version, first day, record size),
+ * then one record per day:
+ * </p>
+ *
+ * <ul>
+ *     <li>int: validity bits ({@link #VALID_30W}, {@link #VALID_NON_30W})</li>
+ *     <li>int: reserved</li>
+ *     <li>double: 30W latitude fraction</li>
+ *     <li>double: 30W longitude fraction</li>
+ *     <li>double: non-30W latitude fraction</li>
+ *     <li>double: non-30W longitude fraction</li>
+ * </ul>
+ *
+ * <p>
+ * Everything's little-endian.  If the header doesn't match what we expect,
+ * the file just gets wiped and started over; it's only a cache, after all.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class HashAtlas {
+    /**
+     * The first day the atlas can hold.  That's the first day of the Dow data
+     * the stock servers have, so there's no point in going earlier.
+     */
+    public static final int FIRST_DAY = EpochDay.fromYmd(1928, 10, 1);
+
+    /**
+     * How far past today a day can be and still go in the atlas.  The
+     * furthest-out hash any stock can determine is a 30W date after a long
+     * weekend, which is four days out; anything much later than that is
+     * garbage, and would only bloat the file.
+     */
+    public static final int MAX_DAYS_AHEAD = 7;
+
+    /**
+     * How many hashes the app lets the atlas hold: twenty years' worth, 30W
+     * and not.  This has nothing to do with the stock cache size preference;
+     * the records are all fixed-width, so that's only a few hundred K, and
+     * the whole point of the atlas is to have every hash anyone's likely to
+     * ask for right there.
+     */
+    public static final int DEFAULT_MAX_HASHES = 2 * 366 * 20;
+
+    /** Validity bit: the 30W fractions are filled in. */
+    public static final int VALID_30W = 1;
+    /** Validity bit: the non-30W fractions are filled in. */
+    public static final int VALID_NON_30W = 2;
+
+    // Both of those, in the order prune considers them.
+    private static final int[] VALID_BITS = { VALID_NON_30W, VALID_30W };
+
+    /**
+     * Gets called for each hash in the atlas by {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        /**
+         * Called for each hash.
+         *
+         * @param epochDay the expedition date (NOT the stock date)
+         * @param uses30W true if these are the 30W fractions
+         * @param latHash the fractional part of the latitude
+         * @param lonHash the fractional part of the longitude
+         * @throws IOException whatever the visitor wants to throw
+         */
+        void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) throws IOException;
+    }
+
+    private static final int MAGIC = 0x41444847; // "GHDA", little-endian
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int OFFSET_FLAGS = 0;
+    private static final int OFFSET_30W = 8;
+    private static final int OFFSET_NON_30W = 24;
+
+    // The file grows by about a year's worth of records at a time, so we
+    // aren't remapping it every single day.
+    private static final int GROWTH_RECORDS = 366;
+
+    // How many times a lookup tries to read a record while something's being
+    // written before it gives up and waits for the lock.
+    private static final int OPTIMISTIC_TRIES = 4;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+
+    // This gets swapped out whenever the file grows.  Readers grab it once and
+    // use that for the whole lookup.
+    private volatile MappedByteBuffer mBuffer;
+
+    // This is a seqlock.  Every write bumps it once before it touches the
+    // file and once after, so it's odd while a write's going.  A lookup reads
+    // it, reads the record, then reads it again, and only believes what it
+    // read if it was even and didn't change.  That second read MUST be a
+    // getAndAdd(0) and not a get(): a plain volatile read only keeps later
+    // reads from moving up past it, so the record reads could still slide
+    // down past it and see half a write.  A read-modify-write can't be passed
+    // in either direction, and if the writer's bump comes after it, the
+    // writer's bump happens-after everything we read.  (Java 8 and API 23
+    // don't have fences or VarHandles, so this is the way to do it.)
+    private final AtomicInteger mSequence = new AtomicInteger();
+
+    // How many valid hashes there are, so prune knows whether it has to do
+    // anything without reading the whole file.  Guarded by the lock on this.
+    private int mCount;
+
+    private HashAtlas(@NonNull RandomAccessFile file) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+    }
+
+    /**
+     * Opens (or creates) a HashAtlas in the given file.
+     *
+     * @param file the file to use
+     * @return a new HashAtlas
+     * @throws IOException the file couldn't be opened or mapped
+     */
+    @NonNull
+    public static HashAtlas open(@NonNull File file) throws IOException {
+        HashAtlas atlas = new HashAtlas(new RandomAccessFile(file, "rw"));
+
+        try {
+            atlas.init();
+        } catch (IOException ioe) {
+            atlas.close();
+            throw ioe;
+        }
+
+        return atlas;
+    }
+
+    private synchronized void init() throws IOException {
+        long length = mFile.length();
+
+        if(length < HEADER_SIZE) {
+            reset();
+            return;
+        }
+
+        map(length);
+
+        MappedByteBuffer buf = mBuffer;
+        if(buf.getInt(0) != MAGIC
+                || buf.getInt(4) != VERSION
+                || buf.getInt(8) != FIRST_DAY
+                || buf.getInt(12) != RECORD_SIZE) {
+            // Either this is some other version or it's garbage.  Either way,
+            // start over.
+            reset();
+            return;
+        }
+
+        // This is the only time we count them up the hard way.
+        int records = (buf.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        for(int i = 0; i < records; i++)
+            mCount += Integer.bitCount(buf.getInt(HEADER_SIZE + i * RECORD_SIZE + OFFSET_FLAGS)
+                    & (VALID_30W | VALID_NON_30W));
+    }
+
+    private void reset() throws IOException {
+        mFile.setLength(0);
+        mFile.setLength(HEADER_SIZE);
+        map(HEADER_SIZE);
+
+        MappedByteBuffer buf = mBuffer;
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putInt(8, FIRST_DAY);
+        buf.putInt(12, RECORD_SIZE);
+        mCount = 0;
+    }
+
+    private void map(long length) throws IOException {
+        MappedByteBuffer buf = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        mBuffer = buf;
+    }
+
+    /**
+     * Looks up the fractions for a given day.  This doesn't allocate, and it
+     * only locks if it keeps running into writes to the file, so it's safe to
+     * call from pretty much anywhere.
+     *
+     * @param epochDay the expedition date (NOT the stock date)
+     * @param uses30W true to get the 30W fractions, false for non-30W
+     * @param out array of at least two doubles to receive the fractions
+     *            (latitude first), if there are any
+     * @return true if the fractions were there, false if not
+     */
+    public boolean get(int epochDay, boolean uses30W, @NonNull double[] out) {
+        int pos = recordPosition(epochDay);
+        if(pos < 0) return false;
+
+        int bit = uses30W ? VALID_30W : VALID_NON_30W;
+        int offset = pos + (uses30W ? OFFSET_30W : OFFSET_NON_30W);
+
+        for(int tries = 0; tries < OPTIMISTIC_TRIES; tries++) {
+            int seq = mSequence.get();
+            if((seq & 1) != 0) {
+                // Somebody's writing right now.
+                Thread.yield();
+                continue;
+            }
+
+            MappedByteBuffer buf = mBuffer;
+            if(pos + RECORD_SIZE > buf.capacity()) return false;
+
+            // Read the whole thing into locals first.  None of it counts
+            // until we know nothing got written in the meantime.
+            int flags = buf.getInt(pos + OFFSET_FLAGS);
+            double lat = buf.getDouble(offset);
+            double lon = buf.getDouble(offset + 8);
+
+            if(mSequence.getAndAdd(0) != seq) continue;
+
+            if((flags & bit) == 0) return false;
+            out[0] = lat;
+            out[1] = lon;
+            return true;
+        }
+
+        // Still getting written to.  Fine, we'll wait our turn.
+        synchronized(this) {
+            MappedByteBuffer buf = mBuffer;
+            if(pos + RECORD_SIZE > buf.capacity()
+                    || (buf.getInt(pos + OFFSET_FLAGS) & bit) == 0) return false;
+
+            out[0] = buf.getDouble(offset);
+            out[1] = buf.getDouble(offset + 8);
+            return true;
+        }
+    }
+
+    /**
+     * Stores the fractions for a given day.  If they were already there, they
+     * get overwritten (with the same thing, presumably).  Days before
+     * {@link #FIRST_DAY} or more than {@link #MAX_DAYS_AHEAD} days from today
+     * are ignored.
+     *
+     * @param epochDay the expedition date (NOT the stock date)
+     * @param uses30W true if these are the 30W fractions, false for non-30W
+     * @param latHash the fractional part of the latitude
+     * @param lonHash the fractional part of the longitude
+     * @throws IOException the file couldn't be grown to fit the new day
+     */
+    public synchronized void put(int epochDay, boolean uses30W, double latHash, double lonHash)
+            throws IOException {
+        int pos = recordPosition(epochDay);
+        if(pos < 0) return;
+
+        mSequence.incrementAndGet();
+        try {
+            MappedByteBuffer buf = mBuffer;
+            if(pos + RECORD_SIZE > buf.capacity()) {
+                // Grow it out past the new day, plus some room to spare.
+                long newLength = (long)pos + (long)RECORD_SIZE * GROWTH_RECORDS;
+                mFile.setLength(newLength);
+                map(newLength);
+                buf = mBuffer;
+            }
+
+            int offset = pos + (uses30W ? OFFSET_30W : OFFSET_NON_30W);
+            buf.putDouble(offset, latHash);
+            buf.putDouble(offset + 8, lonHash);
+
+            int bit = uses30W ? VALID_30W : VALID_NON_30W;
+            int flags = buf.getInt(pos + OFFSET_FLAGS);
+            if((flags & bit) == 0) {
+                buf.putInt(pos + OFFSET_FLAGS, flags | bit);
+                mCount++;
+            }
+        } finally {
+            mSequence.incrementAndGet();
+        }
+    }
+
+    /**
+     * Works out and stores the hash for every expedition date that depends
+     * on the given stock, 30W and not (see
+     * {@link StockDates#getDependentDates(int, boolean)}).  Same as
+     * {@link #put(int, boolean, double, double)}, anything out of range is
+     * ignored.
+     *
+     * @param stockDay the date of the stock
+     * @param stock the stock itself
+     * @return how many hashes that was
+     * @throws IOException the file couldn't be grown to fit them
+     */
+    public int putStock(int stockDay, @NonNull String stock) throws IOException {
+        double[] fractions = new double[2];
+        int count = 0;
+
+        for(boolean uses30W : new boolean[] { false, true }) {
+            for(int epochDay : StockDates.getDependentDates(stockDay, uses30W)) {
+                HashEngine.makeFractions(EpochDay.getYear(epochDay),
+                        EpochDay.getMonth(epochDay),
+                        EpochDay.getDay(epochDay),
+                        stock,
+                        fractions);
+
+                put(epochDay, uses30W, fractions[HashEngine.LATITUDE], fractions[HashEngine.LONGITUDE]);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Determines if everything that depends on the given stock is in the
+     * atlas.  A stock's first non-30W date is the stock date itself, and its
+     * first 30W date is the day after; since pruning goes oldest first, if
+     * both of those are here, so's everything else from that stock.
+     *
+     * @param stockDay the date of the stock
+     * @return true if its hashes are all here
+     */
+    public boolean hasStock(int stockDay) {
+        double[] fractions = new double[2];
+        return get(stockDay, false, fractions) && get(stockDay + 1, true, fractions);
+    }
+
+    /**
+     * Goes through every hash in the atlas, oldest day first, non-30W before
+     * 30W on any given day.  Like {@link #get(int, boolean, double[])}, this
+     * doesn't lock, so anything written while this is going may or may not
+     * show up.
+     *
+     * @param visitor what to call for each hash
+     * @return how many hashes there were
+     * @throws IOException the visitor threw it
+     */
+    public int forEach(@NonNull Visitor visitor) throws IOException {
+        int count = 0;
+        int records = (mBuffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        double[] fractions = new double[4];
+
+        for(int i = 0; i < records; i++) {
+            int flags = readRecord(HEADER_SIZE + i * RECORD_SIZE, fractions);
+            if(flags == 0) continue;
+
+            if((flags & VALID_NON_30W) != 0) {
+                visitor.onHash(FIRST_DAY + i, false, fractions[2], fractions[3]);
+                count++;
+            }
+
+            if((flags & VALID_30W) != 0) {
+                visitor.onHash(FIRST_DAY + i, true, fractions[0], fractions[1]);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private int readRecord(int pos, @NonNull double[] out) {
+        // Same as get, only for the whole record: 30W fractions first, then
+        // non-30W.  The file only ever grows, so pos is always in range.
+        for(int tries = 0; tries < OPTIMISTIC_TRIES; tries++) {
+            int seq = mSequence.get();
+            if((seq & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            MappedByteBuffer buf = mBuffer;
+            int flags = buf.getInt(pos + OFFSET_FLAGS);
+            double lat30W = buf.getDouble(pos + OFFSET_30W);
+            double lon30W = buf.getDouble(pos + OFFSET_30W + 8);
+            double latNon30W = buf.getDouble(pos + OFFSET_NON_30W);
+            double lonNon30W = buf.getDouble(pos + OFFSET_NON_30W + 8);
+
+            if(mSequence.getAndAdd(0) != seq) continue;
+
+            out[0] = lat30W;
+            out[1] = lon30W;
+            out[2] = latNon30W;
+            out[3] = lonNon30W;
+            return flags;
+        }
+
+        synchronized(this) {
+            MappedByteBuffer buf = mBuffer;
+            out[0] = buf.getDouble(pos + OFFSET_30W);
+            out[1] = buf.getDouble(pos + OFFSET_30W + 8);
+            out[2] = buf.getDouble(pos + OFFSET_NON_30W);
+            out[3] = buf.getDouble(pos + OFFSET_NON_30W + 8);
+            return buf.getInt(pos + OFFSET_FLAGS);
+        }
+    }
+
+    /**
+     * Empties out the atlas entirely.  The file stays the same size; every
+     * record just gets marked empty.
+     */
+    public synchronized void clear() {
+        MappedByteBuffer buf = mBuffer;
+        int records = (buf.capacity() - HEADER_SIZE) / RECORD_SIZE;
+
+        mSequence.incrementAndGet();
+        try {
+            for(int i = 0; i < records; i++) {
+                int pos = HEADER_SIZE + i * RECORD_SIZE;
+                if(buf.getInt(pos + OFFSET_FLAGS) != 0) buf.putInt(pos + OFFSET_FLAGS, 0);
+            }
+
+            mCount = 0;
+        } finally {
+            mSequence.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets how many hashes are in the atlas, 30W and non-30W counted
+     * separately.
+     *
+     * @return how many hashes there are
+     */
+    public synchronized int getHashCount() {
+        return mCount;
+    }
+
+    /**
+     * <p>
+     * Throws out hashes if there are more than maxHashes of them.  The atlas
+     * doesn't keep track of when anything was looked up, so the oldest dates
+     * go first (non-30W before 30W on the same day).  It keeps a running
+     * count, so if it's not over, this doesn't even look at the file.  If it
+     * IS over, it goes down to an eighth under maxHashes, so the next few
+     * writes don't set it off all over again.
+     * </p>
+     *
+     * <p>
+     * Anything on or after pinFrom stays no matter what, unless maxHashes is
+     * zero, in which case everything goes.
+     * </p>
+     *
+     * @param maxHashes how many hashes the atlas can hold
+     * @param pinFrom the first day that's pinned
+     * @return how many hashes were thrown out
+     */
+    public synchronized int prune(int maxHashes, int pinFrom) {
+        if(maxHashes < 0)
+            throw new IllegalArgumentException("The atlas can't hold fewer than zero hashes, not " + maxHashes);
+
+        if(mCount == 0 || (maxHashes != 0 && mCount <= maxHashes)) return 0;
+
+        int target = maxHashes - maxHashes / 8;
+        MappedByteBuffer buf = mBuffer;
+        int records = (buf.capacity() - HEADER_SIZE) / RECORD_SIZE;
+        int pruned = 0;
+
+        mSequence.incrementAndGet();
+        try {
+            for(int i = 0; i < records && mCount > target; i++) {
+                if(maxHashes != 0 && FIRST_DAY + i >= pinFrom) break;
+
+                int pos = HEADER_SIZE + i * RECORD_SIZE + OFFSET_FLAGS;
+                int flags = buf.getInt(pos);
+                if(flags == 0) continue;
+
+                for(int bit : VALID_BITS) {
+                    if((flags & bit) != 0 && mCount > target) {
+                        flags &= ~bit;
+                        mCount--;
+                        pruned++;
+                    }
+                }
+
+                buf.putInt(pos, flags);
+            }
+        } finally {
+            mSequence.incrementAndGet();
+        }
+
+        return pruned;
+    }
+
+    /**
+     * Closes the underlying file.  Don't use the atlas after this.
+     */
+    public synchronized void close() {
+        try {
+            mFile.close();
+        } catch (IOException ioe) {
+            // Well, we tried.
+        }
+    }
+
+    private static int recordPosition(int epochDay) {
+        // Long math, so a ridiculous date can't wrap around into a sensible
+        // position.
+        if(epochDay < FIRST_DAY || (long)epochDay > (long)EpochDay.today() + MAX_DAYS_AHEAD) return -1;
+
+        long pos = HEADER_SIZE + ((long)epochDay - FIRST_DAY) * RECORD_SIZE;
+        return pos + RECORD_SIZE > Integer.MAX_VALUE ? -1 : (int)pos;
+    }
+}
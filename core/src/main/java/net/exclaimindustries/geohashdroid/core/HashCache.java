@@ -0,0 +1,206 @@
+/*
+ * HashCache.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A <code>HashCache</code> is a small, bounded, in-memory cache of hash
+ * fractions, keyed on the date and whether or not the 30W Rule applies.  It
+ * sits in front of everything else (the atlas, the database, the internet),
+ * so it's what gets hit when the map, the nearby points, and the alarm all
+ * ask for the same few hashes over and over.  Only the fractions are stored;
+ * whoever asks can put them in whatever graticule they want.
+ * </p>
+ *
+ * <p>
+ * Note that there's no separate key for globalhashes.  A globalhash always
+ * uses the 30W Rule, and its fractions are exactly the same as any 30W
+ * graticule's on that day, so they share an entry.
+ * </p>
+ *
+ * <p>
+ * The cache is split into stripes by date, each with its own lock, so any
+ * number of threads can use it at once and only ever wait on someone looking
+ * at a date in the same stripe.  Consecutive dates land in different stripes,
+ * so a run of dates (say, flipping through a week of retrohashes) gets spread
+ * evenly across all of them.  Each stripe throws out whatever it used least
+ * recently when it fills up.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class HashCache {
+    // This had better be a power of two.
+    private static final int STRIPES = 8;
+
+    private final Stripe[] mStripes;
+
+    /**
+     * One stripe's worth of entries.  These are small enough that going down
+     * the list is quicker than hashing anything, and it means nothing gets
+     * allocated on a lookup.
+     */
+    private static class Stripe {
+        final int[] keys;
+        final double[] latHashes;
+        final double[] lonHashes;
+        final long[] lastUsed;
+        int count;
+        long clock;
+
+        Stripe(int size) {
+            keys = new int[size];
+            latHashes = new double[size];
+            lonHashes = new double[size];
+            lastUsed = new long[size];
+        }
+
+        int find(int key) {
+            for(int i = 0; i < count; i++) {
+                if(keys[i] == key) return i;
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Makes a new, empty cache.  The capacity gets rounded up so it divides
+     * evenly among the stripes.  Since consecutive dates go to different
+     * stripes, anything up to a couple entries per stripe is guaranteed to
+     * stay put for any run of that many days, 30W or not.
+     *
+     * @param capacity the most entries to keep around
+     * @throws IllegalArgumentException capacity wasn't positive
+     */
+    public HashCache(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The capacity has to be positive, not " + capacity);
+
+        int perStripe = (capacity + STRIPES - 1) / STRIPES;
+        mStripes = new Stripe[STRIPES];
+        for(int i = 0; i < STRIPES; i++)
+            mStripes[i] = new Stripe(perStripe);
+    }
+
+    /**
+     * Gets the total number of entries this can hold.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return mStripes[0].keys.length * STRIPES;
+    }
+
+    /**
+     * Looks up the fractions for a date.  The output array gets the latitude
+     * in {@link HashEngine#LATITUDE} and the longitude in
+     * {@link HashEngine#LONGITUDE}, and is left alone if there's nothing in
+     * the cache.
+     *
+     * @param epochDay the expedition date (NOT the stock date)
+     * @param uses30W true for the 30W fractions (including globalhashes)
+     * @param out a two-element array to hold the fractions
+     * @return true if the fractions were found, false if not
+     */
+    public boolean get(int epochDay, boolean uses30W, @NonNull double[] out) {
+        int key = makeKey(epochDay, uses30W);
+        Stripe stripe = getStripe(epochDay);
+
+        synchronized(stripe) {
+            int index = stripe.find(key);
+            if(index < 0) return false;
+
+            out[HashEngine.LATITUDE] = stripe.latHashes[index];
+            out[HashEngine.LONGITUDE] = stripe.lonHashes[index];
+            stripe.lastUsed[index] = ++stripe.clock;
+            return true;
+        }
+    }
+
+    /**
+     * Puts a set of fractions in the cache, replacing whatever was there for
+     * the same date and 30W-ness.  If the date's stripe is full, the entry
+     * that was used least recently gets the boot.
+     *
+     * @param epochDay the expedition date (NOT the stock date)
+     * @param uses30W true for the 30W fractions (including globalhashes)
+     * @param latHash the fractional part of the latitude
+     * @param lonHash the fractional part of the longitude
+     */
+    public void put(int epochDay, boolean uses30W, double latHash, double lonHash) {
+        int key = makeKey(epochDay, uses30W);
+        Stripe stripe = getStripe(epochDay);
+
+        synchronized(stripe) {
+            int index = stripe.find(key);
+
+            if(index < 0) {
+                if(stripe.count < stripe.keys.length) {
+                    // Room to spare.
+                    index = stripe.count++;
+                } else {
+                    // Full up.  Out with the oldest.
+                    index = 0;
+                    for(int i = 1; i < stripe.count; i++) {
+                        if(stripe.lastUsed[i] < stripe.lastUsed[index])
+                            index = i;
+                    }
+                }
+
+                stripe.keys[index] = key;
+            }
+
+            stripe.latHashes[index] = latHash;
+            stripe.lonHashes[index] = lonHash;
+            stripe.lastUsed[index] = ++stripe.clock;
+        }
+    }
+
+    /**
+     * Gets how many entries are in the cache right now.  With other threads
+     * going at it, this might be stale by the time it comes back.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        int total = 0;
+
+        for(Stripe stripe : mStripes) {
+            synchronized(stripe) {
+                total += stripe.count;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Empties out the cache entirely.
+     */
+    public void clear() {
+        for(Stripe stripe : mStripes) {
+            synchronized(stripe) {
+                stripe.count = 0;
+                Arrays.fill(stripe.lastUsed, 0);
+            }
+        }
+    }
+
+    private Stripe getStripe(int epochDay) {
+        return mStripes[epochDay & (STRIPES - 1)];
+    }
+
+    private static int makeKey(int epochDay, boolean uses30W) {
+        return (epochDay << 1) | (uses30W ? 1 : 0);
+    }
+}
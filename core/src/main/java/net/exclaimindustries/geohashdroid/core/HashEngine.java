@@ -0,0 +1,237 @@
+/*
+ * HashEngine.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import net.exclaimindustries.tools.HexFraction;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ * <code>HashEngine</code> does the actual math of the Geohashing algorithm:
+ * take a date and a stock value, MD5 them together, and turn the two halves of
+ * the digest into the latitude and longitude fractions.  That's it.  It doesn't
+ * know anything about the 30W Rule, graticules, or where the stock value came
+ * from; that's all up to whoever's calling it.
+ * </p>
+ *
+ * <p>
+ * The point of this being its own thing is that it goes straight from the
+ * digest bytes to the fractions without building any Strings along the way.
+ * Each thread gets its own MessageDigest and scratch buffers, so this can be
+ * called from as many workers at once as need be without locking or
+ * allocating.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class HashEngine {
+    /** The length of an MD5 digest, in bytes. */
+    public static final int DIGEST_LENGTH = 16;
+
+    /** Index of the latitude fraction in the output array. */
+    public static final int LATITUDE = 0;
+    /** Index of the longitude fraction in the output array. */
+    public static final int LONGITUDE = 1;
+
+    // Room for "YYYY-MM-DD-" plus any sane stock value.  The buffer grows if
+    // the stock's longer than that, which it really shouldn't ever be.
+    private static final int INITIAL_INPUT_LENGTH = 64;
+
+    /**
+     * The per-thread bits and pieces.  Once a thread has one of these, it
+     * never needs to allocate anything to make a hash again.
+     */
+    private static class Scratch {
+        final MessageDigest digest;
+        final byte[] output = new byte[DIGEST_LENGTH];
+        byte[] input = new byte[INITIAL_INPUT_LENGTH];
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                // No, seriously, if this fails, we're all doomed.
+                throw new IllegalStateException("This device doesn't have MD5?", e);
+            }
+        }
+
+        @NonNull
+        byte[] ensureInput(int length) {
+            if(input.length < length)
+                input = new byte[Math.max(length, input.length * 2)];
+            return input;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private HashEngine() { }
+
+    /**
+     * Computes the latitude and longitude fractions for the given date and
+     * stock value.  The date is the REAL date, not the 30W-adjusted one (that
+     * only matters for figuring out which stock to use).  The fractions go in
+     * out[{@link #LATITUDE}] and out[{@link #LONGITUDE}].
+     *
+     * @param year four-digit year
+     * @param month month, starting at 1 for January (NOT Calendar-style)
+     * @param day day of the month
+     * @param stock the stock value, as ASCII bytes (i.e. "10458.68")
+     * @param stockOffset where in stock the value starts
+     * @param stockLength how many bytes of stock to use
+     * @param out array of at least two doubles to receive the fractions
+     */
+    public static void makeFractions(int year, int month, int day,
+                                     @NonNull byte[] stock, int stockOffset, int stockLength,
+                                     @NonNull double[] out) {
+        Scratch scratch = SCRATCH.get();
+        byte[] input = scratch.ensureInput(maxDatePrefixLength(year) + stockLength);
+        int length = writeDatePrefix(input, year, month, day);
+        System.arraycopy(stock, stockOffset, input, length, stockLength);
+        length += stockLength;
+
+        digestInto(scratch, input, length);
+        fractionsFromDigest(scratch.output, out);
+    }
+
+    /**
+     * Computes the latitude and longitude fractions for the given date and
+     * stock value, with the stock value given as characters.  Each char is
+     * truncated to its low byte, same as it always has been with the hash
+     * input.
+     *
+     * @param year four-digit year
+     * @param month month, starting at 1 for January (NOT Calendar-style)
+     * @param day day of the month
+     * @param stock the stock value (i.e. "10458.68")
+     * @param out array of at least two doubles to receive the fractions
+     */
+    public static void makeFractions(int year, int month, int day,
+                                     @NonNull CharSequence stock,
+                                     @NonNull double[] out) {
+        Scratch scratch = SCRATCH.get();
+        int length = fillInput(scratch, year, month, day, stock);
+
+        digestInto(scratch, scratch.input, length);
+        fractionsFromDigest(scratch.output, out);
+    }
+
+    /**
+     * Computes the raw MD5 digest for the given date and stock value.  This
+     * is mostly for anything that still wants the hash as hex; the fractions
+     * themselves come out of {@link #makeFractions(int, int, int, CharSequence, double[])}
+     * a lot more directly.
+     *
+     * @param year four-digit year
+     * @param month month, starting at 1 for January (NOT Calendar-style)
+     * @param day day of the month
+     * @param stock the stock value (i.e. "10458.68")
+     * @param dest array of at least {@link #DIGEST_LENGTH} bytes to receive
+     *             the digest
+     */
+    public static void makeDigest(int year, int month, int day,
+                                  @NonNull CharSequence stock,
+                                  @NonNull byte[] dest) {
+        Scratch scratch = SCRATCH.get();
+        int length = fillInput(scratch, year, month, day, stock);
+
+        digestInto(scratch, scratch.input, length);
+        System.arraycopy(scratch.output, 0, dest, 0, DIGEST_LENGTH);
+    }
+
+    /**
+     * Splits a 16-byte MD5 digest into its latitude and longitude fractions.
+     * The first eight bytes are the latitude, the last eight the longitude.
+     *
+     * @param digest the digest
+     * @param out array of at least two doubles to receive the fractions
+     */
+    public static void fractionsFromDigest(@NonNull byte[] digest, @NonNull double[] out) {
+        out[LATITUDE] = HexFraction.calculate(digest, 0);
+        out[LONGITUDE] = HexFraction.calculate(digest, HexFraction.FRACTION_BYTES);
+    }
+
+    private static int fillInput(@NonNull Scratch scratch, int year, int month, int day,
+                                 @NonNull CharSequence stock) {
+        byte[] input = scratch.ensureInput(maxDatePrefixLength(year) + stock.length());
+        int length = writeDatePrefix(input, year, month, day);
+
+        for(int i = 0; i < stock.length(); i++) {
+            input[length++] = (byte)(stock.charAt(i) & 0xFF);
+        }
+
+        return length;
+    }
+
+    private static void digestInto(@NonNull Scratch scratch, @NonNull byte[] input, int length) {
+        MessageDigest diggy = scratch.digest;
+        diggy.update(input, 0, length);
+
+        try {
+            diggy.digest(scratch.output, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            // This only happens if the output buffer's too small, and it's
+            // always exactly the right size.
+            throw new IllegalStateException("MD5 digest didn't fit in 16 bytes?", e);
+        }
+    }
+
+    private static int maxDatePrefixLength(int year) {
+        // Year (at least four wide), two hyphens, month, day, and the trailing
+        // hyphen.  Anything past four digits of year just makes it longer.
+        return Math.max(4, countDigits(year)) + 7;
+    }
+
+    private static int countDigits(int value) {
+        // Calendar never gives us negatives for any of these, so we don't need
+        // to worry about signs.
+        int digits = 1;
+        for(int v = value / 10; v != 0; v /= 10) digits++;
+        return digits;
+    }
+
+    /**
+     * Writes "YYYY-MM-DD-" into the buffer, exactly as String.format's
+     * "%4d-%02d-%02d-" would have.  That is, the year is space-padded to four
+     * characters, and the month and day are zero-padded to two.
+     */
+    private static int writeDatePrefix(@NonNull byte[] buf, int year, int month, int day) {
+        int pos = writeNumber(buf, 0, year, 4, (byte)' ');
+        buf[pos++] = '-';
+        pos = writeNumber(buf, pos, month, 2, (byte)'0');
+        buf[pos++] = '-';
+        pos = writeNumber(buf, pos, day, 2, (byte)'0');
+        buf[pos++] = '-';
+        return pos;
+    }
+
+    private static int writeNumber(@NonNull byte[] buf, int pos, int value, int width, byte pad) {
+        // Count the digits first so we know where to start writing.
+        int digits = countDigits(value);
+
+        for(int i = digits; i < width; i++) buf[pos++] = pad;
+
+        int end = pos + digits;
+        for(int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte)('0' + (value % 10));
+            value /= 10;
+        }
+
+        return end;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * HedgedFetch.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * <code>HedgedFetch</code> asks a list of sources (stock mirrors, say) for
+ * the same thing, and takes whichever answer comes back first.  The first
+ * source goes right away.  If it hasn't answered after the hedge delay, the
+ * next one goes too, and so on down the list.  If everything that's running
+ * has failed, the next one goes right away instead of waiting out the delay.
+ * As soon as one of them answers, the rest get cancelled.
+ * </p>
+ *
+ * <p>
+ * With a delay longer than any source ever takes, this is the same as trying
+ * each one in order.  With a delay of zero, they all go at once.
+ * </p>
+ *
+ * <p>
+ * If they ALL fail, what gets thrown is a FileNotFoundException if any of
+ * them threw one (that is, if any of them said it's not there, as opposed to
+ * just falling over), or an IOException otherwise.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class HedgedFetch {
+    /**
+     * One source to try.  This will be run on whatever Executor was handed to
+     * {@link #fetch(Executor, List, long)}, and may be cancelled from another
+     * thread.
+     */
+    public interface Attempt {
+        /**
+         * Goes and gets it.  Anything returned is taken as the answer, so if
+         * the answer needs checking, check it in here and throw if it's no
+         * good.
+         *
+         * @return the answer
+         * @throws FileNotFoundException the source says it's not there
+         * @throws IOException anything else went wrong
+         */
+        @NonNull
+        String run() throws IOException;
+
+        /**
+         * Stops {@link #run()}, if it's running.  It should throw soon after.
+         * This can be called even if it never started.
+         */
+        void cancel();
+    }
+
+    /** What one attempt came back with. */
+    private static class Outcome {
+        final String result;
+        final IOException error;
+
+        Outcome(String result, IOException error) {
+            this.result = result;
+            this.error = error;
+        }
+    }
+
+    private HedgedFetch() { }
+
+    /**
+     * Runs the attempts, hedged, and returns the first answer.  This blocks
+     * until there's an answer or everything's failed.  Anything still
+     * running at that point is cancelled, but this doesn't wait around for
+     * it to notice.
+     *
+     * @param executor where the attempts run (it needs to be able to run as
+     *                 many at once as there are attempts, or the hedging
+     *                 won't do much)
+     * @param attempts the attempts, in order of preference
+     * @param hedgeDelayMs how long to wait on each attempt before starting
+     *                     the next one as well
+     * @return the first answer
+     * @throws FileNotFoundException every attempt failed, and at least one
+     *                               said it's not there
+     * @throws IOException every attempt failed (or this got interrupted)
+     */
+    @NonNull
+    public static String fetch(@NonNull Executor executor,
+                               @NonNull List<? extends Attempt> attempts,
+                               long hedgeDelayMs) throws IOException {
+        if(attempts.isEmpty()) throw new IOException("Nothing to fetch from");
+
+        final LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, hedgeDelayMs));
+        int launched = 0;
+        int finished = 0;
+        boolean notFound = false;
+        IOException lastError = null;
+
+        try {
+            launch(executor, attempts.get(launched++), outcomes);
+            long nextLaunch = System.nanoTime() + delayNanos;
+
+            while(finished < launched) {
+                Outcome outcome;
+
+                if(launched < attempts.size()) {
+                    // There's still more to go, so only wait until it's time
+                    // to start the next one.
+                    outcome = outcomes.poll(nextLaunch - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                    if(outcome == null) {
+                        launch(executor, attempts.get(launched++), outcomes);
+                        nextLaunch = System.nanoTime() + delayNanos;
+                        continue;
+                    }
+                } else {
+                    outcome = outcomes.take();
+                }
+
+                finished++;
+
+                if(outcome.result != null) return outcome.result;
+
+                if(outcome.error instanceof FileNotFoundException) notFound = true;
+                lastError = outcome.error;
+
+                // If everything that's going has failed, don't bother waiting
+                // out the rest of the delay.
+                if(finished == launched && launched < attempts.size()) {
+                    launch(executor, attempts.get(launched++), outcomes);
+                    nextLaunch = System.nanoTime() + delayNanos;
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching");
+        } finally {
+            // Whatever's still going, we don't need it anymore.  Attempts
+            // that already finished don't mind being cancelled.
+            for(int i = 0; i < launched; i++) attempts.get(i).cancel();
+        }
+
+        if(notFound) throw new FileNotFoundException();
+        throw new IOException("Every attempt failed", lastError);
+    }
+
+    private static void launch(@NonNull Executor executor,
+                               @NonNull final Attempt attempt,
+                               @NonNull final LinkedBlockingQueue<Outcome> outcomes) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    outcomes.add(new Outcome(attempt.run(), null));
+                } catch (IOException ioe) {
+                    outcomes.add(new Outcome(null, ioe));
+                } catch (RuntimeException re) {
+                    outcomes.add(new Outcome(null, new IOException(re)));
+                }
+            }
+        });
+    }
+}
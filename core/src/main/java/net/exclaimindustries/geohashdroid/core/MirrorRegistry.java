@@ -0,0 +1,302 @@
+/*
+ * MirrorRegistry.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>
+ * A <code>MirrorRegistry</code> keeps the list of stock mirrors and how well
+ * each one has been doing lately: how long it takes to answer, how often it
+ * falls over, and how often it says the stock isn't posted (which, for a
+ * mirror that's usually behind the others, is a lot).  All three are
+ * exponentially weighted, so a mirror that was bad last month and good today
+ * counts as good.
+ * </p>
+ *
+ * <p>
+ * {@link #getRanked()} puts the mirrors in order of how long it'd take,
+ * on average, to get a stock out of each: its usual latency divided by how
+ * likely it is to come through.  A mirror we've never heard from gets the
+ * benefit of the doubt, and mirrors that come out even stay in the order
+ * they were configured.
+ * </p>
+ *
+ * <p>
+ * Mirrors are URL templates, in which %Y is the four-digit year, %m is the
+ * zero-padded month, and %d is the zero-padded day (see
+ * {@link #makeUrl(String, int)}).  The whole thing can be saved to a string
+ * and loaded back later, so it doesn't have to learn everything over again
+ * every time the process starts.  This is thread-safe.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class MirrorRegistry {
+    /** The mirror came back with a stock. */
+    public static final int SUCCESS = 0;
+    /** The mirror said the stock isn't posted yet. */
+    public static final int NOT_POSTED = 1;
+    /** The mirror fell over (timed out, bad response, what have you). */
+    public static final int ERROR = 2;
+
+    // How much each new result counts against everything before it.
+    private static final double ALPHA = 0.2;
+    // What a mirror we've never heard from is assumed to take.
+    private static final double DEFAULT_LATENCY_MS = 1000;
+    // No matter how bad a mirror gets, it's never hopeless.  It might come
+    // back.
+    private static final double MIN_SUCCESS_CHANCE = 0.05;
+    // Not posted isn't entirely the mirror's fault (nobody has it before the
+    // opening bell), so it only counts half as much as falling over.
+    private static final double NOT_POSTED_WEIGHT = 0.5;
+
+    private static final int SAVE_VERSION = 1;
+
+    private static class Health {
+        double latencyMs = DEFAULT_LATENCY_MS;
+        double errorRate;
+        double notPostedRate;
+        long samples;
+
+        double getExpectedMillis() {
+            double chance = 1.0 - errorRate - NOT_POSTED_WEIGHT * notPostedRate;
+            return latencyMs / Math.max(MIN_SUCCESS_CHANCE, chance);
+        }
+    }
+
+    // Template to health, in configured order.
+    private final Map<String, Health> mMirrors = new LinkedHashMap<>();
+
+    /**
+     * Makes a new registry with the given mirrors, none of which have any
+     * track record yet.
+     *
+     * @param templates the mirrors' URL templates, in order of preference
+     */
+    public MirrorRegistry(@NonNull List<String> templates) {
+        setMirrors(templates);
+    }
+
+    /**
+     * Changes which mirrors are in the registry.  Anything that was already
+     * in there keeps its track record; anything new starts fresh; anything
+     * not in the list is dropped.
+     *
+     * @param templates the mirrors' URL templates, in order of preference
+     */
+    public synchronized void setMirrors(@NonNull List<String> templates) {
+        Map<String, Health> old = new LinkedHashMap<>(mMirrors);
+        mMirrors.clear();
+
+        for(String template : templates) {
+            Health health = old.get(template);
+            mMirrors.put(template, health != null ? health : new Health());
+        }
+    }
+
+    /**
+     * Gets the mirrors in the order they were configured.
+     *
+     * @return the mirrors' URL templates
+     */
+    @NonNull
+    public synchronized List<String> getMirrors() {
+        return new ArrayList<>(mMirrors.keySet());
+    }
+
+    /**
+     * Gets the mirrors, best first.  Best is whichever would get us a stock
+     * fastest, on average.
+     *
+     * @return the mirrors' URL templates, best first
+     */
+    @NonNull
+    public synchronized List<String> getRanked() {
+        List<String> ranked = new ArrayList<>(mMirrors.keySet());
+
+        // The sort's stable, so ties stay in configured order.
+        Collections.sort(ranked, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Double.compare(mMirrors.get(a).getExpectedMillis(),
+                        mMirrors.get(b).getExpectedMillis());
+            }
+        });
+
+        return ranked;
+    }
+
+    /**
+     * Records how a request to a mirror went.  Latency only counts when the
+     * mirror actually answered (with a stock or with a 404); a connection
+     * that got refused in two milliseconds shouldn't make a mirror look fast.
+     * If the mirror isn't in the registry, this does nothing.
+     *
+     * @param template the mirror's URL template
+     * @param outcome {@link #SUCCESS}, {@link #NOT_POSTED}, or {@link #ERROR}
+     * @param latencyMs how long it took
+     */
+    public synchronized void record(@NonNull String template, int outcome, long latencyMs) {
+        Health health = mMirrors.get(template);
+        if(health == null) return;
+
+        // The very first answer replaces the default outright.
+        if(outcome != ERROR) {
+            if(health.samples == 0)
+                health.latencyMs = latencyMs;
+            else
+                health.latencyMs += ALPHA * (latencyMs - health.latencyMs);
+        }
+
+        health.errorRate += ALPHA * ((outcome == ERROR ? 1 : 0) - health.errorRate);
+        health.notPostedRate += ALPHA * ((outcome == NOT_POSTED ? 1 : 0) - health.notPostedRate);
+        health.samples++;
+    }
+
+    /**
+     * Gets how long, on average, it'd take to get a stock out of a mirror.
+     *
+     * @param template the mirror's URL template
+     * @return the expected time in milliseconds, or -1 if it's not in here
+     */
+    public synchronized double getExpectedMillis(@NonNull String template) {
+        Health health = mMirrors.get(template);
+        return health == null ? -1 : health.getExpectedMillis();
+    }
+
+    /**
+     * Writes the track record of every mirror to a string, for
+     * {@link #load(String)} later.
+     *
+     * @return the saved state
+     */
+    @NonNull
+    public synchronized String save() {
+        StringBuilder out = new StringBuilder();
+        out.append(SAVE_VERSION).append('\n');
+
+        for(Map.Entry<String, Health> entry : mMirrors.entrySet()) {
+            Health health = entry.getValue();
+            if(health.samples == 0) continue;
+
+            out.append(String.format(Locale.US, "%.3f\t%.5f\t%.5f\t%d\t%s\n",
+                    health.latencyMs,
+                    health.errorRate,
+                    health.notPostedRate,
+                    health.samples,
+                    entry.getKey()));
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Loads whatever {@link #save()} wrote.  Only mirrors that are in the
+     * registry right now get loaded; the rest are ignored, as is anything
+     * that doesn't make sense.
+     *
+     * @param saved the saved state (null is fine, and does nothing)
+     */
+    public synchronized void load(@Nullable String saved) {
+        if(saved == null) return;
+
+        String[] lines = saved.split("\n");
+        if(lines.length == 0 || !lines[0].trim().equals(Integer.toString(SAVE_VERSION))) return;
+
+        for(int i = 1; i < lines.length; i++) {
+            String[] parts = lines[i].split("\t", 5);
+            if(parts.length != 5) continue;
+
+            Health health = mMirrors.get(parts[4]);
+            if(health == null) continue;
+
+            try {
+                double latency = Double.parseDouble(parts[0]);
+                double errorRate = Double.parseDouble(parts[1]);
+                double notPostedRate = Double.parseDouble(parts[2]);
+                long samples = Long.parseLong(parts[3]);
+
+                if(latency < 0 || errorRate < 0 || errorRate > 1
+                        || notPostedRate < 0 || notPostedRate > 1 || samples < 0)
+                    continue;
+
+                health.latencyMs = latency;
+                health.errorRate = errorRate;
+                health.notPostedRate = notPostedRate;
+                health.samples = samples;
+            } catch (NumberFormatException nfe) {
+                // Then we'll just start this one over.
+            }
+        }
+    }
+
+    /**
+     * Checks if a URL template looks usable: http or https, with a year, a
+     * month, and a day in it somewhere.
+     *
+     * @param template the template to check
+     * @return true if it's good, false if not
+     */
+    public static boolean isValidTemplate(@NonNull String template) {
+        String lower = template.toLowerCase(Locale.US);
+
+        return (lower.startsWith("http://") || lower.startsWith("https://"))
+                && template.contains("%Y")
+                && template.contains("%m")
+                && template.contains("%d")
+                && !template.matches(".*\\s.*");
+    }
+
+    /**
+     * Pulls URL templates out of a string, one per line (or separated by any
+     * whitespace, really).  Anything that isn't a valid template is left
+     * out, as are duplicates.
+     *
+     * @param templates the string to parse
+     * @return the valid templates, in order
+     */
+    @NonNull
+    public static List<String> parseTemplates(@Nullable String templates) {
+        List<String> toReturn = new ArrayList<>();
+        if(templates == null) return toReturn;
+
+        for(String template : templates.trim().split("\\s+")) {
+            if(isValidTemplate(template) && !toReturn.contains(template))
+                toReturn.add(template);
+        }
+
+        return toReturn;
+    }
+
+    /**
+     * Fills in a URL template for the given stock date.
+     *
+     * @param template the template
+     * @param stockDay the stock date (already adjusted for weekends, 30W, and
+     *                 so on)
+     * @return the URL
+     */
+    @NonNull
+    public static String makeUrl(@NonNull String template, int stockDay) {
+        return template.replace("%Y", String.format(Locale.US, "%04d", EpochDay.getYear(stockDay)))
+                .replace("%m", String.format(Locale.US, "%02d", EpochDay.getMonth(stockDay)))
+                .replace("%d", String.format(Locale.US, "%02d", EpochDay.getDay(stockDay)));
+    }
+}
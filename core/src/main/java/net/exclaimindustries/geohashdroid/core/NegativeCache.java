@@ -0,0 +1,160 @@
+/*
+ * NegativeCache.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <p>
+ * A <code>NegativeCache</code> remembers stock lookups that DIDN'T work, so
+ * that everything that asks for the same stock date in the next few minutes
+ * can be told "no" without going back out to the internet.  The alarm, the
+ * expedition screen, and the eight nearby graticules all tend to ask at once,
+ * and there's no sense hammering the servers eight times for a stock that
+ * isn't there.
+ * </p>
+ *
+ * <p>
+ * There's two kinds of failure, each with its own time to live: the stock not
+ * being posted yet (which usually means it'll be there soon, so the TTL should
+ * be short-ish) and a server error (which might clear up any second, so the
+ * TTL should be shorter still).  Either one goes away the moment a fetch for
+ * that date actually succeeds, via {@link #invalidate(int)}.
+ * </p>
+ *
+ * <p>
+ * Times are whatever monotonic milliseconds the caller wants to use, so long
+ * as it's consistent about it.  On Android, that'd be
+ * <code>SystemClock.elapsedRealtime()</code>, since the wall clock can jump
+ * around.  This is thread-safe.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class NegativeCache {
+    /** Nothing's cached for that date (or whatever was there expired). */
+    public static final int NONE = 0;
+    /** The stock wasn't posted yet, last we checked. */
+    public static final int NOT_POSTED = 1;
+    /** Every server fell over, last we checked. */
+    public static final int SERVER_ERROR = 2;
+
+    private final long mNotPostedTtl;
+    private final long mServerErrorTtl;
+
+    // Stock date to result and expiry time.  There's only ever a handful of
+    // stock dates in play, so a plain map's fine.
+    private final Map<Integer, Entry> mEntries = new HashMap<>();
+
+    private static class Entry {
+        final int result;
+        final long expires;
+
+        Entry(int result, long expires) {
+            this.result = result;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Makes a new, empty cache.
+     *
+     * @param notPostedTtl how long, in milliseconds, to remember a stock that
+     *                     wasn't posted yet
+     * @param serverErrorTtl how long, in milliseconds, to remember a server
+     *                       error
+     * @throws IllegalArgumentException either TTL was negative
+     */
+    public NegativeCache(long notPostedTtl, long serverErrorTtl) {
+        if(notPostedTtl < 0 || serverErrorTtl < 0)
+            throw new IllegalArgumentException("TTLs can't be negative (got " + notPostedTtl
+                    + " and " + serverErrorTtl + ")");
+
+        mNotPostedTtl = notPostedTtl;
+        mServerErrorTtl = serverErrorTtl;
+    }
+
+    /**
+     * Looks up what happened the last time the given stock date was fetched.
+     *
+     * @param stockDay the stock date (NOT the expedition date)
+     * @param now the current time, in milliseconds
+     * @return {@link #NOT_POSTED}, {@link #SERVER_ERROR}, or {@link #NONE} if
+     *         there's nothing (unexpired) to report
+     */
+    public synchronized int get(int stockDay, long now) {
+        Entry entry = mEntries.get(stockDay);
+        if(entry == null) return NONE;
+
+        if(now >= entry.expires) {
+            mEntries.remove(stockDay);
+            return NONE;
+        }
+
+        return entry.result;
+    }
+
+    /**
+     * Remembers a failed fetch.  This replaces whatever was there for that
+     * date, and throws out anything else that's expired while it's at it.
+     *
+     * @param stockDay the stock date (NOT the expedition date)
+     * @param result {@link #NOT_POSTED} or {@link #SERVER_ERROR}
+     * @param now the current time, in milliseconds
+     * @throws IllegalArgumentException result wasn't a failure
+     */
+    public synchronized void put(int stockDay, int result, long now) {
+        long ttl;
+
+        switch(result) {
+            case NOT_POSTED:
+                ttl = mNotPostedTtl;
+                break;
+            case SERVER_ERROR:
+                ttl = mServerErrorTtl;
+                break;
+            default:
+                throw new IllegalArgumentException("That's not a failure: " + result);
+        }
+
+        Iterator<Entry> iter = mEntries.values().iterator();
+        while(iter.hasNext()) {
+            if(now >= iter.next().expires) iter.remove();
+        }
+
+        mEntries.put(stockDay, new Entry(result, now + ttl));
+    }
+
+    /**
+     * Forgets about any failure for the given stock date.  Call this when a
+     * fetch for it works.
+     *
+     * @param stockDay the stock date (NOT the expedition date)
+     */
+    public synchronized void invalidate(int stockDay) {
+        mEntries.remove(stockDay);
+    }
+
+    /**
+     * Forgets about every failure.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Gets how many failures are being remembered, expired or not.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * SingleFlight.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>
+ * A <code>SingleFlight</code> makes sure only one of something is going on
+ * per key at any given time.  If a task for a key is already running, anyone
+ * else who asks for that key just waits for it and gets the same answer (or
+ * the same exception).  Different keys don't wait on each other at all.
+ * </p>
+ *
+ * <p>
+ * For stocks, the key is the stock date.  The alarm, the expedition screen,
+ * and the eight nearby graticules can all ask for the same stock at once, and
+ * only one of them actually goes out to the internet.  Meanwhile, a retrohash
+ * for some other date goes right ahead without waiting behind any of them.
+ * </p>
+ *
+ * <p>
+ * Once a task's done, it's forgotten.  The next one for that key starts
+ * over; remembering results is the cache's job, not this.  This is
+ * thread-safe.
+ * </p>
+ *
+ * @param <V> whatever the tasks come back with
+ * @author Nicholas Killewald
+ */
+public class SingleFlight<V> {
+    /**
+     * Something to run for a key.
+     *
+     * @param <V> whatever it comes back with
+     */
+    public interface Task<V> {
+        /**
+         * Does it.
+         *
+         * @return the result
+         * @throws IOException it didn't work
+         */
+        V call() throws IOException;
+    }
+
+    private static class Flight<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        V result;
+        IOException error;
+    }
+
+    private final Map<Integer, Flight<V>> mFlights = new HashMap<>();
+
+    /**
+     * Runs the task for the given key, or if one's already running for that
+     * key, waits for it and returns what it did.  Either way, this blocks
+     * until there's an answer.
+     *
+     * @param key what this is for (a stock date, say)
+     * @param task what to run if nothing's running for that key already
+     * @return whatever the task returned
+     * @throws IOException whatever the task threw (or an
+     *                     InterruptedIOException if this got interrupted
+     *                     while waiting)
+     */
+    public V run(int key, @NonNull Task<V> task) throws IOException {
+        Flight<V> flight;
+        boolean leader = false;
+
+        synchronized(mFlights) {
+            flight = mFlights.get(key);
+
+            if(flight == null) {
+                flight = new Flight<>();
+                mFlights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if(!leader) {
+            // Somebody else is on it.  Wait for them.
+            try {
+                flight.done.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting on another request");
+            }
+
+            if(flight.error != null) throw flight.error;
+            return flight.result;
+        }
+
+        try {
+            flight.result = task.call();
+            return flight.result;
+        } catch (IOException ioe) {
+            flight.error = ioe;
+            throw ioe;
+        } catch (RuntimeException | Error e) {
+            // Anyone waiting still needs to hear that it didn't work.
+            flight.error = new IOException(e);
+            throw e;
+        } finally {
+            // Out of the map first, so anyone who shows up after this starts
+            // a new flight instead of picking up this one's leftovers.
+            synchronized(mFlights) {
+                mFlights.remove(key);
+            }
+
+            flight.done.countDown();
+        }
+    }
+
+    /**
+     * Gets how many keys have something running right now.
+     *
+     * @return the number of keys in flight
+     */
+    public int getInFlightCount() {
+        synchronized(mFlights) {
+            return mFlights.size();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * StatsRegistry.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A <code>StatsRegistry</code> holds a {@link TierStats} for every tier that's
+ * been asked for, in the order they were first asked for.  There's one
+ * default registry for the whole process, which is what the app uses; it's
+ * in-memory only, so it starts over every time the process does.
+ * </p>
+ *
+ * <p>
+ * Grabbing a tier takes a lock, but only for as long as it takes to look it
+ * up in a map.  Hang onto the {@link TierStats} if you're going to be using
+ * it a lot; recording into that doesn't lock anything.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class StatsRegistry {
+    private static final StatsRegistry DEFAULT = new StatsRegistry();
+
+    private final Map<String, TierStats> mTiers = new LinkedHashMap<>();
+    private volatile long mStarted;
+
+    /**
+     * Makes a new, empty registry.  You probably want {@link #getDefault()}.
+     */
+    public StatsRegistry() {
+        mStarted = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the process-wide registry.
+     *
+     * @return the default registry
+     */
+    @NonNull
+    public static StatsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the stats for a tier, making them if they don't exist yet.
+     *
+     * @param name the name of the tier
+     * @return its stats
+     */
+    @NonNull
+    public TierStats getTier(@NonNull String name) {
+        synchronized(mTiers) {
+            TierStats stats = mTiers.get(name);
+
+            if(stats == null) {
+                stats = new TierStats(name);
+                mTiers.put(name, stats);
+            }
+
+            return stats;
+        }
+    }
+
+    /**
+     * Gets every tier, in the order they were first asked for.
+     *
+     * @return a list of all the tiers (a copy; go nuts)
+     */
+    @NonNull
+    public List<TierStats> getTiers() {
+        synchronized(mTiers) {
+            return new ArrayList<>(mTiers.values());
+        }
+    }
+
+    /**
+     * Zeroes out every tier and starts the clock over.  The tiers themselves
+     * stick around, so anyone hanging onto one can keep recording into it.
+     */
+    public void reset() {
+        for(TierStats stats : getTiers()) stats.reset();
+        mStarted = System.currentTimeMillis();
+    }
+
+    /**
+     * Makes a text report of every tier, suitable for sticking in an email
+     * or bug report.
+     *
+     * @return the report
+     */
+    @NonNull
+    public String makeReport() {
+        StringBuilder out = new StringBuilder();
+
+        out.append("Counting for ")
+                .append((System.currentTimeMillis() - mStarted) / 1000)
+                .append("s\n\n");
+
+        List<TierStats> tiers = getTiers();
+        if(tiers.isEmpty()) {
+            out.append("Nothing's been looked up yet.\n");
+        }
+
+        for(TierStats stats : tiers) {
+            stats.appendReport(out);
+            out.append('\n');
+        }
+
+        return out.toString();
+    }
+}
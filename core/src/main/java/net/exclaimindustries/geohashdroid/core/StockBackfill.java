@@ -0,0 +1,598 @@
+/*
+ * StockBackfill.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * A <code>StockBackfill</code> fills in every stock for a whole range of
+ * dates in one go, for retrohash browsing and the like.  It works out which
+ * trading days the range needs, skips whichever ones are already stored,
+ * and fetches the rest a few at a time from each mirror.  Results get
+ * committed in batches, not one by one.
+ * </p>
+ *
+ * <p>
+ * Each mirror only ever has so many requests going at once (see
+ * {@link #StockBackfill(Store, Fetcher, List, int, int)}).  A day goes to the
+ * best mirror that's got room for it, and if that mirror falls over, the next
+ * one gets a try, and so on.  A day only counts as not posted if every mirror
+ * says so; for a past date, that's usually a holiday {@link TradingDays}
+ * doesn't know about.
+ * </p>
+ *
+ * <p>
+ * Days finish in whatever order the mirrors answer, so the progress that
+ * gets reported is a low-water mark: every missing day before it is done
+ * with (committed, not posted, or failed).  If the backfill gets cancelled or
+ * the process dies, running it again from that mark picks up where it left
+ * off, without redoing anything that made it to the store.  Days that failed
+ * don't get retried by a resume; running the whole range again will get
+ * them, since they're still missing.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class StockBackfill {
+    /**
+     * Where the stocks come from and go to.
+     */
+    public interface Store {
+        /**
+         * Gets every stock date in the given range that's already stored.
+         *
+         * @param firstStockDay the first stock date
+         * @param lastStockDay the last stock date (inclusive)
+         * @return the stock dates that are stored
+         */
+        @NonNull
+        Set<Integer> getStoredDays(int firstStockDay, int lastStockDay);
+
+        /**
+         * Stores a batch of stocks, all together.  This only ever gets called
+         * from one thread at a time.
+         *
+         * @param stocks stocks, keyed on stock date, oldest first
+         * @throws IOException it couldn't be stored
+         */
+        void commit(@NonNull Map<Integer, String> stocks) throws IOException;
+    }
+
+    /**
+     * <p>
+     * A {@link Store} that keeps everything in a {@link HashAtlas}.  A stock
+     * date counts as stored if its hashes are all in the atlas (see
+     * {@link HashAtlas#hasStock(int)}), and committing a stock stores every
+     * hash that depends on it, then prunes the atlas back down to its budget.
+     * The stocks themselves don't get kept; the hashes are all anything's
+     * going to look up later.
+     * </p>
+     *
+     * <p>
+     * A backfill is a LOT of hashes, a couple per day in the range, so the
+     * atlas's budget had better be a good deal bigger than that.  Otherwise
+     * the oldest ones get pruned right back out, and the next backfill fetches
+     * them all over again.  Today and later are pinned, same as anywhere
+     * else.
+     * </p>
+     */
+    public static class AtlasStore implements Store {
+        private final HashAtlas mAtlas;
+        private final int mMaxHashes;
+
+        /**
+         * Makes a store for the given atlas.
+         *
+         * @param atlas the atlas
+         * @param maxHashes how many hashes the atlas can hold (usually
+         *                  {@link HashAtlas#DEFAULT_MAX_HASHES})
+         */
+        public AtlasStore(@NonNull HashAtlas atlas, int maxHashes) {
+            mAtlas = atlas;
+            mMaxHashes = maxHashes;
+        }
+
+        @NonNull
+        @Override
+        public Set<Integer> getStoredDays(int firstStockDay, int lastStockDay) {
+            Set<Integer> stored = new HashSet<>();
+
+            for(int day = firstStockDay; day <= lastStockDay; day++) {
+                if(mAtlas.hasStock(day)) stored.add(day);
+            }
+
+            return stored;
+        }
+
+        @Override
+        public void commit(@NonNull Map<Integer, String> stocks) throws IOException {
+            for(Map.Entry<Integer, String> entry : stocks.entrySet())
+                mAtlas.putStock(entry.getKey(), entry.getValue());
+
+            mAtlas.prune(mMaxHashes, EpochDay.today());
+        }
+    }
+
+    /**
+     * Goes and gets one stock from one mirror.  This'll be called from a bunch
+     * of threads at once.
+     */
+    public interface Fetcher {
+        /**
+         * Fetches it.
+         *
+         * @param mirror the mirror's URL template
+         * @param stockDay the stock date
+         * @return the stock
+         * @throws FileNotFoundException the mirror says it's not there
+         * @throws IOException anything else went wrong
+         */
+        @NonNull
+        String fetch(@NonNull String mirror, int stockDay) throws IOException;
+    }
+
+    /**
+     * Hears about progress.  This gets called after each batch gets
+     * committed, and once more at the very end.
+     */
+    public interface Listener {
+        /**
+         * Some progress happened.
+         *
+         * @param done how many of the missing days are done with
+         * @param total how many days were missing to start with
+         * @param resumeFrom where to start again if this stops right now
+         */
+        void onProgress(int done, int total, int resumeFrom);
+    }
+
+    /**
+     * How it all went.
+     */
+    public static class Result {
+        private final int mTotal;
+        private final int mFetched;
+        private final int mNotPosted;
+        private final int mFailed;
+        private final int mResumeFrom;
+        private final boolean mFinished;
+
+        Result(int total, int fetched, int notPosted, int failed, int resumeFrom, boolean finished) {
+            mTotal = total;
+            mFetched = fetched;
+            mNotPosted = notPosted;
+            mFailed = failed;
+            mResumeFrom = resumeFrom;
+            mFinished = finished;
+        }
+
+        /** @return how many days were missing to start with */
+        public int getTotal() { return mTotal; }
+        /** @return how many stocks got fetched and committed */
+        public int getFetched() { return mFetched; }
+        /** @return how many days every mirror said weren't there */
+        public int getNotPosted() { return mNotPosted; }
+        /** @return how many days no mirror could answer for */
+        public int getFailed() { return mFailed; }
+        /** @return where to start again, if it didn't finish */
+        public int getResumeFrom() { return mResumeFrom; }
+        /** @return true if it got through every day, false if it got cancelled */
+        public boolean isFinished() { return mFinished; }
+    }
+
+    // What happened to each missing day.
+    private static final int PENDING = 0;
+    private static final int FETCHED = 1;
+    private static final int COMMITTED = 2;
+    private static final int NOT_POSTED = 3;
+    private static final int FAILED = 4;
+
+    private final Store mStore;
+    private final Fetcher mFetcher;
+    private final List<String> mMirrors;
+    private final Semaphore[] mPermits;
+    private final int mPerMirror;
+    private final int mBatchSize;
+    private Listener mListener;
+
+    private volatile boolean mCancelled;
+
+    // Commits (and the progress reports that go with them) happen one at a
+    // time under this, NOT the lock on this.  A commit can take a while, and
+    // the fetch threads shouldn't all be stuck waiting on it just to say
+    // they're done with a day.
+    private final Object mCommitLock = new Object();
+
+    // All guarded by the lock on this.
+    private int[] mDays;
+    private int[] mStates;
+    private int mEnd;
+    private int mLowWater;
+    private int mDone;
+    private int mFetched;
+    private int mNotPosted;
+    private int mFailed;
+    private final Map<Integer, String> mBatch = new LinkedHashMap<>();
+    private IOException mCommitError;
+
+    /**
+     * Sets up a backfill.
+     *
+     * @param store where stocks are and where they go
+     * @param fetcher what actually goes out to the mirrors
+     * @param mirrors the mirrors' URL templates, best first
+     * @param perMirror how many requests each mirror can have going at once
+     * @param batchSize how many stocks get committed at a time
+     */
+    public StockBackfill(@NonNull Store store,
+                         @NonNull Fetcher fetcher,
+                         @NonNull List<String> mirrors,
+                         int perMirror,
+                         int batchSize) {
+        if(mirrors.isEmpty()) throw new IllegalArgumentException("There has to be at least one mirror");
+        if(perMirror < 1) throw new IllegalArgumentException("Each mirror needs at least one connection");
+        if(batchSize < 1) throw new IllegalArgumentException("Batches need at least one stock in them");
+
+        mStore = store;
+        mFetcher = fetcher;
+        mMirrors = new ArrayList<>(mirrors);
+        mPerMirror = perMirror;
+        mBatchSize = batchSize;
+
+        mPermits = new Semaphore[mMirrors.size()];
+        for(int i = 0; i < mPermits.length; i++)
+            mPermits[i] = new Semaphore(perMirror);
+    }
+
+    /**
+     * Sets who hears about progress.
+     *
+     * @param listener the listener (null for nobody)
+     */
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Gets every stock date that any expedition date in the given range
+     * depends on, 30W or not.  That's every trading day from the earliest
+     * 30W stock date through the latest non-30W one.
+     *
+     * @param firstDay the first expedition date
+     * @param lastDay the last expedition date (inclusive)
+     * @return the stock dates, in order
+     */
+    @NonNull
+    public static int[] getStockDays(int firstDay, int lastDay) {
+        if(lastDay < firstDay) return new int[0];
+
+        int first = StockDates.getStockDate(firstDay, true);
+        int last = StockDates.getStockDate(lastDay, false);
+
+        int[] days = new int[last - first + 1];
+        int count = 0;
+
+        for(int day = first; day <= last; day = TradingDays.getTradingDayAfter(day))
+            days[count++] = day;
+
+        int[] toReturn = new int[count];
+        System.arraycopy(days, 0, toReturn, 0, count);
+        return toReturn;
+    }
+
+    /**
+     * Runs the backfill from the start.  See
+     * {@link #run(int, int, int)}.
+     *
+     * @param firstDay the first expedition date
+     * @param lastDay the last expedition date (inclusive)
+     * @return how it went
+     * @throws IOException the store couldn't commit something
+     */
+    @NonNull
+    public Result run(int firstDay, int lastDay) throws IOException {
+        return run(firstDay, lastDay, Integer.MIN_VALUE);
+    }
+
+    /**
+     * <p>
+     * Runs the backfill on the current thread.  This blocks until every
+     * missing stock date from resumeFrom onward in the range is done with,
+     * or until it gets cancelled.  Either way, everything that got fetched is
+     * committed by the time this returns.
+     * </p>
+     *
+     * <p>
+     * Don't call this more than once on the same object.  Make a new one.
+     * </p>
+     *
+     * @param firstDay the first expedition date
+     * @param lastDay the last expedition date (inclusive)
+     * @param resumeFrom the stock date to pick up from (anything before it is
+     *                   skipped), from an earlier {@link Result} or
+     *                   {@link Listener}
+     * @return how it went
+     * @throws IOException the store couldn't commit something, in which case
+     *                     the backfill stops right there
+     */
+    @NonNull
+    public Result run(int firstDay, int lastDay, int resumeFrom) throws IOException {
+        int[] needed = getStockDays(firstDay, lastDay);
+        int end = needed.length == 0 ? resumeFrom : needed[needed.length - 1] + 1;
+
+        // Anything stored already is done.  So is anything before where we
+        // left off last time.
+        List<Integer> missing = new ArrayList<>();
+        if(needed.length > 0) {
+            Set<Integer> stored = mStore.getStoredDays(needed[0], needed[needed.length - 1]);
+
+            for(int day : needed) {
+                if(day >= resumeFrom && !stored.contains(day)) missing.add(day);
+            }
+        }
+
+        synchronized(this) {
+            mDays = new int[missing.size()];
+            for(int i = 0; i < mDays.length; i++) mDays[i] = missing.get(i);
+            mStates = new int[mDays.length];
+            mEnd = end;
+        }
+
+        if(mDays.length == 0) {
+            synchronized(mCommitLock) {
+                report();
+            }
+            return new Result(0, 0, 0, 0, end, true);
+        }
+
+        // One thread per connection, so there's always a mirror with room
+        // for any thread that's got a day to fetch.
+        int threads = Math.min(mDays.length, mMirrors.size() * mPerMirror);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "StockBackfill fetch");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            // Oldest first, so the low-water mark moves along steadily.
+            for(int i = 0; i < mDays.length; i++) {
+                final int index = i;
+                executor.execute(() -> {
+                    Map<Integer, String> batch = finishDay(index, fetchDay(mDays[index]));
+                    if(batch != null) commit(batch);
+                });
+            }
+
+            executor.shutdown();
+
+            while(!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Just keep waiting.  Cancelling only stops new days from
+                // starting, and the ones going now have their own timeouts.
+            }
+        } catch (InterruptedException ie) {
+            mCancelled = true;
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // Whatever's left over goes in now.
+        Map<Integer, String> batch;
+        synchronized(this) {
+            batch = takeBatch();
+        }
+
+        synchronized(mCommitLock) {
+            if(batch != null) commit(batch);
+
+            synchronized(this) {
+                if(mCommitError != null) throw mCommitError;
+            }
+
+            // And once more at the very end, whether or not there was a
+            // batch left.
+            report();
+
+            synchronized(this) {
+                return new Result(mDays.length, mFetched, mNotPosted, mFailed, getResumeFrom(),
+                        mLowWater == mDays.length);
+            }
+        }
+    }
+
+    /**
+     * Stops the backfill.  Days that haven't started yet won't, and
+     * {@link #run(int, int, int)} returns as soon as the ones that have
+     * started are done.  This is safe to call from any thread.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Whether or not {@link #cancel()} got called.
+     *
+     * @return true if this was cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Nullable
+    private Object fetchDay(int stockDay) {
+        // Null means it never got tried.
+        if(mCancelled) return null;
+
+        boolean[] tried = new boolean[mMirrors.size()];
+        boolean notPosted = false;
+
+        while(true) {
+            int mirror;
+
+            try {
+                mirror = acquireMirror(tried);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            if(mirror < 0) break;
+            tried[mirror] = true;
+
+            try {
+                String stock = mFetcher.fetch(mMirrors.get(mirror), stockDay).trim();
+                if(!stock.isEmpty()) return stock;
+            } catch (FileNotFoundException fnfe) {
+                notPosted = true;
+            } catch (IOException | RuntimeException e) {
+                // Next!  Anything that blew up counts as a failure for that
+                // mirror, same as a server error.  If it got away, this day
+                // would never get finished, and the mark would never get
+                // past it.
+            } finally {
+                mPermits[mirror].release();
+            }
+
+            if(mCancelled) return null;
+        }
+
+        return notPosted ? NOT_POSTED : FAILED;
+    }
+
+    private int acquireMirror(@NonNull boolean[] tried) throws InterruptedException {
+        // The best mirror that's got room right now gets it.
+        int firstUntried = -1;
+        for(int i = 0; i < tried.length; i++) {
+            if(tried[i]) continue;
+            if(firstUntried < 0) firstUntried = i;
+            if(mPermits[i].tryAcquire()) return i;
+        }
+
+        // If every mirror we haven't tried is busy (that can only happen after
+        // a failure), wait for the best of them.
+        if(firstUntried >= 0) mPermits[firstUntried].acquire();
+        return firstUntried;
+    }
+
+    @Nullable
+    private synchronized Map<Integer, String> finishDay(int index, @Nullable Object outcome) {
+        // Not tried at all, so it's not done.  It'll get picked up next time.
+        if(outcome == null) return null;
+
+        if(outcome instanceof String) {
+            mStates[index] = FETCHED;
+            mBatch.put(mDays[index], (String)outcome);
+        } else {
+            mStates[index] = (Integer)outcome;
+            if(mStates[index] == NOT_POSTED) mNotPosted++; else mFailed++;
+            mDone++;
+            advanceLowWater();
+        }
+
+        // If that filled up a batch, whoever filled it gets to commit it.
+        return mBatch.size() >= mBatchSize ? takeBatch() : null;
+    }
+
+    @Nullable
+    private Map<Integer, String> takeBatch() {
+        // Must be called while synchronized on this.  Once a commit's
+        // failed, nothing else gets committed.
+        if(mBatch.isEmpty() || mCommitError != null) return null;
+
+        Map<Integer, String> batch = new LinkedHashMap<>(mBatch);
+        mBatch.clear();
+        return batch;
+    }
+
+    private void commit(@NonNull Map<Integer, String> batch) {
+        synchronized(mCommitLock) {
+            IOException error = null;
+
+            try {
+                mStore.commit(batch);
+            } catch (IOException ioe) {
+                error = ioe;
+            } catch (RuntimeException re) {
+                error = new IOException(re);
+            }
+
+            synchronized(this) {
+                if(error != null) {
+                    // No point going on if nothing can be stored.  The days
+                    // in this batch stay fetched-but-not-committed, so the
+                    // mark stays put before them.
+                    if(mCommitError == null) mCommitError = error;
+                    mCancelled = true;
+                    return;
+                }
+
+                for(int day : batch.keySet()) {
+                    mStates[Arrays.binarySearch(mDays, day)] = COMMITTED;
+                    mFetched++;
+                    mDone++;
+                }
+
+                advanceLowWater();
+            }
+
+            report();
+        }
+    }
+
+    private int getResumeFrom() {
+        // Must be called while synchronized on this.
+        return mLowWater < mDays.length ? mDays[mLowWater] : mEnd;
+    }
+
+    private void advanceLowWater() {
+        // Must be called while synchronized on this.  Fetched-but-not-yet-
+        // committed days hold the mark back; if we stopped now, they'd be
+        // lost.
+        while(mLowWater < mDays.length
+                && mStates[mLowWater] != PENDING
+                && mStates[mLowWater] != FETCHED)
+            mLowWater++;
+    }
+
+    private void report() {
+        // Must be called while holding mCommitLock, so reports go out in
+        // order and the mark never goes backwards, but NOT while synchronized
+        // on this.  Whatever the listener does, the fetches don't wait on it.
+        Listener listener = mListener;
+        if(listener == null) return;
+
+        int done;
+        int total;
+        int resumeFrom;
+        synchronized(this) {
+            done = mDone;
+            total = mDays.length;
+            resumeFrom = getResumeFrom();
+        }
+
+        listener.onProgress(done, total, resumeFrom);
+    }
+}
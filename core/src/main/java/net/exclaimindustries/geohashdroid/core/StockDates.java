@@ -0,0 +1,126 @@
+/*
+ * StockDates.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+/**
+ * <code>StockDates</code> knows which day's stock goes with which expedition
+ * date.  That means the 30W Rule (east of 30W uses the previous day's stock,
+ * but only from 2008-05-27 on) and going back to the most recent trading day
+ * (see {@link TradingDays}).  All the dates here are epoch days.
+ *
+ * @author Nicholas Killewald
+ */
+public class StockDates {
+    /**
+     * The last date before the 30W Rule took effect, as an epoch day.  Any
+     * date AFTER this one uses the rule (if it's east of 30W, that is).
+     */
+    public static final int LIMIT_30W = EpochDay.fromYmd(2008, 5, 26);
+
+    private StockDates() { }
+
+    /**
+     * Determines if the 30W Rule applies to the given date and graticule.
+     * Globalhashes always use it, regardless of the date.
+     *
+     * @param epochDay the expedition date
+     * @param packedGraticule the packed graticule (or
+     *                        {@link GraticuleMath#GLOBALHASH})
+     * @return true if the 30W Rule applies
+     */
+    public static boolean uses30WRule(int epochDay, int packedGraticule) {
+        if(packedGraticule == GraticuleMath.GLOBALHASH) return true;
+        return uses30WRule(epochDay, false, GraticuleMath.uses30WRule(packedGraticule));
+    }
+
+    /**
+     * Determines if the 30W Rule applies to the given date, given whether or
+     * not this is a globalhash and which side of 30W the graticule is on.
+     *
+     * @param epochDay the expedition date
+     * @param globalhash true if this is a globalhash
+     * @param graticule30W true if the graticule is east of 30W (ignored for
+     *                     globalhashes)
+     * @return true if the 30W Rule applies
+     */
+    public static boolean uses30WRule(int epochDay, boolean globalhash, boolean graticule30W) {
+        return globalhash || (epochDay > LIMIT_30W && graticule30W);
+    }
+
+    /**
+     * Gets the date of the stock used for the given expedition date and
+     * graticule.  That is, back a day for the 30W Rule or globalhashes, then
+     * back to the last trading day if that lands on a weekend or holiday.
+     *
+     * @param epochDay the expedition date
+     * @param packedGraticule the packed graticule (or
+     *                        {@link GraticuleMath#GLOBALHASH})
+     * @return the stock date
+     */
+    public static int getStockDate(int epochDay, int packedGraticule) {
+        return getStockDate(epochDay, uses30WRule(epochDay, packedGraticule));
+    }
+
+    /**
+     * Gets the date of the stock used for the given expedition date, given
+     * whether or not the 30W Rule applies (see
+     * {@link #uses30WRule(int, boolean, boolean)}).
+     *
+     * @param epochDay the expedition date
+     * @param uses30W true if the 30W Rule applies to this date
+     * @return the stock date
+     */
+    public static int getStockDate(int epochDay, boolean uses30W) {
+        if(uses30W)
+            epochDay--;
+
+        // Then, back to whenever the market was last open.  That's usually
+        // just clamping weekends to Friday, but it accounts for holidays, too.
+        return TradingDays.getTradingDayOnOrBefore(epochDay);
+    }
+
+    /**
+     * <p>
+     * Goes the other way from {@link #getStockDate(int, boolean)}: gets every
+     * expedition date that uses the given stock date.  Without the 30W Rule,
+     * that's the stock date itself plus any weekend or holidays right after
+     * it.  With the 30W Rule, it's all that shifted a day later, so Friday's
+     * stock covers Saturday through Monday.
+     * </p>
+     *
+     * <p>
+     * Note that this doesn't care about when the 30W Rule started.  Before
+     * then, the 30W dates only apply to globalhashes, but they still apply.
+     * If the stock date isn't a trading day, nothing uses it, so this comes
+     * back empty.
+     * </p>
+     *
+     * @param stockDay the stock date
+     * @param uses30W true to get the dates that use it under the 30W Rule
+     * @return the expedition dates, in order
+     */
+    public static int[] getDependentDates(int stockDay, boolean uses30W) {
+        if(!TradingDays.isTradingDay(stockDay)) return new int[0];
+
+        int first = stockDay;
+        int last = TradingDays.getTradingDayAfter(stockDay) - 1;
+
+        if(uses30W) {
+            first++;
+            last++;
+        }
+
+        int[] dates = new int[last - first + 1];
+        for(int i = 0; i < dates.length; i++)
+            dates[i] = first + i;
+
+        return dates;
+    }
+}
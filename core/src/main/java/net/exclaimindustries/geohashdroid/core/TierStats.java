@@ -0,0 +1,247 @@
+/*
+ * TierStats.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * <code>TierStats</code> keeps count of how one tier of lookups is doing: the
+ * quick cache, the database, one particular stock mirror, that sort of thing.
+ * It counts hits and misses, and keeps a rough histogram of how long each
+ * lookup took.
+ * </p>
+ *
+ * <p>
+ * The histogram buckets are powers of two in microseconds.  Bucket zero is
+ * anything under a microsecond, bucket one is one microsecond, bucket two is
+ * two to three, bucket three is four to seven, and so on, with the last
+ * bucket catching everything from about four seconds on up.  That's not
+ * terribly precise, but it's plenty to tell a map lookup from a disk read
+ * from a trip across the internet, and recording something is just a couple
+ * atomic adds, so it can go right in the hot path.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class TierStats {
+    /** How many histogram buckets there are. */
+    public static final int BUCKETS = 24;
+
+    private final String mName;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Makes a new, empty set of stats.  You probably want to get one from a
+     * {@link StatsRegistry} instead.
+     *
+     * @param name the name of the tier, as it'll show up in reports
+     */
+    public TierStats(@NonNull String name) {
+        mName = name;
+    }
+
+    /**
+     * Gets the name of the tier.
+     *
+     * @return the name
+     */
+    @NonNull
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records a lookup.
+     *
+     * @param hit true if the tier had what was asked for, false if not
+     * @param nanos how long it took, in nanoseconds (say, the difference
+     *              between two calls to {@link System#nanoTime()})
+     */
+    public void record(boolean hit, long nanos) {
+        if(nanos < 0) nanos = 0;
+
+        (hit ? mHits : mMisses).incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+        mBuckets.incrementAndGet(getBucket(nanos / 1000));
+    }
+
+    /**
+     * Records a lookup that started at the given time and ended just now.
+     *
+     * @param hit true if the tier had what was asked for, false if not
+     * @param startNanos when the lookup started, from {@link System#nanoTime()}
+     */
+    public void recordSince(boolean hit, long startNanos) {
+        record(hit, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets which bucket a latency goes in.
+     *
+     * @param micros the latency, in microseconds
+     * @return the bucket
+     */
+    public static int getBucket(long micros) {
+        if(micros <= 0) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Gets the upper bound of a bucket, in microseconds.  That is, anything in
+     * this bucket was faster than this.  The last bucket doesn't really HAVE
+     * an upper bound, so that returns {@link Long#MAX_VALUE}.
+     *
+     * @param bucket the bucket
+     * @return its upper bound, in microseconds
+     */
+    public static long getBucketLimitMicros(int bucket) {
+        if(bucket >= BUCKETS - 1) return Long.MAX_VALUE;
+        return 1L << bucket;
+    }
+
+    /**
+     * Gets the number of hits.
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Gets the number of misses.
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Gets the total number of lookups, hit or miss.
+     *
+     * @return hits plus misses
+     */
+    public long getCount() {
+        return mHits.get() + mMisses.get();
+    }
+
+    /**
+     * Gets how many lookups landed in a given histogram bucket.
+     *
+     * @param bucket the bucket
+     * @return the count
+     */
+    public long getBucketCount(int bucket) {
+        return mBuckets.get(bucket);
+    }
+
+    /**
+     * Gets the average latency, in microseconds.
+     *
+     * @return the average, or zero if nothing's been recorded
+     */
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : mTotalNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * Estimates a percentile of the latency, in microseconds.  Since this only
+     * has the histogram to go on, what comes back is the upper bound of
+     * whatever bucket that percentile lands in.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the estimated latency, or zero if nothing's been recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) total += mBuckets.get(i);
+        if(total == 0) return 0;
+
+        long target = (long)Math.ceil(total * percentile / 100.0);
+        if(target < 1) target = 1;
+
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if(seen >= target) return getBucketLimitMicros(i);
+        }
+
+        return getBucketLimitMicros(BUCKETS - 1);
+    }
+
+    /**
+     * Zeroes everything out.
+     */
+    public void reset() {
+        mHits.set(0);
+        mMisses.set(0);
+        mTotalNanos.set(0);
+        for(int i = 0; i < BUCKETS; i++) mBuckets.set(i, 0);
+    }
+
+    /**
+     * Writes a text report of these stats: the counts, hit rate, latency
+     * summary, and every bucket that has anything in it.
+     *
+     * @param out where to write it
+     */
+    public void appendReport(@NonNull StringBuilder out) {
+        long hits = getHits();
+        long count = hits + getMisses();
+
+        out.append(mName).append('\n');
+        out.append(String.format(Locale.US, "  lookups %d, hits %d, misses %d, hit rate %.1f%%%n",
+                count, hits, count - hits, count == 0 ? 0.0 : hits * 100.0 / count));
+
+        if(count == 0) return;
+
+        out.append(String.format(Locale.US, "  mean %s, p50 < %s, p90 < %s, p99 < %s%n",
+                formatMicros(getMeanMicros()),
+                formatLimit(getPercentileMicros(50)),
+                formatLimit(getPercentileMicros(90)),
+                formatLimit(getPercentileMicros(99))));
+
+        for(int i = 0; i < BUCKETS; i++) {
+            long inBucket = mBuckets.get(i);
+            if(inBucket == 0) continue;
+
+            out.append(String.format(Locale.US, "    < %8s: %d%n",
+                    formatLimit(getBucketLimitMicros(i)), inBucket));
+        }
+    }
+
+    @NonNull
+    private static String formatLimit(long micros) {
+        return micros == Long.MAX_VALUE ? "forever" : formatMicros(micros);
+    }
+
+    @NonNull
+    private static String formatMicros(double micros) {
+        if(micros < 1000) return String.format(Locale.US, "%.0fus", micros);
+        if(micros < 1000000) return String.format(Locale.US, "%.1fms", micros / 1000);
+        return String.format(Locale.US, "%.2fs", micros / 1000000);
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendReport(builder);
+        return builder.toString();
+    }
+}
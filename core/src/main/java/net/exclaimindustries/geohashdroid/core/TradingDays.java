@@ -0,0 +1,269 @@
+/*
+ * TradingDays.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * <p>
+ * <code>TradingDays</code> knows which days the NYSE was (or will be) open,
+ * and thus which days the Dow actually has an opening value.  The algorithm
+ * says to use the most recent opening, so on a weekend or a market holiday,
+ * that's whatever the last trading day was.  Asking the stock servers for a
+ * holiday just gets a 404, which would otherwise look an awful lot like the
+ * stock just not being posted yet.
+ * </p>
+ *
+ * <p>
+ * Holidays come from a set of rules (third Monday in January, Good Friday,
+ * that sort of thing), plus a short list of days the market closed for other
+ * reasons.  Those all get baked into a table of how far back each day has to
+ * go to find a trading day, so a lookup is just one array read.  Anything
+ * past the end of the table runs the rules directly.
+ * </p>
+ *
+ * <p>
+ * The rules only go back to 1998, when MLK Day started closing the market.
+ * Before that, the holidays were different enough (and retrohashes old enough
+ * to care are rare enough) that we just skip weekends, same as always.
+ * Guessing a holiday where there wasn't one would mean using the wrong stock,
+ * which is a lot worse than asking for one that isn't there.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class TradingDays {
+    /** The first day the holiday rules apply to. */
+    public static final int RULES_START = EpochDay.fromYmd(1998, 1, 1);
+
+    // The lookup table goes this far.  After that, it's all done by rules.
+    private static final int TABLE_END = EpochDay.fromYmd(2076, 1, 1);
+
+    // Days the market was closed that no rule is ever going to predict.  Keep
+    // this sorted.
+    private static final int[] SPECIAL_CLOSURES = {
+            // September 11th
+            EpochDay.fromYmd(2001, 9, 11),
+            EpochDay.fromYmd(2001, 9, 12),
+            EpochDay.fromYmd(2001, 9, 13),
+            EpochDay.fromYmd(2001, 9, 14),
+            // Ronald Reagan's funeral
+            EpochDay.fromYmd(2004, 6, 11),
+            // Gerald Ford's funeral
+            EpochDay.fromYmd(2007, 1, 2),
+            // Hurricane Sandy
+            EpochDay.fromYmd(2012, 10, 29),
+            EpochDay.fromYmd(2012, 10, 30),
+            // George H. W. Bush's funeral
+            EpochDay.fromYmd(2018, 12, 5),
+            // Jimmy Carter's funeral
+            EpochDay.fromYmd(2025, 1, 9),
+    };
+
+    private TradingDays() { }
+
+    /**
+     * The table doesn't get built until somebody needs it.  Java's class
+     * loading rules make this thread-safe for free.
+     */
+    private static class Table {
+        // For each day from RULES_START up to TABLE_END, how many days back
+        // the nearest trading day is (zero if it IS a trading day).  Even the
+        // week after September 11th only needs six, so a byte's plenty.
+        static final byte[] BACKOFF = build();
+
+        private static byte[] build() {
+            byte[] table = new byte[TABLE_END - RULES_START];
+
+            int firstYear = EpochDay.getYear(RULES_START);
+            int lastYear = EpochDay.getYear(TABLE_END - 1);
+
+            // Whatever's right before the table starts only ever gets the
+            // weekend treatment.
+            int back = (RULES_START - 1) - weekendsOnly(RULES_START - 1);
+
+            for(int year = firstYear; year <= lastYear; year++) {
+                int[] holidays = getHolidays(year);
+                int first = Math.max(EpochDay.fromYmd(year, 1, 1), RULES_START);
+                int last = Math.min(EpochDay.fromYmd(year, 12, 31), TABLE_END - 1);
+
+                for(int day = first; day <= last; day++) {
+                    if(isWeekend(day) || Arrays.binarySearch(holidays, day) >= 0)
+                        back++;
+                    else
+                        back = 0;
+
+                    table[day - RULES_START] = (byte)back;
+                }
+            }
+
+            return table;
+        }
+    }
+
+    /**
+     * Gets the most recent trading day on or before the given day.  If the
+     * given day is a trading day, that's what comes back.
+     *
+     * @param epochDay the day in question
+     * @return the most recent trading day on or before it
+     */
+    public static int getTradingDayOnOrBefore(int epochDay) {
+        if(epochDay < RULES_START) return weekendsOnly(epochDay);
+
+        if(epochDay < TABLE_END) return epochDay - Table.BACKOFF[epochDay - RULES_START];
+
+        // Off the end of the table, so just run the rules.  This doesn't come
+        // up often enough to bother caching anything.
+        int day = epochDay;
+        int[] holidays = getHolidays(EpochDay.getYear(day));
+        while(isWeekend(day) || Arrays.binarySearch(holidays, day) >= 0) {
+            day--;
+            // A holiday on January 1st means going back into last year.
+            if(EpochDay.getMonth(day) == 12 && EpochDay.getDay(day) == 31)
+                holidays = getHolidays(EpochDay.getYear(day));
+        }
+
+        return day;
+    }
+
+    /**
+     * Determines if the market's open on the given day.
+     *
+     * @param epochDay the day in question
+     * @return true if it's a trading day, false if it's a weekend or holiday
+     */
+    public static boolean isTradingDay(int epochDay) {
+        return getTradingDayOnOrBefore(epochDay) == epochDay;
+    }
+
+    /**
+     * Gets the first trading day strictly after the given day.
+     *
+     * @param epochDay the day in question
+     * @return the next trading day after it
+     */
+    public static int getTradingDayAfter(int epochDay) {
+        // There's never more than a few closed days in a row, so just walk.
+        int day = epochDay + 1;
+        while(!isTradingDay(day)) day++;
+        return day;
+    }
+
+    /**
+     * Gets every weekday the market is closed in a given year, sorted.  This
+     * comes straight from the rules and the special closures; it doesn't
+     * touch the table.  Years before {@link #RULES_START} don't have any.
+     *
+     * @param year the year
+     * @return a sorted array of epoch days
+     */
+    public static int[] getHolidays(int year) {
+        if(year < EpochDay.getYear(RULES_START)) return new int[0];
+
+        int[] holidays = new int[16];
+        int count = 0;
+
+        // New Year's Day.  If it's on a Saturday, the market DOESN'T close the
+        // Friday before, since that's the last day of the year.
+        int newYears = EpochDay.fromYmd(year, 1, 1);
+        if(EpochDay.getDayOfWeek(newYears) == Calendar.SUNDAY)
+            holidays[count++] = newYears + 1;
+        else if(EpochDay.getDayOfWeek(newYears) != Calendar.SATURDAY)
+            holidays[count++] = newYears;
+
+        // MLK Day, Washington's Birthday, Good Friday, and Memorial Day.
+        holidays[count++] = nthWeekday(year, 1, Calendar.MONDAY, 3);
+        holidays[count++] = nthWeekday(year, 2, Calendar.MONDAY, 3);
+        holidays[count++] = getEaster(year) - 2;
+        holidays[count++] = lastWeekday(year, 5, Calendar.MONDAY);
+
+        // Juneteenth, only since 2022.
+        if(year >= 2022)
+            holidays[count++] = observed(EpochDay.fromYmd(year, 6, 19));
+
+        // Independence Day, Labor Day, Thanksgiving, and Christmas.
+        holidays[count++] = observed(EpochDay.fromYmd(year, 7, 4));
+        holidays[count++] = nthWeekday(year, 9, Calendar.MONDAY, 1);
+        holidays[count++] = nthWeekday(year, 11, Calendar.THURSDAY, 4);
+        holidays[count++] = observed(EpochDay.fromYmd(year, 12, 25));
+
+        // And whatever else happened that year.
+        for(int special : SPECIAL_CLOSURES) {
+            if(EpochDay.getYear(special) == year)
+                holidays[count++] = special;
+        }
+
+        int[] toReturn = Arrays.copyOf(holidays, count);
+        Arrays.sort(toReturn);
+        return toReturn;
+    }
+
+    private static boolean isWeekend(int epochDay) {
+        int dow = EpochDay.getDayOfWeek(epochDay);
+        return dow == Calendar.SATURDAY || dow == Calendar.SUNDAY;
+    }
+
+    private static int weekendsOnly(int epochDay) {
+        int dow = EpochDay.getDayOfWeek(epochDay);
+        if(dow == Calendar.SATURDAY)
+            // Saturday: Back one day
+            return epochDay - 1;
+        else if(dow == Calendar.SUNDAY)
+            // SUNDAY SUNDAY SUNDAY!!!!!!: Back two days
+            return epochDay - 2;
+        else
+            return epochDay;
+    }
+
+    private static int observed(int epochDay) {
+        // Fixed-date holidays on a Saturday close the Friday before; on a
+        // Sunday, the Monday after.
+        int dow = EpochDay.getDayOfWeek(epochDay);
+        if(dow == Calendar.SATURDAY) return epochDay - 1;
+        if(dow == Calendar.SUNDAY) return epochDay + 1;
+        return epochDay;
+    }
+
+    private static int nthWeekday(int year, int month, int dayOfWeek, int n) {
+        int first = EpochDay.fromYmd(year, month, 1);
+        int offset = dayOfWeek - EpochDay.getDayOfWeek(first);
+        if(offset < 0) offset += 7;
+        return first + offset + (n - 1) * 7;
+    }
+
+    private static int lastWeekday(int year, int month, int dayOfWeek) {
+        int last = (month == 12 ? EpochDay.fromYmd(year + 1, 1, 1) : EpochDay.fromYmd(year, month + 1, 1)) - 1;
+        int offset = EpochDay.getDayOfWeek(last) - dayOfWeek;
+        if(offset < 0) offset += 7;
+        return last - offset;
+    }
+
+    private static int getEaster(int year) {
+        // The anonymous Gregorian algorithm, otherwise known as "just trust
+        // me on this one".
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = ((h + l - 7 * m + 114) % 31) + 1;
+        return EpochDay.fromYmd(year, month, day);
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ * The Geohashing algorithm itself, without any of the Android bits.  Dates
+ * are epoch days, graticules are packed ints, and hashes are plain doubles.
+ * Nothing in here should ever import anything from android.* (or Play
+ * Services, for that matter); if it needs to, it belongs in the app.
+ *
+ * @author Nicholas Killewald
+ */
+package net.exclaimindustries.geohashdroid.core;
@@ -0,0 +1,178 @@
+/*
+ * CoordinateFormat.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import androidx.annotation.NonNull;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * <p>
+ * <code>CoordinateFormat</code> turns latitudes and longitudes into strings
+ * for display, in degrees, degrees and minutes, or degrees, minutes, and
+ * seconds.  The unit comes in as a parameter rather than out of the
+ * preferences, so this doesn't need a Context (or Android at all).
+ * </p>
+ *
+ * <p>
+ * Everything's formatted with Locale.US, so the decimal delimiter is always a
+ * period.  Coordinates, as far as I can tell, are always represented with a
+ * period, even if the country in question uses commas.  The DecimalFormats
+ * are kept one set per thread, so this is safe to call from anywhere.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class CoordinateFormat {
+    /** Unit for plain decimal degrees. */
+    public static final String DEGREES = "Degrees";
+    /** Unit for degrees and decimal minutes. */
+    public static final String MINUTES = "Minutes";
+    /** Unit for degrees, minutes, and decimal seconds. */
+    public static final String SECONDS = "Seconds";
+
+    /** Output should be short, with fewer decimal places. */
+    public static final int OUTPUT_SHORT = 0;
+    /** Output should be long, with more decimal places. */
+    public static final int OUTPUT_LONG = 1;
+    /** Output should be even longer, with even more decimal places. */
+    public static final int OUTPUT_DETAILED = 2;
+
+    private static final String DEGREE_SIGN = "\u00b0";
+    private static final String PRIME = "\u2032";
+    private static final String DOUBLE_PRIME = "\u2033";
+
+    // DecimalFormat isn't thread-safe, and making new ones every time is most
+    // of what this would cost.  So, one set per thread.
+    private static class Formats {
+        final DecimalFormat degreesShort = make("##0.000");
+        final DecimalFormat degreesLong = make("##0.00000");
+        final DecimalFormat degreesDetailed = make("##0.00000000");
+        final DecimalFormat secondsShort = make("##0.00");
+        final DecimalFormat secondsLong = make("##0.0000");
+        // This is what Android's Location.convert uses for whatever's left
+        // over after the whole degrees (and minutes).
+        final DecimalFormat remainder = make("###.#####");
+
+        @NonNull
+        private static DecimalFormat make(@NonNull String pattern) {
+            return new DecimalFormat(pattern, new DecimalFormatSymbols(Locale.US));
+        }
+    }
+
+    private static final ThreadLocal<Formats> FORMATS = new ThreadLocal<Formats>() {
+        @Override
+        protected Formats initialValue() {
+            return new Formats();
+        }
+    };
+
+    private CoordinateFormat() { }
+
+    /**
+     * Formats a latitude.
+     *
+     * @param units {@link #DEGREES}, {@link #MINUTES}, or {@link #SECONDS}
+     * @param lat the latitude
+     * @param useNegative true to use positive/negative values, false to use
+     *                    N/S
+     * @param output one of the OUTPUT_ statics
+     * @return the formatted latitude, or "???" if the units are bogus
+     */
+    @NonNull
+    public static String formatLatitude(@NonNull String units, double lat, boolean useNegative, int output) {
+        String coord = format(units, Math.abs(lat), output);
+
+        if(useNegative)
+            return lat < 0 ? "-" + coord : coord;
+        else
+            return coord + (lat < 0 ? "S" : "N");
+    }
+
+    /**
+     * Formats a longitude.
+     *
+     * @param units {@link #DEGREES}, {@link #MINUTES}, or {@link #SECONDS}
+     * @param lon the longitude
+     * @param useNegative true to use positive/negative values, false to use
+     *                    E/W
+     * @param output one of the OUTPUT_ statics
+     * @return the formatted longitude, or "???" if the units are bogus
+     */
+    @NonNull
+    public static String formatLongitude(@NonNull String units, double lon, boolean useNegative, int output) {
+        String coord = format(units, Math.abs(lon), output);
+
+        if(useNegative)
+            return lon < 0 ? "-" + coord : coord;
+        else
+            return coord + (lon < 0 ? "W" : "E");
+    }
+
+    /**
+     * Formats a coordinate without any sign or hemisphere on it.
+     *
+     * @param units {@link #DEGREES}, {@link #MINUTES}, or {@link #SECONDS}
+     * @param coord the coordinate, which should be positive
+     * @param output one of the OUTPUT_ statics
+     * @return the formatted coordinate, or "???" if the units are bogus
+     */
+    @NonNull
+    public static String format(@NonNull String units, double coord, int output) {
+        Formats formats = FORMATS.get();
+
+        switch(units) {
+            case DEGREES: {
+                DecimalFormat df;
+                switch(output) {
+                    case OUTPUT_SHORT:
+                        df = formats.degreesShort;
+                        break;
+                    case OUTPUT_LONG:
+                        df = formats.degreesLong;
+                        break;
+                    default:
+                        df = formats.degreesDetailed;
+                }
+
+                return df.format(coord) + DEGREE_SIGN;
+            }
+            case MINUTES: {
+                int degrees = (int)Math.floor(coord);
+                double minutes = (coord - degrees) * 60.0;
+
+                return degrees + DEGREE_SIGN + formatRemainder(formats, minutes, output) + PRIME;
+            }
+            case SECONDS: {
+                int degrees = (int)Math.floor(coord);
+                double rest = (coord - degrees) * 60.0;
+                int minutes = (int)Math.floor(rest);
+                double seconds = (rest - minutes) * 60.0;
+
+                return degrees + DEGREE_SIGN + minutes + PRIME
+                        + formatRemainder(formats, seconds, output) + DOUBLE_PRIME;
+            }
+            default:
+                return "???";
+        }
+    }
+
+    @NonNull
+    private static String formatRemainder(@NonNull Formats formats, double value, int output) {
+        switch(output) {
+            case OUTPUT_SHORT:
+                return formats.secondsShort.format(value);
+            case OUTPUT_LONG:
+                return formats.secondsLong.format(value);
+            default:
+                return formats.remainder.format(value);
+        }
+    }
+}
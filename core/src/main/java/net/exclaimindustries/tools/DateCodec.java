@@ -0,0 +1,197 @@
+/*
+ * DateCodec.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import androidx.annotation.NonNull;
+
+/**
+ * <p>
+ * <code>DateCodec</code> writes epoch days out as YYYYMMDD or YYYY-MM-DD and
+ * reads them back in again.  It writes straight into whatever char array you
+ * give it, so if you hang on to the array, formatting a date doesn't allocate
+ * anything at all.
+ * </p>
+ *
+ * <p>
+ * There's no state in here whatsoever, so unlike SimpleDateFormat, it's safe
+ * to use from as many threads at once as you like.  Only four-digit years are
+ * supported, which I'm pretty sure will outlive me.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ * @see EpochDay
+ */
+public class DateCodec {
+    /** The length of a YYYYMMDD date. */
+    public static final int DATE_LENGTH = 8;
+    /** The length of a YYYY-MM-DD date. */
+    public static final int HYPHENATED_DATE_LENGTH = 10;
+
+    private DateCodec() { }
+
+    /**
+     * Writes an epoch day out as YYYYMMDD.
+     *
+     * @param epochDay the epoch day to write
+     * @param dest where to write it (needs {@link #DATE_LENGTH} chars free)
+     * @param offset where in dest to start writing
+     * @return the number of chars written (always {@link #DATE_LENGTH})
+     * @throws IllegalArgumentException the year isn't four digits
+     */
+    public static int writeDate(int epochDay, @NonNull char[] dest, int offset) {
+        return write(epochDay, dest, offset, false);
+    }
+
+    /**
+     * Writes an epoch day out as YYYY-MM-DD.
+     *
+     * @param epochDay the epoch day to write
+     * @param dest where to write it (needs {@link #HYPHENATED_DATE_LENGTH}
+     *             chars free)
+     * @param offset where in dest to start writing
+     * @return the number of chars written (always
+     *         {@link #HYPHENATED_DATE_LENGTH})
+     * @throws IllegalArgumentException the year isn't four digits
+     */
+    public static int writeHyphenatedDate(int epochDay, @NonNull char[] dest, int offset) {
+        return write(epochDay, dest, offset, true);
+    }
+
+    /**
+     * Parses a YYYYMMDD date into an epoch day.
+     *
+     * @param s the string to parse
+     * @param offset where in s the date starts
+     * @return the epoch day
+     * @throws IllegalArgumentException s doesn't have a valid YYYYMMDD date at
+     *                                  that offset
+     */
+    public static int parseDate(@NonNull CharSequence s, int offset) {
+        return parse(s, offset, false);
+    }
+
+    /**
+     * Parses a YYYYMMDD date into an epoch day.  The entire string had better
+     * be the date.
+     *
+     * @param s the string to parse
+     * @return the epoch day
+     * @throws IllegalArgumentException s isn't a valid YYYYMMDD date
+     */
+    public static int parseDate(@NonNull CharSequence s) {
+        if(s.length() != DATE_LENGTH)
+            throw new IllegalArgumentException("A YYYYMMDD date is exactly " + DATE_LENGTH + " characters long");
+        return parse(s, 0, false);
+    }
+
+    /**
+     * Parses a YYYY-MM-DD date into an epoch day.
+     *
+     * @param s the string to parse
+     * @param offset where in s the date starts
+     * @return the epoch day
+     * @throws IllegalArgumentException s doesn't have a valid YYYY-MM-DD date
+     *                                  at that offset
+     */
+    public static int parseHyphenatedDate(@NonNull CharSequence s, int offset) {
+        return parse(s, offset, true);
+    }
+
+    /**
+     * Parses a YYYY-MM-DD date into an epoch day.  The entire string had
+     * better be the date.
+     *
+     * @param s the string to parse
+     * @return the epoch day
+     * @throws IllegalArgumentException s isn't a valid YYYY-MM-DD date
+     */
+    public static int parseHyphenatedDate(@NonNull CharSequence s) {
+        if(s.length() != HYPHENATED_DATE_LENGTH)
+            throw new IllegalArgumentException("A YYYY-MM-DD date is exactly " + HYPHENATED_DATE_LENGTH + " characters long");
+        return parse(s, 0, true);
+    }
+
+    private static int write(int epochDay, @NonNull char[] dest, int offset, boolean hyphenated) {
+        int year = EpochDay.getYear(epochDay);
+        if(year < 0 || year > 9999)
+            throw new IllegalArgumentException("Year " + year + " isn't four digits");
+
+        int pos = offset;
+
+        dest[pos++] = (char)('0' + year / 1000);
+        dest[pos++] = (char)('0' + year / 100 % 10);
+        dest[pos++] = (char)('0' + year / 10 % 10);
+        dest[pos++] = (char)('0' + year % 10);
+        if(hyphenated) dest[pos++] = '-';
+
+        int month = EpochDay.getMonth(epochDay);
+        dest[pos++] = (char)('0' + month / 10);
+        dest[pos++] = (char)('0' + month % 10);
+        if(hyphenated) dest[pos++] = '-';
+
+        int day = EpochDay.getDay(epochDay);
+        dest[pos++] = (char)('0' + day / 10);
+        dest[pos++] = (char)('0' + day % 10);
+
+        return pos - offset;
+    }
+
+    private static int parse(@NonNull CharSequence s, int offset, boolean hyphenated) {
+        if(offset < 0 || s.length() - offset < (hyphenated ? HYPHENATED_DATE_LENGTH : DATE_LENGTH))
+            throw new IllegalArgumentException("Not enough characters for a date");
+
+        int pos = offset;
+
+        int year = digit(s, pos++) * 1000
+                + digit(s, pos++) * 100
+                + digit(s, pos++) * 10
+                + digit(s, pos++);
+        if(hyphenated) hyphen(s, pos++);
+
+        int month = digit(s, pos++) * 10 + digit(s, pos++);
+        if(hyphenated) hyphen(s, pos++);
+
+        int day = digit(s, pos++) * 10 + digit(s, pos);
+
+        // SimpleDateFormat (leniently) would cheerfully turn the 31st of
+        // February into something in March.  We won't.
+        if(month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+            throw new IllegalArgumentException("There's no such date as "
+                    + year + "/" + month + "/" + day);
+
+        return EpochDay.fromYmd(year, month, day);
+    }
+
+    private static int digit(@NonNull CharSequence s, int pos) {
+        char c = s.charAt(pos);
+        if(c < '0' || c > '9')
+            throw new IllegalArgumentException("Expected a digit at position " + pos + ", got '" + c + "'");
+        return c - '0';
+    }
+
+    private static void hyphen(@NonNull CharSequence s, int pos) {
+        char c = s.charAt(pos);
+        if(c != '-')
+            throw new IllegalArgumentException("Expected a hyphen at position " + pos + ", got '" + c + "'");
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch(month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
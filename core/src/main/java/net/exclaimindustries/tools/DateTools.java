@@ -0,0 +1,184 @@
+/*
+ * DateTools.java
+ * Copyright (C)2009 Nicholas Killewald
+ * 
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import androidx.annotation.NonNull;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * <code>DateTools</code> contains any method useful in the manipulation or use
+ * of dates.  All without subclassing Calendar, for some reason.
+ * </p>
+ *
+ * <p>
+ * This used to keep a few static SimpleDateFormats around, which was fine
+ * right up until more than one thread used them at once.  Everything here is
+ * now done by hand (via {@link DateCodec}, mostly), so it's all safe to call
+ * from wherever.
+ * </p>
+ *
+ * <p>
+ * The string methods that take a Calendar still work the way those
+ * SimpleDateFormats did: they use the instant the Calendar points at, as seen
+ * in the default time zone, NOT whatever time zone the Calendar itself is
+ * in.  A Calendar for 1AM Tuesday in New York is still Monday in San
+ * Francisco.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class DateTools {
+
+    // The wiki is English, so the months are English, no matter what the
+    // device's locale is.
+    private static final String[] WIKI_MONTHS = {
+            "January", "February", "March", "April", "May", "June", "July",
+            "August", "September", "October", "November", "December" };
+
+    /**
+     * Generates a YYYYMMDD string from a given Calendar object, in the default
+     * time zone.
+     *
+     * @param c Calendar from which to get the string
+     * @return a YYYYMMDD string
+     */
+    public static String getDateString(@NonNull Calendar c) {
+        return getDateString(EpochDay.fromCalendar(inDefaultZone(c)));
+    }
+
+    /**
+     * Generates a YYYYMMDD string from a given epoch day.  This one doesn't
+     * need a Calendar or a SimpleDateFormat.
+     *
+     * @param epochDay epoch day from which to get the string
+     * @return a YYYYMMDD string
+     * @see EpochDay
+     */
+    public static String getDateString(int epochDay) {
+        char[] out = new char[DateCodec.DATE_LENGTH];
+        DateCodec.writeDate(epochDay, out, 0);
+        return new String(out);
+    }
+    
+    /**
+     * Generates a YYYY-MM-DD string from a given Calendar object, in the
+     * default time zone.
+     *
+     * @param c Calendar from which to get the string
+     * @return a YYYY-MM-DD string
+     */
+    public static String getHyphenatedDateString(@NonNull Calendar c) {
+        return getHyphenatedDateString(EpochDay.fromCalendar(inDefaultZone(c)));
+    }
+
+    /**
+     * Generates a YYYY-MM-DD string from a given epoch day.
+     *
+     * @param epochDay epoch day from which to get the string
+     * @return a YYYY-MM-DD string
+     * @see EpochDay
+     */
+    public static String getHyphenatedDateString(int epochDay) {
+        char[] out = new char[DateCodec.HYPHENATED_DATE_LENGTH];
+        DateCodec.writeHyphenatedDate(epochDay, out, 0);
+        return new String(out);
+    }
+    
+    /**
+     * Generates a date string similar to what MediaWiki would produce for a
+     * five-tilde signature.  That is, something like "13:25, 25 March 2012
+     * (EDT)", <i>specifically</i> in English, in the default time zone.
+     * 
+     * Note that this is specifically calibrated for the Geohashing wiki.  If
+     * you're going to use this outside of Geohash Droid, you may want to make
+     * sure the wiki you're posting to uses this same format and language.
+     * 
+     * @param c a Calendar from which to get the string
+     * @return a wiki-signature-like date string
+     */
+    public static String getWikiDateString(@NonNull Calendar c) {
+        // This is what "HH:mm, d MMMM yyyy (z)" used to give us.  The time
+        // zone name comes from the same place SimpleDateFormat gets it.
+        c = inDefaultZone(c);
+        StringBuilder sb = new StringBuilder(40);
+
+        appendTwoDigits(sb, c.get(Calendar.HOUR_OF_DAY));
+        sb.append(':');
+        appendTwoDigits(sb, c.get(Calendar.MINUTE));
+        sb.append(", ")
+                .append(c.get(Calendar.DAY_OF_MONTH))
+                .append(' ')
+                .append(WIKI_MONTHS[c.get(Calendar.MONTH)])
+                .append(' ')
+                .append(c.get(Calendar.YEAR))
+                .append(" (")
+                .append(c.getTimeZone().getDisplayName(c.get(Calendar.DST_OFFSET) != 0,
+                        TimeZone.SHORT,
+                        Locale.ENGLISH))
+                .append(')');
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns whether or not these two Calendars represent the same date,
+     * ignoring all other data (time of day, etc).
+     *
+     * @param base a Calendar
+     * @param comparator another Calendar
+     * @return true if the same date, false if not
+     */
+    public static boolean isSameDate(@NonNull Calendar base, @NonNull Calendar comparator) {
+        return base.get(Calendar.YEAR) == comparator.get(Calendar.YEAR)
+                && base.get(Calendar.DAY_OF_YEAR) == comparator.get(Calendar.DAY_OF_YEAR);
+    }
+
+    /**
+     * Returns whether or not the FIRST Calendar is tomorrow compared to the
+     * SECOND Calendar.
+     *
+     * @param isThisTomorrow Calendar you are wondering if it's tomorrow or not
+     * @param comparedToThis Base Calendar to which you are comparing the first one
+     * @return true if the first Calendar is tomorrow compared to the second, false if not
+     */
+    public static boolean isTomorrow(@NonNull Calendar isThisTomorrow, @NonNull Calendar comparedToThis) {
+        // No need to clone and add to anything; epoch days do arithmetic.
+        return EpochDay.fromCalendar(isThisTomorrow) == EpochDay.fromCalendar(comparedToThis) + 1;
+    }
+
+    /**
+     * Returns whether or not the FIRST Calendar is the day after tomorrow
+     * compared to the SECOND Calendar.
+     *
+     * @param isThisTomorrow Calendar you are wondering if it's the day after tomorrow or not
+     * @param comparedToThis Base Calendar to which you are comparing the first one
+     * @return true if the first Calendar is the day after tomorrow compared to the second, false if not
+     */
+    public static boolean isDayAfterTomorrow(@NonNull Calendar isThisTomorrow, @NonNull Calendar comparedToThis) {
+        return EpochDay.fromCalendar(isThisTomorrow) == EpochDay.fromCalendar(comparedToThis) + 2;
+    }
+
+    @NonNull
+    private static Calendar inDefaultZone(@NonNull Calendar c) {
+        // Usually, it's already there, and there's nothing to do.
+        TimeZone zone = TimeZone.getDefault();
+        if(c.getTimeZone().getID().equals(zone.getID())) return c;
+
+        Calendar toReturn = Calendar.getInstance(zone, Locale.ENGLISH);
+        toReturn.setTimeInMillis(c.getTimeInMillis());
+        return toReturn;
+    }
+
+    private static void appendTwoDigits(@NonNull StringBuilder sb, int value) {
+        sb.append((char)('0' + value / 10)).append((char)('0' + value % 10));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * EpochDay.java
+ * Copyright (C)2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import androidx.annotation.NonNull;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ * <code>EpochDay</code> works with dates as plain ints: the number of days
+ * since January 1, 1970.  No time zones, no times of day, no objects.  That
+ * makes them cheap to compare, cheap to use as keys, and cheap to step through
+ * one day at a time.
+ * </p>
+ *
+ * <p>
+ * java.time would do all of this for us, but that's not around until API 26.
+ * The conversions here use the proleptic Gregorian calendar, which is the same
+ * thing as GregorianCalendar for any date anyone's going to care about.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class EpochDay {
+    // Days in a 400-year Gregorian cycle.
+    private static final int DAYS_PER_ERA = 146097;
+    // Days from 0000-03-01 to 1970-01-01, the shift the math below works in.
+    private static final int DAYS_0000_TO_1970 = 719468;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private EpochDay() { }
+
+    /**
+     * Gets the epoch day of a year, month, and day.
+     *
+     * @param year the year
+     * @param month the month, starting at 1 for January (NOT Calendar-style)
+     * @param day the day of the month
+     * @return the epoch day
+     */
+    public static int fromYmd(int year, int month, int day) {
+        // This is the days-from-civil algorithm.  It shifts the year to start
+        // in March so the leap day lands at the very end, which makes the
+        // month math a simple linear formula.
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * DAYS_PER_ERA + doe - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Gets the epoch day of whatever date the given Calendar is set to, in
+     * whatever time zone the Calendar is set to.  The time of day is ignored.
+     *
+     * @param cal the Calendar
+     * @return the epoch day
+     */
+    public static int fromCalendar(@NonNull Calendar cal) {
+        return fromYmd(cal.get(Calendar.YEAR),
+                cal.get(Calendar.MONTH) + 1,
+                cal.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Gets the epoch day a given instant falls on in a given time zone.
+     *
+     * @param millis milliseconds since the epoch, like System.currentTimeMillis
+     * @param tz the time zone whose wall clock decides what day it is
+     * @return the epoch day
+     */
+    public static int fromMillis(long millis, @NonNull TimeZone tz) {
+        long local = millis + tz.getOffset(millis);
+
+        // Math.floorDiv would do this, but that's API 24.
+        long day = local / MILLIS_PER_DAY;
+        if(local % MILLIS_PER_DAY < 0) day--;
+        return (int)day;
+    }
+
+    /**
+     * Gets today's epoch day, as far as the default time zone is concerned.
+     * This is the same thing as fromCalendar(Calendar.getInstance()), minus
+     * the Calendar.
+     *
+     * @return today's epoch day
+     */
+    public static int today() {
+        return fromMillis(System.currentTimeMillis(), TimeZone.getDefault());
+    }
+
+    /**
+     * Makes a new Calendar, in the default time zone, set to midnight on the
+     * given epoch day.
+     *
+     * @param epochDay the epoch day
+     * @return a new Calendar
+     */
+    @NonNull
+    public static Calendar toCalendar(int epochDay) {
+        return new GregorianCalendar(getYear(epochDay), getMonth(epochDay) - 1, getDay(epochDay));
+    }
+
+    /**
+     * Gets the year of an epoch day.
+     *
+     * @param epochDay the epoch day
+     * @return the year
+     */
+    public static int getYear(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        int doe = z - era * DAYS_PER_ERA;
+        int yoe = yearOfEra(doe);
+        int y = yoe + era * 400;
+        return marchMonth(doe, yoe) < 10 ? y : y + 1;
+    }
+
+    /**
+     * Gets the month of an epoch day.
+     *
+     * @param epochDay the epoch day
+     * @return the month, starting at 1 for January (NOT Calendar-style)
+     */
+    public static int getMonth(int epochDay) {
+        int doe = dayOfEra(epochDay);
+        int mp = marchMonth(doe, yearOfEra(doe));
+        return mp < 10 ? mp + 3 : mp - 9;
+    }
+
+    /**
+     * Gets the day of the month of an epoch day.
+     *
+     * @param epochDay the epoch day
+     * @return the day of the month
+     */
+    public static int getDay(int epochDay) {
+        int doe = dayOfEra(epochDay);
+        int yoe = yearOfEra(doe);
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return doy - (153 * mp + 2) / 5 + 1;
+    }
+
+    /**
+     * Gets the day of the week of an epoch day, as one of the Calendar
+     * constants (Calendar.SUNDAY through Calendar.SATURDAY).
+     *
+     * @param epochDay the epoch day
+     * @return the day of the week, Calendar-style
+     */
+    public static int getDayOfWeek(int epochDay) {
+        // January 1, 1970 was a Thursday.  Calendar.SUNDAY is 1, so Thursday
+        // is 5, and we need the zero-based offset from Sunday.
+        int fromSunday = (epochDay + 4) % 7;
+        if(fromSunday < 0) fromSunday += 7;
+        return fromSunday + Calendar.SUNDAY;
+    }
+
+    private static int dayOfEra(int epochDay) {
+        int z = epochDay + DAYS_0000_TO_1970;
+        int era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        return z - era * DAYS_PER_ERA;
+    }
+
+    private static int yearOfEra(int doe) {
+        return (doe - doe / 1460 + doe / 36524 - doe / (DAYS_PER_ERA - 1)) / 365;
+    }
+
+    private static int marchMonth(int doe, int yoe) {
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        return (5 * doy + 2) / 153;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * HexFraction.java
+ * Copyright (C)2008 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+package net.exclaimindustries.tools;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>
+ * Contains static methods for parsing a hex string (or the raw bytes behind
+ * it) as if it were the fractional part of a number and returning its
+ * fractional double value.
+ * </p>
+ *
+ * <p>
+ * Sixteen hexits is exactly 64 bits, so for anything up to that length, the
+ * exact value is just an unsigned long divided by 2^64.  That means we can do
+ * the whole thing with primitives and a single correctly-rounded conversion,
+ * with no BigDecimal (or any other allocation) involved, and still get the
+ * same double out the other end as the BigDecimal approach did.
+ * </p>
+ *
+ * @author Nicholas Killewald
+ */
+public class HexFraction {
+    /** The number of hexits that fit into the fast path (64 bits' worth). */
+    public static final int MAX_FAST_HEXITS = 16;
+
+    /** The number of bytes that make up one fraction (64 bits' worth). */
+    public static final int FRACTION_BYTES = 8;
+
+    /** 2^-64, which is what turns a 64-bit integer into a fraction. */
+    private static final double TWO_TO_THE_MINUS_64 = 0x1.0p-64;
+
+    /**
+     * Converts a string, presumably the fractional part of a hex number, into
+     * its fractional decimal counterpart. Don't feed it a negative.
+     *
+     * @param s the hex string to convert
+     * @return a double value of the hex string
+     * @throws NumberFormatException parsing error with the string
+     */
+    public static double calculate(String s) throws NumberFormatException {
+        // Anything longer than 64 bits can't be an unsigned long, so it goes
+        // the long way around.  Geohashing never does that, but this IS a
+        // toolkit class, after all.
+        if(s.length() > MAX_FAST_HEXITS)
+            return calculateSlowly(s);
+
+        // Otherwise, the string is left-aligned in the 64 bits.  That is, "8"
+        // is the same as "8000000000000000".
+        long bits = parseBits(s, 0, s.length());
+        return fromBits(bits << (4 * (MAX_FAST_HEXITS - s.length())));
+    }
+
+    /**
+     * Converts sixteen hexits from the given position of a CharSequence into
+     * their fractional value.  This doesn't make any substrings along the way,
+     * so feel free to point it right into the middle of a full MD5 hex string.
+     *
+     * @param s the CharSequence containing the hexits
+     * @param offset where in s the sixteen hexits start
+     * @return a double value of those hexits
+     * @throws NumberFormatException one of the characters wasn't a hexit
+     * @throws IndexOutOfBoundsException there weren't sixteen characters there
+     */
+    public static double calculate(CharSequence s, int offset)
+            throws NumberFormatException, IndexOutOfBoundsException {
+        return fromBits(parseBits(s, offset, MAX_FAST_HEXITS));
+    }
+
+    /**
+     * Converts eight raw bytes, big-endian, into their fractional value.  This
+     * is exactly the same thing as hex-encoding those bytes and calling
+     * {@link #calculate(String)} on the result, just without the middleman.
+     * With an MD5 digest, offset 0 is the latitude part and offset 8 is the
+     * longitude part.
+     *
+     * @param bytes the byte array containing the fraction
+     * @param offset where in the array the eight bytes start
+     * @return a double value of those bytes
+     * @throws IndexOutOfBoundsException there weren't eight bytes there
+     */
+    public static double calculate(byte[] bytes, int offset)
+            throws IndexOutOfBoundsException {
+        if(offset < 0 || offset + FRACTION_BYTES > bytes.length)
+            throw new IndexOutOfBoundsException("Need " + FRACTION_BYTES
+                    + " bytes at offset " + offset + ", but the array is only "
+                    + bytes.length + " long");
+
+        long bits = 0;
+        for(int i = offset; i < offset + FRACTION_BYTES; i++) {
+            bits = (bits << 8) | (bytes[i] & 0xFF);
+        }
+
+        return fromBits(bits);
+    }
+
+    /**
+     * Converts 64 bits, interpreted as an unsigned binary fraction (that is,
+     * the most significant bit is worth 1/2), into a double.  The result is
+     * correctly rounded to the nearest double, same as
+     * {@link BigDecimal#doubleValue()} would give you.
+     *
+     * @param bits the bits of the fraction
+     * @return a double value of those bits
+     */
+    public static double fromBits(long bits) {
+        // Java doesn't have an unsigned long-to-double conversion, but the
+        // signed one rounds correctly, so as long as the top bit's clear, we
+        // can just use it.
+        if(bits >= 0)
+            return (double)bits * TWO_TO_THE_MINUS_64;
+
+        // If the top bit's set, halve it first.  The bit we shift off gets
+        // ORed back in as a sticky bit so rounding still comes out right (it
+        // can't be the bit that decides anything, as a double only has 53 bits
+        // to work with).  Doubling it back is exact, as is the power-of-two
+        // scaling.
+        double halved = (double)((bits >>> 1) | (bits & 1));
+        return halved * 2 * TWO_TO_THE_MINUS_64;
+    }
+
+    private static long parseBits(CharSequence s, int offset, int length)
+            throws NumberFormatException {
+        if(offset < 0 || offset + length > s.length())
+            throw new IndexOutOfBoundsException("Need " + length
+                    + " hexits at offset " + offset + ", but the string is only "
+                    + s.length() + " long");
+
+        long bits = 0;
+        for(int i = offset; i < offset + length; i++) {
+            int part = Character.digit(s.charAt(i), 16);
+
+            // Same complaint Integer.parseInt would've had.
+            if(part < 0)
+                throw new NumberFormatException("For input string: \"" + s.charAt(i) + "\"");
+
+            bits = (bits << 4) | part;
+        }
+
+        return bits;
+    }
+
+    private static double calculateSlowly(String s) throws NumberFormatException {
+        // We're dealing with values to the precision of more than 1/(16^16).
+        // I think BigDecimal is quite called for in this case.
+        BigDecimal curvalue = new BigDecimal(0);
+
+        // We need to parse the string one character at a time and continuously
+        // calculate each digit's fractional hex value. Note, this WILL hurt.
+        for (int i = 0; i < s.length(); i++) {
+            // Get the hexit.
+            String hexit = s.substring(i, i + 1);
+            // Make it into an integer.
+            int part = Integer.parseInt(hexit, 16);
+            // Now divide it out.
+            BigDecimal d1 = new BigDecimal(part);
+            BigDecimal d2 = new BigDecimal(16);
+            d2 = d2.pow(i + 1);
+            // The version of BigDecimal.divide without a rounding method
+            // auto-adjusts for scale, which is why it's used here.
+            //noinspection BigDecimalMethodWithoutRoundingCalled
+            curvalue = curvalue.add(d1.divide(d2));
+            // Then repeat for the entire string.
+        }
+        // Finally, return at will!
+        return curvalue.doubleValue();
+    }
+}
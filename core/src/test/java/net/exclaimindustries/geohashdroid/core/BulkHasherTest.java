@@ -0,0 +1,144 @@
+/*
+ * BulkHasherTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * This tests {@link BulkHasher}.  Every result it streams out has to match
+ * what doing the same date the slow way (adjust a Calendar the way the app
+ * always did, then hash it) would've given, and the dates without stocks have
+ * to be left out.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class BulkHasherTest {
+    private static final int START = EpochDay.fromYmd(2008, 1, 1);
+    private static final int END = EpochDay.fromYmd(2012, 12, 31);
+
+    /** Fake stock values for every trading day, made up from the date itself. */
+    private static Map<Integer, String> makeStocks() {
+        Map<Integer, String> stocks = new HashMap<>();
+
+        for(int day = START - 7; day <= END; day++) {
+            if(!TradingDays.isTradingDay(day)) continue;
+            stocks.put(day, (10000 + day % 5000) + "." + (day % 100));
+        }
+
+        return stocks;
+    }
+
+    /**
+     * The way the app used to adjust Calendars for the 30W Rule and weekends,
+     * before that moved to {@link StockDates}, plus stepping back over market
+     * holidays.
+     */
+    private static Calendar referenceAdjust(Calendar c, int packed) {
+        Calendar cal = (Calendar)c.clone();
+        boolean global = (packed == GraticuleMath.GLOBALHASH);
+
+        if(global || (cal.after(new GregorianCalendar(2008, Calendar.MAY, 26)) && GraticuleMath.uses30WRule(packed)))
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+
+        if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY)
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+        else if(cal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY)
+            cal.add(Calendar.DAY_OF_MONTH, -2);
+
+        while(!TradingDays.isTradingDay(EpochDay.fromCalendar(cal)))
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+
+        return cal;
+    }
+
+    private static void checkRange(int g) {
+        Map<Integer, String> stocks = makeStocks();
+        final Map<Integer, double[]> results = new ConcurrentHashMap<>();
+
+        int count = BulkHasher.computeRange(START, END, g, stocks, new BulkHasher.HashConsumer() {
+            @Override
+            public void onHash(int epochDay, double latHash, double lonHash) {
+                assertFalse("Got the same day twice!", results.containsKey(epochDay));
+                results.put(epochDay, new double[] {latHash, lonHash});
+            }
+        });
+
+        assertEquals(END - START + 1, count);
+        assertEquals(count, results.size());
+
+        double[] expected = new double[2];
+        for(int day = START; day <= END; day++) {
+            Calendar cal = EpochDay.toCalendar(day);
+            Calendar sCal = referenceAdjust(cal, g);
+            String stock = stocks.get(EpochDay.fromCalendar(sCal));
+            assertNotNull(stock);
+
+            HashEngine.makeFractions(EpochDay.getYear(day), EpochDay.getMonth(day), EpochDay.getDay(day), stock, expected);
+
+            double[] actual = results.get(day);
+            assertNotNull(actual);
+            assertEquals(expected[HashEngine.LATITUDE], actual[0], 0d);
+            assertEquals(expected[HashEngine.LONGITUDE], actual[1], 0d);
+        }
+    }
+
+    @Test
+    public void matchesSlowPathEastOf30W() {
+        checkRange(GraticuleMath.pack(51, false, 0, true));
+    }
+
+    @Test
+    public void matchesSlowPathWestOf30W() {
+        checkRange(GraticuleMath.pack(40, false, 74, true));
+    }
+
+    @Test
+    public void matchesSlowPathForGlobalhashes() {
+        checkRange(GraticuleMath.GLOBALHASH);
+    }
+
+    @Test
+    public void skipsMissingStocks() {
+        Map<Integer, String> stocks = makeStocks();
+        // Knock out one Friday; that should take out Friday, Saturday, and
+        // Sunday west of 30W, plus Monday, since that was the Fourth of July
+        // holiday.
+        int friday = EpochDay.fromYmd(2010, 7, 2);
+        stocks.remove(friday);
+
+        final Map<Integer, Boolean> seen = new ConcurrentHashMap<>();
+        int count = BulkHasher.computeRange(friday - 7, friday + 7,
+                GraticuleMath.pack(40, false, 74, true), stocks,
+                new BulkHasher.HashConsumer() {
+                    @Override
+                    public void onHash(int epochDay, double latHash, double lonHash) {
+                        seen.put(epochDay, true);
+                    }
+                });
+
+        assertEquals(15 - 4, count);
+        assertFalse(seen.containsKey(friday));
+        assertFalse(seen.containsKey(friday + 1));
+        assertFalse(seen.containsKey(friday + 2));
+        assertFalse(seen.containsKey(friday + 3));
+    }
+}
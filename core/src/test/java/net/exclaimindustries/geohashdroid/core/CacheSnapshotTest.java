@@ -0,0 +1,138 @@
+/*
+ * CacheSnapshotTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests {@link CacheSnapshot}: writing and reading back, and refusing
+ * anything that's been cut off, mangled, or isn't a snapshot at all.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class CacheSnapshotTest {
+    private static final int COMIC_DAY = EpochDay.fromYmd(2005, 5, 26);
+
+    /** Writes down everything it's handed, one line per record. */
+    private static class Recorder implements CacheSnapshot.Consumer {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onStock(int stockDay, @NonNull String stock) {
+            records.add("stock " + (stockDay - COMIC_DAY) + " " + stock);
+        }
+
+        @Override
+        public void onHash(int epochDay, boolean uses30W, double latHash, double lonHash) {
+            records.add("hash " + (epochDay - COMIC_DAY) + " " + uses30W + " " + latHash + " " + lonHash);
+        }
+    }
+
+    private static byte[] makeSnapshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CacheSnapshot.Writer writer = new CacheSnapshot.Writer(out);
+
+        writer.onStock(COMIC_DAY, "10458.68");
+        writer.onHash(COMIC_DAY, false, 0.857713, 0.544544);
+        writer.onHash(COMIC_DAY + 1, true, 0.25, 0.75);
+        assertEquals(3, writer.finish());
+
+        return out.toByteArray();
+    }
+
+    private static void assertUnreadable(byte[] snapshot) {
+        Recorder recorder = new Recorder();
+
+        try {
+            CacheSnapshot.read(new ByteArrayInputStream(snapshot), recorder);
+            fail("That snapshot should've been refused");
+        } catch(IOException ioe) {
+            // Good!
+        }
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        byte[] snapshot = makeSnapshot();
+
+        // Header, a stock, two hashes, and the trailer.
+        assertEquals(8 + (1 + 4 + 2 + 8) + 21 * 2 + (1 + 4 + 4), snapshot.length);
+
+        Recorder recorder = new Recorder();
+        assertEquals(3, CacheSnapshot.read(new ByteArrayInputStream(snapshot), recorder));
+        assertEquals(Arrays.asList(
+                "stock 0 10458.68",
+                "hash 0 false 0.857713 0.544544",
+                "hash 1 true 0.25 0.75"), recorder.records);
+    }
+
+    @Test
+    public void roundTripsNothing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, new CacheSnapshot.Writer(out).finish());
+
+        Recorder recorder = new Recorder();
+        assertEquals(0, CacheSnapshot.read(new ByteArrayInputStream(out.toByteArray()), recorder));
+        assertTrue(recorder.records.isEmpty());
+    }
+
+    @Test
+    public void refusesCorruption() throws IOException {
+        byte[] snapshot = makeSnapshot();
+
+        // Flip a bit somewhere in the middle of the first hash.
+        byte[] mangled = snapshot.clone();
+        mangled[30] ^= 0x10;
+        assertUnreadable(mangled);
+
+        // Same with the checksum itself.
+        mangled = snapshot.clone();
+        mangled[mangled.length - 1] ^= 0x01;
+        assertUnreadable(mangled);
+    }
+
+    @Test
+    public void refusesTruncation() throws IOException {
+        byte[] snapshot = makeSnapshot();
+
+        assertUnreadable(new byte[0]);
+        assertUnreadable(Arrays.copyOf(snapshot, 6));
+        assertUnreadable(Arrays.copyOf(snapshot, 30));
+        assertUnreadable(Arrays.copyOf(snapshot, snapshot.length - 1));
+    }
+
+    @Test
+    public void refusesStrangers() throws IOException {
+        byte[] snapshot = makeSnapshot();
+
+        byte[] wrongMagic = snapshot.clone();
+        wrongMagic[0] = 'X';
+        assertUnreadable(wrongMagic);
+
+        byte[] wrongVersion = snapshot.clone();
+        wrongVersion[7] = 99;
+        assertUnreadable(wrongVersion);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * EvictionPolicyTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Calendar;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link EvictionPolicy}, both on its own and by running it over a
+ * few made-up months of somebody using the app, the same way the stock cache
+ * does: every lookup touches an entry (adding it if it isn't there), and
+ * every so often the cache gets pruned, pinning today's and any later stock.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class EvictionPolicyTest {
+    private static final int START = EpochDay.fromYmd(2021, 6, 1);
+
+    /**
+     * A pretend stock cache.  It's keyed on the stock date, and each entry
+     * remembers when it was last touched.  The "clock" just counts lookups.
+     */
+    private static class Trace {
+        final EvictionPolicy policy;
+        final TreeMap<Integer, Long> entries = new TreeMap<>();
+        long clock;
+        int misses;
+
+        Trace(EvictionPolicy policy) {
+            this.policy = policy;
+        }
+
+        void lookUp(int expeditionDay) {
+            int stockDay = StockDates.getStockDate(expeditionDay, true);
+            if(!entries.containsKey(stockDay)) misses++;
+            entries.put(stockDay, ++clock);
+        }
+
+        void prune(int today) {
+            int pinFrom = StockDates.getStockDate(today, true);
+            int count = entries.size();
+            int[] days = new int[count];
+            long[] access = new long[count];
+            int[] sizes = new int[count];
+            boolean[] pinned = new boolean[count];
+
+            int i = 0;
+            for(Map.Entry<Integer, Long> entry : entries.entrySet()) {
+                days[i] = entry.getKey();
+                access[i] = entry.getValue();
+                sizes[i] = 32;
+                pinned[i] = days[i] >= pinFrom;
+                i++;
+            }
+
+            for(int victim : policy.selectVictims(access, sizes, pinned, count))
+                entries.remove(days[victim]);
+        }
+
+        boolean has(int expeditionDay) {
+            return entries.containsKey(StockDates.getStockDate(expeditionDay, true));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        EvictionPolicy policy = EvictionPolicy.rowBudget(2);
+        long[] access = { 5, 1, 9, 3 };
+        int[] sizes = { 1, 1, 1, 1 };
+        boolean[] pinned = { false, false, false, false };
+
+        assertArrayEquals(new int[] { 1, 3 }, policy.selectVictims(access, sizes, pinned, 4));
+
+        // Pin the oldest, and the next one up goes instead.
+        pinned[1] = true;
+        assertArrayEquals(new int[] { 3, 0 }, policy.selectVictims(access, sizes, pinned, 4));
+
+        // Under budget, nothing goes.
+        assertEquals(0, EvictionPolicy.rowBudget(4).selectVictims(access, sizes, pinned, 4).length);
+
+        // Pins win over the budget.
+        boolean[] allPinned = { true, true, true, true };
+        assertEquals(0, policy.selectVictims(access, sizes, allPinned, 4).length);
+
+        // But nothing wins over a budget of zero.
+        assertEquals(4, EvictionPolicy.rowBudget(0).selectVictims(access, sizes, allPinned, 4).length);
+    }
+
+    @Test
+    public void countsBytes() {
+        EvictionPolicy policy = EvictionPolicy.byteBudget(100);
+        long[] access = { 1, 2, 3, 4 };
+        int[] sizes = { 10, 80, 10, 30 };
+        boolean[] pinned = { false, false, false, false };
+
+        // 130 bytes, so the first two go (10 isn't enough on its own).
+        assertArrayEquals(new int[] { 0, 1 }, policy.selectVictims(access, sizes, pinned, 4));
+    }
+
+    @Test
+    public void readsPreferences() {
+        EvictionPolicy policy = EvictionPolicy.fromPreference("15");
+        assertFalse(policy.isByteBudget());
+        assertEquals(15, policy.getBudget());
+
+        policy = EvictionPolicy.fromPreference("64K");
+        assertTrue(policy.isByteBudget());
+        assertEquals(64 * 1024, policy.getBudget());
+
+        // Nonsense gets the default rather than no cache at all.
+        for(String nonsense : new String[] { "lots", "", "-5", "K", null }) {
+            policy = EvictionPolicy.fromPreference(nonsense);
+            assertFalse(policy.isByteBudget());
+            assertEquals(EvictionPolicy.DEFAULT_ROWS, policy.getBudget());
+        }
+    }
+
+    @Test
+    public void keepsAFavoriteRetroDay() {
+        // Somebody checks today's hash a few times a day, and the weekend's on
+        // Fridays.  Every other day, they go back and look at their favorite
+        // old expedition, and otherwise they poke at a couple random
+        // retrohashes from the past year.  Ten rows isn't much room.
+        int favorite = EpochDay.fromYmd(2020, 8, 8);
+        Trace lru = new Trace(EvictionPolicy.rowBudget(10));
+        Random random = new Random(12345);
+
+        for(int today = START; today < START + 90; today++) {
+            for(int i = 0; i < 3; i++) lru.lookUp(today);
+
+            if(EpochDay.getDayOfWeek(today) == Calendar.FRIDAY) {
+                lru.lookUp(today + 1);
+                lru.lookUp(today + 2);
+            }
+
+            if((today - START) % 2 == 0) lru.lookUp(favorite);
+
+            for(int i = 0; i < 2; i++) lru.lookUp(today - 1 - random.nextInt(365));
+
+            lru.prune(today);
+
+            // Today's stock is never gone right after a prune, and neither is
+            // the favorite.  And it's always in budget, since the pins are
+            // only ever a day or two.
+            assertTrue(lru.has(today));
+            assertTrue("Lost the favorite on day " + (today - START), lru.has(favorite));
+            assertTrue(lru.entries.size() <= 10);
+        }
+    }
+
+    @Test
+    public void pinsTheWeekend() {
+        // It's Friday, and the weekend's hashes (all Friday's stock, or
+        // Thursday's for 30W) got looked up before a whole bunch of retro
+        // browsing.  They stay, even though they're the oldest thing around.
+        int friday = EpochDay.fromYmd(2021, 7, 9);
+        Trace trace = new Trace(EvictionPolicy.rowBudget(5));
+
+        trace.lookUp(friday);
+        trace.lookUp(friday + 1);
+        trace.lookUp(friday + 2);
+        trace.lookUp(friday + 3);
+
+        for(int day = friday - 200; day < friday - 100; day++)
+            trace.lookUp(day);
+
+        trace.prune(friday);
+
+        assertTrue(trace.has(friday));
+        assertTrue(trace.has(friday + 1));
+        assertTrue(trace.has(friday + 2));
+        assertTrue(trace.has(friday + 3));
+        assertEquals(5, trace.entries.size());
+    }
+
+    @Test
+    public void missesLessThanInsertionOrder() {
+        // The same sort of trace, except it's a heavy retrohash user who keeps
+        // going back to the same handful of days.  Throwing out by insertion
+        // order (what the old rowid window did) means those keep getting
+        // thrown out and fetched all over again.
+        int[] favorites = { EpochDay.fromYmd(2019, 3, 14), EpochDay.fromYmd(2020, 2, 29),
+                EpochDay.fromYmd(2020, 10, 31), EpochDay.fromYmd(2021, 1, 1) };
+
+        Trace lru = new Trace(EvictionPolicy.rowBudget(15));
+        TreeMap<Integer, Integer> fifo = new TreeMap<>();
+        int fifoMisses = 0;
+        int order = 0;
+        Random random = new Random(54321);
+
+        for(int today = START; today < START + 120; today++) {
+            int[] lookups = new int[12];
+            lookups[0] = today;
+            for(int i = 1; i < lookups.length; i++) {
+                lookups[i] = (random.nextInt(3) == 0)
+                        ? today - 1 - random.nextInt(1000)
+                        : favorites[random.nextInt(favorites.length)];
+            }
+
+            for(int day : lookups) {
+                lru.lookUp(day);
+
+                // Insertion order: only a miss adds to it, and a hit doesn't
+                // move anything.
+                int stockDay = StockDates.getStockDate(day, true);
+                if(!fifo.containsValue(stockDay)) {
+                    fifoMisses++;
+                    fifo.put(order++, stockDay);
+                    while(fifo.size() > 15) fifo.pollFirstEntry();
+                }
+            }
+
+            lru.prune(today);
+        }
+
+        assertTrue("LRU missed " + lru.misses + ", FIFO missed " + fifoMisses,
+                lru.misses < fifoMisses);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * GraticuleMathTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link GraticuleMath}.  The offset test runs every graticule on
+ * the planet through a bunch of offsets and checks them against the loopy
+ * equator- and meridian-hacking code Graticule.createOffsetFrom used to have.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class GraticuleMathTest {
+    private static final int[] OFFSETS = { -400, -181, -180, -90, -31, -3, -2, -1, 0, 1, 2, 3, 31, 90, 179, 180, 360, 725 };
+
+    @Test
+    public void packsAndUnpacks() {
+        for(int lat = 0; lat <= 89; lat++) {
+            for(int lon = 0; lon <= 179; lon++) {
+                for(int flags = 0; flags < 4; flags++) {
+                    boolean south = (flags & 1) != 0;
+                    boolean west = (flags & 2) != 0;
+                    int packed = GraticuleMath.pack(lat, south, lon, west);
+
+                    assertEquals(lat, GraticuleMath.getLatitude(packed));
+                    assertEquals(south, GraticuleMath.isSouth(packed));
+                    assertEquals(lon, GraticuleMath.getLongitude(packed));
+                    assertEquals(west, GraticuleMath.isWest(packed));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void clampsLikeGraticule() {
+        int packed = GraticuleMath.pack(-95, true, 200, false);
+
+        assertEquals(89, GraticuleMath.getLatitude(packed));
+        assertTrue(GraticuleMath.isSouth(packed));
+        assertEquals(179, GraticuleMath.getLongitude(packed));
+        assertFalse(GraticuleMath.isWest(packed));
+    }
+
+    @Test
+    public void knowsThe30WRule() {
+        assertTrue(GraticuleMath.uses30WRule(GraticuleMath.GLOBALHASH));
+        assertTrue(GraticuleMath.uses30WRule(GraticuleMath.pack(51, false, 0, true)));
+        assertTrue(GraticuleMath.uses30WRule(GraticuleMath.pack(0, false, 29, true)));
+        assertFalse(GraticuleMath.uses30WRule(GraticuleMath.pack(0, false, 30, true)));
+        assertTrue(GraticuleMath.uses30WRule(GraticuleMath.pack(0, false, 30, false)));
+        assertFalse(GraticuleMath.uses30WRule(GraticuleMath.pack(40, false, 74, true)));
+    }
+
+    @Test
+    public void makesCoordinates() {
+        int packed = GraticuleMath.pack(0, true, 0, true);
+        assertEquals(-0.25, GraticuleMath.makeLatitude(packed, 0.25), 0d);
+        assertEquals(-0.75, GraticuleMath.makeLongitude(packed, 0.75), 0d);
+
+        packed = GraticuleMath.pack(40, false, 74, false);
+        assertEquals(40.25, GraticuleMath.makeLatitude(packed, 0.25), 0d);
+        assertEquals(74.75, GraticuleMath.makeLongitude(packed, 0.75), 0d);
+
+        assertEquals(0d, GraticuleMath.makeLatitude(GraticuleMath.GLOBALHASH, 0.5), 0d);
+        assertEquals(90d, GraticuleMath.makeLongitude(GraticuleMath.GLOBALHASH, 0.75), 0d);
+    }
+
+    @Test
+    public void offsetsLikeCreateOffsetFrom() {
+        for(int lat = 0; lat <= 89; lat++) {
+            for(int lon = 0; lon <= 179; lon++) {
+                for(int flags = 0; flags < 4; flags++) {
+                    boolean south = (flags & 1) != 0;
+                    boolean west = (flags & 2) != 0;
+                    int packed = GraticuleMath.pack(lat, south, lon, west);
+
+                    for(int latOff : OFFSETS) {
+                        for(int lonOff : OFFSETS) {
+                            assertEquals(lat + (south ? "S " : "N ") + lon + (west ? "W" : "E") + " by " + latOff + "," + lonOff,
+                                    referenceOffset(lat, south, lon, west, latOff, lonOff),
+                                    GraticuleMath.offset(packed, latOff, lonOff));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * What Graticule.createOffsetFrom used to do, more or less verbatim,
+     * except it packs the result instead of making a Graticule.
+     */
+    private static int referenceOffset(int lat, boolean south, int lon, boolean west, int latOff, int lonOff) {
+        if(latOff == 0 && lonOff == 0) return GraticuleMath.pack(lat, south, lon, west);
+
+        boolean goingSouth = (latOff < 0);
+        latOff = Math.abs(latOff);
+
+        int finalLat = lat;
+        int finalLon = lon;
+        boolean finalSouth = south;
+        boolean finalWest = west;
+
+        if (latOff != 0) {
+            if (south == goingSouth) {
+                finalLat = lat + latOff;
+            } else {
+                if (lat < latOff) {
+                    latOff--;
+                    finalSouth = !finalSouth;
+                }
+                finalLat = Math.abs(lat - latOff);
+            }
+        }
+
+        if(finalWest)
+            finalLon = -finalLon + 179;
+        else
+            finalLon += 180;
+
+        finalLon += lonOff;
+        finalLon %= 360;
+
+        if(finalLon < 0) finalLon = 360 - Math.abs(finalLon);
+
+        if(finalLon >= 180) {
+            finalWest = false;
+            finalLon -= 180;
+        } else {
+            finalWest = true;
+            finalLon -= 179;
+        }
+
+        finalLon = Math.abs(finalLon);
+
+        return GraticuleMath.pack(finalLat, finalSouth, finalLon, finalWest);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * HashAtlasTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link HashAtlas}: storing, growing, reopening, walking through
+ * everything, and throwing out files it doesn't recognize.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class HashAtlasTest {
+    private static final int COMIC_DAY = EpochDay.fromYmd(2005, 5, 26);
+
+    private File mFile;
+    private HashAtlas mAtlas;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("hashatlas", ".bin");
+        mAtlas = HashAtlas.open(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mAtlas.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void startsEmpty() {
+        double[] out = new double[2];
+
+        assertFalse(mAtlas.get(COMIC_DAY, true, out));
+        assertFalse(mAtlas.get(COMIC_DAY, false, out));
+        assertFalse(mAtlas.get(HashAtlas.FIRST_DAY, false, out));
+    }
+
+    @Test
+    public void keeps30WSeparate() throws IOException {
+        double[] out = new double[2];
+
+        mAtlas.put(COMIC_DAY, false, 0.857713, 0.544544);
+        assertTrue(mAtlas.get(COMIC_DAY, false, out));
+        assertEquals(0.857713, out[0], 0.0);
+        assertEquals(0.544544, out[1], 0.0);
+        assertFalse(mAtlas.get(COMIC_DAY, true, out));
+
+        mAtlas.put(COMIC_DAY, true, 0.25, 0.75);
+        assertTrue(mAtlas.get(COMIC_DAY, true, out));
+        assertEquals(0.25, out[0], 0.0);
+        assertEquals(0.75, out[1], 0.0);
+
+        // The non-30W one should still be there, untouched.
+        assertTrue(mAtlas.get(COMIC_DAY, false, out));
+        assertEquals(0.857713, out[0], 0.0);
+
+        // And neighbors shouldn't have anything.
+        assertFalse(mAtlas.get(COMIC_DAY - 1, false, out));
+        assertFalse(mAtlas.get(COMIC_DAY + 1, false, out));
+    }
+
+    @Test
+    public void ignoresDaysBeforeTheStart() throws IOException {
+        double[] out = new double[2];
+
+        mAtlas.put(HashAtlas.FIRST_DAY - 1, false, 0.5, 0.5);
+        assertFalse(mAtlas.get(HashAtlas.FIRST_DAY - 1, false, out));
+
+        mAtlas.put(HashAtlas.FIRST_DAY, false, 0.5, 0.5);
+        assertTrue(mAtlas.get(HashAtlas.FIRST_DAY, false, out));
+    }
+
+    @Test
+    public void growsAndSurvivesReopening() throws IOException {
+        // Write a whole bunch of days, far enough apart to force a couple of
+        // remaps.
+        int start = EpochDay.fromYmd(2008, 5, 21);
+        for(int i = 0; i < 2000; i += 7) {
+            mAtlas.put(start + i, (i & 1) == 0, i / 2000.0, 1.0 - i / 2000.0);
+        }
+
+        mAtlas.close();
+        mAtlas = HashAtlas.open(mFile);
+
+        double[] out = new double[2];
+        for(int i = 0; i < 2000; i++) {
+            boolean written = (i % 7 == 0);
+            boolean uses30W = (i & 1) == 0;
+
+            assertEquals(written, mAtlas.get(start + i, uses30W, out));
+            if(written) {
+                assertEquals(i / 2000.0, out[0], 0.0);
+                assertEquals(1.0 - i / 2000.0, out[1], 0.0);
+            }
+
+            assertFalse(mAtlas.get(start + i, !uses30W, out));
+        }
+    }
+
+    @Test
+    public void storesEverythingFromAStock() throws IOException {
+        double[] out = new double[2];
+
+        // The comic's stock is a Thursday, so it's good for Thursday without
+        // the 30W Rule and Friday with it, and that's it.
+        assertEquals(2, mAtlas.putStock(COMIC_DAY, "10458.68"));
+        assertEquals(2, mAtlas.getHashCount());
+
+        assertTrue(mAtlas.get(COMIC_DAY, false, out));
+        assertEquals(0.857713, out[0], 0.000001);
+        assertEquals(0.544543, out[1], 0.000001);
+        assertTrue(mAtlas.get(COMIC_DAY + 1, true, out));
+        assertFalse(mAtlas.get(COMIC_DAY, true, out));
+        assertFalse(mAtlas.get(COMIC_DAY + 1, false, out));
+    }
+
+    @Test
+    public void ignoresDaysTooFarAhead() throws IOException {
+        double[] out = new double[2];
+        int last = EpochDay.today() + HashAtlas.MAX_DAYS_AHEAD;
+
+        mAtlas.put(last, false, 0.5, 0.5);
+        assertTrue(mAtlas.get(last, false, out));
+
+        // None of these should go in, and none of them should make the file
+        // any bigger than it was.
+        long length = mFile.length();
+        for(int day : new int[] { last + 1, last + 5000, Integer.MAX_VALUE - 1, Integer.MAX_VALUE }) {
+            mAtlas.put(day, false, 0.5, 0.5);
+            assertFalse(mAtlas.get(day, false, out));
+        }
+        assertEquals(length, mFile.length());
+    }
+
+    @Test
+    public void clearsOut() throws IOException {
+        double[] out = new double[2];
+
+        mAtlas.put(COMIC_DAY, true, 0.1, 0.2);
+        long length = mFile.length();
+
+        // Clearing doesn't shrink the file (that'd pull the map out from
+        // under anyone reading it), it just empties it out.
+        mAtlas.clear();
+        assertFalse(mAtlas.get(COMIC_DAY, true, out));
+        assertEquals(length, mFile.length());
+        assertEquals(0, mAtlas.forEach((day, uses30W, lat, lon) -> {
+            throw new AssertionError("There shouldn't be anything left");
+        }));
+
+        // And it still works afterward.
+        mAtlas.put(COMIC_DAY, false, 0.3, 0.4);
+        assertTrue(mAtlas.get(COMIC_DAY, false, out));
+    }
+
+    @Test
+    public void prunesOldestFirst() throws IOException {
+        double[] out = new double[2];
+
+        // Ten days, both kinds, so twenty hashes.
+        for(int i = 0; i < 10; i++) {
+            mAtlas.put(COMIC_DAY + i, false, 0.1, 0.2);
+            mAtlas.put(COMIC_DAY + i, true, 0.3, 0.4);
+        }
+
+        // Under budget, nothing happens.
+        assertEquals(0, mAtlas.prune(20, Integer.MAX_VALUE));
+        assertEquals(20, mAtlas.getHashCount());
+
+        // Down to six, and it's the last three days that stay.
+        assertEquals(14, mAtlas.prune(6, Integer.MAX_VALUE));
+        for(int i = 0; i < 10; i++) {
+            assertEquals(i >= 7, mAtlas.get(COMIC_DAY + i, false, out));
+            assertEquals(i >= 7, mAtlas.get(COMIC_DAY + i, true, out));
+        }
+
+        // Pinned days stay even over budget.
+        assertEquals(2, mAtlas.prune(2, COMIC_DAY + 8));
+        assertFalse(mAtlas.get(COMIC_DAY + 7, false, out));
+        assertTrue(mAtlas.get(COMIC_DAY + 8, false, out));
+        assertTrue(mAtlas.get(COMIC_DAY + 9, true, out));
+
+        // Off means off, pinned or not.
+        assertEquals(4, mAtlas.prune(0, COMIC_DAY));
+        assertEquals(0, mAtlas.getHashCount());
+        assertEquals(0, mAtlas.forEach((day, uses30W, lat, lon) -> {
+            throw new AssertionError("There shouldn't be anything left");
+        }));
+    }
+
+    @Test
+    public void prunesWithRoomToSpare() throws IOException {
+        // Thirty-two hashes in a sixteen-hash atlas should go down to
+        // fourteen (an eighth under), and then it takes two more before it
+        // prunes again.
+        for(int i = 0; i < 16; i++) {
+            mAtlas.put(COMIC_DAY + i, false, 0.1, 0.2);
+            mAtlas.put(COMIC_DAY + i, true, 0.3, 0.4);
+        }
+
+        assertEquals(18, mAtlas.prune(16, Integer.MAX_VALUE));
+        assertEquals(14, mAtlas.getHashCount());
+
+        mAtlas.put(COMIC_DAY + 100, false, 0.5, 0.6);
+        mAtlas.put(COMIC_DAY + 100, true, 0.5, 0.6);
+        // Same hash again doesn't count twice.
+        mAtlas.put(COMIC_DAY + 100, true, 0.5, 0.6);
+        assertEquals(16, mAtlas.getHashCount());
+        assertEquals(0, mAtlas.prune(16, Integer.MAX_VALUE));
+
+        mAtlas.put(COMIC_DAY + 101, false, 0.5, 0.6);
+        assertEquals(3, mAtlas.prune(16, Integer.MAX_VALUE));
+
+        // And the count survives reopening.
+        mAtlas.close();
+        mAtlas = HashAtlas.open(mFile);
+        assertEquals(14, mAtlas.getHashCount());
+    }
+
+    @Test
+    public void readersNeverSeeHalfARecord() throws Exception {
+        // One thread keeps filling in days (growing the file as it goes) and
+        // clearing them out again, while a couple others keep looking them
+        // up.  Every lookup that says it found something had better have
+        // found the whole thing, not fresh flags on top of zeroes or last
+        // round's fractions.
+        final int days = 1500;
+        final int rounds = 20;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> problem = new AtomicReference<>();
+
+        Runnable reader = () -> {
+            double[] out = new double[2];
+            while(!done.get() && problem.get() == null) {
+                for(int i = 0; i < days; i += 13) {
+                    if(mAtlas.get(COMIC_DAY + i, false, out)
+                            && (out[1] != -out[0] || out[0] % 1.0 != (i + 1) / 4096.0))
+                        problem.compareAndSet(null, "Day " + i + " came back as " + out[0] + ", " + out[1]);
+                }
+            }
+        };
+
+        List<Thread> readers = new ArrayList<>();
+        for(int i = 0; i < 2; i++) {
+            Thread t = new Thread(reader);
+            readers.add(t);
+            t.start();
+        }
+
+        try {
+            for(int round = 0; round < rounds; round++) {
+                for(int i = 0; i < days; i++)
+                    mAtlas.put(COMIC_DAY + i, false, round + (i + 1) / 4096.0, -(round + (i + 1) / 4096.0));
+                mAtlas.clear();
+            }
+        } finally {
+            done.set(true);
+            for(Thread t : readers) t.join();
+        }
+
+        assertNull(problem.get());
+    }
+
+    @Test
+    public void visitsEverythingInOrder() throws IOException {
+        assertEquals(0, mAtlas.forEach((day, uses30W, lat, lon) -> {
+            throw new AssertionError("There shouldn't be anything to visit yet");
+        }));
+
+        mAtlas.put(COMIC_DAY + 400, false, 0.5, 0.6);
+        mAtlas.put(COMIC_DAY, true, 0.25, 0.75);
+        mAtlas.put(COMIC_DAY, false, 0.857713, 0.544544);
+
+        List<String> seen = new ArrayList<>();
+        int count = mAtlas.forEach((day, uses30W, lat, lon) ->
+                seen.add((day - COMIC_DAY) + " " + uses30W + " " + lat + " " + lon));
+
+        assertEquals(3, count);
+        assertEquals(3, seen.size());
+        assertEquals("0 false 0.857713 0.544544", seen.get(0));
+        assertEquals("0 true 0.25 0.75", seen.get(1));
+        assertEquals("400 false 0.5 0.6", seen.get(2));
+    }
+
+    @Test
+    public void throwsOutGarbage() throws IOException {
+        mAtlas.close();
+
+        FileOutputStream stream = new FileOutputStream(mFile);
+        try {
+            stream.write("This is not a hash atlas, it's a grocery list.".getBytes("US-ASCII"));
+        } finally {
+            stream.close();
+        }
+
+        mAtlas = HashAtlas.open(mFile);
+
+        double[] out = new double[2];
+        assertFalse(mAtlas.get(HashAtlas.FIRST_DAY, false, out));
+        assertEquals(16, mFile.length());
+
+        mAtlas.put(COMIC_DAY, false, 0.857713, 0.544544);
+        assertTrue(mAtlas.get(COMIC_DAY, false, out));
+    }
+}
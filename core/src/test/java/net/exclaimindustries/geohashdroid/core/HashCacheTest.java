@@ -0,0 +1,155 @@
+/*
+ * HashCacheTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link HashCache}: keeping 30W and non-30W apart, holding a run
+ * of dates, throwing out the least recently used, and not falling over when a
+ * bunch of threads use it at once.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class HashCacheTest {
+    private static final int COMIC_DAY = EpochDay.fromYmd(2005, 5, 26);
+
+    @Test
+    public void keepsThirtyWestSeparate() {
+        HashCache cache = new HashCache(16);
+        double[] out = new double[2];
+
+        assertFalse(cache.get(COMIC_DAY, true, out));
+
+        cache.put(COMIC_DAY, false, 0.857713, 0.544544);
+        cache.put(COMIC_DAY, true, 0.123, 0.456);
+
+        assertTrue(cache.get(COMIC_DAY, false, out));
+        assertEquals(0.857713, out[HashEngine.LATITUDE], 0);
+        assertEquals(0.544544, out[HashEngine.LONGITUDE], 0);
+
+        assertTrue(cache.get(COMIC_DAY, true, out));
+        assertEquals(0.123, out[HashEngine.LATITUDE], 0);
+        assertEquals(0.456, out[HashEngine.LONGITUDE], 0);
+
+        // Replacing doesn't add anything.
+        cache.put(COMIC_DAY, true, 0.5, 0.5);
+        assertEquals(2, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertFalse(cache.get(COMIC_DAY, false, out));
+    }
+
+    @Test
+    public void holdsARunOfDays() {
+        // Two per stripe means any eight consecutive days, both ways, stay
+        // put no matter how many other days went through before.
+        HashCache cache = new HashCache(16);
+        assertEquals(16, cache.getCapacity());
+        double[] out = new double[2];
+
+        for(int day = COMIC_DAY - 100; day < COMIC_DAY + 8; day++) {
+            cache.put(day, false, 0.25, 0.75);
+            cache.put(day, true, 0.5, 0.5);
+        }
+
+        for(int day = COMIC_DAY; day < COMIC_DAY + 8; day++) {
+            assertTrue(cache.get(day, false, out));
+            assertTrue(cache.get(day, true, out));
+        }
+
+        assertFalse(cache.get(COMIC_DAY - 1, false, out));
+        assertEquals(16, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        // One stripe's worth is two entries, and days eight apart share one.
+        HashCache cache = new HashCache(16);
+        double[] out = new double[2];
+
+        cache.put(COMIC_DAY, false, 0.1, 0.1);
+        cache.put(COMIC_DAY + 8, false, 0.2, 0.2);
+
+        // Touch the first one, so the second's the oldest...
+        assertTrue(cache.get(COMIC_DAY, false, out));
+
+        // ...and a third one pushes it out.
+        cache.put(COMIC_DAY + 16, false, 0.3, 0.3);
+
+        assertTrue(cache.get(COMIC_DAY, false, out));
+        assertFalse(cache.get(COMIC_DAY + 8, false, out));
+        assertTrue(cache.get(COMIC_DAY + 16, false, out));
+        assertEquals(0.3, out[HashEngine.LATITUDE], 0);
+    }
+
+    @Test
+    public void survivesThreads() throws Exception {
+        // Every thread writes and reads back its own set of days, all of
+        // which fit, so nothing should ever come back wrong or missing.
+        final HashCache cache = new HashCache(64);
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        try {
+            for(int t = 0; t < threads; t++) {
+                final boolean uses30W = (t % 2 == 0);
+                final int first = COMIC_DAY + (t / 2) * 8;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int wrong = 0;
+                        double[] out = new double[2];
+
+                        for(int pass = 0; pass < 10000; pass++) {
+                            int day = first + (pass % 8);
+                            double value = (day - COMIC_DAY) / 100.0 + (uses30W ? 0.5 : 0);
+
+                            cache.put(day, uses30W, value, value);
+                            if(!cache.get(day, uses30W, out)
+                                    || out[HashEngine.LATITUDE] != value
+                                    || out[HashEngine.LONGITUDE] != value)
+                                wrong++;
+                        }
+
+                        return wrong;
+                    }
+                }));
+            }
+
+            int wrong = 0;
+            for(Future<Integer> f : futures) wrong += f.get();
+            assertEquals(0, wrong);
+            assertEquals(64, cache.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsSomeRoom() {
+        new HashCache(0);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * HashEngineTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.CharToByte;
+import net.exclaimindustries.tools.HexFraction;
+import net.exclaimindustries.tools.MD5Tools;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests {@link HashEngine}.  It starts with the example from the original
+ * comic, then checks the direct digest path against the old way of doing
+ * things (String.format, MD5 to hex, then parse the hex) for a few years' worth
+ * of dates.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class HashEngineTest {
+    @Test
+    public void matchesTheComic() {
+        double[] out = new double[2];
+        HashEngine.makeFractions(2005, 5, 26, "10458.68", out);
+
+        assertEquals(0.857713, out[HashEngine.LATITUDE], 0.000001d);
+        assertEquals(0.544544, out[HashEngine.LONGITUDE], 0.000001d);
+    }
+
+    @Test
+    public void makesTheComicDigest() {
+        byte[] digest = new byte[HashEngine.DIGEST_LENGTH];
+        HashEngine.makeDigest(2005, 5, 26, "10458.68", digest);
+        assertEquals("db9318c2259923d08b672cb305440f97", CharToByte.bytesToString(digest));
+    }
+
+    @Test
+    public void bytesAndCharsAgree() {
+        byte[] stock = "xx12345.67xx".getBytes();
+        double[] fromBytes = new double[2];
+        double[] fromChars = new double[2];
+
+        HashEngine.makeFractions(2021, 7, 4, stock, 2, 8, fromBytes);
+        HashEngine.makeFractions(2021, 7, 4, "12345.67", fromChars);
+
+        assertEquals(fromChars[HashEngine.LATITUDE], fromBytes[HashEngine.LATITUDE], 0d);
+        assertEquals(fromChars[HashEngine.LONGITUDE], fromBytes[HashEngine.LONGITUDE], 0d);
+    }
+
+    @Test
+    public void matchesTheStringPath() {
+        Calendar cal = new GregorianCalendar(2008, Calendar.JANUARY, 1);
+        Calendar end = new GregorianCalendar(2012, Calendar.JANUARY, 1);
+        double[] out = new double[2];
+        byte[] digest = new byte[HashEngine.DIGEST_LENGTH];
+        String[] stocks = { "12345.67", "9686.48", "30000", "1" };
+
+        while(cal.before(end)) {
+            for(String stock : stocks) {
+                String hash = MD5Tools.MD5hash(String.format(Locale.US,
+                        "%4d-%02d-%02d-%s",
+                        cal.get(Calendar.YEAR),
+                        cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH),
+                        stock));
+
+                HashEngine.makeFractions(cal.get(Calendar.YEAR),
+                        cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH),
+                        stock,
+                        out);
+
+                HashEngine.makeDigest(cal.get(Calendar.YEAR),
+                        cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH),
+                        stock,
+                        digest);
+
+                assertEquals(hash, CharToByte.bytesToString(digest));
+                assertEquals(hash, HexFraction.calculate(hash.substring(0, 16)), out[HashEngine.LATITUDE], 0d);
+                assertEquals(hash, HexFraction.calculate(hash.substring(16, 32)), out[HashEngine.LONGITUDE], 0d);
+            }
+
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    @Test
+    public void padsShortYearsLikeStringFormat() {
+        // Not that anyone's going Geohashing in the year 800, but still.
+        byte[] digest = new byte[HashEngine.DIGEST_LENGTH];
+        HashEngine.makeDigest(800, 1, 2, "100.00", digest);
+
+        assertEquals(MD5Tools.MD5hash(" 800-01-02-100.00"),
+                CharToByte.bytesToString(digest));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * HedgedFetchTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests {@link HedgedFetch}: the first answer wins, the next source only
+ * starts after the delay (or right away if everything else failed), losers
+ * get cancelled, and "not there" beats "fell over" when nothing works.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class HedgedFetchTest {
+    private static final long LONG_TIME_MS = 10000;
+
+    private ExecutorService mExecutor;
+
+    /**
+     * A fake source.  It waits however long it's told (or until it's
+     * cancelled), then either answers or throws.
+     */
+    private static class FakeAttempt implements HedgedFetch.Attempt {
+        final long delayMs;
+        final String answer;
+        final IOException error;
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+
+        FakeAttempt(long delayMs, String answer) {
+            this.delayMs = delayMs;
+            this.answer = answer;
+            this.error = null;
+        }
+
+        FakeAttempt(long delayMs, IOException error) {
+            this.delayMs = delayMs;
+            this.answer = null;
+            this.error = error;
+        }
+
+        @NonNull
+        @Override
+        public String run() throws IOException {
+            started.countDown();
+
+            try {
+                if(cancelled.await(delayMs, TimeUnit.MILLISECONDS))
+                    throw new IOException("Cancelled");
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            }
+
+            if(error != null) throw error;
+            return answer;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.countDown();
+        }
+
+        boolean wasCancelled() {
+            return cancelled.getCount() == 0;
+        }
+
+        boolean wasStarted() throws InterruptedException {
+            // It might've been launched but not gotten a thread yet by the
+            // time the winner came back, so give it a moment.
+            return started.await(1, TimeUnit.SECONDS);
+        }
+
+        boolean wasNeverStarted() {
+            return started.getCount() != 0;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void fastPrimaryNeverHedges() throws IOException, InterruptedException {
+        FakeAttempt primary = new FakeAttempt(0, "10458.68");
+        FakeAttempt secondary = new FakeAttempt(0, "99999.99");
+
+        assertEquals("10458.68", HedgedFetch.fetch(mExecutor, Arrays.asList(primary, secondary), LONG_TIME_MS));
+        assertTrue(primary.wasStarted());
+        assertTrue(secondary.wasNeverStarted());
+    }
+
+    @Test
+    public void slowPrimaryGetsHedged() throws IOException {
+        FakeAttempt primary = new FakeAttempt(LONG_TIME_MS, "10458.68");
+        FakeAttempt secondary = new FakeAttempt(0, "99999.99");
+
+        long start = System.nanoTime();
+        assertEquals("99999.99", HedgedFetch.fetch(mExecutor, Arrays.asList(primary, secondary), 50));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Should've waited for the hedge delay", elapsedMs >= 50);
+        assertTrue("Shouldn't have waited for the primary", elapsedMs < LONG_TIME_MS);
+        assertTrue(primary.wasCancelled());
+    }
+
+    @Test
+    public void failedPrimaryMovesOnRightAway() throws IOException {
+        FakeAttempt primary = new FakeAttempt(0, new IOException("Nope"));
+        FakeAttempt secondary = new FakeAttempt(0, "10458.68");
+
+        long start = System.nanoTime();
+        assertEquals("10458.68", HedgedFetch.fetch(mExecutor, Arrays.asList(primary, secondary), LONG_TIME_MS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < LONG_TIME_MS);
+    }
+
+    @Test
+    public void zeroDelayStartsEverything() throws IOException, InterruptedException {
+        FakeAttempt primary = new FakeAttempt(LONG_TIME_MS, "10458.68");
+        FakeAttempt secondary = new FakeAttempt(LONG_TIME_MS, "99999.99");
+        FakeAttempt tertiary = new FakeAttempt(0, "12345.67");
+
+        assertEquals("12345.67", HedgedFetch.fetch(mExecutor, Arrays.asList(primary, secondary, tertiary), 0));
+        assertTrue(primary.wasStarted());
+        assertTrue(secondary.wasStarted());
+        assertTrue(primary.wasCancelled());
+        assertTrue(secondary.wasCancelled());
+    }
+
+    @Test
+    public void notPostedBeatsServerError() throws IOException {
+        // Either order, "not posted" is what comes out.
+        try {
+            HedgedFetch.fetch(mExecutor, Arrays.asList(
+                    new FakeAttempt(0, new FileNotFoundException()),
+                    new FakeAttempt(0, new IOException("Server error"))), 0);
+            fail("That should've thrown");
+        } catch (FileNotFoundException fnfe) {
+            // Good!
+        }
+
+        try {
+            HedgedFetch.fetch(mExecutor, Arrays.asList(
+                    new FakeAttempt(0, new IOException("Server error")),
+                    new FakeAttempt(20, new FileNotFoundException())), LONG_TIME_MS);
+            fail("That should've thrown");
+        } catch (FileNotFoundException fnfe) {
+            // Good!
+        }
+    }
+
+    @Test
+    public void everythingFailing() {
+        try {
+            HedgedFetch.fetch(mExecutor, Arrays.asList(
+                    new FakeAttempt(0, new IOException("Server error")),
+                    new FakeAttempt(0, new IOException("Server error"))), 0);
+            fail("That should've thrown");
+        } catch (FileNotFoundException fnfe) {
+            fail("Nothing said it wasn't there");
+        } catch (IOException ioe) {
+            // Good!
+        }
+    }
+}
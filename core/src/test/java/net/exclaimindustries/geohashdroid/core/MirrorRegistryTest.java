@@ -0,0 +1,147 @@
+/*
+ * MirrorRegistryTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link MirrorRegistry}: ranking by how mirrors have actually
+ * been doing, keeping track records across reconfiguring and saving, and the
+ * URL template parsing and filling in.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class MirrorRegistryTest {
+    private static final String PEERON = "http://irc.peeron.com/xkcd/map/data/%Y/%m/%d";
+    private static final String CROX = "http://geo.crox.net/djia/%Y/%m/%d";
+    private static final String OTHER = "https://example.com/djia/%Y-%m-%d";
+
+    @Test
+    public void startsInConfiguredOrder() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX, OTHER));
+        assertEquals(Arrays.asList(PEERON, CROX, OTHER), registry.getRanked());
+    }
+
+    @Test
+    public void fastMirrorsGoFirst() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX));
+
+        for(int i = 0; i < 10; i++) {
+            registry.record(PEERON, MirrorRegistry.SUCCESS, 800);
+            registry.record(CROX, MirrorRegistry.SUCCESS, 100);
+        }
+
+        assertEquals(Arrays.asList(CROX, PEERON), registry.getRanked());
+    }
+
+    @Test
+    public void flakyMirrorsGoLast() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX));
+
+        // Peeron's quick when it works, but it mostly doesn't.
+        for(int i = 0; i < 10; i++) {
+            registry.record(PEERON, i % 4 == 0 ? MirrorRegistry.SUCCESS : MirrorRegistry.ERROR, 100);
+            registry.record(CROX, MirrorRegistry.SUCCESS, 200);
+        }
+
+        assertEquals(Arrays.asList(CROX, PEERON), registry.getRanked());
+
+        // But if it gets its act together, it's back on top.
+        for(int i = 0; i < 20; i++) registry.record(PEERON, MirrorRegistry.SUCCESS, 100);
+        assertEquals(Arrays.asList(PEERON, CROX), registry.getRanked());
+    }
+
+    @Test
+    public void errorsDontMakeMirrorsFast() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX));
+
+        registry.record(PEERON, MirrorRegistry.SUCCESS, 500);
+        double before = registry.getExpectedMillis(PEERON);
+
+        // A refused connection comes back really fast, but that's no reason
+        // to like the mirror more.
+        registry.record(PEERON, MirrorRegistry.ERROR, 1);
+        assertTrue(registry.getExpectedMillis(PEERON) > before);
+    }
+
+    @Test
+    public void reconfiguringKeepsTrackRecords() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX));
+        for(int i = 0; i < 10; i++) registry.record(CROX, MirrorRegistry.SUCCESS, 100);
+        double crox = registry.getExpectedMillis(CROX);
+
+        registry.setMirrors(Arrays.asList(OTHER, CROX));
+        assertEquals(Arrays.asList(OTHER, CROX), registry.getMirrors());
+        assertEquals(crox, registry.getExpectedMillis(CROX), 0.0);
+        assertEquals(-1, registry.getExpectedMillis(PEERON), 0.0);
+
+        // Stuff that isn't in there doesn't get recorded.
+        registry.record(PEERON, MirrorRegistry.SUCCESS, 100);
+        assertEquals(-1, registry.getExpectedMillis(PEERON), 0.0);
+    }
+
+    @Test
+    public void savesAndLoads() {
+        MirrorRegistry registry = new MirrorRegistry(Arrays.asList(PEERON, CROX));
+        for(int i = 0; i < 10; i++) {
+            registry.record(PEERON, MirrorRegistry.NOT_POSTED, 400);
+            registry.record(CROX, MirrorRegistry.SUCCESS, 250);
+        }
+
+        MirrorRegistry loaded = new MirrorRegistry(Arrays.asList(PEERON, CROX, OTHER));
+        loaded.load(registry.save());
+
+        assertEquals(registry.getExpectedMillis(PEERON), loaded.getExpectedMillis(PEERON), 0.01);
+        assertEquals(registry.getExpectedMillis(CROX), loaded.getExpectedMillis(CROX), 0.01);
+        assertEquals(Arrays.asList(CROX, PEERON, OTHER), loaded.getRanked());
+
+        // Garbage gets ignored.
+        MirrorRegistry fresh = new MirrorRegistry(Collections.singletonList(PEERON));
+        double expected = fresh.getExpectedMillis(PEERON);
+        fresh.load(null);
+        fresh.load("");
+        fresh.load("99\n1\t0\t0\t1\t" + PEERON);
+        fresh.load("1\nbanana\t0\t0\t1\t" + PEERON);
+        fresh.load("1\n100\t7\t0\t1\t" + PEERON);
+        assertEquals(expected, fresh.getExpectedMillis(PEERON), 0.0);
+    }
+
+    @Test
+    public void parsesTemplates() {
+        assertTrue(MirrorRegistry.isValidTemplate(PEERON));
+        assertTrue(MirrorRegistry.isValidTemplate(OTHER));
+        assertFalse(MirrorRegistry.isValidTemplate("ftp://example.com/%Y/%m/%d"));
+        assertFalse(MirrorRegistry.isValidTemplate("http://example.com/%Y/%m"));
+
+        List<String> parsed = MirrorRegistry.parseTemplates(
+                "  " + PEERON + "\n\nnot a url\n" + CROX + "\n" + PEERON + "  \n");
+        assertEquals(Arrays.asList(PEERON, CROX), parsed);
+
+        assertTrue(MirrorRegistry.parseTemplates(null).isEmpty());
+        assertTrue(MirrorRegistry.parseTemplates("   ").isEmpty());
+    }
+
+    @Test
+    public void makesUrls() {
+        int day = EpochDay.fromYmd(2005, 5, 26);
+        assertEquals("http://geo.crox.net/djia/2005/05/26", MirrorRegistry.makeUrl(CROX, day));
+        assertEquals("https://example.com/djia/2005-05-26", MirrorRegistry.makeUrl(OTHER, day));
+    }
+}
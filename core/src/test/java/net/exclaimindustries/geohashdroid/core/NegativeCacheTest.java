@@ -0,0 +1,85 @@
+/*
+ * NegativeCacheTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests {@link NegativeCache}: the two TTLs, invalidation, and clearing
+ * out expired entries.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class NegativeCacheTest {
+    private static final int STOCK_DAY = EpochDay.fromYmd(2021, 7, 9);
+    private static final long NOT_POSTED_TTL = 5 * 60 * 1000;
+    private static final long SERVER_ERROR_TTL = 60 * 1000;
+
+    @Test
+    public void expiresEachKindSeparately() {
+        NegativeCache cache = new NegativeCache(NOT_POSTED_TTL, SERVER_ERROR_TTL);
+        long start = 1000000;
+
+        assertEquals(NegativeCache.NONE, cache.get(STOCK_DAY, start));
+
+        cache.put(STOCK_DAY, NegativeCache.NOT_POSTED, start);
+        cache.put(STOCK_DAY - 1, NegativeCache.SERVER_ERROR, start);
+
+        assertEquals(NegativeCache.NOT_POSTED, cache.get(STOCK_DAY, start + SERVER_ERROR_TTL));
+        assertEquals(NegativeCache.NONE, cache.get(STOCK_DAY - 1, start + SERVER_ERROR_TTL));
+
+        assertEquals(NegativeCache.NOT_POSTED, cache.get(STOCK_DAY, start + NOT_POSTED_TTL - 1));
+        assertEquals(NegativeCache.NONE, cache.get(STOCK_DAY, start + NOT_POSTED_TTL));
+    }
+
+    @Test
+    public void replacesAndInvalidates() {
+        NegativeCache cache = new NegativeCache(NOT_POSTED_TTL, SERVER_ERROR_TTL);
+        long start = 1000000;
+
+        // A server error after a not-posted takes over, TTL and all.
+        cache.put(STOCK_DAY, NegativeCache.NOT_POSTED, start);
+        cache.put(STOCK_DAY, NegativeCache.SERVER_ERROR, start + 10);
+        assertEquals(NegativeCache.SERVER_ERROR, cache.get(STOCK_DAY, start + 20));
+        assertEquals(NegativeCache.NONE, cache.get(STOCK_DAY, start + 10 + SERVER_ERROR_TTL));
+
+        // And a success wipes it out entirely.
+        cache.put(STOCK_DAY, NegativeCache.NOT_POSTED, start);
+        cache.invalidate(STOCK_DAY);
+        assertEquals(NegativeCache.NONE, cache.get(STOCK_DAY, start + 1));
+
+        cache.put(STOCK_DAY, NegativeCache.NOT_POSTED, start);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void dropsExpiredEntriesOnPut() {
+        NegativeCache cache = new NegativeCache(NOT_POSTED_TTL, SERVER_ERROR_TTL);
+        long start = 1000000;
+
+        for(int i = 0; i < 10; i++)
+            cache.put(STOCK_DAY - i, NegativeCache.SERVER_ERROR, start);
+
+        assertEquals(10, cache.size());
+
+        cache.put(STOCK_DAY + 1, NegativeCache.NOT_POSTED, start + SERVER_ERROR_TTL);
+        assertEquals(1, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyTakesFailures() {
+        new NegativeCache(NOT_POSTED_TTL, SERVER_ERROR_TTL).put(STOCK_DAY, NegativeCache.NONE, 0);
+    }
+}
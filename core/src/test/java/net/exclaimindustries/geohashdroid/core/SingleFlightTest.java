@@ -0,0 +1,238 @@
+/*
+ * SingleFlightTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests {@link SingleFlight} the way the stock fetch uses it: a pile of
+ * requests for a mix of dates and graticules all at once, keyed on the stock
+ * date.  Every stock date should get fetched exactly once, everyone asking
+ * for it should get the same answer, and different stock dates should all be
+ * going at the same time rather than one after another.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class SingleFlightTest {
+    // Friday through Monday, so the weekend and the 30W Rule both come into
+    // play.
+    private static final int FRIDAY = EpochDay.fromYmd(2021, 10, 15);
+    private static final int[] DAYS = { FRIDAY, FRIDAY + 1, FRIDAY + 2, FRIDAY + 3 };
+
+    // West of 30W, east of 30W, and the globalhash.
+    private static final int[] GRATICULES = {
+            GraticuleMath.pack(37, false, 122, true),
+            GraticuleMath.pack(51, false, 0, false),
+            GraticuleMath.GLOBALHASH
+    };
+
+    // How many times over each date and graticule gets asked for.
+    private static final int REPEATS = 4;
+
+    // How long to wait for everyone to get where they're going before giving
+    // up on the test entirely.
+    private static final long SETTLE_TIMEOUT_MS = 10000;
+
+    /**
+     * Waits until every request's thread has shown up, the right number of
+     * them are leading a flight, and every other one is parked waiting on a
+     * leader.  Followers are the only ones that wait without a timeout (the
+     * leaders here all wait on a gate with one), so WAITING means they've
+     * made it all the way into the flight.
+     */
+    private static void awaitFollowers(List<Thread> threads, Set<Thread> leaders,
+                                       int expectedThreads, int expectedLeaders) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MS);
+
+        while(true) {
+            if(threads.size() == expectedThreads && leaders.size() == expectedLeaders) {
+                boolean settled = true;
+                for(Thread thread : threads) {
+                    if(!leaders.contains(thread) && thread.getState() != Thread.State.WAITING) {
+                        settled = false;
+                        break;
+                    }
+                }
+
+                if(settled) return;
+            }
+
+            if(System.nanoTime() > deadline)
+                fail("Only " + threads.size() + " thread(s) and " + leaders.size() + " leader(s) showed up");
+
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void coalescesByStockDate() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<>();
+        final Map<Integer, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Thread> arrived = new CopyOnWriteArrayList<>();
+        final Set<Thread> leaders = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        Set<Integer> stockDays = new HashSet<>();
+        List<int[]> requests = new ArrayList<>();
+        for(int repeat = 0; repeat < REPEATS; repeat++) {
+            for(int day : DAYS) {
+                for(int graticule : GRATICULES) {
+                    requests.add(new int[] { day, graticule });
+                    stockDays.add(StockDates.getStockDate(day, graticule));
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(requests.size());
+        List<Future<String>> results = new ArrayList<>();
+
+        try {
+            for(final int[] request : requests) {
+                final int stockDay = StockDates.getStockDate(request[0], request[1]);
+
+                results.add(executor.submit(() -> {
+                    arrived.add(Thread.currentThread());
+
+                    return flight.run(stockDay, () -> {
+                        leaders.add(Thread.currentThread());
+                        fetches.computeIfAbsent(stockDay, k -> new AtomicInteger()).incrementAndGet();
+
+                        int now = running.incrementAndGet();
+                        maxRunning.accumulateAndGet(now, Math::max);
+
+                        // Hold everything up until every request is in, like
+                        // a slow server would.
+                        try {
+                            gate.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ie) {
+                            throw new IOException(ie);
+                        } finally {
+                            running.decrementAndGet();
+                        }
+
+                        return "stock for " + stockDay;
+                    });
+                }));
+            }
+
+            // Wait for everyone to show up and get into a flight, one way or
+            // the other, then let the fetches go.
+            awaitFollowers(arrived, leaders, requests.size(), stockDays.size());
+
+            // Every stock date should be in flight at once by now.
+            assertEquals(stockDays.size(), flight.getInFlightCount());
+            gate.countDown();
+
+            for(int i = 0; i < requests.size(); i++) {
+                int stockDay = StockDates.getStockDate(requests.get(i)[0], requests.get(i)[1]);
+                assertEquals("stock for " + stockDay, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            gate.countDown();
+            executor.shutdownNow();
+        }
+
+        // One fetch per stock date, no more, no less.
+        assertEquals(stockDays, fetches.keySet());
+        for(Map.Entry<Integer, AtomicInteger> entry : fetches.entrySet())
+            assertEquals("Stock date " + entry.getKey() + " fetched too many times", 1, entry.getValue().get());
+
+        // And they weren't waiting on each other.
+        assertEquals(stockDays.size(), maxRunning.get());
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    @Test
+    public void sharesFailures() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<>();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<Thread> arrived = new CopyOnWriteArrayList<>();
+        final Set<Thread> leaders = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final AtomicInteger fetches = new AtomicInteger();
+        final int threads = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+
+        try {
+            for(int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    arrived.add(Thread.currentThread());
+
+                    return flight.run(FRIDAY, () -> {
+                        leaders.add(Thread.currentThread());
+                        fetches.incrementAndGet();
+
+                        try {
+                            gate.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ie) {
+                            throw new IOException(ie);
+                        }
+
+                        throw new FileNotFoundException("Not posted");
+                    });
+                }));
+            }
+
+            awaitFollowers(arrived, leaders, threads, 1);
+            gate.countDown();
+
+            for(Future<String> result : results) {
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                    fail("That should've thrown");
+                } catch (java.util.concurrent.ExecutionException ee) {
+                    // "Not posted" has to stay "not posted" for everyone.
+                    assertTrue(ee.getCause() instanceof FileNotFoundException);
+                }
+            }
+        } finally {
+            gate.countDown();
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void forgetsFinishedFlights() throws IOException {
+        SingleFlight<String> flight = new SingleFlight<>();
+        final AtomicInteger fetches = new AtomicInteger();
+
+        assertEquals("1", flight.run(FRIDAY, () -> Integer.toString(fetches.incrementAndGet())));
+        assertEquals("2", flight.run(FRIDAY, () -> Integer.toString(fetches.incrementAndGet())));
+        assertEquals(0, flight.getInFlightCount());
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * StockBackfillTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link StockBackfill}: working out which days are missing,
+ * keeping each mirror down to its share of connections, falling back to other
+ * mirrors, committing in batches, picking up where it left off, and keeping
+ * what it fills in.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class StockBackfillTest {
+    private static final String PEERON = "http://irc.peeron.com/xkcd/map/data/%Y/%m/%d";
+    private static final String CROX = "http://geo.crox.net/djia/%Y/%m/%d";
+
+    // All of 2019, more or less.
+    private static final int FIRST = EpochDay.fromYmd(2019, 1, 1);
+    private static final int LAST = EpochDay.fromYmd(2019, 12, 31);
+
+    /**
+     * A store that's just a map, and remembers how big each batch was.
+     */
+    private static class FakeStore implements StockBackfill.Store {
+        final Map<Integer, String> stocks = new TreeMap<>();
+        final List<Integer> batches = new ArrayList<>();
+
+        @NonNull
+        @Override
+        public synchronized Set<Integer> getStoredDays(int firstStockDay, int lastStockDay) {
+            return new HashSet<>(((TreeMap<Integer, String>)stocks).subMap(firstStockDay, true, lastStockDay, true).keySet());
+        }
+
+        @Override
+        public synchronized void commit(@NonNull Map<Integer, String> batch) {
+            for(int day : batch.keySet())
+                assertFalse("Committed " + day + " twice", stocks.containsKey(day));
+
+            stocks.putAll(batch);
+            batches.add(batch.size());
+        }
+    }
+
+    /**
+     * A fetcher that answers with the date, after a little wait, and keeps
+     * track of how many requests each mirror had going at once.
+     */
+    private static class FakeFetcher implements StockBackfill.Fetcher {
+        final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final long delayMs;
+
+        FakeFetcher(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @NonNull
+        @Override
+        public String fetch(@NonNull String mirror, int stockDay) throws IOException {
+            calls.computeIfAbsent(mirror, k -> new AtomicInteger()).incrementAndGet();
+            int now = running.computeIfAbsent(mirror, k -> new AtomicInteger()).incrementAndGet();
+            maxRunning.computeIfAbsent(mirror, k -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+
+            try {
+                if(delayMs > 0) Thread.sleep(delayMs);
+                return answer(mirror, stockDay);
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            } finally {
+                running.get(mirror).decrementAndGet();
+            }
+        }
+
+        @NonNull
+        String answer(@NonNull String mirror, int stockDay) throws IOException {
+            return "  " + stockDay + ".00\n";
+        }
+
+        int getCalls(@NonNull String mirror) {
+            AtomicInteger count = calls.get(mirror);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    @Test
+    public void findsTradingDays() {
+        // Thursday the 3rd of July, 2014, through Monday the 7th.  The 4th's
+        // a holiday, so it's just Thursday and Monday, plus Wednesday for the
+        // 30W Rule on Thursday.
+        int[] days = StockBackfill.getStockDays(EpochDay.fromYmd(2014, 7, 3), EpochDay.fromYmd(2014, 7, 7));
+        assertArrayEquals(new int[] {
+                EpochDay.fromYmd(2014, 7, 2),
+                EpochDay.fromYmd(2014, 7, 3),
+                EpochDay.fromYmd(2014, 7, 7)
+        }, days);
+
+        assertEquals(0, StockBackfill.getStockDays(LAST, FIRST).length);
+    }
+
+    @Test
+    public void fetchesOnlyWhatsMissing() throws IOException {
+        int[] needed = StockBackfill.getStockDays(FIRST, LAST);
+        FakeStore store = new FakeStore();
+
+        // Every third day's already there.
+        Set<Integer> already = new HashSet<>();
+        for(int i = 0; i < needed.length; i += 3) {
+            store.stocks.put(needed[i], "old");
+            already.add(needed[i]);
+        }
+
+        FakeFetcher fetcher = new FakeFetcher(0);
+        StockBackfill backfill = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 16);
+        StockBackfill.Result result = backfill.run(FIRST, LAST);
+
+        assertTrue(result.isFinished());
+        assertEquals(needed.length - already.size(), result.getTotal());
+        assertEquals(result.getTotal(), result.getFetched());
+        assertEquals(0, result.getFailed());
+        assertEquals(0, result.getNotPosted());
+        assertEquals(needed[needed.length - 1] + 1, result.getResumeFrom());
+
+        // Everything's there now, and nothing that was there got touched.
+        assertEquals(needed.length, store.stocks.size());
+        for(int day : needed) {
+            if(already.contains(day))
+                assertEquals("old", store.stocks.get(day));
+            else
+                assertEquals(day + ".00", store.stocks.get(day));
+        }
+
+        assertEquals(result.getTotal(), fetcher.getCalls(PEERON) + fetcher.getCalls(CROX));
+
+        // Batches, not one at a time.
+        for(int size : store.batches) assertTrue(size <= 16);
+        assertTrue(store.batches.size() <= (result.getTotal() / 16) + 2);
+
+        // And a second run has nothing to do.
+        StockBackfill again = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 16);
+        assertEquals(0, again.run(FIRST, LAST).getTotal());
+    }
+
+    @Test
+    public void keepsToConnectionsPerMirror() throws IOException {
+        FakeStore store = new FakeStore();
+        FakeFetcher fetcher = new FakeFetcher(5);
+
+        StockBackfill backfill = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 3, 10);
+        StockBackfill.Result result = backfill.run(FIRST, EpochDay.fromYmd(2019, 3, 31));
+
+        assertTrue(result.isFinished());
+
+        // Never more than three at a time on either, but both of them got
+        // used, and at least one got up to its limit.
+        assertTrue(fetcher.maxRunning.get(PEERON).get() <= 3);
+        assertTrue(fetcher.maxRunning.get(CROX).get() <= 3);
+        assertTrue(fetcher.getCalls(PEERON) > 0);
+        assertTrue(fetcher.getCalls(CROX) > 0);
+        assertTrue(Math.max(fetcher.maxRunning.get(PEERON).get(), fetcher.maxRunning.get(CROX).get()) > 1);
+    }
+
+    @Test
+    public void fallsBackToOtherMirrors() throws IOException {
+        final int[] needed = StockBackfill.getStockDays(FIRST, EpochDay.fromYmd(2019, 1, 31));
+        final int holiday = needed[3];
+        final int broken = needed[5];
+        FakeStore store = new FakeStore();
+
+        FakeFetcher fetcher = new FakeFetcher(0) {
+            @NonNull
+            @Override
+            String answer(@NonNull String mirror, int stockDay) throws IOException {
+                // Neither one has the "holiday", and neither one can get to
+                // the broken day.  Peeron's down for everything else.
+                if(stockDay == holiday) throw new FileNotFoundException();
+                if(stockDay == broken) throw new IOException("Server error");
+                if(mirror.equals(PEERON)) throw new IOException("Server error");
+                return super.answer(mirror, stockDay);
+            }
+        };
+
+        StockBackfill backfill = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 4);
+        StockBackfill.Result result = backfill.run(FIRST, EpochDay.fromYmd(2019, 1, 31));
+
+        assertTrue(result.isFinished());
+        assertEquals(needed.length, result.getTotal());
+        assertEquals(needed.length - 2, result.getFetched());
+        assertEquals(1, result.getNotPosted());
+        assertEquals(1, result.getFailed());
+        assertFalse(store.stocks.containsKey(holiday));
+        assertFalse(store.stocks.containsKey(broken));
+
+        // Every day got asked of both mirrors (Peeron always fails, so Crox
+        // always got its turn).
+        assertEquals(needed.length, fetcher.getCalls(CROX));
+    }
+
+    @Test
+    public void survivesFetchersThatBlowUp() throws IOException {
+        final int[] needed = StockBackfill.getStockDays(FIRST, EpochDay.fromYmd(2019, 1, 31));
+        final int cursed = needed[2];
+        FakeStore store = new FakeStore();
+
+        FakeFetcher fetcher = new FakeFetcher(0) {
+            @NonNull
+            @Override
+            String answer(@NonNull String mirror, int stockDay) throws IOException {
+                // Peeron chokes on one day entirely, and Crox chokes on it
+                // only sometimes.  Either way, that's a failure, not a hang.
+                if(stockDay == cursed) throw new IllegalStateException("Parse error");
+                if(mirror.equals(PEERON) && stockDay == needed[4]) throw new NullPointerException();
+                return super.answer(mirror, stockDay);
+            }
+        };
+
+        StockBackfill backfill = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 4);
+        StockBackfill.Result result = backfill.run(FIRST, EpochDay.fromYmd(2019, 1, 31));
+
+        assertTrue(result.isFinished());
+        assertEquals(needed.length - 1, result.getFetched());
+        assertEquals(1, result.getFailed());
+        assertEquals(needed[needed.length - 1] + 1, result.getResumeFrom());
+        assertFalse(store.stocks.containsKey(cursed));
+        assertTrue(store.stocks.containsKey(needed[4]));
+    }
+
+    @Test
+    public void resumesWhereItLeftOff() throws IOException {
+        final int[] needed = StockBackfill.getStockDays(FIRST, LAST);
+        final Set<Integer> fetched = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        final AtomicInteger count = new AtomicInteger();
+        final StockBackfill[] current = new StockBackfill[1];
+        FakeStore store = new FakeStore();
+
+        FakeFetcher fetcher = new FakeFetcher(1) {
+            @NonNull
+            @Override
+            String answer(@NonNull String mirror, int stockDay) throws IOException {
+                assertTrue("Fetched " + stockDay + " twice", fetched.add(stockDay));
+
+                // Pull the plug partway through.
+                if(count.incrementAndGet() == 50) current[0].cancel();
+                return super.answer(mirror, stockDay);
+            }
+        };
+
+        final List<Integer> marks = new ArrayList<>();
+        current[0] = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 8);
+        current[0].setListener((done, total, resumeFrom) -> marks.add(resumeFrom));
+        StockBackfill.Result first = current[0].run(FIRST, LAST);
+
+        assertFalse(first.isFinished());
+        assertTrue(current[0].isCancelled());
+        assertTrue(first.getFetched() < needed.length);
+
+        // The mark never goes backwards, and everything before it made it to
+        // the store.
+        for(int i = 1; i < marks.size(); i++) assertTrue(marks.get(i) >= marks.get(i - 1));
+        assertEquals(first.getResumeFrom(), (int)marks.get(marks.size() - 1));
+        for(int day : needed) {
+            if(day < first.getResumeFrom()) assertTrue(store.stocks.containsKey(day));
+        }
+
+        // Now, pick it back up.  Nothing gets fetched twice (the fetcher
+        // checks), and by the end, it's all there.
+        current[0] = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 8);
+        StockBackfill.Result second = current[0].run(FIRST, LAST, first.getResumeFrom());
+
+        assertTrue(second.isFinished());
+        assertEquals(needed.length, store.stocks.size());
+        assertEquals(needed.length, first.getFetched() + second.getFetched());
+    }
+
+    @Test
+    public void keepsBackfilledDaysUnderTheDefaultPolicy() throws IOException {
+        // This is the way the app does it: it all goes in the atlas, on the
+        // atlas's own budget.  The database's default budget is only fifteen
+        // rows, and a year of backfill is hundreds of hashes, so if it went
+        // there, nearly all of it would be pruned right back out and the next
+        // run would fetch it all over again.
+        int[] needed = StockBackfill.getStockDays(FIRST, LAST);
+        File file = File.createTempFile("hashatlas", ".bin");
+        HashAtlas atlas = HashAtlas.open(file);
+
+        try {
+            StockBackfill.Result result = new StockBackfill(
+                    new StockBackfill.AtlasStore(atlas, HashAtlas.DEFAULT_MAX_HASHES),
+                    new FakeFetcher(0), Arrays.asList(PEERON, CROX), 2, 25).run(FIRST, LAST);
+
+            assertTrue(result.isFinished());
+            assertEquals(needed.length, result.getFetched());
+            assertTrue(atlas.getHashCount() > EvictionPolicy.DEFAULT_ROWS * 10);
+
+            // Open it back up, like the next run would, and it's all there.
+            atlas.close();
+            atlas = HashAtlas.open(file);
+            StockBackfill.AtlasStore store = new StockBackfill.AtlasStore(atlas, HashAtlas.DEFAULT_MAX_HASHES);
+
+            Set<Integer> stored = store.getStoredDays(needed[0], needed[needed.length - 1]);
+            for(int day : needed) assertTrue("Lost " + day, stored.contains(day));
+
+            double[] out = new double[2];
+            for(int day = FIRST; day <= LAST; day++) {
+                assertTrue(atlas.get(day, false, out));
+                assertTrue(atlas.get(day, true, out));
+            }
+
+            // So running it again doesn't fetch a thing.
+            FakeFetcher fetcher = new FakeFetcher(0);
+            result = new StockBackfill(store, fetcher, Arrays.asList(PEERON, CROX), 2, 25).run(FIRST, LAST);
+            assertTrue(result.isFinished());
+            assertEquals(0, result.getTotal());
+            assertEquals(0, fetcher.getCalls(PEERON) + fetcher.getCalls(CROX));
+        } finally {
+            atlas.close();
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * StockDatesTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link StockDates}, mostly around the start of the 30W Rule and
+ * weekends.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class StockDatesTest {
+    private static final int EAST = GraticuleMath.pack(51, false, 0, true);
+    private static final int WEST = GraticuleMath.pack(40, false, 74, true);
+
+    @Test
+    public void startsThe30WRuleOnTime() {
+        assertFalse(StockDates.uses30WRule(EpochDay.fromYmd(2008, 5, 26), EAST));
+        assertTrue(StockDates.uses30WRule(EpochDay.fromYmd(2008, 5, 27), EAST));
+        assertFalse(StockDates.uses30WRule(EpochDay.fromYmd(2008, 5, 27), WEST));
+        assertTrue(StockDates.uses30WRule(EpochDay.fromYmd(2005, 5, 26), GraticuleMath.GLOBALHASH));
+    }
+
+    @Test
+    public void handlesWeekdays() {
+        // Wednesday, 2008-05-28.
+        int wednesday = EpochDay.fromYmd(2008, 5, 28);
+
+        assertEquals(wednesday, StockDates.getStockDate(wednesday, WEST));
+        assertEquals(wednesday - 1, StockDates.getStockDate(wednesday, EAST));
+        assertEquals(wednesday - 1, StockDates.getStockDate(wednesday, GraticuleMath.GLOBALHASH));
+    }
+
+    @Test
+    public void clampsWeekendsToFriday() {
+        int friday = EpochDay.fromYmd(2021, 7, 9);
+
+        // West of 30W, Saturday and Sunday both go to Friday, and Monday is
+        // Monday.
+        assertEquals(friday, StockDates.getStockDate(friday + 1, WEST));
+        assertEquals(friday, StockDates.getStockDate(friday + 2, WEST));
+        assertEquals(friday + 3, StockDates.getStockDate(friday + 3, WEST));
+
+        // East of 30W, Saturday, Sunday, AND Monday go to Friday.
+        assertEquals(friday, StockDates.getStockDate(friday + 1, EAST));
+        assertEquals(friday, StockDates.getStockDate(friday + 2, EAST));
+        assertEquals(friday, StockDates.getStockDate(friday + 3, EAST));
+        assertEquals(friday + 3, StockDates.getStockDate(friday + 4, EAST));
+    }
+
+    @Test
+    public void skipsHolidays() {
+        // 2021-07-05 was the Monday the market took off for the Fourth.
+        int friday = EpochDay.fromYmd(2021, 7, 2);
+        int monday = friday + 3;
+        int tuesday = friday + 4;
+
+        // West of 30W, the holiday goes back to Friday, like a weekend.
+        assertEquals(friday, StockDates.getStockDate(monday, WEST));
+        assertEquals(tuesday, StockDates.getStockDate(tuesday, WEST));
+
+        // East of 30W, Tuesday wants Monday's stock, which is Friday's.
+        assertEquals(friday, StockDates.getStockDate(tuesday, EAST));
+        assertEquals(friday, StockDates.getStockDate(tuesday, GraticuleMath.GLOBALHASH));
+        assertEquals(tuesday, StockDates.getStockDate(tuesday + 1, EAST));
+    }
+
+    @Test
+    public void findsDependentDates() {
+        int friday = EpochDay.fromYmd(2021, 7, 9);
+
+        // A plain weekend.
+        assertArrayEquals(new int[] { friday, friday + 1, friday + 2 },
+                StockDates.getDependentDates(friday, false));
+        assertArrayEquals(new int[] { friday + 1, friday + 2, friday + 3 },
+                StockDates.getDependentDates(friday, true));
+
+        // The Fourth of July weekend, with the Monday off.
+        friday = EpochDay.fromYmd(2021, 7, 2);
+        assertArrayEquals(new int[] { friday, friday + 1, friday + 2, friday + 3 },
+                StockDates.getDependentDates(friday, false));
+        assertArrayEquals(new int[] { friday + 1, friday + 2, friday + 3, friday + 4 },
+                StockDates.getDependentDates(friday, true));
+
+        // Nobody uses a Saturday stock.
+        assertEquals(0, StockDates.getDependentDates(friday + 1, false).length);
+
+        // And it had better agree with getStockDate both ways, for a couple
+        // years' worth of dates.
+        int start = EpochDay.fromYmd(2020, 1, 1);
+        for(int day = start; day < start + 730; day++) {
+            for(boolean uses30W : new boolean[] { false, true }) {
+                int stockDay = StockDates.getStockDate(day, uses30W);
+                boolean found = false;
+
+                for(int dependent : StockDates.getDependentDates(stockDay, uses30W)) {
+                    assertEquals(stockDay, StockDates.getStockDate(dependent, uses30W));
+                    if(dependent == day) found = true;
+                }
+
+                assertTrue("Missed " + day + (uses30W ? " (30W)" : ""), found);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * TierStatsTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link TierStats} and {@link StatsRegistry}: counting, the
+ * histogram buckets, percentiles, and the report.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class TierStatsTest {
+    @Test
+    public void bucketsByPowersOfTwo() {
+        assertEquals(0, TierStats.getBucket(0));
+        assertEquals(1, TierStats.getBucket(1));
+        assertEquals(2, TierStats.getBucket(2));
+        assertEquals(2, TierStats.getBucket(3));
+        assertEquals(3, TierStats.getBucket(4));
+        assertEquals(11, TierStats.getBucket(1500));
+        assertEquals(TierStats.BUCKETS - 1, TierStats.getBucket(60L * 1000 * 1000));
+
+        // Everything in a bucket is under its limit.
+        for(long micros = 0; micros < 100000; micros += 37)
+            assertTrue(micros < TierStats.getBucketLimitMicros(TierStats.getBucket(micros)));
+    }
+
+    @Test
+    public void countsAndPercentiles() {
+        TierStats stats = new TierStats("Test");
+
+        // 90 quick hits at 3us, 9 misses at 1.5ms, one at 3 seconds.
+        for(int i = 0; i < 90; i++) stats.record(true, 3000);
+        for(int i = 0; i < 9; i++) stats.record(false, 1500000);
+        stats.record(false, 3000000000L);
+
+        assertEquals(90, stats.getHits());
+        assertEquals(10, stats.getMisses());
+        assertEquals(100, stats.getCount());
+        assertEquals(90, stats.getBucketCount(2));
+
+        assertEquals(4, stats.getPercentileMicros(50));
+        assertEquals(4, stats.getPercentileMicros(90));
+        assertEquals(2048, stats.getPercentileMicros(99));
+        assertEquals(1L << 22, stats.getPercentileMicros(100));
+        assertEquals((90 * 3 + 9 * 1500 + 3000000) / 100.0, stats.getMeanMicros(), 0.001);
+
+        String report = stats.toString();
+        assertTrue(report, report.contains("lookups 100, hits 90, misses 10, hit rate 90.0%"));
+
+        stats.reset();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getPercentileMicros(50));
+    }
+
+    @Test
+    public void registryKeepsTiersInOrder() {
+        StatsRegistry registry = new StatsRegistry();
+
+        TierStats quick = registry.getTier("Quick");
+        TierStats db = registry.getTier("Database");
+        assertSame(quick, registry.getTier("Quick"));
+        assertEquals(2, registry.getTiers().size());
+        assertSame(quick, registry.getTiers().get(0));
+
+        quick.record(true, 100);
+        db.record(false, 100000);
+
+        String report = registry.makeReport();
+        assertTrue(report, report.indexOf("Quick") < report.indexOf("Database"));
+
+        registry.reset();
+        assertEquals(0, quick.getCount());
+        assertSame(db, registry.getTier("Database"));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * TradingDaysTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.geohashdroid.core;
+
+import net.exclaimindustries.tools.EpochDay;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This tests {@link TradingDays} against a few years' worth of published NYSE
+ * holiday calendars, the odd unscheduled closure, and its own rules.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class TradingDaysTest {
+    private static int[] days(int year, int... monthDays) {
+        int[] toReturn = new int[monthDays.length / 2];
+        for(int i = 0; i < toReturn.length; i++)
+            toReturn[i] = EpochDay.fromYmd(year, monthDays[i * 2], monthDays[i * 2 + 1]);
+        return toReturn;
+    }
+
+    @Test
+    public void knowsPublishedHolidays() {
+        // New Year's on a Friday, Christmas on a Saturday, no Juneteenth yet.
+        assertArrayEquals(days(2021, 1, 1, 1, 18, 2, 15, 4, 2, 5, 31, 7, 5, 9, 6, 11, 25, 12, 24),
+                TradingDays.getHolidays(2021));
+
+        // New Year's on a Saturday (not observed), Juneteenth on a Sunday,
+        // Christmas on a Sunday.
+        assertArrayEquals(days(2022, 1, 17, 2, 21, 4, 15, 5, 30, 6, 20, 7, 4, 9, 5, 11, 24, 12, 26),
+                TradingDays.getHolidays(2022));
+
+        assertArrayEquals(days(2024, 1, 1, 1, 15, 2, 19, 3, 29, 5, 27, 6, 19, 7, 4, 9, 2, 11, 28, 12, 25),
+                TradingDays.getHolidays(2024));
+
+        // One with a funeral thrown in.
+        assertArrayEquals(days(2018, 1, 1, 1, 15, 2, 19, 3, 30, 5, 28, 7, 4, 9, 3, 11, 22, 12, 5, 12, 25),
+                TradingDays.getHolidays(2018));
+
+        // Nothing before the rules start.
+        assertEquals(0, TradingDays.getHolidays(1997).length);
+    }
+
+    @Test
+    public void goesBackToTheLastTradingDay() {
+        // The week of September 11th.
+        int monday = EpochDay.fromYmd(2001, 9, 10);
+        for(int i = 1; i <= 6; i++) {
+            assertFalse(TradingDays.isTradingDay(monday + i));
+            assertEquals(monday, TradingDays.getTradingDayOnOrBefore(monday + i));
+        }
+        assertTrue(TradingDays.isTradingDay(monday + 7));
+
+        // New Year's Day on a Saturday: the 31st is open, and that's what the
+        // whole weekend gets.
+        int nye = EpochDay.fromYmd(2021, 12, 31);
+        assertTrue(TradingDays.isTradingDay(nye));
+        assertEquals(nye, TradingDays.getTradingDayOnOrBefore(nye + 1));
+        assertEquals(nye, TradingDays.getTradingDayOnOrBefore(nye + 2));
+
+        // Thanksgiving goes back to Wednesday, and Black Friday's open.
+        int thanksgiving = EpochDay.fromYmd(2021, 11, 25);
+        assertEquals(thanksgiving - 1, TradingDays.getTradingDayOnOrBefore(thanksgiving));
+        assertTrue(TradingDays.isTradingDay(thanksgiving + 1));
+
+        // Before 1998, it's weekends only, even on the Fourth of July.
+        int fourth = EpochDay.fromYmd(1997, 7, 4);
+        assertTrue(TradingDays.isTradingDay(fourth));
+        assertEquals(fourth, TradingDays.getTradingDayOnOrBefore(fourth + 2));
+
+        // The first day of the rules is itself a holiday.
+        assertEquals(EpochDay.fromYmd(1997, 12, 31),
+                TradingDays.getTradingDayOnOrBefore(TradingDays.RULES_START));
+    }
+
+    @Test
+    public void tableAgreesWithTheRules() {
+        // Every day through 2100, which runs off the end of the table, has to
+        // agree with going back one day at a time through the holiday lists.
+        int end = EpochDay.fromYmd(2100, 12, 31);
+
+        for(int day = TradingDays.RULES_START; day <= end; day++) {
+            int expected = day;
+            while(true) {
+                int dow = EpochDay.getDayOfWeek(expected);
+                boolean weekend = dow == Calendar.SATURDAY || dow == Calendar.SUNDAY;
+                boolean holiday = Arrays.binarySearch(
+                        TradingDays.getHolidays(EpochDay.getYear(expected)), expected) >= 0;
+                if(!weekend && !holiday) break;
+                expected--;
+            }
+
+            assertEquals(expected, TradingDays.getTradingDayOnOrBefore(day));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * CoordinateFormatTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.tools;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests {@link CoordinateFormat}, both against some known coordinates
+ * and against the way UnitConverter used to do it (by way of Android's
+ * Location.convert, which is reproduced here).
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class CoordinateFormatTest {
+    // The original xkcd geohash, more or less.
+    private static final double LAT = 37.421542;
+    private static final double LON = -122.085589;
+
+    @Test
+    public void formatsDegrees() {
+        assertEquals("37.422\u00b0N", CoordinateFormat.formatLatitude(CoordinateFormat.DEGREES, LAT, false, CoordinateFormat.OUTPUT_SHORT));
+        assertEquals("37.42154\u00b0", CoordinateFormat.formatLatitude(CoordinateFormat.DEGREES, LAT, true, CoordinateFormat.OUTPUT_LONG));
+        assertEquals("37.42154200\u00b0N", CoordinateFormat.formatLatitude(CoordinateFormat.DEGREES, LAT, false, CoordinateFormat.OUTPUT_DETAILED));
+        assertEquals("122.086\u00b0W", CoordinateFormat.formatLongitude(CoordinateFormat.DEGREES, LON, false, CoordinateFormat.OUTPUT_SHORT));
+        assertEquals("-122.086\u00b0", CoordinateFormat.formatLongitude(CoordinateFormat.DEGREES, LON, true, CoordinateFormat.OUTPUT_SHORT));
+    }
+
+    @Test
+    public void formatsMinutesAndSeconds() {
+        assertEquals("37\u00b025.29\u2032N", CoordinateFormat.formatLatitude(CoordinateFormat.MINUTES, LAT, false, CoordinateFormat.OUTPUT_SHORT));
+        assertEquals("37\u00b025.2925\u2032N", CoordinateFormat.formatLatitude(CoordinateFormat.MINUTES, LAT, false, CoordinateFormat.OUTPUT_LONG));
+        assertEquals("37\u00b025.29252\u2032N", CoordinateFormat.formatLatitude(CoordinateFormat.MINUTES, LAT, false, CoordinateFormat.OUTPUT_DETAILED));
+        assertEquals("-122\u00b05.14\u2032", CoordinateFormat.formatLongitude(CoordinateFormat.MINUTES, LON, true, CoordinateFormat.OUTPUT_SHORT));
+
+        assertEquals("37\u00b025\u203217.55\u2033N", CoordinateFormat.formatLatitude(CoordinateFormat.SECONDS, LAT, false, CoordinateFormat.OUTPUT_SHORT));
+        assertEquals("37\u00b025\u203217.5512\u2033N", CoordinateFormat.formatLatitude(CoordinateFormat.SECONDS, LAT, false, CoordinateFormat.OUTPUT_LONG));
+        assertEquals("122\u00b05\u20328.12\u2033W", CoordinateFormat.formatLongitude(CoordinateFormat.SECONDS, LON, false, CoordinateFormat.OUTPUT_SHORT));
+    }
+
+    @Test
+    public void rejectsBogusUnits() {
+        assertEquals("???N", CoordinateFormat.formatLatitude("Furlongs", LAT, false, CoordinateFormat.OUTPUT_SHORT));
+    }
+
+    @Test
+    public void matchesTheOldWay() {
+        // A few thousand coordinates all over the place, in every unit and
+        // output.  The detailed ones should come out exactly the same as they
+        // used to.  The short and long ones used to get rounded twice (once
+        // to five places by Location.convert, then again), so every so often
+        // they'd be off by one in the last place; now they're only rounded
+        // once, so they can only differ by that much.
+        for(int i = 0; i <= 18000; i += 7) {
+            double coord = i / 100.0 + i / 1000003.0;
+
+            for(String units : new String[] { CoordinateFormat.MINUTES, CoordinateFormat.SECONDS }) {
+                String label = units + " " + coord;
+
+                assertEquals(label,
+                        oldWay(units, coord, CoordinateFormat.OUTPUT_DETAILED),
+                        CoordinateFormat.format(units, coord, CoordinateFormat.OUTPUT_DETAILED));
+                assertEquals(label,
+                        lastPart(oldWay(units, coord, CoordinateFormat.OUTPUT_SHORT)),
+                        lastPart(CoordinateFormat.format(units, coord, CoordinateFormat.OUTPUT_SHORT)),
+                        0.0100001);
+                assertEquals(label,
+                        lastPart(oldWay(units, coord, CoordinateFormat.OUTPUT_LONG)),
+                        lastPart(CoordinateFormat.format(units, coord, CoordinateFormat.OUTPUT_LONG)),
+                        0.0001001);
+            }
+        }
+    }
+
+    private static double lastPart(String formatted) {
+        // Whatever's between the last degree or prime and the closing prime.
+        String[] parts = formatted.split("[\u00b0\u2032\u2033]");
+        return Double.parseDouble(parts[parts.length - 1]);
+    }
+
+    private static String oldWay(String units, double coord, int output) {
+        DecimalFormatSymbols us = new DecimalFormatSymbols(Locale.US);
+        String[] split = convert(coord, units.equals(CoordinateFormat.SECONDS)).split(":");
+        String last = split[split.length - 1];
+        double value = Double.parseDouble(last);
+
+        String remainder;
+        switch(output) {
+            case CoordinateFormat.OUTPUT_SHORT:
+                remainder = new DecimalFormat("##0.00", us).format(value);
+                break;
+            case CoordinateFormat.OUTPUT_LONG:
+                remainder = new DecimalFormat("##0.0000", us).format(value);
+                break;
+            default:
+                remainder = last;
+        }
+
+        if(split.length == 2)
+            return split[0] + "\u00b0" + remainder + "\u2032";
+        else
+            return split[0] + "\u00b0" + split[1] + "\u2032" + remainder + "\u2033";
+    }
+
+    private static String convert(double coordinate, boolean seconds) {
+        // This is Location.convert, for FORMAT_MINUTES and FORMAT_SECONDS.
+        StringBuilder sb = new StringBuilder();
+        DecimalFormat df = new DecimalFormat("###.#####", new DecimalFormatSymbols(Locale.US));
+
+        int degrees = (int)Math.floor(coordinate);
+        sb.append(degrees);
+        sb.append(':');
+        coordinate -= degrees;
+        coordinate *= 60.0;
+        if(seconds) {
+            int minutes = (int)Math.floor(coordinate);
+            sb.append(minutes);
+            sb.append(':');
+            coordinate -= minutes;
+            coordinate *= 60.0;
+        }
+        sb.append(df.format(coordinate));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * DateCodecTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.tools;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * This tests {@link DateCodec} and the bits of {@link DateTools} that use it,
+ * against what SimpleDateFormat used to give us.  It also beats on them from a
+ * bunch of threads at once, since that's the whole reason they exist.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class DateCodecTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final int START = EpochDay.fromYmd(1900, 1, 1);
+    private static final int END = EpochDay.fromYmd(2100, 12, 31);
+
+    @Test
+    public void agreesWithSimpleDateFormat() {
+        SimpleDateFormat plain = new SimpleDateFormat("yyyyMMdd", Locale.ENGLISH);
+        SimpleDateFormat hyphenated = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        plain.setTimeZone(UTC);
+        hyphenated.setTimeZone(UTC);
+
+        Calendar cal = new GregorianCalendar(UTC);
+        char[] buffer = new char[DateCodec.HYPHENATED_DATE_LENGTH];
+
+        for(int day = START; day <= END; day++) {
+            cal.setTimeInMillis(day * 86400000L);
+
+            String expected = plain.format(cal.getTime());
+            assertEquals(DateCodec.DATE_LENGTH, DateCodec.writeDate(day, buffer, 0));
+            assertEquals(expected, new String(buffer, 0, DateCodec.DATE_LENGTH));
+            assertEquals(day, DateCodec.parseDate(expected));
+
+            expected = hyphenated.format(cal.getTime());
+            assertEquals(DateCodec.HYPHENATED_DATE_LENGTH, DateCodec.writeHyphenatedDate(day, buffer, 0));
+            assertEquals(expected, new String(buffer));
+            assertEquals(day, DateCodec.parseHyphenatedDate(expected));
+        }
+    }
+
+    @Test
+    public void worksAtOffsets() {
+        char[] buffer = "Stock for ??????????!".toCharArray();
+        int day = EpochDay.fromYmd(2008, 5, 21);
+
+        DateCodec.writeHyphenatedDate(day, buffer, 10);
+        String result = new String(buffer);
+        assertEquals("Stock for 2008-05-21!", result);
+        assertEquals(day, DateCodec.parseHyphenatedDate(result, 10));
+
+        assertEquals(day, DateCodec.parseDate("date=20080521", 5));
+    }
+
+    @Test
+    public void rejectsGarbage() {
+        String[] plain = { "", "2008052", "200805211", "2008052x", "20080230",
+                "20081301", "20080001", "20080500", "2008-05-" };
+        String[] hyphenated = { "", "2008-5-21", "2008/05/21", "20080521",
+                "2009-02-29", "2008-13-01", "2008-04-31", "-008-05-21" };
+
+        for(String s : plain) {
+            try {
+                DateCodec.parseDate(s);
+                fail("'" + s + "' shouldn't have parsed as YYYYMMDD");
+            } catch(IllegalArgumentException iae) {
+                // Good!
+            }
+        }
+
+        for(String s : hyphenated) {
+            try {
+                DateCodec.parseHyphenatedDate(s);
+                fail("'" + s + "' shouldn't have parsed as YYYY-MM-DD");
+            } catch(IllegalArgumentException iae) {
+                // Good!
+            }
+        }
+
+        // Leap days are fine when they exist, though.
+        assertEquals(EpochDay.fromYmd(2000, 2, 29), DateCodec.parseDate("20000229"));
+        assertEquals(EpochDay.fromYmd(2008, 2, 29), DateCodec.parseHyphenatedDate("2008-02-29"));
+    }
+
+    @Test
+    public void survivesThreads() throws Exception {
+        // Work out all the right answers up front, on one thread, the old way.
+        final int days = END - START + 1;
+        final String[] plain = new String[days];
+        final String[] hyphenated = new String[days];
+
+        SimpleDateFormat plainFormat = new SimpleDateFormat("yyyyMMdd", Locale.ENGLISH);
+        SimpleDateFormat hyphenatedFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        plainFormat.setTimeZone(UTC);
+        hyphenatedFormat.setTimeZone(UTC);
+        Calendar cal = new GregorianCalendar(UTC);
+
+        for(int i = 0; i < days; i++) {
+            cal.setTimeInMillis((START + i) * 86400000L);
+            plain[i] = plainFormat.format(cal.getTime());
+            hyphenated[i] = hyphenatedFormat.format(cal.getTime());
+        }
+
+        // Now, a bunch of threads all go at it at once, interleaved so they're
+        // all hitting different dates at the same time.
+        final int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> futures = new ArrayList<>();
+
+        try {
+            for(int t = 0; t < threads; t++) {
+                final int first = t;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        int wrong = 0;
+                        char[] buffer = new char[DateCodec.HYPHENATED_DATE_LENGTH];
+                        Calendar mine = new GregorianCalendar();
+
+                        for(int pass = 0; pass < 4; pass++) {
+                            for(int i = first; i < days; i += threads) {
+                                int day = START + i;
+
+                                DateCodec.writeDate(day, buffer, 0);
+                                if(!plain[i].contentEquals(new String(buffer, 0, DateCodec.DATE_LENGTH))) wrong++;
+                                if(DateCodec.parseHyphenatedDate(hyphenated[i]) != day) wrong++;
+                                if(!plain[i].equals(DateTools.getDateString(day))) wrong++;
+
+                                // And through Calendars, in this thread's own
+                                // time zone, which is the default one.
+                                mine.clear();
+                                mine.set(EpochDay.getYear(day), EpochDay.getMonth(day) - 1, EpochDay.getDay(day), 12, 0);
+                                if(!hyphenated[i].equals(DateTools.getHyphenatedDateString(mine))) wrong++;
+                            }
+                        }
+
+                        return wrong;
+                    }
+                }));
+            }
+
+            int wrong = 0;
+            for(Future<Integer> f : futures) wrong += f.get();
+            assertEquals(0, wrong);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void makesWikiDates() {
+        String[] zones = { "UTC", "America/New_York", "Asia/Kolkata", "Australia/Adelaide" };
+        int[][] dates = { { 2012, Calendar.MARCH, 25, 13, 25 },
+                { 2012, Calendar.DECEMBER, 1, 0, 5 },
+                { 2008, Calendar.MAY, 21, 23, 59 } };
+
+        TimeZone original = TimeZone.getDefault();
+
+        try {
+            for(String zone : zones) {
+                TimeZone tz = TimeZone.getTimeZone(zone);
+                TimeZone.setDefault(tz);
+                SimpleDateFormat format = new SimpleDateFormat("HH:mm, d MMMM yyyy (z)", Locale.ENGLISH);
+
+                for(int[] d : dates) {
+                    Calendar cal = new GregorianCalendar(tz);
+                    cal.clear();
+                    cal.set(d[0], d[1], d[2], d[3], d[4]);
+
+                    assertEquals(format.format(cal.getTime()), DateTools.getWikiDateString(cal));
+                }
+            }
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    public void usesTheDefaultZoneForCalendars() {
+        // Same as SimpleDateFormat always did: it's the instant that counts,
+        // as seen from the default time zone, not the Calendar's own zone.
+        // 1:30AM Tuesday in New York is still Monday evening in Los Angeles.
+        TimeZone original = TimeZone.getDefault();
+
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+
+            Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("America/New_York"));
+            cal.clear();
+            cal.set(2008, Calendar.MAY, 27, 1, 30);
+
+            assertEquals("20080526", DateTools.getDateString(cal));
+            assertEquals("2008-05-26", DateTools.getHyphenatedDateString(cal));
+            assertEquals("22:30, 26 May 2008 (PDT)", DateTools.getWikiDateString(cal));
+
+            // And the Calendar itself doesn't get touched.
+            assertEquals(27, cal.get(Calendar.DAY_OF_MONTH));
+            assertEquals("America/New_York", cal.getTimeZone().getID());
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+}
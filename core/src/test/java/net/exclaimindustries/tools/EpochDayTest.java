@@ -0,0 +1,85 @@
+/*
+ * EpochDayTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.tools;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests {@link EpochDay} by walking a GregorianCalendar day by day across
+ * a couple centuries and making sure every conversion agrees with it.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class EpochDayTest {
+    @Test
+    public void knowsTheEpoch() {
+        assertEquals(0, EpochDay.fromYmd(1970, 1, 1));
+        assertEquals(Calendar.THURSDAY, EpochDay.getDayOfWeek(0));
+        assertEquals(-1, EpochDay.fromYmd(1969, 12, 31));
+    }
+
+    @Test
+    public void agreesWithGregorianCalendar() {
+        // UTC, so there's no daylight saving weirdness in the day count.
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(1900, Calendar.JANUARY, 1);
+        Calendar end = (Calendar)cal.clone();
+        end.set(2100, Calendar.DECEMBER, 31);
+
+        int expected = (int)(cal.getTimeInMillis() / 86400000L);
+
+        while(!cal.after(end)) {
+            int year = cal.get(Calendar.YEAR);
+            int month = cal.get(Calendar.MONTH) + 1;
+            int day = cal.get(Calendar.DAY_OF_MONTH);
+
+            assertEquals(expected, EpochDay.fromYmd(year, month, day));
+            assertEquals(expected, EpochDay.fromCalendar(cal));
+            assertEquals(year, EpochDay.getYear(expected));
+            assertEquals(month, EpochDay.getMonth(expected));
+            assertEquals(day, EpochDay.getDay(expected));
+            assertEquals(cal.get(Calendar.DAY_OF_WEEK), EpochDay.getDayOfWeek(expected));
+
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            expected++;
+        }
+    }
+
+    @Test
+    public void findsTheDayInATimeZone() {
+        // 2008-05-21 at 13:30 UTC, which is 09:30 in New York, but already
+        // the 22nd in Auckland and still the 20th nowhere at all.
+        long millis = EpochDay.fromYmd(2008, 5, 21) * 86400000L + 13 * 3600000L + 30 * 60000L;
+        int day = EpochDay.fromYmd(2008, 5, 21);
+
+        assertEquals(day, EpochDay.fromMillis(millis, TimeZone.getTimeZone("UTC")));
+        assertEquals(day, EpochDay.fromMillis(millis, TimeZone.getTimeZone("America/New_York")));
+        assertEquals(day + 1, EpochDay.fromMillis(millis, TimeZone.getTimeZone("Pacific/Auckland")));
+
+        // And before the epoch, it had better round down, not toward zero.
+        assertEquals(-1, EpochDay.fromMillis(-1L, TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void makesCalendars() {
+        Calendar cal = EpochDay.toCalendar(EpochDay.fromYmd(2008, 5, 21));
+
+        assertEquals(2008, cal.get(Calendar.YEAR));
+        assertEquals(Calendar.MAY, cal.get(Calendar.MONTH));
+        assertEquals(21, cal.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * HexFractionTest.java
+ * Copyright (C) 2021 Nicholas Killewald
+ *
+ * This file is distributed under the terms of the BSD license.
+ * The source package should have a LICENSE file at the toplevel.
+ */
+
+package net.exclaimindustries.tools;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This tests {@link HexFraction}.  First, this runs down a series of sixteen
+ * tests, each of which is a single repeated hexit sixteen times.  Hopefully
+ * this breaks spectacularly if something's amiss.  After that, it checks the
+ * primitive paths against the old BigDecimal way of doing things for every
+ * date since Geohashing began, bit for bit.
+ */
+@RunWith(BlockJUnit4ClassRunner.class)
+public class HexFractionTest {
+    @Test
+    public void calculatesAllZeroes() {
+        assertEquals(0d, HexFraction.calculate("0000000000000000"), 0d);
+    }
+
+    @Test
+    public void calculatesAllOnes() {
+        assertEquals(0.06666666666666667d, HexFraction.calculate("1111111111111111"),0d);
+    }
+
+    @Test
+    public void calculatesAllTwos() {
+        assertEquals(0.13333333333333333d, HexFraction.calculate("2222222222222222"),0d);
+    }
+
+    @Test
+    public void calculatesAllThrees() {
+        assertEquals(0.2d, HexFraction.calculate("3333333333333333"),0d);
+    }
+
+    @Test
+    public void calculatesAllFours() {
+        assertEquals(0.26666666666666666d, HexFraction.calculate("4444444444444444"),0d);
+    }
+
+    @Test
+    public void calculatesAllFives() {
+        assertEquals(0.3333333333333333d, HexFraction.calculate("5555555555555555"),0d);
+    }
+
+    @Test
+    public void calculatesAllSixes() {
+        assertEquals(0.4d, HexFraction.calculate("6666666666666666"),0d);
+    }
+
+    @Test
+    public void calculatesAllSevens() {
+        assertEquals(0.4666666666666667d, HexFraction.calculate("7777777777777777"),0d);
+    }
+
+    @Test
+    public void calculatesAllEights() {
+        assertEquals(0.5333333333333333d, HexFraction.calculate("8888888888888888"),0d);
+    }
+
+    @Test
+    public void calculatesAllNines() {
+        assertEquals(0.6d, HexFraction.calculate("9999999999999999"),0d);
+    }
+
+    @Test
+    public void calculatesAllAs() {
+        assertEquals(0.6666666666666666d, HexFraction.calculate("AAAAAAAAAAAAAAAA"),0d);
+    }
+
+    @Test
+    public void calculatesAllBs() {
+        assertEquals(0.7333333333333333d, HexFraction.calculate("BBBBBBBBBBBBBBBB"),0d);
+    }
+
+    @Test
+    public void calculatesAllCs() {
+        assertEquals(0.8d, HexFraction.calculate("CCCCCCCCCCCCCCCC"),0d);
+    }
+
+    @Test
+    public void calculatesAllDs() {
+        assertEquals(0.8666666666666667d, HexFraction.calculate("DDDDDDDDDDDDDDDD"),0d);
+    }
+
+    @Test
+    public void calculatesAllEs() {
+        assertEquals(0.9333333333333333d, HexFraction.calculate("EEEEEEEEEEEEEEEE"),0d);
+    }
+
+    @Test
+    public void calculatesAllFs() {
+        assertEquals(1.0d, HexFraction.calculate("FFFFFFFFFFFFFFFF"), 0d);
+    }
+
+    @Test
+    public void calculatesPartialStrings() {
+        assertEquals(0.5d, HexFraction.calculate("8"), 0d);
+        assertEquals(referenceCalculate("abc"), HexFraction.calculate("abc"), 0d);
+        assertEquals(0d, HexFraction.calculate(""), 0d);
+    }
+
+    @Test
+    public void calculatesLongStrings() {
+        String longOne = "123456789abcdef0123456789abcdef";
+        assertEquals(referenceCalculate(longOne), HexFraction.calculate(longOne), 0d);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void rejectsNonHexits() {
+        HexFraction.calculate("000000000000000g");
+    }
+
+    @Test
+    public void calculatesFromOffsets() {
+        String hash = "0123456789abcdeffedcba9876543210";
+        assertEquals(HexFraction.calculate("0123456789abcdef"), HexFraction.calculate(hash, 0), 0d);
+        assertEquals(HexFraction.calculate("fedcba9876543210"), HexFraction.calculate(hash, 16), 0d);
+    }
+
+    @Test
+    public void matchesReferenceForEveryDateSince2008() throws Exception {
+        // The stock value doesn't really matter here, so long as the hashes
+        // are all over the place.  This is the Dow's opening from the comic.
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        Calendar cal = new GregorianCalendar(2008, Calendar.MAY, 21);
+        Calendar end = new GregorianCalendar(2040, Calendar.JANUARY, 1);
+
+        while(cal.before(end)) {
+            String input = String.format(Locale.US, "%4d-%02d-%02d-10458.68",
+                    cal.get(Calendar.YEAR),
+                    cal.get(Calendar.MONTH) + 1,
+                    cal.get(Calendar.DAY_OF_MONTH));
+            byte[] bytes = digest.digest(input.getBytes("US-ASCII"));
+            String hash = CharToByte.bytesToString(bytes);
+
+            assertBitsEqual(input, referenceCalculate(hash.substring(0, 16)), HexFraction.calculate(hash.substring(0, 16)));
+            assertBitsEqual(input, referenceCalculate(hash.substring(16, 32)), HexFraction.calculate(hash.substring(16, 32)));
+            assertBitsEqual(input, referenceCalculate(hash.substring(0, 16)), HexFraction.calculate(hash, 0));
+            assertBitsEqual(input, referenceCalculate(hash.substring(16, 32)), HexFraction.calculate(hash, 16));
+            assertBitsEqual(input, referenceCalculate(hash.substring(0, 16)), HexFraction.calculate(bytes, 0));
+            assertBitsEqual(input, referenceCalculate(hash.substring(16, 32)), HexFraction.calculate(bytes, 8));
+
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    private static void assertBitsEqual(String message, double expected, double actual) {
+        assertEquals(message, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+
+    /**
+     * The original BigDecimal implementation of {@link HexFraction#calculate(String)},
+     * kept here as the reference the faster paths have to match.
+     */
+    private static double referenceCalculate(String s) {
+        BigDecimal curvalue = new BigDecimal(0);
+
+        for (int i = 0; i < s.length(); i++) {
+            int part = Integer.parseInt(s.substring(i, i + 1), 16);
+            BigDecimal d1 = new BigDecimal(part);
+            BigDecimal d2 = new BigDecimal(16).pow(i + 1);
+            //noinspection BigDecimalMethodWithoutRoundingCalled
+            curvalue = curvalue.add(d1.divide(d2));
+        }
+
+        return curvalue.doubleValue();
+    }
+}